@@ -0,0 +1,65 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.benchmark;
+
+import org.apache.log4j.Logger;
+import org.apache.log4j.varia.NullAppender;
+import org.dasein.cloud.test.sim.SimConditions;
+import org.dasein.cloud.test.sim.SimulatedProvider;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Sets the harness up for benchmarking. Unless a providerClass is already configured, the benchmarks run against
+ * the {@link SimulatedProvider} with no simulated latency and instant state transitions, so that what is measured
+ * is the harness and not the cloud. Log output is discarded after it has been formatted, since writing it to a
+ * console would dominate every benchmark that logs.
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+class BenchmarkSetup {
+    static private boolean configured;
+
+    static synchronized void configure() {
+        if( configured ) {
+            return;
+        }
+        configured = true;
+        if( System.getProperty("providerClass") == null ) {
+            System.setProperty("providerClass", SimulatedProvider.class.getName());
+            setDefault("providerName", "Dasein");
+            setDefault("cloudName", "Simulated");
+            setDefault("endpoint", "sim://benchmark");
+            setDefault("accountNumber", "benchmark");
+            setDefault("regionId", "sim-1");
+            setDefault(SimConditions.LATENCY, "0");
+            setDefault(SimConditions.TRANSITION, "0");
+        }
+        Logger.getRootLogger().removeAllAppenders();
+        Logger.getRootLogger().addAppender(new NullAppender());
+    }
+
+    static private void setDefault(@Nonnull String key, @Nonnull String value) {
+        if( System.getProperty(key) == null ) {
+            System.setProperty(key, value);
+        }
+    }
+}
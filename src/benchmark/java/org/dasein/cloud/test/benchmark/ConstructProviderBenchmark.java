@@ -0,0 +1,76 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.benchmark;
+
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.test.DaseinTestManager;
+import org.dasein.cloud.test.ProviderFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Constructing a connected provider with {@link DaseinTestManager#constructProvider()}, as the resources classes
+ * and the tests needing their own connection do, and acquiring one from the {@link ProviderFactory} pool, as every
+ * test class does. Against the simulated provider this is the cost of the harness and of Dasein Cloud's own
+ * connection set up; a real driver adds its connection time on top.
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConstructProviderBenchmark {
+    @Setup
+    public void setUp() {
+        BenchmarkSetup.configure();
+        // resolves and caches the configuration so that it is not part of the first measurement
+        DaseinTestManager.constructProvider().close();
+    }
+
+    @Benchmark
+    public CloudProvider constructProvider() {
+        CloudProvider provider = DaseinTestManager.constructProvider();
+
+        provider.close();
+        return provider;
+    }
+
+    @Benchmark
+    public CloudProvider acquireAndRelease() {
+        CloudProvider provider = ProviderFactory.acquire();
+
+        ProviderFactory.release(provider);
+        return provider;
+    }
+}
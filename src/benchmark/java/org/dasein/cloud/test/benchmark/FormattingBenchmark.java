@@ -0,0 +1,98 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.benchmark;
+
+import org.dasein.cloud.test.AsyncLog;
+import org.dasein.cloud.test.DaseinTestManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The output formatting every test does for each line it logs: {@link AsyncLog#format(String, String, String)} on
+ * its own, {@link DaseinTestManager#out(String, String)} through to a discarding appender, and the prefix
+ * {@link DaseinTestManager} rebuilds whenever a test begins or ends. The prefix is private to the manager and is
+ * rebuilt through reflection, which adds a small, constant cost to that benchmark.
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FormattingBenchmark {
+    private DaseinTestManager manager;
+    private Method            changePrefix;
+    private String            prefix = "Dasein/Simulated.StatelessVMTests.listVirtualMachines> ";
+
+    @Setup
+    public void setUp() throws Exception {
+        BenchmarkSetup.configure();
+        manager = new DaseinTestManager(FormattingBenchmark.class);
+        manager.begin("formatting");
+        changePrefix = DaseinTestManager.class.getDeclaredMethod("changePrefix");
+        changePrefix.setAccessible(true);
+    }
+
+    @TearDown
+    public void tearDown() {
+        manager.end();
+        manager.close();
+    }
+
+    @Benchmark
+    public String format() {
+        return AsyncLog.format(prefix, "Virtual Machine", "i-1234567");
+    }
+
+    @Benchmark
+    public String formatLongKey() {
+        return AsyncLog.format(prefix, "Number of virtual machines in the test data center", "42");
+    }
+
+    @Benchmark
+    public void out() {
+        manager.out("Virtual Machine", "i-1234567");
+    }
+
+    @Benchmark
+    public void outNumber() {
+        manager.out("Count", 42);
+    }
+
+    @Benchmark
+    public Object changePrefix() throws Exception {
+        return changePrefix.invoke(manager);
+    }
+}
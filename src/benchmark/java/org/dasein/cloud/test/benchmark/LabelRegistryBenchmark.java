@@ -0,0 +1,115 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.benchmark;
+
+import org.dasein.cloud.test.DaseinTestManager;
+import org.dasein.cloud.test.fixture.FixtureRegistry;
+import org.dasein.cloud.test.fixture.ResourceKind;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The label registries the resources classes keep their fixtures in. Every getTest* look-up of the
+ * {@link DaseinTestManager} takes the lock for its label and reads the registry, and every provisioned fixture is
+ * registered under a unique label. The look-ups are also measured with several threads reading the same registry,
+ * as they do when test classes run in parallel.
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LabelRegistryBenchmark {
+    /**
+     * the number of fixtures already in the registry
+     */
+    @Param({ "10", "1000" })
+    public int size;
+
+    private FixtureRegistry<String> registry;
+    private String[]                labels;
+
+    @Setup
+    public void setUp() {
+        BenchmarkSetup.configure();
+        registry = new FixtureRegistry<String>(ResourceKind.VM);
+        labels = new String[size];
+        for( int i=0; i<size; i++ ) {
+            labels[i] = registry.register(DaseinTestManager.STATEFUL + i, "i-" + i);
+        }
+    }
+
+    /**
+     * Per-thread position in the labels, so that threads do not contend on a shared counter.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        int index;
+
+        String next(String[] labels) {
+            return labels[(index++ & Integer.MAX_VALUE) % labels.length];
+        }
+    }
+
+    @Benchmark
+    public String get(Cursor cursor) {
+        return registry.get(cursor.next(labels));
+    }
+
+    @Benchmark
+    public String lockAndGet(Cursor cursor) {
+        String label = cursor.next(labels);
+
+        synchronized( registry.lock(label) ) {
+            return registry.get(label);
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String lockAndGetContended(Cursor cursor) {
+        return lockAndGet(cursor);
+    }
+
+    @Benchmark
+    public String registerAndRemove() {
+        // the label is always taken, so a suffix has to be found as it is for a second fixture under one label
+        String label = registry.register(DaseinTestManager.STATEFUL + "0", "i-new");
+
+        registry.remove(label);
+        return label;
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.benchmark;
+
+import org.dasein.cloud.test.DaseinTestManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.annotation.Nullable;
+import java.lang.reflect.Field;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The inclusion and exclusion matching of {@link DaseinTestManager#isTestSkipped(String, String)}, which every
+ * test runs before doing anything else. The lists are normally read from dasein.inclusions and dasein.exclusions
+ * by {@link DaseinTestManager#init()}, which also provisions the shared fixtures, so the benchmark sets them
+ * directly. Each call checks the next of a set of suite and test names, half of which are matched by the lists.
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SkipMatchingBenchmark {
+    static private final String[] SUITES = { "StatelessVMTests", "StatefulVMTests", "StatelessDCTests", "StatefulVolumeTests", "StatelessFirewallTests", "StatefulVLANTests" };
+    static private final String[] TESTS  = { "listVirtualMachines", "launch", "getDataCenter", "createVolume", "listFirewallRules", "createSubnet" };
+
+    /**
+     * none, inclusions, exclusions or both
+     */
+    @Param({ "none", "inclusions", "exclusions", "both" })
+    public String lists;
+
+    /**
+     * the number of names in each list
+     */
+    @Param({ "2", "200" })
+    public int size;
+
+    private int index;
+
+    @Setup
+    public void setUp() throws Exception {
+        BenchmarkSetup.configure();
+        boolean include = lists.equals("inclusions") || lists.equals("both");
+        boolean exclude = lists.equals("exclusions") || lists.equals("both");
+
+        setList("inclusions", include ? createList(0) : null);
+        setList("exclusions", exclude ? createList(1) : null);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        setList("inclusions", null);
+        setList("exclusions", null);
+    }
+
+    /**
+     * Lists every other suite, or every other test of each suite when offset by one, padded to the list size with
+     * names no test has.
+     */
+    private TreeSet<String> createList(int offset) {
+        TreeSet<String> names = new TreeSet<String>();
+
+        for( int i=offset; i<SUITES.length; i += 2 ) {
+            names.add(offset == 0 ? SUITES[i].toLowerCase() : (SUITES[i] + "." + TESTS[i]).toLowerCase());
+        }
+        for( int i=0; names.size() < size; i++ ) {
+            names.add(("StatelessUnusedTests.test" + i).toLowerCase());
+        }
+        return names;
+    }
+
+    private void setList(String name, @Nullable TreeSet<String> list) throws Exception {
+        Field field = DaseinTestManager.class.getDeclaredField(name);
+
+        field.setAccessible(true);
+        field.set(null, list);
+    }
+
+    @Benchmark
+    public boolean isTestSkipped() {
+        int i = (index++ & Integer.MAX_VALUE) % SUITES.length;
+
+        return DaseinTestManager.isTestSkipped(SUITES[i], TESTS[i]);
+    }
+
+    @Benchmark
+    public boolean isSuiteSkipped() {
+        int i = (index++ & Integer.MAX_VALUE) % SUITES.length;
+
+        return DaseinTestManager.isTestSkipped(SUITES[i], null);
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.benchmark;
+
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.compute.VMLaunchOptions;
+import org.dasein.cloud.compute.VirtualMachine;
+import org.dasein.cloud.compute.VirtualMachineSupport;
+import org.dasein.cloud.test.DaseinTestManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The overhead the harness adds to each test method, measured the way a test uses the {@link DaseinTestManager}:
+ * begin, the skip check, a listing with a line of output for each of ten virtual machines, and end. The listing goes
+ * to the simulated provider without simulated latency, so nearly all of the time measured is the harness's own
+ * bookkeeping. The empty variant leaves the listing out and shows the fixed cost of a test.
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TestMethodBenchmark {
+    static private final int VMS = 10;
+
+    private DaseinTestManager manager;
+
+    @Setup
+    public void setUp() throws CloudException, InternalException {
+        BenchmarkSetup.configure();
+        manager = new DaseinTestManager(TestMethodBenchmark.class);
+        VirtualMachineSupport support = manager.getProvider().getComputeServices().getVirtualMachineSupport();
+        int count = 0;
+
+        for( VirtualMachine ignore : support.listVirtualMachines() ) {
+            count++;
+        }
+        // the simulated cloud is shared by every thread of the benchmark
+        for( int i=count; i<VMS; i++ ) {
+            support.launch(VMLaunchOptions.getInstance("sim.small", "img-ubuntu", "bench" + i, "Benchmark VM " + i));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        manager.close();
+    }
+
+    @Benchmark
+    public boolean emptyTest() {
+        manager.begin("emptyTest");
+        try {
+            return manager.isTestSkipped();
+        }
+        finally {
+            manager.end();
+        }
+    }
+
+    @Benchmark
+    public int listingTest() throws CloudException, InternalException {
+        int count = 0;
+
+        manager.begin("listingTest");
+        try {
+            if( manager.isTestSkipped() ) {
+                return count;
+            }
+            VirtualMachineSupport support = manager.getProvider().getComputeServices().getVirtualMachineSupport();
+
+            for( VirtualMachine vm : support.listVirtualMachines() ) {
+                manager.out("Virtual Machine", vm.getProviderVirtualMachineId());
+                count++;
+            }
+            manager.out("Total", count);
+        }
+        finally {
+            manager.end();
+        }
+        return count;
+    }
+}
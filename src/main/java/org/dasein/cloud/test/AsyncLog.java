@@ -0,0 +1,318 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.MDC;
+import org.apache.log4j.NDC;
+import org.apache.log4j.spi.LoggingEvent;
+import org.dasein.cloud.test.runner.ParallelSuite;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The output path behind {@link DaseinTestManager#out(Logger, String, String, String)} and the test manager's
+ * out, ok and warn methods. When asynchronous output is enabled, the lines a thread logs between {@link #begin()} and
+ * {@link #end()}, which the test manager calls around each test, are captured unformatted and published together into
+ * a bounded, lock-free ring buffer. A single background thread formats them and hands them to the appenders with the
+ * time, thread name and NDC/MDC context of the original call, so layouts print the same as for direct output. Test
+ * threads never contend on the appenders and the output of tests running in parallel is written one test at a time instead
+ * of interleaved line by line. Lines logged outside a test are written directly, once any output the same thread
+ * published earlier has been written. Output is configured through {@link System} properties:
+ * <ul>
+ *     <li>dasein.log.async - true to write test output asynchronously (defaults to true for parallel runs)</li>
+ *     <li>dasein.log.buffer - the number of tests whose output the ring buffer holds (default 1024)</li>
+ * </ul>
+ * A full buffer makes callers wait for the writer, so no output is lost. {@link #flush()} waits for everything
+ * published so far, which clean up uses before writing its report.
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+public class AsyncLog {
+    static public final String ASYNC  = "dasein.log.async";
+    static public final String BUFFER = "dasein.log.buffer";
+
+    static private final String PADDING = "                                      ";
+
+    /**
+     * One line of output, formatted only when it is written but stamped with the context of the call.
+     */
+    static private class Record {
+        final Logger logger;
+        final Level  level;
+        final String prefix;
+        final String key;
+        final String value;
+        final long   timestamp;
+        final String threadName;
+        final String ndc;
+        final Map<?,?> mdc;
+        Record       next;
+
+        Record(@Nonnull Logger logger, @Nonnull Level level, @Nullable String prefix, @Nullable String key, @Nullable String value) {
+            Hashtable<?,?> context = MDC.getContext();
+
+            this.logger = logger;
+            this.level = level;
+            this.prefix = prefix;
+            this.key = key;
+            this.value = value;
+            this.timestamp = System.currentTimeMillis();
+            this.threadName = Thread.currentThread().getName();
+            this.ndc = NDC.get();
+            this.mdc = (context == null ? null : new Hashtable<Object, Object>(context));
+        }
+
+        @Nonnull LoggingEvent toEvent() {
+            return new LoggingEvent(AsyncLog.class.getName(), logger, timestamp, level, format(prefix, key, value), threadName, null, ndc, null, mdc);
+        }
+    }
+
+    /**
+     * The lines a thread logged since {@link #begin()}, kept in order.
+     */
+    static private class Batch {
+        Record first;
+        Record last;
+    }
+
+    static private final ThreadLocal<Batch> batches   = new ThreadLocal<Batch>();
+    static private final ThreadLocal<Long>  published = new ThreadLocal<Long>();
+
+    static private AsyncLog instance;
+    static private boolean  loaded;
+
+    static private synchronized @Nullable AsyncLog getInstance() {
+        if( !loaded ) {
+            String prop = DaseinTestManager.getSystemProperty(ASYNC);
+
+            loaded = true;
+            if( prop == null ? ParallelSuite.isParallel() : prop.equalsIgnoreCase("true") ) {
+                instance = new AsyncLog(getCapacity());
+            }
+        }
+        return instance;
+    }
+
+    static private int getCapacity() {
+        String prop = DaseinTestManager.getSystemProperty(BUFFER);
+        int capacity = 1024;
+
+        if( prop != null ) {
+            try {
+                capacity = Math.max(2, Integer.parseInt(prop.trim()));
+            }
+            catch( NumberFormatException ignore ) {
+                // fall through to the default
+            }
+        }
+        // round up to a power of two so a slot can be found with a mask
+        return Integer.highestOneBit(capacity - 1) << 1;
+    }
+
+    static public boolean isEnabled() {
+        return (getInstance() != null);
+    }
+
+    /**
+     * Formats a line of output. Keys are padded or truncated so that values line up in a column.
+     * @param prefix the prefix identifying the test or null for none
+     * @param key the key of a key/value line or null for a plain message
+     * @param value the value or message
+     * @return the formatted line
+     */
+    static public @Nonnull String format(@Nullable String prefix, @Nullable String key, @Nullable String value) {
+        StringBuilder str = new StringBuilder(100);
+
+        if( prefix != null ) {
+            str.append(prefix);
+        }
+        if( key != null ) {
+            if( key.length() > 36 ) {
+                str.append(key, 0, 36).append(": ");
+            }
+            else {
+                str.append(key).append(": ").append(PADDING, 0, 36 - key.length());
+            }
+        }
+        return str.append(value).toString();
+    }
+
+    /**
+     * Writes a line of output, either directly or, during a test, through the ring buffer. Nothing is formatted if the
+     * logger would discard the line.
+     * @param logger the logger to write to
+     * @param level the level of the line
+     * @param prefix the prefix identifying the test or null for none
+     * @param key the key of a key/value line or null for a plain message
+     * @param value the value or message
+     */
+    static public void log(@Nonnull Logger logger, @Nonnull Level level, @Nullable String prefix, @Nullable String key, @Nullable String value) {
+        if( !logger.isEnabledFor(level) ) {
+            return;
+        }
+        AsyncLog log = getInstance();
+
+        if( log == null ) {
+            logger.log(level, format(prefix, key, value));
+            return;
+        }
+        Batch batch = batches.get();
+
+        if( batch == null ) {
+            Long sequence = published.get();
+
+            if( sequence != null ) {
+                published.remove();
+                log.drain(sequence);
+            }
+            logger.log(level, format(prefix, key, value));
+            return;
+        }
+        Record record = new Record(logger, level, prefix, key, value);
+
+        if( batch.first == null ) {
+            batch.first = record;
+            batch.last = record;
+        }
+        else {
+            batch.last.next = record;
+            batch.last = record;
+        }
+    }
+
+    /**
+     * Starts holding back the output of the calling thread.
+     */
+    static public void begin() {
+        if( isEnabled() ) {
+            batches.set(new Batch());
+        }
+    }
+
+    /**
+     * Publishes the output the calling thread held back since {@link #begin()} as a single block.
+     */
+    static public void end() {
+        Batch batch = batches.get();
+
+        if( batch != null ) {
+            batches.remove();
+            if( batch.first != null ) {
+                published.set(getInstance().offer(batch.first));
+            }
+        }
+    }
+
+    /**
+     * Waits for all output placed in the ring buffer before this call to be written.
+     */
+    static public void flush() {
+        AsyncLog log = getInstance();
+
+        if( log != null ) {
+            log.drain(log.tail.get());
+        }
+    }
+
+    private final AtomicReferenceArray<Record> slots;
+    private final int                          mask;
+    private final AtomicLong                   tail = new AtomicLong(0L);
+    private volatile long                      head = 0L;
+    private final Thread                       writer;
+
+    private AsyncLog(int capacity) {
+        slots = new AtomicReferenceArray<Record>(capacity);
+        mask = capacity - 1;
+        writer = new Thread("dasein-log") {
+            @Override
+            public void run() {
+                write();
+            }
+        };
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                drain(tail.get());
+            }
+        });
+    }
+
+    /**
+     * @return the sequence number the writer reaches once the record has been written
+     */
+    private long offer(@Nonnull Record record) {
+        while( true ) {
+            long t = tail.get();
+
+            if( t - head >= slots.length() ) {
+                // full, wait for the writer to catch up rather than drop output
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100L));
+            }
+            else if( tail.compareAndSet(t, t + 1) ) {
+                slots.set((int)(t & mask), record);
+                LockSupport.unpark(writer);
+                return t + 1;
+            }
+        }
+    }
+
+    private void write() {
+        while( true ) {
+            int index = (int)(head & mask);
+            Record record = slots.get(index);
+
+            if( record == null ) {
+                // either nothing is queued or a producer has claimed the slot and will unpark the writer once it is filled
+                LockSupport.park(this);
+                continue;
+            }
+            slots.set(index, null);
+            while( record != null ) {
+                try {
+                    record.logger.callAppenders(record.toEvent());
+                }
+                catch( Throwable ignore ) {
+                    // a broken appender must not stop the writer
+                }
+                record = record.next;
+            }
+            // only advanced once written so that drain() returns after the output is out
+            head++;
+        }
+    }
+
+    private void drain(long target) {
+        while( head < target && writer.isAlive() ) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1L));
+        }
+    }
+}
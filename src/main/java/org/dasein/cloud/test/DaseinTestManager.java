@@ -19,6 +19,7 @@
 
 package org.dasein.cloud.test;
 
+import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 import org.dasein.cloud.*;
 import org.dasein.cloud.compute.VmState;
@@ -26,20 +27,42 @@ import org.dasein.cloud.compute.VolumeFormat;
 import org.dasein.cloud.network.*;
 import org.dasein.cloud.platform.DatabaseEngine;
 import org.dasein.cloud.storage.Blob;
+import org.dasein.cloud.test.capability.CapabilityMatrix;
+import org.dasein.cloud.test.cassette.Cassette;
 import org.dasein.cloud.test.ci.CIResources;
 import org.dasein.cloud.test.compute.ComputeResources;
+import org.dasein.cloud.test.fixture.FixtureGraph;
+import org.dasein.cloud.test.fixture.FixtureKey;
+import org.dasein.cloud.test.fixture.FixturePrewarmer;
+import org.dasein.cloud.test.fixture.ResourceJournal;
+import org.dasein.cloud.test.fixture.ResourceKind;
+import org.dasein.cloud.test.fixture.WarmPool;
 import org.dasein.cloud.test.identity.IdentityResources;
+import org.dasein.cloud.test.metrics.ApiBudget;
+import org.dasein.cloud.test.metrics.ApiLatency;
+import org.dasein.cloud.test.metrics.InstrumentedProvider;
+import org.dasein.cloud.test.metrics.ListingThroughput;
+import org.dasein.cloud.test.metrics.RunReport;
+import org.dasein.cloud.test.metrics.ScaleCurves;
+import org.dasein.cloud.test.metrics.TestImpact;
+import org.dasein.cloud.test.metrics.Timeline;
 import org.dasein.cloud.test.network.NetworkResources;
 import org.dasein.cloud.test.platform.PlatformResources;
+import org.dasein.cloud.test.runner.ParallelSuite;
 import org.dasein.cloud.test.storage.StorageResources;
+import org.dasein.cloud.test.teardown.TeardownEngine;
+import org.dasein.cloud.test.wait.TransitionStats;
 import org.dasein.cloud.util.APITrace;
 import org.dasein.util.CalendarWrapper;
+import org.junit.runner.Description;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.io.*;
 import java.security.Provider;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Consolidates and manages cloud resources shared across many different tests.
@@ -54,241 +77,50 @@ public class DaseinTestManager {
     static public final String STATELESS = "stateless";
     static public final String REMOVED   = "removed";
 
-    static private HashMap<String,Integer> apiAudit = new HashMap<String, Integer>();
+    static private final HashMap<String,Integer> apiAudit = new HashMap<String, Integer>();
 
     static private CIResources       ciResources;
     static private ComputeResources  computeResources;
+    static private volatile FixtureGraph fixtureGraph;
     static private TreeSet<String>   exclusions;
     static private IdentityResources identityResources;
     static private NetworkResources  networkResources;
     static private PlatformResources platformResources;
     static private StorageResources  storageResources;
+    static private WarmPool          warmPool;
 
     static private TreeSet<String>   inclusions;
+    static private CloudProvider     resourceProvider;
 
-    static private int  skipCount;
-    static private int  testCount;
+    static private final AtomicInteger skipCount = new AtomicInteger(0);
+    static private final AtomicInteger testCount = new AtomicInteger(0);
     static private long testStart;
 
-    static public @Nonnull CloudProvider constructProvider() {
-        return constructProvider(null, null, null);
-    }
+    static private int audit(@Nonnull String providerName, @Nonnull String cloudName, @Nonnull String call) {
+        int count = (int)APITrace.getAPICountAcrossAccounts(providerName, cloudName, call);
 
-    static public @Nonnull CloudProvider constructProvider(@Nullable String overrideAccount, @Nullable String overrideShared, @Nullable String overrideSecret) {
-        String cname = System.getProperty("providerClass");
-        CloudProvider provider = null;
+        synchronized( apiAudit ) {
+            Integer current = apiAudit.get(call);
 
-        if( cname == null ) {
-            throw new RuntimeException("Invalid class name for provider: " + cname);
+            apiAudit.put(call, current == null ? count : count + current);
         }
+        return count;
+    }
 
-        try{
-            String prop, account = "", cloudName = "", endpoint = "", regionId = "", providerName = "", userName = "";
-
-            prop = overrideAccount == null ? System.getProperty("accountNumber") : overrideAccount;
-            if( prop != null ) {
-                account = prop;
-            }
-            prop = System.getProperty("cloudName");
-            if( prop != null ) {
-                cloudName = prop;
-            }
-            prop = System.getProperty("endpoint");
-            if( prop != null ) {
-                endpoint = prop;
-            }
-            prop = System.getProperty("providerName");
-            if( prop != null ) {
-                providerName = prop;
-            }
-            prop = System.getProperty("regionId");
-            if( prop != null ) {
-                regionId = prop;
-            }
-
-            Cloud cloud = Cloud.register(providerName, cloudName, endpoint, (Class<? extends CloudProvider>) Class.forName(cname));
-
-            ContextRequirements requirements = cloud.buildProvider().getContextRequirements();
-            List<ContextRequirements.Field> fields = requirements.getConfigurableValues();
-            List<ProviderContext.Value> values = new ArrayList<ProviderContext.Value>(fields.size());
-
-            for(ContextRequirements.Field f : fields ) {
-                if( f.type.equals(ContextRequirements.FieldType.TOKEN) ) {
-                    String token = System.getProperty(f.name);
-                    // use either shared or secret override, doesn't really matter
-                    if( overrideShared != null || overrideSecret != null ) {
-                        token = overrideShared == null ? overrideSecret : overrideShared;
-                    }
-                    values.add(ProviderContext.Value.parseValue(f, token));
-                }
-                else if( f.type.equals(ContextRequirements.FieldType.KEYPAIR) ) {
-                    String shared = overrideShared == null ? System.getProperty(f.name + "Shared") : overrideShared;
-                    String secret = overrideSecret == null ? System.getProperty(f.name + "Secret") : overrideSecret;
-                    if( shared != null || secret != null ) {
-
-                        //I would rather not have this but its the only way to pass in the binary file from a path
-                        boolean p12 = false;
-                        byte[] p12Bytes = null;
-                        if(f.name.contains("p12")){
-                            String p12Path = shared;
-                            File file = new File(p12Path);
-                            p12Bytes = new byte[(int) file.length()];
-                            InputStream ios = null;
-                            try {
-                                ios = new FileInputStream(file);
-                                if ( ios.read(p12Bytes) == -1 ) {
-                                    throw new IOException("EOF reached while trying to read p12 certificate");
-                                }
-                                p12 = true;
-                            }
-                            catch(IOException ex){
-                                //Bummer
-                            }
-                            finally {
-                                try {
-                                    if ( ios != null )
-                                        ios.close();
-                                } catch ( IOException e) {}
-                            }
-                        }
-                        if(p12) values.add(new ProviderContext.Value<byte[][]>("p12Certificate", new byte[][] { p12Bytes, secret.getBytes() }));
-                        else values.add(ProviderContext.Value.parseValue(f, shared, secret));
-                    } else {
-                        String error = String.format("Keypair fields are not set up correctly: " +
-                                "%sShared = %s, %sSecret = %s. Check the Maven profile and pom.xml.",
-                                f.name, shared, f.name, secret);
-                        Logger logger = Logger.getLogger(DaseinTestManager.class);
-                        logger.fatal(error);
-                        throw new RuntimeException(error);
-                    }
-                }
-                else {
-                    String value = System.getProperty(f.name);
-                    if( value != null && value.trim().length() > 0 ) {
-                        values.add(ProviderContext.Value.parseValue(f, value));
-                    } else if( f.required ) {
-                        String error = String.format("%s field is missing, but declared as REQUIRED. " +
-                                        "Check the Maven profile and pom.xml.",
-                                f.name);
-                        Logger logger = Logger.getLogger(DaseinTestManager.class);
-                        logger.fatal(error);
-                        throw new RuntimeException(error);
-                    }
-                }
-            }
-
-            ProviderContext ctx = cloud.createContext(account, regionId, values.toArray(new ProviderContext.Value[0]));
-            provider = ctx.connect();
-        }
-        catch( ClassNotFoundException e ) {
-            throw new RuntimeException("No such class: " + e.getMessage());
-        }
-        catch( Exception e ) {
-            // catch all other possible exceptions and bomb out
-            throw new RuntimeException("Unable to initialise CloudProvider: " + e.getMessage(), e);
-        }
-        return provider;
-
-        /*
-        ProviderContext ctx = new ProviderContext();
-
-        try {
-            String prop;
-
-            prop = overrideAccount == null ? System.getProperty("accountNumber") : overrideAccount;
-            if( prop != null ) {
-                ctx.setAccountNumber(prop);
-            }
-            prop = overrideShared == null ? System.getProperty("accessPublic") : overrideShared;
-            if( prop != null ) {
-                ctx.setAccessPublic(prop.getBytes("utf-8"));
-            }
-            prop = overrideSecret == null ? System.getProperty("accessPrivate") : overrideSecret;
-            if( prop != null ) {
-                ctx.setAccessPrivate(prop.getBytes("utf-8"));
-            }
-            prop = System.getProperty("x509CertFile");
-            if( prop != null ) {
-                BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(prop)));
-                StringBuilder str = new StringBuilder();
-                String line;
-
-                while( (line = reader.readLine()) != null ) {
-                    str.append(line);
-                    str.append("\n");
-                }
-                ctx.setX509Cert(str.toString().getBytes("utf-8"));
-            }
-            prop = System.getProperty("x509KeyFile");
-            if( prop != null ) {
-                BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(prop)));
-                StringBuilder str = new StringBuilder();
-                String line;
-
-                while( (line = reader.readLine()) != null ) {
-                    str.append(line);
-                    str.append("\n");
-                }
-                ctx.setX509Key(str.toString().getBytes("utf-8"));
-            }
-            prop = System.getProperty("endpoint");
-            if( prop != null ) {
-                ctx.setEndpoint(prop);
-            }
-            prop= System.getProperty("cloudName");
-            if( prop != null ) {
-                ctx.setCloudName(prop);
-            }
-            prop = System.getProperty("providerName");
-            if( prop != null ) {
-                ctx.setProviderName(prop);
-            }
-            prop = System.getProperty("regionId");
-            if( prop != null ) {
-                ctx.setRegionId(prop);
-            }
-            prop = System.getProperty("p12Certificate");
-            if(prop != null){
-                InputStream inputStream = new FileInputStream(prop);
-                ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                DataOutputStream dos = new DataOutputStream(baos);
-                byte[] data = new byte[4096];
-                int count = inputStream.read(data);
-                while(count != -1) {
-                    dos.write(data, 0, count);
-                    count = inputStream.read(data);
-                }
-                ctx.setAccessPrivate(baos.toByteArray());
-            }
-            prop = System.getProperty("customProperties");
-            if( prop != null ) {
-                JSONObject json = new JSONObject(prop);
-                String[] names = JSONObject.getNames(json);
-
-                if( names != null ) {
-                    Properties properties = new Properties();
+    static public @Nonnull CloudProvider constructProvider() {
+        return constructProvider(null, null, null);
+    }
 
-                    for( String name : names ) {
-                        properties.put(name, json.getString(name));
-                    }
-                    ctx.setCustomProperties(properties);
-                }
-            }
-        }
-        catch( UnsupportedEncodingException e ) {
-            throw new RuntimeException("UTF-8 unsupported: " + e.getMessage());
-        }
-        catch( FileNotFoundException e ) {
-            throw new RuntimeException("No such file: " + e.getMessage());
-        }
-        catch( IOException e ) {
-            throw new RuntimeException("Failed to read file: " + e.getMessage());
-        }
-        catch( JSONException e ) {
-            throw new RuntimeException("Failed to understand custom properties JSON: " + e.getMessage());
-        }
-        provider.connect(ctx);
-        return provider;*/
+    /**
+     * Constructs a new, connected provider that the caller must close, reusing the configuration
+     * {@link ProviderFactory} has already resolved.
+     * @param overrideAccount the account number to use instead of the accountNumber property
+     * @param overrideShared the shared key to use instead of the configured one
+     * @param overrideSecret the secret key to use instead of the configured one
+     * @return a new provider
+     */
+    static public @Nonnull CloudProvider constructProvider(@Nullable String overrideAccount, @Nullable String overrideShared, @Nullable String overrideSecret) {
+        return ProviderFactory.create(overrideAccount, overrideShared, overrideSecret);
     }
 
     static public @Nullable ComputeResources getComputeResources() {
@@ -299,6 +131,13 @@ public class DaseinTestManager {
         return (computeResources == null ? null : computeResources.getTestDataCenterId(stateless));
     }
 
+    /**
+     * @return the graph on which fixtures are being pre-warmed or null if pre-warming is not enabled
+     */
+    static public @Nullable FixtureGraph getFixtureGraph() {
+        return fixtureGraph;
+    }
+
     static public @Nullable IdentityResources getIdentityResources() {
         return identityResources;
     }
@@ -318,19 +157,32 @@ public class DaseinTestManager {
     static public void init() {
         Logger logger = Logger.getLogger(DaseinTestManager.class);
 
+        Timeline.Span span = Timeline.begin("init", "DaseinTestManager.init");
+
         logger.info("BEGIN Test Initialization ------------------------------------------------------------------------------");
         try {
             testStart = System.currentTimeMillis();
 
-            CloudProvider cloudProvider = constructProvider();
-            storageResources = new StorageResources(cloudProvider);
-            platformResources = new PlatformResources(cloudProvider);
-            networkResources = new NetworkResources(cloudProvider);
-            identityResources = new IdentityResources(cloudProvider);
-            ciResources = new CIResources(cloudProvider);
-            computeResources = new ComputeResources(cloudProvider);
+            resourceProvider = InstrumentedProvider.instrument(constructProvider());
+            ResourceJournal.open(resourceProvider);
+            // probed before anything is provisioned so tests needing unsupported capabilities are skipped up front
+            CapabilityMatrix.probe(resourceProvider).report(logger);
+            storageResources = new StorageResources(resourceProvider);
+            platformResources = new PlatformResources(resourceProvider);
+            networkResources = new NetworkResources(resourceProvider);
+            identityResources = new IdentityResources(resourceProvider);
+            ciResources = new CIResources(resourceProvider);
+            computeResources = new ComputeResources(resourceProvider);
 
             computeResources.init();
+            warmPool = WarmPool.open(resourceProvider);
+            if( warmPool != null ) {
+                // pooled fixtures are registered before any test, or the pre-warmer, looks for them
+                computeResources.lease(warmPool);
+                networkResources.lease(warmPool);
+                identityResources.lease(warmPool);
+                platformResources.lease(warmPool);
+            }
 
             String prop = System.getProperty("dasein.inclusions");
 
@@ -358,13 +210,39 @@ public class DaseinTestManager {
                     exclusions.add(prop.toLowerCase());
                 }
             }
+            Set<String> changes = TestImpact.getChanges();
+
+            if( changes != null ) {
+                TestImpact impact = TestImpact.getInstance();
+                Set<String> impacted = (impact == null ? null : impact.select(changes, ParallelSuite.getRunDescription()));
+
+                if( impacted == null ) {
+                    logger.warn("No test impact map has been recorded, running all tests for changes to " + changes);
+                }
+                else {
+                    if( inclusions == null ) {
+                        inclusions = new TreeSet<String>();
+                    }
+                    for( String test : impacted ) {
+                        inclusions.add(test.toLowerCase());
+                    }
+                    out(logger, null, "Impacted", impacted.size() + " tests by " + changes);
+                }
+            }
             out(logger, null, "Included", (inclusions == null ? null : inclusions.toString()));
             out(logger, null, "Excluded", (exclusions == null ? null : exclusions.toString()));
 
+            Description run = ParallelSuite.getRunDescription();
+
+            if( run != null && FixturePrewarmer.isEnabled() ) {
+                fixtureGraph = FixturePrewarmer.start(run);
+            }
+
             APITrace.report("Init");
             APITrace.reset();
         }
         finally {
+            span.end();
             logger.info("END Test Initialization ------------------------------------------------------------------------------");
             logger.info("");
         }
@@ -375,46 +253,81 @@ public class DaseinTestManager {
         int provisioned = 0;
         int cleaned = 0;
 
+        // test output still in the buffer is written before the clean up report
+        AsyncLog.flush();
         logger.info("");
         logger.info("BEGIN Test Clean Up ------------------------------------------------------------------------------");
         try {
+            FixtureGraph graph = fixtureGraph;
+
+            if( graph != null ) {
+                // let pre-warming that no test waited for finish so the resources it creates get cleaned up
+                graph.shutdown();
+                try {
+                    if( !graph.awaitTermination(30L, TimeUnit.MINUTES) ) {
+                        logger.warn("Fixtures were still being provisioned at clean up");
+                    }
+                }
+                catch( InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                }
+                fixtureGraph = null;
+            }
+            if( ParallelSuite.isParallel() ) {
+                // API calls cannot be attributed to individual tests when classes run concurrently, so they
+                // were left to accumulate in APITrace and are audited here in one pass
+                for( String providerName : APITrace.listProviders() ) {
+                    for( String cloudName : APITrace.listClouds(providerName) ) {
+                        for( String call : APITrace.listApis(providerName, cloudName) ) {
+                            audit(providerName, cloudName, call);
+                        }
+                    }
+                }
+            }
             APITrace.report("Clean Up");
-            if( ciResources != null ) {
-                int count = ciResources.close();
+            WarmPool pool = warmPool;
 
-                out(logger, null, "CI Resources", String.valueOf(count));
-                cleaned += count;
+            if( pool != null ) {
+                computeResources.release(pool);
+                networkResources.release(pool);
+                identityResources.release(pool);
+                platformResources.release(pool);
+                pool.save();
+                warmPool = null;
             }
-            if( computeResources != null ) {
-                int count = computeResources.close();
+            // all resources go to one engine so that dependencies between services are respected
+            TeardownEngine teardown = new TeardownEngine();
 
-                out(logger, null, "Compute Resources", String.valueOf(count));
-                cleaned += count;
+            if( ciResources != null ) {
+                ciResources.close(teardown);
+            }
+            if( computeResources != null ) {
+                computeResources.close(teardown);
             }
             if( networkResources != null ) {
-                int count = networkResources.close();
-
-                out(logger, null, "Network Resources", String.valueOf(count));
-                cleaned += count;
+                networkResources.close(teardown);
             }
             if( identityResources != null ) {
-                int count = identityResources.close();
-
-                out(logger, null, "Identity Resources", String.valueOf(count));
-                cleaned += count;
+                identityResources.close(teardown);
             }
             if( platformResources != null ) {
-                int count = platformResources.close();
-
-                out(logger, null, "Platform Resources", String.valueOf(count));
-                cleaned += count;
+                platformResources.close(teardown);
             }
             if( storageResources != null ) {
-                int count = storageResources.close();
+                storageResources.close(teardown);
+            }
+            cleaned = teardown.run();
+            out(logger, null, "Cleaned Resources", String.valueOf(cleaned));
+
+            ResourceJournal journal = ResourceJournal.getInstance();
 
-                out(logger, null, "Storage Resources", String.valueOf(count));
-                cleaned += count;
+            if( journal != null ) {
+                journal.close();
             }
+            if( resourceProvider != null ) {
+                resourceProvider.close();
+            }
+            ProviderFactory.clear();
         }
         finally {
             logger.info("END Test Clean Up ------------------------------------------------------------------------------");
@@ -428,13 +341,61 @@ public class DaseinTestManager {
         logger.info("--------------- API Log ---------------");
         int total = 0;
 
-        for( Map.Entry<String,Integer> entry : apiAudit.entrySet() ) {
-            out(logger, null, "---> " + entry.getKey(), String.valueOf(entry.getValue()));
-            total += entry.getValue();
+        synchronized( apiAudit ) {
+            for( Map.Entry<String,Integer> entry : apiAudit.entrySet() ) {
+                out(logger, null, "---> " + entry.getKey(), String.valueOf(entry.getValue()));
+                total += entry.getValue();
+            }
         }
         out(logger, null, "---> Total Calls", String.valueOf(total));
         logger.info("");
 
+        if( InstrumentedProvider.isTimed() ) {
+            logger.info("------------- API Latency -------------");
+        }
+        else {
+            // only the waiters time their calls unless the provider is instrumented
+            logger.info("----------- Waiter Latency ------------");
+        }
+        ApiLatency.getRun().report(logger, null);
+        logger.info("");
+
+        logger.info("---------- State Transitions ----------");
+        TransitionStats.report(logger);
+        logger.info("");
+
+        if( ListingThroughput.isEnabled() ) {
+            logger.info("---------- Listing Throughput ---------");
+            ListingThroughput.report(logger);
+            ListingThroughput.save();
+            logger.info("");
+        }
+        if( ScaleCurves.isEnabled() ) {
+            logger.info("------------- Scale Curves ------------");
+            ScaleCurves.report(logger);
+            ScaleCurves.save();
+            logger.info("");
+        }
+
+        ApiBudget budget = ApiBudget.getInstance();
+
+        if( budget != null ) {
+            budget.save();
+            logger.info("------------- API Budget --------------");
+            budget.report(logger);
+            logger.info("");
+        }
+        TestImpact impact = TestImpact.getInstance();
+
+        if( impact != null ) {
+            impact.save();
+        }
+        Cassette.close();
+
+        logger.info("-------------- Providers --------------");
+        ProviderFactory.report(logger);
+        logger.info("");
+
         logger.info("----------- Provisioning Log ----------");
         if( computeResources != null ) {
             provisioned += computeResources.report();
@@ -456,48 +417,40 @@ public class DaseinTestManager {
         }
         logger.info("");
         logger.info("--------------- Results ---------------");
-        out(logger, null, "Tests", String.valueOf(testCount));
-        out(logger, null, "Skipped", String.valueOf(skipCount));
-        out(logger, null, "Run", String.valueOf(testCount - skipCount));
+        out(logger, null, "Tests", String.valueOf(testCount.get()));
+        out(logger, null, "Skipped", String.valueOf(skipCount.get()));
+        out(logger, null, "Run", String.valueOf(testCount.get() - skipCount.get()));
         out(logger, null, "Resources Provisioned", String.valueOf(provisioned));
-        out(logger, null, "Resources De-provisioned", String.valueOf(cleaned));
+        out(logger, null, "Resources De-provisioned", String.valueOf(RunReport.getDeprovisioned()));
         out(logger, null, "Duration", minutes + " minutes " + seconds + " seconds");
         logger.info("-------------------------------------------------------------------------------------------------");
+        RunReport.summarize(testCount.get(), skipCount.get(), provisioned, total, duration);
+        Timeline.close();
     }
 
     static public void out(@Nonnull Logger logger, @Nullable String prefix, @Nonnull String key, @Nullable String value) {
-        StringBuilder str = new StringBuilder();
-
-        if( key.length() > 36 ) {
-            str.append(key.substring(0, 36)).append(": ");
-        }
-        else {
-            str.append(key).append(": ");
-            while( str.length() < 38 ) {
-                str.append(" ");
-            }
-        }
-        if( prefix == null ) {
-            logger.info(str.toString() + value);
-        }
-        else {
-            logger.info( prefix + str.toString() + value);
-        }
+        AsyncLog.log(logger, Level.INFO, prefix, key, value);
     }
 
 
     private Logger                  logger;
     private String                  name;
     private String                  prefix;
+    private CloudProvider           pooledProvider;
     private CloudProvider           provider;
     private long                    startTimestamp;
     private String                  suite;
+    private final Class<?>          testClass;
+    private final ApiLatency        suiteLatency = new ApiLatency();
+    private ApiLatency              testLatency  = new ApiLatency();
     private String                  userName = "";
 
     public DaseinTestManager(@Nonnull Class<?> testClass) {
         logger = Logger.getLogger(testClass);
         suite = testClass.getSimpleName();
-        provider = constructProvider();
+        this.testClass = testClass;
+        pooledProvider = ProviderFactory.acquire();
+        provider = InstrumentedProvider.instrument(pooledProvider);
         changePrefix();
 
         String prop = System.getProperty("user.name");
@@ -508,11 +461,18 @@ public class DaseinTestManager {
 
     public void begin(@Nonnull String name) {
         this.name = name;
-        APITrace.report("Setup");
-        APITrace.reset();
+        AsyncLog.begin();
+        if( !ParallelSuite.isParallel() ) {
+            APITrace.report("Setup");
+            APITrace.reset();
+        }
         changePrefix();
+        testLatency = new ApiLatency();
+        ApiLatency.attach(suiteLatency, testLatency);
+        Cassette.begin(suite + "." + name);
+        RunReport.begin(suite, name);
         startTimestamp = System.currentTimeMillis();
-        testCount++;
+        testCount.incrementAndGet();
         out("");
         out(">>> BEGIN ---------------------------------------------------------------------------------------------->>>");
     }
@@ -546,38 +506,88 @@ public class DaseinTestManager {
         }
     }
 
+    /**
+     * Blocks while a fixture the caller is about to look up is still being pre-warmed so that the lookup finds it
+     * instead of provisioning a second one.
+     * @param kind the kind of resource being looked up
+     * @param label the label of the resource being looked up
+     */
+    private void awaitFixture(@Nonnull ResourceKind kind, @Nonnull String label) {
+        FixtureGraph graph = fixtureGraph;
+
+        if( graph != null ) {
+            try {
+                graph.awaitReady(new FixtureKey(kind, label));
+            }
+            catch( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
     public void close() {
-        getProvider().close();
+        if( !suiteLatency.isEmpty() ) {
+            out(InstrumentedProvider.isTimed() ? "---------- Suite API Latency ----------" : "--------- Suite Waiter Latency --------");
+            suiteLatency.report(logger, prefix);
+        }
+        ProviderFactory.release(pooledProvider);
     }
 
     public void end() {
-        String[] calls = APITrace.listApis(provider.getProviderName(), provider.getCloudName());
+        // APITrace is global, so per-test counts are only meaningful when tests run one at a time
+        String[] calls = (ParallelSuite.isParallel() ? new String[0] : APITrace.listApis(provider.getProviderName(), provider.getCloudName()));
+        Map<String,Integer> counts = (ParallelSuite.isParallel() ? null : new TreeMap<String, Integer>());
 
+        ApiLatency.detach();
+        Cassette.end();
         if( calls.length > 0 ) {
             out("---------- API Log ----------");
             int total = 0;
 
             for( String call : calls ) {
-                int count = (int)APITrace.getAPICountAcrossAccounts(provider.getProviderName(), provider.getCloudName(), call);
+                int count = audit(provider.getProviderName(), provider.getCloudName(), call);
 
-                if( apiAudit.containsKey(call) ) {
-                    apiAudit.put(call, count + apiAudit.get(call));
-                }
-                else {
-                    apiAudit.put(call, count);
-                }
                 out("---> " + call, count);
+                counts.put(call, count);
                 total += count;
             }
             out("---> Total Calls", total);
         }
+        if( !testLatency.isEmpty() ) {
+            // only the waiters time their calls unless the provider is instrumented
+            out(InstrumentedProvider.isTimed() ? "-------- API Latency --------" : "------ Waiter Latency -------");
+            // latencies are attributed per thread, so unlike the counts they are accurate for parallel runs too
+            testLatency.report(logger, prefix);
+        }
+        ApiBudget budget = ApiBudget.getInstance();
+        List<String> overBudget = (budget == null ? new ArrayList<String>() : budget.apply(suite + "." + name, counts, testLatency));
+
+        if( !overBudget.isEmpty() ) {
+            out("---------- Over Budget ----------");
+            for( String line : overBudget ) {
+                out("---> " + line);
+            }
+        }
+        TestImpact impact = TestImpact.getInstance();
+
+        // a skipped test calls nothing, which says nothing about what it would call
+        if( impact != null && !isTestSkipped(suite, name) ) {
+            impact.record(suite + "." + name, (counts == null ? null : counts.keySet()), testLatency, FixtureKey.listRequirements(testClass, name));
+        }
         out("Duration", (((float) (System.currentTimeMillis() - startTimestamp)) / 1000f) + " seconds");
         out("<<< END   ----------------------------------------------------------------------------------------------<<<");
         out("");
-        APITrace.report(prefix);
-        APITrace.reset();
+        RunReport.end(counts, testLatency);
+        if( !ParallelSuite.isParallel() ) {
+            APITrace.report(prefix);
+            APITrace.reset();
+        }
+        AsyncLog.end();
         name = null;
         changePrefix();
+        if( !overBudget.isEmpty() && budget.isFailing() ) {
+            throw new AssertionError("API calls exceeded their recorded budget: " + overBudget);
+        }
     }
 
     public @Nonnull ProviderContext getContext() {
@@ -622,6 +632,7 @@ public class DaseinTestManager {
 
     public @Nullable Blob getTestBucket(@Nonnull String label, boolean root, boolean provisionIfNull) {
         if( root ) {
+            awaitFixture(ResourceKind.BUCKET, label);
             return (storageResources == null ? null : storageResources.getTestRootBucket(label, provisionIfNull, null));
         }
         else {
@@ -630,10 +641,12 @@ public class DaseinTestManager {
     }
 
     public @Nullable String getTestDistributionId(@Nonnull String label, boolean provisionIfNull, @Nullable String origin) {
+        awaitFixture(ResourceKind.CDN, label);
         return (platformResources == null ? null : platformResources.getTestDistributionId(label, provisionIfNull, origin));
     }
 
     public @Nullable String getTestGeneralFirewallId(@Nonnull String label, boolean provisionIfNull) {
+        awaitFixture(ResourceKind.FIREWALL, label);
         return (networkResources == null ? null : networkResources.getTestFirewallId(label, provisionIfNull, null));
     }
 
@@ -642,14 +655,17 @@ public class DaseinTestManager {
     }
 
     public @Nullable String getTestImageId(@Nonnull String label, boolean provisionIfNull) {
+        awaitFixture(ResourceKind.IMAGE, label);
         return (computeResources == null ? null : computeResources.getTestImageId(label, provisionIfNull));
     }
 
     public @Nullable String getTestKeypairId(@Nonnull String label, boolean provisionIfNull) {
+        awaitFixture(ResourceKind.KEYPAIR, label);
         return (identityResources == null ? null : identityResources.getTestKeypairId(label, provisionIfNull));
     }
 
     public @Nullable String getTestLoadBalancerId(@Nonnull String label, @Nonnull String lbNamePrefix, boolean provisionIfNull, boolean withHealthCheck) {
+        awaitFixture(ResourceKind.LOAD_BALANCER, label);
         return (networkResources == null ? null : networkResources.getTestLoadBalancerId(label, lbNamePrefix, provisionIfNull, withHealthCheck));
     }
 
@@ -679,18 +695,22 @@ public class DaseinTestManager {
     }
 
     public @Nullable String getTestRDBMSId(@Nonnull String label, boolean provisionIfNull, @Nullable DatabaseEngine engine) {
+        awaitFixture(ResourceKind.RDBMS, label);
         return (platformResources == null ? null : platformResources.getTestRDBMSId(label, provisionIfNull, engine));
     }
 
     public @Nullable String getTestSnapshotId(@Nonnull String label, boolean provisionIfNull) {
+        awaitFixture(ResourceKind.SNAPSHOT, label);
         return (computeResources == null ? null : computeResources.getTestSnapshotId(label, provisionIfNull));
     }
 
     public @Nullable String getTestStaticIpId(@Nonnull String label, boolean provisionIfNull, @Nullable IPVersion version, boolean forVLAN, @Nullable String vlanId) {
+        awaitFixture(ResourceKind.STATIC_IP, label);
         return networkResources == null ? null : networkResources.getTestStaticIpId(label, provisionIfNull, version, forVLAN, vlanId);
     }
 
     public @Nullable String getTestSubnetId(@Nonnull String label, boolean provisionIfNull, @Nullable String vlanId, @Nullable String preferredDataCenterId) {
+        awaitFixture(ResourceKind.SUBNET, label);
         return (networkResources == null ? null : networkResources.getTestSubnetId(label, provisionIfNull, vlanId, preferredDataCenterId));
     }
 
@@ -743,6 +763,7 @@ public class DaseinTestManager {
     }
 
     public @Nullable String getTestVLANId(@Nonnull String label, boolean provisionIfNull, @Nullable String preferredDataCenterId) {
+        awaitFixture(ResourceKind.VLAN, label);
         return (networkResources == null ? null : networkResources.getTestVLANId(label, provisionIfNull, preferredDataCenterId));
     }
 
@@ -755,6 +776,7 @@ public class DaseinTestManager {
     }
     
     public @Nullable String getTestVMId(@Nonnull String label, @Nonnull String vmName, @Nullable VmState desiredState, boolean provisionIfNull, @Nullable String preferredDataCenterId) {
+        awaitFixture(ResourceKind.VM, label);
         if( computeResources == null ) {
             return null;
         }
@@ -773,6 +795,7 @@ public class DaseinTestManager {
     }
 
     public @Nullable String getTestVolumeId(@Nonnull String label, boolean provisionIfNull, @Nullable VolumeFormat preferredFormat, @Nullable String preferredDataCenterId) {
+        awaitFixture(ResourceKind.VOLUME, label);
         if( computeResources == null ) {
             return null;
         }
@@ -784,9 +807,13 @@ public class DaseinTestManager {
     }
 
     public @Nullable String getTestZoneId(@Nonnull String label, boolean provisionIfNull) {
+        awaitFixture(ResourceKind.DNS_ZONE, label);
         return (networkResources == null ? null : networkResources.getTestZoneId(label, provisionIfNull));
     }
 
+    /**
+     * @return the provider the tests run against, which times every support call when dasein.instrument is true
+     */
     public @Nonnull CloudProvider getProvider() {
         return provider;
     }
@@ -803,15 +830,31 @@ public class DaseinTestManager {
      *     -Ddasein.inclusions=StatelessVMTests.listVirtualMachines,StatelessDCTests
      * </pre>
      * This will execute only the listVirtualMachines test from StatelessVMTests and all StatelessDCTests. All other
-     * tests will be skipped.
+     * tests will be skipped. When dasein.impact.changed lists changed APIs, the tests affected by them according to the
+     * {@link TestImpact} map are added to the inclusions.
      * @return true if the current test is to be skipped
      */
     public boolean isTestSkipped() {
+        if( isTestSkipped(suite, name) ) {
+            skip();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether a test would be skipped under the current inclusions and exclusions without counting it
+     * as skipped. See {@link #isTestSkipped()} for the rules applied.
+     * @param suite the simple name of the test class (e.g. "StatelessVMTests")
+     * @param test the name of the test method or null to check the suite as a whole
+     * @return true if the test is to be skipped
+     */
+    static public boolean isTestSkipped(@Nonnull String suite, @Nullable String test) {
         if( inclusions == null && exclusions == null ) {
             return false;
         }
         String s = suite.toLowerCase();
-        String t = (name == null ? null : name.toLowerCase());
+        String t = (test == null ? null : test.toLowerCase());
 
         Boolean suiteIncluded = null;
         Boolean testIncluded = null;
@@ -824,14 +867,12 @@ public class DaseinTestManager {
                 testIncluded = true;
             }
             if( suiteIncluded == null && testIncluded == null ) {
-                skip();
                 return true;
             }
         }
         if( exclusions != null ) {
             if( t != null && exclusions.contains(s + "." + t) ) {
                 if( testIncluded == null || !testIncluded ) {
-                    skip();
                     return true;
                 }
                 return false; // conflict goes to not skipping
@@ -850,11 +891,11 @@ public class DaseinTestManager {
     }
 
     public void ok(@Nonnull String message) {
-        logger.info(prefix + message + " (OK)");
+        AsyncLog.log(logger, Level.INFO, prefix, null, message + " (OK)");
     }
 
     public void out(@Nonnull String message) {
-        logger.info(prefix + message);
+        AsyncLog.log(logger, Level.INFO, prefix, null, message);
     }
 
     public void out(@Nonnull String key, boolean value) {
@@ -886,12 +927,13 @@ public class DaseinTestManager {
     }
 
     public void skip() {
-        skipCount++;
+        skipCount.incrementAndGet();
+        RunReport.skipped();
         out("SKIPPING");
     }
 
     public void warn(@Nonnull String message) {
-        logger.warn(prefix + "WARNING: " + message);
+        AsyncLog.log(logger, Level.WARN, prefix, null, "WARNING: " + message);
     }
     
     public String getUserName() {
@@ -19,6 +19,7 @@
 
 package org.dasein.cloud.test;
 
+import org.dasein.cloud.test.runner.ParallelSuite;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.runner.RunWith;
@@ -30,7 +31,7 @@ import org.junit.runners.Suite;
  *
  * @author George Reese
  */
-@RunWith(Suite.class)
+@RunWith(ParallelSuite.class)
 @Suite.SuiteClasses({ StatefulTestSuite.class, StatelessTestSuite.class })
 public class GlobalTestSuite {
     @BeforeClass
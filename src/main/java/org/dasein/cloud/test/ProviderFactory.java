@@ -0,0 +1,380 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.Cloud;
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.ContextRequirements;
+import org.dasein.cloud.ProviderContext;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Builds the {@link CloudProvider} instances the tests run against. The registered {@link Cloud}, its context
+ * requirements, the key material read from disk and the values of the resulting {@link ProviderContext} are resolved
+ * once per provider configuration and reused, so each new provider costs only a connect through a context of its own.
+ * Test managers {@link #acquire()} a connected provider and {@link #release(CloudProvider)} it when their class is
+ * done, which returns it to an idle pool for the next test class instead of closing it. A provider is only ever held by one test class at a time, so test
+ * classes running concurrently each get their own instance. The number of idle providers kept is set through the
+ * dasein.provider.pool {@link System} property (default 4, with 0 closing every released provider).
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+public class ProviderFactory {
+    static private final Logger logger = Logger.getLogger(ProviderFactory.class);
+
+    static public final String POOL = "dasein.provider.pool";
+
+    static private final Map<String,Cloud>                         clouds       = new HashMap<String, Cloud>();
+    static private final Map<Cloud,List<ContextRequirements.Field>> requirements = new HashMap<Cloud, List<ContextRequirements.Field>>();
+    static private final Map<String,byte[]>                        keys         = new HashMap<String, byte[]>();
+    static private final Map<String,Configuration>                 contexts     = new HashMap<String, Configuration>();
+    static private final Map<String,LinkedList<CloudProvider>>     idle         = new HashMap<String, LinkedList<CloudProvider>>();
+    static private final Map<CloudProvider,String>                 leased       = new IdentityHashMap<CloudProvider, String>();
+    static private int                                             idleCount;
+
+    static private final AtomicInteger constructed  = new AtomicInteger(0);
+    static private final AtomicLong    connectTime  = new AtomicLong(0L);
+    static private final AtomicLong    maxConnect   = new AtomicLong(0L);
+    static private final AtomicLong    resolveTime  = new AtomicLong(0L);
+    static private final AtomicInteger reused       = new AtomicInteger(0);
+
+    static public int getPoolSize() {
+        String prop = DaseinTestManager.getSystemProperty(POOL);
+
+        if( prop != null ) {
+            try {
+                return Math.max(0, Integer.parseInt(prop.trim()));
+            }
+            catch( NumberFormatException ignore ) {
+                // fall through to the default
+            }
+        }
+        return 4;
+    }
+
+    /**
+     * Leases a connected provider for the configured cloud, reusing an idle one when possible.
+     * @return a provider that no other caller holds until it is released
+     */
+    static public @Nonnull CloudProvider acquire() {
+        String key = getConfigurationKey(null, null, null);
+        CloudProvider provider = null;
+
+        synchronized( idle ) {
+            LinkedList<CloudProvider> providers = idle.get(key);
+
+            if( providers != null && !providers.isEmpty() ) {
+                provider = providers.removeFirst();
+                idleCount--;
+                reused.incrementAndGet();
+            }
+        }
+        if( provider == null ) {
+            provider = create(null, null, null);
+        }
+        synchronized( idle ) {
+            leased.put(provider, key);
+        }
+        return provider;
+    }
+
+    /**
+     * Returns a provider obtained from {@link #acquire()} to the pool, closing it if the pool is full. Providers that
+     * did not come from {@link #acquire()} are closed.
+     * @param provider the provider the caller is done with
+     */
+    static public void release(@Nonnull CloudProvider provider) {
+        synchronized( idle ) {
+            String key = leased.remove(provider);
+
+            if( key != null && idleCount < getPoolSize() ) {
+                LinkedList<CloudProvider> providers = idle.get(key);
+
+                if( providers == null ) {
+                    providers = new LinkedList<CloudProvider>();
+                    idle.put(key, providers);
+                }
+                providers.addLast(provider);
+                idleCount++;
+                return;
+            }
+        }
+        provider.close();
+    }
+
+    /**
+     * Closes every idle provider.
+     */
+    static public void clear() {
+        synchronized( idle ) {
+            for( LinkedList<CloudProvider> providers : idle.values() ) {
+                for( CloudProvider provider : providers ) {
+                    provider.close();
+                }
+            }
+            idle.clear();
+            idleCount = 0;
+        }
+    }
+
+    /**
+     * Constructs and connects a new provider that belongs to the caller, optionally overriding the configured
+     * credentials.
+     * @param overrideAccount the account number to use instead of the accountNumber property
+     * @param overrideShared the shared key to use instead of the configured one
+     * @param overrideSecret the secret key to use instead of the configured one
+     * @return a new, connected provider
+     */
+    static public @Nonnull CloudProvider create(@Nullable String overrideAccount, @Nullable String overrideShared, @Nullable String overrideSecret) {
+        String cname = System.getProperty("providerClass");
+
+        if( cname == null ) {
+            throw new RuntimeException("Invalid class name for provider: " + cname);
+        }
+        try {
+            long start = System.currentTimeMillis();
+            ProviderContext ctx = getConfiguration(overrideAccount, overrideShared, overrideSecret).newContext();
+            long connectStart = System.currentTimeMillis();
+            CloudProvider provider = ctx.connect();
+            long duration = System.currentTimeMillis() - connectStart;
+
+            resolveTime.addAndGet(connectStart - start);
+            connectTime.addAndGet(duration);
+            constructed.incrementAndGet();
+            synchronized( maxConnect ) {
+                if( duration > maxConnect.get() ) {
+                    maxConnect.set(duration);
+                }
+            }
+            return provider;
+        }
+        catch( ClassNotFoundException e ) {
+            throw new RuntimeException("No such class: " + e.getMessage());
+        }
+        catch( RuntimeException e ) {
+            throw e;
+        }
+        catch( Exception e ) {
+            // catch all other possible exceptions and bomb out
+            throw new RuntimeException("Unable to initialise CloudProvider: " + e.getMessage(), e);
+        }
+    }
+
+    static private @Nonnull String getConfigurationKey(@Nullable String overrideAccount, @Nullable String overrideShared, @Nullable String overrideSecret) {
+        return System.getProperty("providerClass") + "|" + System.getProperty("providerName") + "|" + System.getProperty("cloudName") + "|"
+                + System.getProperty("endpoint") + "|" + (overrideAccount == null ? System.getProperty("accountNumber") : overrideAccount) + "|"
+                + System.getProperty("regionId") + "|" + overrideShared + "|" + overrideSecret;
+    }
+
+    /**
+     * The resolved values a provider context is created from.
+     */
+    static private class Configuration {
+        final Cloud                      cloud;
+        final String                     account;
+        final String                     regionId;
+        final ProviderContext.Value<?>[] values;
+
+        Configuration(@Nonnull Cloud cloud, @Nonnull String account, @Nonnull String regionId, @Nonnull ProviderContext.Value<?>[] values) {
+            this.cloud = cloud;
+            this.account = account;
+            this.regionId = regionId;
+            this.values = values;
+        }
+
+        /**
+         * @return a new context, so that changes one test makes to its provider's context stay with that provider
+         */
+        @Nonnull ProviderContext newContext() {
+            return cloud.createContext(account, regionId, values);
+        }
+    }
+
+    static private @Nonnull Configuration getConfiguration(@Nullable String overrideAccount, @Nullable String overrideShared, @Nullable String overrideSecret) throws Exception {
+        String key = getConfigurationKey(overrideAccount, overrideShared, overrideSecret);
+
+        synchronized( contexts ) {
+            Configuration configuration = contexts.get(key);
+
+            if( configuration != null ) {
+                return configuration;
+            }
+        }
+        String account = valueOf(overrideAccount == null ? System.getProperty("accountNumber") : overrideAccount);
+        String regionId = valueOf(System.getProperty("regionId"));
+        Cloud cloud = getCloud();
+        List<ContextRequirements.Field> fields = getRequirements(cloud);
+        List<ProviderContext.Value<?>> values = new ArrayList<ProviderContext.Value<?>>(fields.size());
+
+        for( ContextRequirements.Field f : fields ) {
+            if( f.type.equals(ContextRequirements.FieldType.TOKEN) ) {
+                String token = System.getProperty(f.name);
+                // use either shared or secret override, doesn't really matter
+                if( overrideShared != null || overrideSecret != null ) {
+                    token = overrideShared == null ? overrideSecret : overrideShared;
+                }
+                values.add(ProviderContext.Value.parseValue(f, token));
+            }
+            else if( f.type.equals(ContextRequirements.FieldType.KEYPAIR) ) {
+                String shared = overrideShared == null ? System.getProperty(f.name + "Shared") : overrideShared;
+                String secret = overrideSecret == null ? System.getProperty(f.name + "Secret") : overrideSecret;
+                if( shared != null || secret != null ) {
+
+                    //I would rather not have this but its the only way to pass in the binary file from a path
+                    byte[] p12Bytes = null;
+                    if( f.name.contains("p12") ) {
+                        p12Bytes = readKey(shared);
+                    }
+                    if( p12Bytes != null ) values.add(new ProviderContext.Value<byte[][]>("p12Certificate", new byte[][] { p12Bytes, secret.getBytes() }));
+                    else values.add(ProviderContext.Value.parseValue(f, shared, secret));
+                } else {
+                    String error = String.format("Keypair fields are not set up correctly: " +
+                            "%sShared = %s, %sSecret = %s. Check the Maven profile and pom.xml.",
+                            f.name, shared, f.name, secret);
+                    logger.fatal(error);
+                    throw new RuntimeException(error);
+                }
+            }
+            else {
+                String value = System.getProperty(f.name);
+                if( value != null && value.trim().length() > 0 ) {
+                    values.add(ProviderContext.Value.parseValue(f, value));
+                } else if( f.required ) {
+                    String error = String.format("%s field is missing, but declared as REQUIRED. " +
+                                    "Check the Maven profile and pom.xml.",
+                            f.name);
+                    logger.fatal(error);
+                    throw new RuntimeException(error);
+                }
+            }
+        }
+        Configuration configuration = new Configuration(cloud, account, regionId, values.toArray(new ProviderContext.Value<?>[values.size()]));
+
+        synchronized( contexts ) {
+            // another thread may have resolved the same configuration in the meantime
+            Configuration existing = contexts.get(key);
+
+            if( existing != null ) {
+                return existing;
+            }
+            contexts.put(key, configuration);
+        }
+        return configuration;
+    }
+
+    static private @Nonnull String valueOf(@Nullable String prop) {
+        return (prop == null ? "" : prop);
+    }
+
+    @SuppressWarnings("unchecked")
+    static private @Nonnull Cloud getCloud() throws ClassNotFoundException {
+        String cname = System.getProperty("providerClass");
+        String providerName = valueOf(System.getProperty("providerName"));
+        String cloudName = valueOf(System.getProperty("cloudName"));
+        String endpoint = valueOf(System.getProperty("endpoint"));
+        String key = cname + "|" + providerName + "|" + cloudName + "|" + endpoint;
+
+        synchronized( clouds ) {
+            Cloud cloud = clouds.get(key);
+
+            if( cloud == null ) {
+                cloud = Cloud.register(providerName, cloudName, endpoint, (Class<? extends CloudProvider>) Class.forName(cname));
+                clouds.put(key, cloud);
+            }
+            return cloud;
+        }
+    }
+
+    static private @Nonnull List<ContextRequirements.Field> getRequirements(@Nonnull Cloud cloud) throws Exception {
+        synchronized( requirements ) {
+            List<ContextRequirements.Field> fields = requirements.get(cloud);
+
+            if( fields == null ) {
+                fields = cloud.buildProvider().getContextRequirements().getConfigurableValues();
+                requirements.put(cloud, fields);
+            }
+            return fields;
+        }
+    }
+
+    static private @Nullable byte[] readKey(@Nullable String path) {
+        if( path == null ) {
+            return null;
+        }
+        synchronized( keys ) {
+            if( keys.containsKey(path) ) {
+                return keys.get(path);
+            }
+            File file = new File(path);
+            byte[] bytes = new byte[(int) file.length()];
+            InputStream ios = null;
+
+            try {
+                ios = new FileInputStream(file);
+                if ( ios.read(bytes) == -1 ) {
+                    throw new IOException("EOF reached while trying to read p12 certificate");
+                }
+            }
+            catch( IOException ex ) {
+                //Bummer
+                bytes = null;
+            }
+            finally {
+                try {
+                    if ( ios != null )
+                        ios.close();
+                } catch ( IOException e) {}
+            }
+            keys.put(path, bytes);
+            return bytes;
+        }
+    }
+
+    /**
+     * Logs how many providers were built and how long resolving their configuration and connecting took.
+     * @param logger the logger to write to
+     */
+    static public void report(@Nonnull Logger logger) {
+        int count = constructed.get();
+
+        DaseinTestManager.out(logger, null, "---> Constructed", String.valueOf(count));
+        DaseinTestManager.out(logger, null, "---> Reused", String.valueOf(reused.get()));
+        if( count > 0 ) {
+            DaseinTestManager.out(logger, null, "---> Resolve Time", "total " + (resolveTime.get() / 1000f) + "s");
+            DaseinTestManager.out(logger, null, "---> Connect Time", "avg " + ((connectTime.get() / count) / 1000f) + "s, max " + (maxConnect.get() / 1000f) + "s");
+        }
+    }
+}
@@ -23,6 +23,7 @@ import org.dasein.cloud.test.ci.StatefulCITests;
 import org.dasein.cloud.test.ci.StatefulHttpLoadBalancerTests;
 import org.dasein.cloud.test.ci.StatefulTopologyTests;
 import org.dasein.cloud.test.compute.StatefulImageTests;
+import org.dasein.cloud.test.compute.StatefulScaleTests;
 import org.dasein.cloud.test.compute.StatefulSnapshotTests;
 import org.dasein.cloud.test.compute.StatefulVMTests;
 import org.dasein.cloud.test.compute.StatefulVolumeTests;
@@ -40,6 +41,7 @@ import org.dasein.cloud.test.platform.StatefulPushNotificationTests;
 import org.dasein.cloud.test.platform.StatefulRDBMSTests;
 import org.dasein.cloud.test.storage.StatefulObjectStoreTests;
 import org.dasein.cloud.test.storage.StatefulOfflineStoreTests;
+import org.dasein.cloud.test.runner.ParallelSuite;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 
@@ -49,7 +51,7 @@ import org.junit.runners.Suite;
  *
  * @author George Reese
  */
-@RunWith(Suite.class)
+@RunWith(ParallelSuite.class)
 @Suite.SuiteClasses({
         StatefulObjectStoreTests.class,
         StatefulOfflineStoreTests.class,
@@ -71,7 +73,8 @@ import org.junit.runners.Suite;
         StatefulPushNotificationTests.class,
         StatefulTopologyTests.class,
         StatefulCITests.class,
-        StatefulHttpLoadBalancerTests.class
+        StatefulHttpLoadBalancerTests.class,
+        StatefulScaleTests.class
 })
 public class StatefulTestSuite {
 }
@@ -21,6 +21,7 @@ package org.dasein.cloud.test;
 
 import org.dasein.cloud.test.cloud.StatelessAuthenticationTests;
 import org.dasein.cloud.test.cloud.StatelessDCTests;
+import org.dasein.cloud.test.cloud.StatelessListingTests;
 import org.dasein.cloud.test.compute.StatelessAffinityGroupTests;
 import org.dasein.cloud.test.compute.StatelessImageTests;
 import org.dasein.cloud.test.compute.StatelessSnapshotTests;
@@ -44,6 +45,7 @@ import org.dasein.cloud.test.platform.StatelessNotificationsTests;
 import org.dasein.cloud.test.platform.StatelessRDBMSTests;
 import org.dasein.cloud.test.storage.StatelessObjectStoreTests;
 import org.dasein.cloud.test.storage.StatelessOfflineStoreTests;
+import org.dasein.cloud.test.runner.ParallelSuite;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 
@@ -54,7 +56,7 @@ import org.junit.runners.Suite;
  * @author George Reese
  * @version 2013.07 added MQ support (issue #6)
  */
-@RunWith(Suite.class)
+@RunWith(ParallelSuite.class)
 @Suite.SuiteClasses({
         StatelessObjectStoreTests.class,
         StatelessOfflineStoreTests.class,
@@ -80,7 +82,8 @@ import org.junit.runners.Suite;
         StatelessNotificationsTests.class,
         StatelessVMMonitoringTests.class,
         StatelessTopologyTests.class,
-        StatelessHttpLoadBalancerTests.class
+        StatelessHttpLoadBalancerTests.class,
+        StatelessListingTests.class
 })
 public class StatelessTestSuite {
 }
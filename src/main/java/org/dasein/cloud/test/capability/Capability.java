@@ -0,0 +1,95 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.capability;
+
+import javax.annotation.Nonnull;
+
+/**
+ * The optional services of a cloud a test may depend on. Each capability names the getters that lead from the
+ * {@link org.dasein.cloud.CloudProvider} to its support object, which the {@link CapabilityMatrix} uses to probe it.
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+public enum Capability {
+    VM("getComputeServices", "getVirtualMachineSupport"),
+    VOLUME("getComputeServices", "getVolumeSupport"),
+    SNAPSHOT("getComputeServices", "getSnapshotSupport"),
+    IMAGE("getComputeServices", "getImageSupport"),
+    AFFINITY_GROUP("getComputeServices", "getAffinityGroupSupport"),
+    AUTO_SCALING("getComputeServices", "getAutoScalingSupport"),
+
+    VLAN("getNetworkServices", "getVlanSupport"),
+    FIREWALL("getNetworkServices", "getFirewallSupport"),
+    NETWORK_FIREWALL("getNetworkServices", "getNetworkFirewallSupport"),
+    STATIC_IP("getNetworkServices", "getIpAddressSupport"),
+    LOAD_BALANCER("getNetworkServices", "getLoadBalancerSupport"),
+    DNS("getNetworkServices", "getDnsSupport"),
+    VPN("getNetworkServices", "getVpnSupport"),
+
+    IAM("getIdentityServices", "getIdentityAndAccessSupport"),
+    KEYPAIR("getIdentityServices", "getShellKeySupport"),
+
+    CDN("getPlatformServices", "getCDNSupport"),
+    KVDB("getPlatformServices", "getKeyValueDatabaseSupport"),
+    MQ("getPlatformServices", "getMessageQueueSupport"),
+    PUSH_NOTIFICATION("getPlatformServices", "getPushNotificationSupport"),
+    RDBMS("getPlatformServices", "getRelationalDatabaseSupport"),
+
+    BLOB_STORE("getStorageServices", "getOnlineStorageSupport"),
+
+    CONVERGED_INFRASTRUCTURE("getCIServices", "getConvergedInfrastructureSupport"),
+    TOPOLOGY("getCIServices", "getTopologySupport");
+
+    /**
+     * What a probe found out about a capability.
+     */
+    static public enum Status {
+        /**
+         * The provider has no support object for the capability.
+         */
+        UNSUPPORTED,
+        /**
+         * The provider supports the capability, but the account is not subscribed to it.
+         */
+        UNSUBSCRIBED,
+        SUPPORTED,
+        /**
+         * The probe failed, so the capability is assumed to be available.
+         */
+        UNKNOWN
+    }
+
+    private final String servicesGetter;
+    private final String supportGetter;
+
+    private Capability(@Nonnull String servicesGetter, @Nonnull String supportGetter) {
+        this.servicesGetter = servicesGetter;
+        this.supportGetter = supportGetter;
+    }
+
+    public @Nonnull String getServicesGetter() {
+        return servicesGetter;
+    }
+
+    public @Nonnull String getSupportGetter() {
+        return supportGetter;
+    }
+}
@@ -0,0 +1,375 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.capability;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.test.DaseinTestManager;
+import org.dasein.cloud.test.fixture.WarmPool;
+import org.dasein.util.CalendarWrapper;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An immutable record of which {@link Capability}s the cloud under test supports and is subscribed to, together with
+ * the boolean flags of each capability's capabilities object. The matrix is probed once at
+ * {@link DaseinTestManager#init()}, before any fixture is provisioned, and lets tests declared with {@link Requires}
+ * be skipped up front. When the dasein.capabilities.file {@link System} property names a file, matrices are kept
+ * there per provider, cloud, account and region and reused by later runs until they are older than the number of
+ * minutes in dasein.capabilities.ttl (default 1440).
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+public class CapabilityMatrix {
+    static private final Logger logger = Logger.getLogger(CapabilityMatrix.class);
+
+    static public final String FILE = "dasein.capabilities.file";
+    static public final String TTL  = "dasein.capabilities.ttl";
+
+    static private volatile CapabilityMatrix current;
+
+    /**
+     * @return the matrix of the current run or null if the run has not been initialized
+     */
+    static public @Nullable CapabilityMatrix getInstance() {
+        return current;
+    }
+
+    static public long getTimeToLive() {
+        String prop = DaseinTestManager.getSystemProperty(TTL);
+
+        if( prop != null ) {
+            try {
+                return Math.max(0L, Long.parseLong(prop.trim())) * CalendarWrapper.MINUTE;
+            }
+            catch( NumberFormatException ignore ) {
+                // fall through to the default
+            }
+        }
+        return CalendarWrapper.DAY;
+    }
+
+    /**
+     * Loads the matrix for the provider's cloud from the capabilities file or, if there is none that is recent
+     * enough, probes the provider and stores the result. The matrix becomes the one returned by {@link #getInstance()}.
+     * @param provider the provider under test
+     * @return the matrix
+     */
+    static public @Nonnull CapabilityMatrix probe(@Nonnull CloudProvider provider) {
+        String path = DaseinTestManager.getSystemProperty(FILE);
+        String owner = WarmPool.getOwner(provider);
+        JSONObject stored = null;
+
+        if( path != null ) {
+            try {
+                stored = read(new File(path));
+            }
+            catch( Exception e ) {
+                logger.warn("Unable to read the capabilities in " + path + ", the cloud will be probed: " + e.getMessage());
+            }
+        }
+        CapabilityMatrix matrix = null;
+
+        if( stored != null && stored.has(owner) ) {
+            try {
+                CapabilityMatrix m = fromJSON(stored.getJSONObject(owner));
+
+                if( System.currentTimeMillis() - m.probed < getTimeToLive() ) {
+                    matrix = m;
+                }
+            }
+            catch( JSONException e ) {
+                logger.warn("Ignoring unreadable capabilities for " + owner + ": " + e.getMessage());
+            }
+        }
+        if( matrix == null ) {
+            matrix = probeProvider(provider);
+            if( path != null ) {
+                try {
+                    if( stored == null ) {
+                        stored = new JSONObject();
+                    }
+                    stored.put(owner, matrix.toJSON());
+                    write(new File(path), stored);
+                }
+                catch( Exception e ) {
+                    logger.warn("Unable to write the capabilities to " + path + ": " + e.getMessage());
+                }
+            }
+        }
+        current = matrix;
+        return matrix;
+    }
+
+    static private @Nonnull CapabilityMatrix probeProvider(@Nonnull CloudProvider provider) {
+        Map<Capability,Capability.Status> statuses = new EnumMap<Capability, Capability.Status>(Capability.class);
+        Map<String,Boolean> flags = new TreeMap<String, Boolean>();
+
+        for( Capability capability : Capability.values() ) {
+            try {
+                Method servicesGetter = CloudProvider.class.getMethod(capability.getServicesGetter());
+                Object services = servicesGetter.invoke(provider);
+                // look methods up on the public interfaces, provider implementations need not be public classes
+                Method supportGetter = servicesGetter.getReturnType().getMethod(capability.getSupportGetter());
+                Object support = (services == null ? null : supportGetter.invoke(services));
+
+                if( support == null ) {
+                    statuses.put(capability, Capability.Status.UNSUPPORTED);
+                    continue;
+                }
+                Class<?> supportType = supportGetter.getReturnType();
+
+                statuses.put(capability, isSubscribed(supportType, support) ? Capability.Status.SUPPORTED : Capability.Status.UNSUBSCRIBED);
+                probeFlags(capability, supportType, support, flags);
+            }
+            catch( Throwable t ) {
+                logger.warn("Unable to probe " + capability + ": " + t.getMessage());
+                statuses.put(capability, Capability.Status.UNKNOWN);
+            }
+        }
+        return new CapabilityMatrix(System.currentTimeMillis(), statuses, flags);
+    }
+
+    static private boolean isSubscribed(@Nonnull Class<?> supportType, @Nonnull Object support) throws Exception {
+        Method method;
+
+        try {
+            method = supportType.getMethod("isSubscribed");
+        }
+        catch( NoSuchMethodException e ) {
+            return true;
+        }
+        return Boolean.TRUE.equals(method.invoke(support));
+    }
+
+    static private void probeFlags(@Nonnull Capability capability, @Nonnull Class<?> supportType, @Nonnull Object support, @Nonnull Map<String,Boolean> flags) throws Exception {
+        Method getter;
+
+        try {
+            getter = supportType.getMethod("getCapabilities");
+        }
+        catch( NoSuchMethodException e ) {
+            return;
+        }
+        Object capabilities = getter.invoke(support);
+
+        if( capabilities == null ) {
+            return;
+        }
+        for( Method method : getter.getReturnType().getMethods() ) {
+            Class<?> type = method.getReturnType();
+
+            if( method.getParameterTypes().length > 0 || !(type.equals(boolean.class) || type.equals(Boolean.class)) ) {
+                continue;
+            }
+            try {
+                Object value = method.invoke(capabilities);
+
+                if( value != null ) {
+                    flags.put(capability.name() + "." + method.getName(), (Boolean)value);
+                }
+            }
+            catch( Throwable t ) {
+                logger.debug("Unable to probe " + capability + "." + method.getName() + ": " + t.getMessage());
+            }
+        }
+    }
+
+    static private @Nullable JSONObject read(@Nonnull File file) throws IOException, JSONException {
+        if( !file.exists() ) {
+            return null;
+        }
+        InputStream input = new FileInputStream(file);
+
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            byte[] bytes = new byte[8192];
+            int count;
+
+            while( (count = input.read(bytes)) != -1 ) {
+                buffer.write(bytes, 0, count);
+            }
+            return new JSONObject(new String(buffer.toByteArray(), "utf-8"));
+        }
+        finally {
+            input.close();
+        }
+    }
+
+    static private void write(@Nonnull File file, @Nonnull JSONObject json) throws IOException, JSONException {
+        OutputStream output = new FileOutputStream(file);
+
+        try {
+            output.write(json.toString(2).getBytes("utf-8"));
+        }
+        finally {
+            output.close();
+        }
+    }
+
+    static private @Nonnull CapabilityMatrix fromJSON(@Nonnull JSONObject json) throws JSONException {
+        Map<Capability,Capability.Status> statuses = new EnumMap<Capability, Capability.Status>(Capability.class);
+        Map<String,Boolean> flags = new TreeMap<String, Boolean>();
+        JSONObject s = json.getJSONObject("statuses");
+        JSONObject f = json.getJSONObject("flags");
+
+        for( Iterator<?> it = s.keys(); it.hasNext(); ) {
+            String key = (String)it.next();
+
+            try {
+                statuses.put(Capability.valueOf(key), Capability.Status.valueOf(s.getString(key)));
+            }
+            catch( IllegalArgumentException ignore ) {
+                // written by a version with other capabilities
+            }
+        }
+        for( Iterator<?> it = f.keys(); it.hasNext(); ) {
+            String key = (String)it.next();
+
+            flags.put(key, f.getBoolean(key));
+        }
+        return new CapabilityMatrix(json.getLong("probed"), statuses, flags);
+    }
+
+    /**
+     * Checks a test's {@link Requires} declarations, and those of its class, against the current matrix. The class
+     * requirements are only unmet by capabilities the cloud does not support at all, since a class may hold tests
+     * asserting that operations fail when the service is not subscribed to.
+     * @param testClass the test class
+     * @param method the test method or null to check only the requirements of the class
+     * @return the unmet requirements, which is empty if the test may run or no matrix has been probed
+     */
+    static public @Nonnull List<String> listUnmet(@Nonnull Class<?> testClass, @Nullable Method method) {
+        CapabilityMatrix matrix = current;
+        List<String> unmet = new ArrayList<String>();
+
+        if( matrix != null ) {
+            matrix.check(testClass.getAnnotation(Requires.class), false, unmet);
+            if( method != null ) {
+                matrix.check(method.getAnnotation(Requires.class), true, unmet);
+            }
+        }
+        return unmet;
+    }
+
+    private final long                             probed;
+    private final Map<Capability,Capability.Status> statuses;
+    private final Map<String,Boolean>              flags;
+
+    private CapabilityMatrix(long probed, @Nonnull Map<Capability,Capability.Status> statuses, @Nonnull Map<String,Boolean> flags) {
+        this.probed = probed;
+        this.statuses = Collections.unmodifiableMap(new EnumMap<Capability, Capability.Status>(statuses));
+        this.flags = Collections.unmodifiableMap(new TreeMap<String, Boolean>(flags));
+    }
+
+    private void check(@Nullable Requires requires, boolean subscribed, @Nonnull List<String> unmet) {
+        if( requires == null ) {
+            return;
+        }
+        for( Capability capability : requires.value() ) {
+            Capability.Status status = getStatus(capability);
+
+            if( status.equals(Capability.Status.UNSUPPORTED) || (subscribed && status.equals(Capability.Status.UNSUBSCRIBED)) ) {
+                unmet.add(capability + " " + status);
+            }
+        }
+        for( String flag : requires.flags() ) {
+            Boolean value = flags.get(flag);
+
+            // a flag the matrix does not know is assumed to be set rather than silently skipping the test
+            if( value != null && !value ) {
+                unmet.add(flag + " false");
+            }
+        }
+    }
+
+    /**
+     * @return when the cloud was probed
+     */
+    public long getProbed() {
+        return probed;
+    }
+
+    public @Nonnull Capability.Status getStatus(@Nonnull Capability capability) {
+        Capability.Status status = statuses.get(capability);
+
+        return (status == null ? Capability.Status.UNKNOWN : status);
+    }
+
+    /**
+     * @param flag the flag, such as VLAN.allowsNewVlanCreation
+     * @return the value of the flag or null if it is not known
+     */
+    public @Nullable Boolean getFlag(@Nonnull String flag) {
+        return flags.get(flag);
+    }
+
+    /**
+     * Logs the capabilities that are not available.
+     * @param logger the logger to write to
+     */
+    public void report(@Nonnull Logger logger) {
+        List<Capability> unsupported = new ArrayList<Capability>();
+        List<Capability> unsubscribed = new ArrayList<Capability>();
+
+        for( Map.Entry<Capability,Capability.Status> entry : statuses.entrySet() ) {
+            if( entry.getValue().equals(Capability.Status.UNSUPPORTED) ) {
+                unsupported.add(entry.getKey());
+            }
+            else if( entry.getValue().equals(Capability.Status.UNSUBSCRIBED) ) {
+                unsubscribed.add(entry.getKey());
+            }
+        }
+        DaseinTestManager.out(logger, null, "Unsupported", unsupported.toString());
+        DaseinTestManager.out(logger, null, "Unsubscribed", unsubscribed.toString());
+    }
+
+    private @Nonnull JSONObject toJSON() throws JSONException {
+        JSONObject json = new JSONObject();
+        JSONObject s = new JSONObject();
+
+        for( Map.Entry<Capability,Capability.Status> entry : statuses.entrySet() ) {
+            s.put(entry.getKey().name(), entry.getValue().name());
+        }
+        json.put("probed", probed);
+        json.put("statuses", s);
+        json.put("flags", new JSONObject(flags));
+        return json;
+    }
+}
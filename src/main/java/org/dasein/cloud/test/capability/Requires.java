@@ -0,0 +1,56 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.capability;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares the capabilities a test needs. Tests whose requirements are not met according to the
+ * {@link CapabilityMatrix} are reported as ignored without their before methods running, so no fixture is provisioned
+ * for them. On a test class, the whole class, including its {@link org.junit.BeforeClass} methods, is skipped only
+ * when the cloud does not support a required capability at all, so that tests asserting the failures of a service
+ * that is not subscribed to still run. Requirements on a method add to those of its class and also skip the test
+ * when the service is not subscribed to, so they belong on the tests that need a working service.
+ * <pre>
+ *     &#64;Test
+ *     &#64;Requires(value=Capability.VLAN, flags="VLAN.allowsNewSubnetCreation")
+ *     public void provisionSubnet() throws CloudException, InternalException {
+ * </pre>
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD, ElementType.TYPE})
+public @interface Requires {
+    /**
+     * @return the capabilities that must be supported and subscribed to
+     */
+    Capability[] value() default {};
+
+    /**
+     * @return boolean capability flags that must be true, named as the capability and the method of its
+     * capabilities object, such as VLAN.allowsNewVlanCreation
+     */
+    String[] flags() default {};
+}
@@ -0,0 +1,542 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.cassette;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.test.DaseinTestManager;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A recording of the calls a test makes through the Dasein Cloud support interfaces, so that the test can be run
+ * again without a cloud. In record mode, every call is passed through to the provider and its arguments, result or
+ * exception and latency are written to a compact binary file for each test at the end of the test. In replay mode,
+ * the provider is never called through its services and every call is answered from the test's file instead.
+ * Calls made outside of a test, such as provisioning shared fixtures, go to a shared setup cassette written at clean
+ * up. So that every fixture is recorded in the cassette of the test that needed it, fixtures are neither pre-warmed
+ * nor provisioned in the background while cassettes are active. Cassettes are configured through {@link System}
+ * properties:
+ * <ul>
+ *     <li>dasein.cassette.mode - record or replay (default off)</li>
+ *     <li>dasein.cassette.dir - the directory holding the cassettes (default target/cassettes)</li>
+ *     <li>dasein.cassette.delay - the fraction of the recorded latencies and of the waits for state changes that
+ *     is kept on replay (default 0, replaying as fast as possible)</li>
+ * </ul>
+ * A replayed call gets the earliest unused recording of the same API with the same arguments or, failing that, the
+ * earliest unused recording of the same API. Once the recordings run out, the last result for the same arguments is
+ * repeated, which keeps polling loops going. Arguments are matched by value for strings, numbers, enums and arrays
+ * or collections of them, and only by type for other objects, since those usually carry generated names. Results
+ * that cannot be recorded fail with an {@link IllegalStateException} on replay.
+ * <pre>
+ *     -Ddasein.cassette.mode=record
+ *     -Ddasein.cassette.mode=replay -Ddasein.cassette.delay=0.1
+ * </pre>
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+public class Cassette {
+    static private final Logger logger = Logger.getLogger(Cassette.class);
+
+    static public final String DELAY = "dasein.cassette.delay";
+    static public final String DIR   = "dasein.cassette.dir";
+    static public final String MODE  = "dasein.cassette.mode";
+
+    static public enum Mode { OFF, RECORD, REPLAY }
+
+    static private final int    MAGIC   = 0x44434153;
+    static private final short  VERSION = 1;
+    static private final String SHARED  = "setup";
+
+    static final byte RESULT       = 0;
+    static final byte ERROR        = 1;
+    static final byte UNRECORDABLE = 2;
+    static final byte ACCESSOR     = 3;
+
+    static private final ThreadLocal<Cassette> current = new ThreadLocal<Cassette>();
+
+    static private Mode     mode;
+    static private double   delay;
+    static private Cassette shared;
+
+    static private synchronized void configure() {
+        if( mode == null ) {
+            String prop = DaseinTestManager.getSystemProperty(MODE);
+
+            mode = Mode.OFF;
+            if( prop != null && !prop.trim().equals("") ) {
+                try {
+                    mode = Mode.valueOf(prop.trim().toUpperCase());
+                }
+                catch( IllegalArgumentException e ) {
+                    logger.warn("Unknown cassette mode " + prop + ", cassettes are off");
+                }
+            }
+            prop = DaseinTestManager.getSystemProperty(DELAY);
+            if( prop != null ) {
+                try {
+                    delay = Math.max(0.0, Double.parseDouble(prop.trim()));
+                }
+                catch( NumberFormatException ignore ) {
+                    // keep replaying without delay
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the cassette mode of this run
+     */
+    static public @Nonnull Mode getMode() {
+        configure();
+        return mode;
+    }
+
+    /**
+     * @return true if calls are being recorded or replayed
+     */
+    static public boolean isActive() {
+        return !getMode().equals(Mode.OFF);
+    }
+
+    /**
+     * @return true if calls are being answered from cassettes instead of the cloud
+     */
+    static public boolean isReplaying() {
+        return getMode().equals(Mode.REPLAY);
+    }
+
+    /**
+     * Scales a wait by the replay delay, so that waiting for recorded state changes takes no longer than needed.
+     * @param millis the time to wait in milliseconds
+     * @return the time to wait in this run
+     */
+    static public long compress(long millis) {
+        if( !isReplaying() ) {
+            return millis;
+        }
+        return (long)(millis * delay);
+    }
+
+    /**
+     * Wraps a service object in a proxy that records or replays every call made through it, including the calls
+     * made through the support objects it hands out.
+     * @param iface the interface to wrap
+     * @param target the object implementing the interface
+     * @param <T> the type of the interface
+     * @return the recording proxy, or the target itself if cassettes are off or the target is null
+     */
+    static public @Nullable <T> T wrap(@Nonnull Class<T> iface, @Nullable T target) {
+        if( target == null || !isActive() ) {
+            return target;
+        }
+        return iface.cast(Proxy.newProxyInstance(iface.getClassLoader(), new Class<?>[] { iface }, new CassetteHandler(iface, target)));
+    }
+
+    /**
+     * Records or replays a call made directly on the provider rather than through one of its services.
+     * @param api the name of the call
+     * @param call the call to the provider
+     * @param <T> the type of the result
+     * @return the result of the call
+     * @throws Exception the call failed or the recording of the call failed
+     */
+    static public @Nullable <T> T call(@Nonnull String api, @Nonnull Callable<T> call) throws Exception {
+        Object result;
+
+        try {
+            result = invoke(api, null, call);
+        }
+        catch( Exception e ) {
+            throw e;
+        }
+        catch( Error e ) {
+            throw e;
+        }
+        catch( Throwable t ) {
+            throw new RuntimeException(t);
+        }
+        @SuppressWarnings("unchecked") T value = (T)result;
+
+        return value;
+    }
+
+    static @Nullable Object invoke(@Nonnull String api, @Nullable Object[] args, @Nonnull Callable<?> call) throws Throwable {
+        Cassette cassette = getCurrent();
+
+        if( isReplaying() ) {
+            return cassette.replay(api, args);
+        }
+        long start = System.nanoTime();
+        Object result;
+
+        try {
+            result = call.call();
+            if( result instanceof Iterable && !(result instanceof Collection) ) {
+                ArrayList<Object> list = new ArrayList<Object>();
+
+                for( Object item : (Iterable<?>)result ) {
+                    list.add(item);
+                }
+                result = list;
+            }
+        }
+        catch( Throwable t ) {
+            cassette.record(api, args, System.nanoTime() - start, ERROR, t);
+            throw t;
+        }
+        cassette.record(api, args, System.nanoTime() - start, RESULT, result);
+        return result;
+    }
+
+    static private synchronized @Nonnull Cassette getShared() {
+        if( shared == null ) {
+            shared = new Cassette(SHARED);
+            if( isReplaying() ) {
+                shared.load();
+            }
+        }
+        return shared;
+    }
+
+    static @Nonnull Cassette getCurrent() {
+        Cassette cassette = current.get();
+
+        return (cassette == null ? getShared() : cassette);
+    }
+
+    /**
+     * Starts the cassette of a test on the current thread, loading it if calls are being replayed.
+     * @param name the name of the test
+     */
+    static public void begin(@Nonnull String name) {
+        if( isActive() ) {
+            Cassette cassette = new Cassette(name);
+
+            if( isReplaying() ) {
+                cassette.load();
+            }
+            current.set(cassette);
+        }
+    }
+
+    /**
+     * Ends the cassette of the test on the current thread, writing it out if calls are being recorded.
+     */
+    static public void end() {
+        Cassette cassette = current.get();
+
+        if( cassette != null ) {
+            current.remove();
+            if( !isReplaying() ) {
+                cassette.save();
+            }
+        }
+    }
+
+    /**
+     * Writes out the shared setup cassette if calls are being recorded.
+     */
+    static public synchronized void close() {
+        if( shared != null && !isReplaying() ) {
+            shared.save();
+        }
+    }
+
+    static private @Nonnull String fingerprint(@Nullable Object[] args) {
+        StringBuilder str = new StringBuilder();
+
+        if( args != null ) {
+            for( Object arg : args ) {
+                fingerprint(arg, str);
+                str.append(";");
+            }
+        }
+        return str.toString();
+    }
+
+    static private void fingerprint(@Nullable Object value, @Nonnull StringBuilder str) {
+        if( value == null ) {
+            str.append("null");
+        }
+        else if( value instanceof String || value instanceof Number || value instanceof Boolean || value instanceof Character || value instanceof Enum ) {
+            str.append(value);
+        }
+        else if( value instanceof Object[] ) {
+            str.append("[");
+            for( Object item : (Object[])value ) {
+                fingerprint(item, str);
+                str.append(",");
+            }
+            str.append("]");
+        }
+        else if( value instanceof Collection ) {
+            str.append("[");
+            for( Object item : (Collection<?>)value ) {
+                fingerprint(item, str);
+                str.append(",");
+            }
+            str.append("]");
+        }
+        else {
+            str.append("<").append(value.getClass().getSimpleName()).append(">");
+        }
+    }
+
+    static private class Entry {
+        public String api;
+        public String fingerprint;
+        public long   nanos;
+        public byte   outcome;
+        public byte[] payload;
+    }
+
+    private final File                           file;
+    private final String                         name;
+    private final List<Entry>                    entries   = new ArrayList<Entry>();
+    private final Map<String,LinkedList<Entry>>  unused    = new HashMap<String, LinkedList<Entry>>();
+    private final Map<String,Entry>              lastUsed  = new HashMap<String, Entry>();
+    private final Map<String,Boolean>            accessors = new HashMap<String, Boolean>();
+
+    private Cassette(@Nonnull String name) {
+        String dir = DaseinTestManager.getSystemProperty(DIR);
+
+        this.name = name;
+        this.file = new File(dir == null ? "target/cassettes" : dir, name.replaceAll("[^A-Za-z0-9._-]", "_") + ".cassette");
+    }
+
+    /**
+     * Records whether a services or support accessor returned an object. Only the first call to an accessor is
+     * recorded since drivers do not change what they support during a run.
+     * @param api the name of the accessor
+     * @param present true if the accessor returned an object
+     */
+    synchronized void recordAccessor(@Nonnull String api, boolean present) {
+        if( !accessors.containsKey(api) ) {
+            Entry entry = new Entry();
+
+            accessors.put(api, present);
+            entry.api = api;
+            entry.fingerprint = "";
+            entry.outcome = ACCESSOR;
+            entry.payload = new byte[] { (byte)(present ? 1 : 0) };
+            entries.add(entry);
+        }
+    }
+
+    /**
+     * @param api the name of the accessor
+     * @return true if the accessor returned an object when the cassette was recorded
+     */
+    boolean replayAccessor(@Nonnull String api) {
+        Boolean present;
+
+        synchronized( this ) {
+            present = accessors.get(api);
+        }
+        if( present == null && this != getShared() ) {
+            return getShared().replayAccessor(api);
+        }
+        return (present != null && present);
+    }
+
+    private synchronized void record(@Nonnull String api, @Nullable Object[] args, long nanos, byte outcome, @Nullable Object value) {
+        Entry entry = new Entry();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        entry.api = api;
+        entry.fingerprint = fingerprint(args);
+        entry.nanos = nanos;
+        entry.outcome = outcome;
+        try {
+            new CassetteCodec.Writer(new DataOutputStream(bytes)).write(value);
+            entry.payload = bytes.toByteArray();
+        }
+        catch( IOException e ) {
+            logger.debug("Unable to record the result of " + api + ": " + e.getMessage());
+            entry.outcome = UNRECORDABLE;
+            entry.payload = String.valueOf(e.getMessage()).getBytes();
+        }
+        entries.add(entry);
+    }
+
+    private synchronized @Nullable Entry next(@Nonnull String api, @Nonnull String fingerprint) {
+        LinkedList<Entry> list = unused.get(api);
+
+        if( list == null ) {
+            return null;
+        }
+        Entry match = null;
+
+        for( Entry entry : list ) {
+            if( entry.fingerprint.equals(fingerprint) ) {
+                match = entry;
+                break;
+            }
+        }
+        if( match == null ) {
+            match = lastUsed.get(api + "\n" + fingerprint);
+            if( match != null ) {
+                return match;
+            }
+            match = list.peekFirst();
+        }
+        if( match == null ) {
+            return lastUsed.get(api);
+        }
+        list.remove(match);
+        lastUsed.put(api, match);
+        lastUsed.put(api + "\n" + fingerprint, match);
+        return match;
+    }
+
+    private @Nullable Object replay(@Nonnull String api, @Nullable Object[] args) throws Throwable {
+        String fingerprint = fingerprint(args);
+        Entry entry = next(api, fingerprint);
+
+        if( entry == null && this != getShared() ) {
+            entry = getShared().next(api, fingerprint);
+        }
+        if( entry == null ) {
+            throw new IllegalStateException("No call to " + api + " was recorded in the " + name + " cassette");
+        }
+        long sleep = (long)((entry.nanos/1000000L) * delay);
+
+        if( sleep > 0L ) {
+            try {
+                Thread.sleep(sleep);
+            }
+            catch( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if( entry.outcome == UNRECORDABLE ) {
+            throw new IllegalStateException("The result of " + api + " could not be recorded: " + new String(entry.payload));
+        }
+        Object value = new CassetteCodec.Reader(new DataInputStream(new ByteArrayInputStream(entry.payload))).read();
+
+        if( entry.outcome == ERROR ) {
+            throw (Throwable)value;
+        }
+        return value;
+    }
+
+    private synchronized void load() {
+        if( !file.exists() ) {
+            logger.warn("No cassette for " + name + " in " + file.getParent());
+            return;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))));
+
+            try {
+                if( in.readInt() != MAGIC || in.readShort() != VERSION ) {
+                    throw new IOException("Not a cassette or an unsupported version");
+                }
+                int count = in.readInt();
+
+                for( int i=0; i<count; i++ ) {
+                    Entry entry = new Entry();
+
+                    entry.api = CassetteCodec.readString(in);
+                    entry.fingerprint = CassetteCodec.readString(in);
+                    entry.nanos = in.readLong();
+                    entry.outcome = in.readByte();
+                    entry.payload = new byte[in.readInt()];
+                    in.readFully(entry.payload);
+                    entries.add(entry);
+                    if( entry.outcome == ACCESSOR ) {
+                        accessors.put(entry.api, entry.payload.length > 0 && entry.payload[0] != 0);
+                    }
+                    else {
+                        LinkedList<Entry> list = unused.get(entry.api);
+
+                        if( list == null ) {
+                            list = new LinkedList<Entry>();
+                            unused.put(entry.api, list);
+                        }
+                        list.add(entry);
+                    }
+                }
+            }
+            finally {
+                in.close();
+            }
+            logger.debug("Loaded " + entries.size() + " calls from " + file);
+        }
+        catch( IOException e ) {
+            logger.warn("Unable to read the cassette " + file + ": " + e.getMessage());
+        }
+    }
+
+    private synchronized void save() {
+        File dir = file.getParentFile();
+
+        if( dir != null && !dir.exists() && !dir.mkdirs() ) {
+            logger.warn("Unable to create the cassette directory " + dir);
+            return;
+        }
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(file))));
+
+            try {
+                out.writeInt(MAGIC);
+                out.writeShort(VERSION);
+                out.writeInt(entries.size());
+                for( Entry entry : entries ) {
+                    CassetteCodec.writeString(out, entry.api);
+                    CassetteCodec.writeString(out, entry.fingerprint);
+                    out.writeLong(entry.nanos);
+                    out.writeByte(entry.outcome);
+                    out.writeInt(entry.payload.length);
+                    out.write(entry.payload);
+                }
+            }
+            finally {
+                out.close();
+            }
+            logger.debug("Recorded " + entries.size() + " calls to " + file);
+        }
+        catch( IOException e ) {
+            logger.warn("Unable to write the cassette " + file + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,548 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.cassette;
+
+import org.dasein.cloud.CloudErrorType;
+import org.dasein.cloud.CloudException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Binary encoding of the values passed across the support interfaces. Most Dasein Cloud model classes are not
+ * {@link java.io.Serializable}, so objects are written field by field through reflection and read back without
+ * calling their constructors. Class and field names are written once per value and referred to by index afterwards,
+ * and objects reachable more than once are written once. Collections and maps are read back as the same class if
+ * it is a public java.util class, otherwise as a list, set or map of the same kind. Exceptions keep their class,
+ * message, stack trace and, for {@link CloudException}, their error details. Other JDK classes cannot be encoded.
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+class CassetteCodec {
+    static private final byte NULL       = 0;
+    static private final byte REF        = 1;
+    static private final byte BOOLEAN    = 2;
+    static private final byte BYTE       = 3;
+    static private final byte SHORT      = 4;
+    static private final byte CHAR       = 5;
+    static private final byte INT        = 6;
+    static private final byte LONG       = 7;
+    static private final byte FLOAT      = 8;
+    static private final byte DOUBLE     = 9;
+    static private final byte STRING     = 10;
+    static private final byte ENUM       = 11;
+    static private final byte ARRAY      = 12;
+    static private final byte COLLECTION = 13;
+    static private final byte MAP        = 14;
+    static private final byte DATE       = 15;
+    static private final byte NUMBER     = 16;
+    static private final byte THROWABLE  = 17;
+    static private final byte OBJECT     = 18;
+
+    static private final Map<String,Class<?>>        primitives   = new HashMap<String, Class<?>>();
+    static private final Map<Class<?>,List<Field>>   fields       = new ConcurrentHashMap<Class<?>, List<Field>>();
+    static private final Map<Class<?>,Constructor<?>> constructors = new ConcurrentHashMap<Class<?>, Constructor<?>>();
+
+    static {
+        for( Class<?> type : new Class<?>[] { boolean.class, byte.class, short.class, char.class, int.class, long.class, float.class, double.class } ) {
+            primitives.put(type.getName(), type);
+        }
+    }
+
+    /**
+     * Thrown when a value holds something the codec cannot write.
+     */
+    static class UnsupportedValueException extends IOException {
+        private static final long serialVersionUID = -4187302921854011764L;
+
+        UnsupportedValueException(@Nonnull String message) {
+            super(message);
+        }
+    }
+
+    static private @Nonnull List<Field> getFields(@Nonnull Class<?> type) {
+        List<Field> list = fields.get(type);
+
+        if( list == null ) {
+            list = new ArrayList<Field>();
+            // the state of JDK super classes cannot be reached reflectively on newer VMs and is not model data anyway
+            for( Class<?> c = type; c != null && !isJdk(c); c = c.getSuperclass() ) {
+                for( Field field : c.getDeclaredFields() ) {
+                    int modifiers = field.getModifiers();
+
+                    if( !Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers) && !field.isSynthetic() ) {
+                        field.setAccessible(true);
+                        list.add(field);
+                    }
+                }
+            }
+            fields.put(type, list);
+        }
+        return list;
+    }
+
+    static private boolean isJdk(@Nonnull Class<?> type) {
+        String name = type.getName();
+
+        return (name.startsWith("java.") || name.startsWith("javax.") || name.startsWith("sun.") || name.startsWith("com.sun."));
+    }
+
+    /**
+     * Creates an instance of a class without running any of its constructors, so that classes built through factory
+     * methods can be read back as well.
+     * @param type the class to instantiate
+     * @return the new, uninitialized instance
+     * @throws IOException the class cannot be instantiated
+     */
+    static private @Nonnull Object allocate(@Nonnull Class<?> type) throws IOException {
+        try {
+            Constructor<?> constructor = constructors.get(type);
+
+            if( constructor == null ) {
+                Class<?> factoryClass = Class.forName("sun.reflect.ReflectionFactory");
+                Object factory = factoryClass.getMethod("getReflectionFactory").invoke(null);
+                Method method = factoryClass.getMethod("newConstructorForSerialization", Class.class, Constructor.class);
+
+                constructor = (Constructor<?>)method.invoke(factory, type, Object.class.getDeclaredConstructor());
+                constructor.setAccessible(true);
+                constructors.put(type, constructor);
+            }
+            return constructor.newInstance();
+        }
+        catch( Exception e ) {
+            throw new IOException("Unable to instantiate " + type.getName() + ": " + e.getMessage());
+        }
+    }
+
+    static private @Nonnull Object newContainer(@Nonnull Class<?> type, boolean map) {
+        if( Modifier.isPublic(type.getModifiers()) && type.getName().startsWith("java.util.") ) {
+            try {
+                return type.getConstructor().newInstance();
+            }
+            catch( Exception ignore ) {
+                // fall back to the general kind of container below
+            }
+        }
+        if( map ) {
+            return (SortedMap.class.isAssignableFrom(type) ? new TreeMap<Object, Object>() : new LinkedHashMap<Object, Object>());
+        }
+        if( SortedSet.class.isAssignableFrom(type) ) {
+            return new TreeSet<Object>();
+        }
+        return (Set.class.isAssignableFrom(type) ? new LinkedHashSet<Object>() : new ArrayList<Object>());
+    }
+
+    static private @Nonnull Class<?> load(@Nonnull String name) throws IOException {
+        Class<?> type = primitives.get(name);
+
+        if( type != null ) {
+            return type;
+        }
+        try {
+            return Class.forName(name, false, CassetteCodec.class.getClassLoader());
+        }
+        catch( ClassNotFoundException e ) {
+            throw new IOException("Unknown class in cassette: " + name);
+        }
+    }
+
+    static void writeString(@Nonnull DataOutputStream out, @Nonnull String value) throws IOException {
+        byte[] bytes = value.getBytes("utf-8");
+
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static @Nonnull String readString(@Nonnull DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+
+        in.readFully(bytes);
+        return new String(bytes, "utf-8");
+    }
+
+    /**
+     * Writes a single value with everything it refers to.
+     */
+    static class Writer {
+        private final DataOutputStream         out;
+        private final Map<Object,Integer>      objects = new IdentityHashMap<Object, Integer>();
+        private final Map<String,Integer>      names   = new HashMap<String, Integer>();
+
+        Writer(@Nonnull DataOutputStream out) {
+            this.out = out;
+        }
+
+        private void writeName(@Nonnull String name) throws IOException {
+            Integer index = names.get(name);
+
+            if( index == null ) {
+                names.put(name, names.size());
+                out.writeInt(-1);
+                writeString(out, name);
+            }
+            else {
+                out.writeInt(index);
+            }
+        }
+
+        /**
+         * @param value the object to register
+         * @return true if the object had already been written and a reference to it was written instead
+         * @throws IOException an error occurred writing the reference
+         */
+        private boolean writeReference(@Nonnull Object value) throws IOException {
+            Integer index = objects.get(value);
+
+            if( index != null ) {
+                out.writeByte(REF);
+                out.writeInt(index);
+                return true;
+            }
+            objects.put(value, objects.size());
+            return false;
+        }
+
+        void write(@Nullable Object value) throws IOException {
+            if( value == null ) {
+                out.writeByte(NULL);
+            }
+            else if( value instanceof String ) {
+                out.writeByte(STRING);
+                writeString(out, (String)value);
+            }
+            else if( value instanceof Boolean ) {
+                out.writeByte(BOOLEAN);
+                out.writeBoolean((Boolean)value);
+            }
+            else if( value instanceof Integer ) {
+                out.writeByte(INT);
+                out.writeInt((Integer)value);
+            }
+            else if( value instanceof Long ) {
+                out.writeByte(LONG);
+                out.writeLong((Long)value);
+            }
+            else if( value instanceof Double ) {
+                out.writeByte(DOUBLE);
+                out.writeDouble((Double)value);
+            }
+            else if( value instanceof Float ) {
+                out.writeByte(FLOAT);
+                out.writeFloat((Float)value);
+            }
+            else if( value instanceof Short ) {
+                out.writeByte(SHORT);
+                out.writeShort((Short)value);
+            }
+            else if( value instanceof Byte ) {
+                out.writeByte(BYTE);
+                out.writeByte((Byte)value);
+            }
+            else if( value instanceof Character ) {
+                out.writeByte(CHAR);
+                out.writeChar((Character)value);
+            }
+            else if( value instanceof Enum ) {
+                out.writeByte(ENUM);
+                writeName(((Enum<?>)value).getDeclaringClass().getName());
+                writeString(out, ((Enum<?>)value).name());
+            }
+            else if( value instanceof Date ) {
+                out.writeByte(DATE);
+                out.writeLong(((Date)value).getTime());
+            }
+            else if( value instanceof BigDecimal || value instanceof BigInteger ) {
+                out.writeByte(NUMBER);
+                writeName(value.getClass().getName());
+                writeString(out, value.toString());
+            }
+            else if( !writeReference(value) ) {
+                if( value.getClass().isArray() ) {
+                    writeArray(value);
+                }
+                else if( value instanceof Collection ) {
+                    out.writeByte(COLLECTION);
+                    writeName(value.getClass().getName());
+                    out.writeInt(((Collection<?>)value).size());
+                    for( Object item : (Collection<?>)value ) {
+                        write(item);
+                    }
+                }
+                else if( value instanceof Map ) {
+                    out.writeByte(MAP);
+                    writeName(value.getClass().getName());
+                    out.writeInt(((Map<?,?>)value).size());
+                    for( Map.Entry<?,?> entry : ((Map<?,?>)value).entrySet() ) {
+                        write(entry.getKey());
+                        write(entry.getValue());
+                    }
+                }
+                else if( value instanceof Throwable ) {
+                    writeThrowable((Throwable)value);
+                }
+                else if( isJdk(value.getClass()) ) {
+                    throw new UnsupportedValueException("Unable to record values of " + value.getClass().getName());
+                }
+                else {
+                    writeObject(value);
+                }
+            }
+        }
+
+        private void writeArray(@Nonnull Object array) throws IOException {
+            int length = Array.getLength(array);
+
+            out.writeByte(ARRAY);
+            writeName(array.getClass().getComponentType().getName());
+            out.writeInt(length);
+            for( int i=0; i<length; i++ ) {
+                write(Array.get(array, i));
+            }
+        }
+
+        private void writeThrowable(@Nonnull Throwable t) throws IOException {
+            StackTraceElement[] trace = t.getStackTrace();
+
+            out.writeByte(THROWABLE);
+            writeName(t.getClass().getName());
+            write(t.getMessage());
+            if( t instanceof CloudException ) {
+                CloudException e = (CloudException)t;
+
+                out.writeBoolean(true);
+                write(e.getErrorType());
+                out.writeInt(e.getHttpCode());
+                write(e.getProviderCode());
+            }
+            else {
+                out.writeBoolean(false);
+            }
+            out.writeInt(trace.length);
+            for( StackTraceElement element : trace ) {
+                writeName(element.getClassName());
+                writeName(element.getMethodName());
+                write(element.getFileName());
+                out.writeInt(element.getLineNumber());
+            }
+        }
+
+        private void writeObject(@Nonnull Object value) throws IOException {
+            List<Field> list = getFields(value.getClass());
+
+            out.writeByte(OBJECT);
+            writeName(value.getClass().getName());
+            out.writeInt(list.size());
+            for( Field field : list ) {
+                writeName(field.getDeclaringClass().getName());
+                writeName(field.getName());
+                try {
+                    write(field.get(value));
+                }
+                catch( IllegalAccessException e ) {
+                    throw new UnsupportedValueException("Unable to read " + field + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads back a single value written by a {@link Writer}.
+     */
+    static class Reader {
+        private final DataInputStream in;
+        private final List<Object>    objects = new ArrayList<Object>();
+        private final List<String>    names   = new ArrayList<String>();
+
+        Reader(@Nonnull DataInputStream in) {
+            this.in = in;
+        }
+
+        private @Nonnull String readName() throws IOException {
+            int index = in.readInt();
+
+            if( index < 0 ) {
+                String name = readString(in);
+
+                names.add(name);
+                return name;
+            }
+            return names.get(index);
+        }
+
+        @SuppressWarnings("unchecked")
+        @Nullable Object read() throws IOException {
+            byte tag = in.readByte();
+
+            switch( tag ) {
+                case NULL: return null;
+                case REF: return objects.get(in.readInt());
+                case BOOLEAN: return in.readBoolean();
+                case BYTE: return in.readByte();
+                case SHORT: return in.readShort();
+                case CHAR: return in.readChar();
+                case INT: return in.readInt();
+                case LONG: return in.readLong();
+                case FLOAT: return in.readFloat();
+                case DOUBLE: return in.readDouble();
+                case STRING: return readString(in);
+                case ENUM: return Enum.valueOf(load(readName()).asSubclass(Enum.class), readString(in));
+                case DATE: return new Date(in.readLong());
+                case NUMBER: {
+                    String type = readName();
+                    String value = readString(in);
+
+                    return (type.equals(BigDecimal.class.getName()) ? new BigDecimal(value) : new BigInteger(value));
+                }
+                case ARRAY: {
+                    Class<?> component = load(readName());
+                    Object array = Array.newInstance(component, in.readInt());
+
+                    objects.add(array);
+                    for( int i=0; i<Array.getLength(array); i++ ) {
+                        Array.set(array, i, read());
+                    }
+                    return array;
+                }
+                case COLLECTION: {
+                    Collection<Object> collection = (Collection<Object>)newContainer(load(readName()), false);
+                    int size = in.readInt();
+
+                    objects.add(collection);
+                    for( int i=0; i<size; i++ ) {
+                        collection.add(read());
+                    }
+                    return collection;
+                }
+                case MAP: {
+                    Map<Object,Object> map = (Map<Object,Object>)newContainer(load(readName()), true);
+                    int size = in.readInt();
+
+                    objects.add(map);
+                    for( int i=0; i<size; i++ ) {
+                        map.put(read(), read());
+                    }
+                    return map;
+                }
+                case THROWABLE: return readThrowable();
+                case OBJECT: return readObject();
+                default: throw new IOException("Corrupt cassette, unknown value tag " + tag);
+            }
+        }
+
+        private @Nonnull Throwable readThrowable() throws IOException {
+            int index = objects.size();
+
+            objects.add(null);
+            Class<?> type = load(readName());
+            String message = (String)read();
+            Throwable t = null;
+
+            if( in.readBoolean() ) {
+                CloudErrorType errorType = (CloudErrorType)read();
+                int httpCode = in.readInt();
+                String providerCode = (String)read();
+
+                if( CloudException.class.isAssignableFrom(type) ) {
+                    try {
+                        t = (Throwable)type.getConstructor(CloudErrorType.class, int.class, String.class, String.class).newInstance(errorType, httpCode, providerCode, message);
+                    }
+                    catch( Exception ignore ) {
+                        // try the plain constructors below
+                    }
+                }
+                if( t == null ) {
+                    t = new CloudException(errorType, httpCode, providerCode, message);
+                }
+            }
+            if( t == null ) {
+                try {
+                    t = (Throwable)type.getConstructor(String.class).newInstance(message);
+                }
+                catch( Exception e ) {
+                    t = new CloudException(type.getName() + ": " + message);
+                }
+            }
+            StackTraceElement[] trace = new StackTraceElement[in.readInt()];
+
+            for( int i=0; i<trace.length; i++ ) {
+                String className = readName();
+                String methodName = readName();
+
+                trace[i] = new StackTraceElement(className, methodName, (String)read(), in.readInt());
+            }
+            t.setStackTrace(trace);
+            objects.set(index, t);
+            return t;
+        }
+
+        private @Nonnull Object readObject() throws IOException {
+            Class<?> type = load(readName());
+            Object value = allocate(type);
+            int count = in.readInt();
+
+            objects.add(value);
+            for( int i=0; i<count; i++ ) {
+                String declaringClass = readName();
+                String name = readName();
+                Object fieldValue = read();
+
+                // fields that no longer exist in the class are dropped
+                for( Field field : getFields(type) ) {
+                    if( field.getName().equals(name) && field.getDeclaringClass().getName().equals(declaringClass) ) {
+                        try {
+                            field.set(value, fieldValue);
+                        }
+                        catch( Exception e ) {
+                            throw new IOException("Unable to restore " + field + ": " + e.getMessage());
+                        }
+                        break;
+                    }
+                }
+            }
+            return value;
+        }
+    }
+}
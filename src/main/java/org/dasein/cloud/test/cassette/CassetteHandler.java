@@ -0,0 +1,140 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.cassette;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Records or replays every call made through a proxy over a Dasein Cloud interface in the current {@link Cassette}
+ * as <i>Interface.method</i>. Methods returning other support, services or capabilities interfaces return
+ * recording proxies in turn and only whether they returned anything is recorded. When replaying, those proxies have
+ * no target and every call they receive is answered from the cassette.
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+class CassetteHandler implements InvocationHandler {
+    static private boolean isRecordable(@Nonnull Class<?> type) {
+        String n = type.getSimpleName();
+
+        return (type.isInterface() && type.getName().startsWith("org.dasein.cloud.") && (n.endsWith("Support") || n.endsWith("Services") || n.endsWith("Capabilities")));
+    }
+
+    private final Map<Method,String>   apis    = new ConcurrentHashMap<Method, String>();
+    private final Map<Method,Object[]> proxies = new ConcurrentHashMap<Method, Object[]>();
+    private final String               name;
+    private final Object               target;
+
+    CassetteHandler(@Nonnull Class<?> iface, @Nullable Object target) {
+        this.name = iface.getSimpleName();
+        this.target = target;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if( method.getDeclaringClass().equals(Object.class) ) {
+            if( target != null ) {
+                return invoke(method, args);
+            }
+            // there is nothing behind a replayed proxy, so it is only ever equal to itself
+            if( method.getName().equals("equals") ) {
+                return (args[0] == proxy);
+            }
+            if( method.getName().equals("hashCode") ) {
+                return System.identityHashCode(proxy);
+            }
+            return name + "@" + Integer.toHexString(System.identityHashCode(proxy));
+        }
+        String api = apis.get(method);
+
+        if( api == null ) {
+            api = name + "." + method.getName();
+            apis.put(method, api);
+        }
+        if( isRecordable(method.getReturnType()) ) {
+            return getProxy(api, method, args);
+        }
+        final Method m = method;
+        final Object[] a = args;
+
+        return Cassette.invoke(api, args, new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                try {
+                    return invoke(m, a);
+                }
+                catch( Exception e ) {
+                    throw e;
+                }
+                catch( Error e ) {
+                    throw e;
+                }
+                catch( Throwable t ) {
+                    throw new InvocationTargetException(t);
+                }
+            }
+        });
+    }
+
+    private @Nullable Object invoke(@Nonnull Method method, @Nullable Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        }
+        catch( InvocationTargetException e ) {
+            throw e.getCause();
+        }
+    }
+
+    private @Nullable Object getProxy(@Nonnull String api, @Nonnull Method method, @Nullable Object[] args) throws Throwable {
+        Cassette cassette = Cassette.getCurrent();
+        Object result = null;
+
+        if( Cassette.isReplaying() ) {
+            if( !cassette.replayAccessor(api) ) {
+                return null;
+            }
+        }
+        else {
+            result = invoke(method, args);
+            cassette.recordAccessor(api, result != null);
+            if( result == null ) {
+                return null;
+            }
+        }
+        // accessors generally return the same support object every time, so its proxy is reused
+        Object[] pair = proxies.get(method);
+
+        if( pair == null || pair[0] != result ) {
+            Class<?> iface = method.getReturnType();
+
+            pair = new Object[] { result, Proxy.newProxyInstance(iface.getClassLoader(), new Class<?>[] { iface }, new CassetteHandler(iface, result)) };
+            proxies.put(method, pair);
+        }
+        return pair[1];
+    }
+}
@@ -28,11 +28,14 @@ import org.dasein.cloud.ci.Topology;
 import org.dasein.cloud.ci.TopologyState;
 import org.dasein.cloud.ci.TopologySupport;
 import org.dasein.cloud.test.DaseinTestManager;
+import org.dasein.cloud.test.fixture.FixtureRegistry;
+import org.dasein.cloud.test.fixture.ResourceKind;
+import org.dasein.cloud.test.teardown.TeardownEngine;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 /**
  * [Class Documentation]
@@ -45,105 +48,114 @@ public class CIResources {
 
     private CloudProvider   provider;
 
-    private final HashMap<String,String> testInfrastructures = new HashMap<String, String>();
-    private final HashMap<String,String> testTopologies      = new HashMap<String, String>();
+    private final FixtureRegistry<String> testInfrastructures = new FixtureRegistry<String>(ResourceKind.INFRASTRUCTURE);
+    private final FixtureRegistry<String> testTopologies      = new FixtureRegistry<String>(ResourceKind.TOPOLOGY);
 
     public CIResources(@Nonnull CloudProvider provider) {
         this.provider = provider;
     }
 
     public int close() {
+        TeardownEngine teardown = new TeardownEngine();
+
+        close(teardown);
+        return teardown.run();
+    }
+
+    /**
+     * Registers every stateful converged infrastructure resource provisioned during the tests for removal.
+     * @param teardown the engine that removes the resources
+     */
+    public void close(@Nonnull TeardownEngine teardown) {
         CIServices ciServices = provider.getCIServices();
-        int count = 0;
 
         if( ciServices != null ) {
-            ConvergedInfrastructureSupport ciSupport = ciServices.getConvergedInfrastructureSupport();
+            final ConvergedInfrastructureSupport ciSupport = ciServices.getConvergedInfrastructureSupport();
 
             if( ciSupport != null ) {
                 for( Map.Entry<String,String> entry : testInfrastructures.entrySet() ) {
                     if( !entry.getKey().equals(DaseinTestManager.STATELESS) ) {
-                        try {
-                            ConvergedInfrastructure ci = ciSupport.getConvergedInfrastructure(entry.getValue());
+                        final String ciId = entry.getValue();
 
-                            if( ci != null ) {
-                                ciSupport.terminate(entry.getValue(), null);
-                                count++;
-                            }
-                            else {
-                                count++;
+                        teardown.add(ResourceKind.INFRASTRUCTURE, ciId, new Callable<Boolean>() {
+                            @Override
+                            public Boolean call() throws Exception {
+                                ConvergedInfrastructure ci = ciSupport.getConvergedInfrastructure(ciId);
+
+                                if( ci != null ) {
+                                    ciSupport.terminate(ciId, null);
+                                }
+                                return true;
                             }
-                        }
-                        catch( Throwable t ) {
-                            logger.warn("Failed to de-provision test CI " + entry.getValue() + ": " + t.getMessage());
-                        }
+                        });
                     }
                 }
             }
 
-            TopologySupport tSupport = ciServices.getTopologySupport();
+            final TopologySupport tSupport = ciServices.getTopologySupport();
 
             if( tSupport != null ) {
                 for( Map.Entry<String,String> entry : testTopologies.entrySet() ) {
                     if( !entry.getKey().equals(DaseinTestManager.STATELESS) ) {
-                        try {
-                            Topology t = tSupport.getTopology(entry.getValue());
-
-                            if( t != null ) {
-                                // TODO: implement this
-                                // tSupport.remove(entry.getKey());
-                                count++;
-                            }
-                            else {
-                                count++;
+                        final String topologyId = entry.getValue();
+
+                        teardown.add(ResourceKind.TOPOLOGY, topologyId, new Callable<Boolean>() {
+                            @Override
+                            public Boolean call() throws Exception {
+                                Topology t = tSupport.getTopology(topologyId);
+
+                                if( t != null ) {
+                                    // TODO: implement this
+                                    // tSupport.remove(topologyId);
+                                }
+                                return true;
                             }
-                        }
-                        catch( Throwable t ) {
-                            logger.warn("Failed to de-provision test topology " + entry.getValue() + ": " + t.getMessage());
-                        }
+                        });
                     }
                 }
             }
         }
-        return count;
     }
 
     public @Nullable String getTestTopologyId(@Nonnull String label, boolean provisionIfNull) {
-        if( label.equals(DaseinTestManager.STATELESS) ) {
-            for( Map.Entry<String,String> entry : testTopologies.entrySet() ) {
-                if( !entry.getKey().startsWith(DaseinTestManager.REMOVED) ) {
-                    String id = entry.getValue();
+        synchronized( testTopologies.lock(label) ) {
+            if( label.equals(DaseinTestManager.STATELESS) ) {
+                for( Map.Entry<String,String> entry : testTopologies.entrySet() ) {
+                    if( !entry.getKey().startsWith(DaseinTestManager.REMOVED) ) {
+                        String id = entry.getValue();
 
-                    if( id != null ) {
-                        return id;
+                        if( id != null ) {
+                            return id;
+                        }
                     }
                 }
+                return findStatelessTopology();
             }
-            return findStatelessTopology();
-        }
-        String id = testTopologies.get(label);
+            String id = testTopologies.get(label);
 
-        if( id != null ) {
-            return id;
-        }
-        if( !provisionIfNull ) {
-            return null;
-        }
-        CIServices services = provider.getCIServices();
+            if( id != null ) {
+                return id;
+            }
+            if( !provisionIfNull ) {
+                return null;
+            }
+            CIServices services = provider.getCIServices();
 
-        if( services != null ) {
-            TopologySupport support = services.getTopologySupport();
+            if( services != null ) {
+                TopologySupport support = services.getTopologySupport();
 
-            if( support != null ) {
-                try {
-                    // TODO: when support for creating topologies is implemented, use this
-                    return null;
-                }
-                catch( Throwable ignore ) {
-                    return null;
+                if( support != null ) {
+                    try {
+                        // TODO: when support for creating topologies is implemented, use this
+                        return null;
+                    }
+                    catch( Throwable ignore ) {
+                        return null;
+                    }
                 }
             }
+            return null;
         }
-        return null;
     }
 
     private @Nullable String findStatelessTopology() {
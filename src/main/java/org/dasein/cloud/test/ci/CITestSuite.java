@@ -20,6 +20,7 @@
 package org.dasein.cloud.test.ci;
 
 import org.dasein.cloud.test.DaseinTestManager;
+import org.dasein.cloud.test.runner.ParallelSuite;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.runner.RunWith;
@@ -29,7 +30,7 @@ import org.junit.runners.Suite;
  * [Class Documentation]
  * @author George Reese
  */
-@RunWith(Suite.class)
+@RunWith(ParallelSuite.class)
 @Suite.SuiteClasses({
         StatelessTopologyTests.class,
         StatefulTopologyTests.class,
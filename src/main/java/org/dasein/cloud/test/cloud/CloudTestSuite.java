@@ -20,6 +20,7 @@
 package org.dasein.cloud.test.cloud;
 
 import org.dasein.cloud.test.DaseinTestManager;
+import org.dasein.cloud.test.runner.ParallelSuite;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.runner.RunWith;
@@ -32,7 +33,7 @@ import org.junit.runners.Suite;
  * @version 2013.04 initial version
  * @since 2013.04
  */
-@RunWith(Suite.class)
+@RunWith(ParallelSuite.class)
 @Suite.SuiteClasses({ StatelessAuthenticationTests.class, StatelessDCTests.class })
 public class CloudTestSuite {
     @BeforeClass
@@ -0,0 +1,379 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.cloud;
+
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.OperationNotSupportedException;
+import org.dasein.cloud.compute.ComputeServices;
+import org.dasein.cloud.compute.ImageClass;
+import org.dasein.cloud.compute.MachineImageSupport;
+import org.dasein.cloud.compute.SnapshotSupport;
+import org.dasein.cloud.compute.VirtualMachineSupport;
+import org.dasein.cloud.compute.VolumeSupport;
+import org.dasein.cloud.identity.IdentityServices;
+import org.dasein.cloud.identity.ShellKeySupport;
+import org.dasein.cloud.network.DNSSupport;
+import org.dasein.cloud.network.FirewallSupport;
+import org.dasein.cloud.network.IPVersion;
+import org.dasein.cloud.network.IpAddressSupport;
+import org.dasein.cloud.network.LoadBalancerSupport;
+import org.dasein.cloud.network.NetworkServices;
+import org.dasein.cloud.network.VLANSupport;
+import org.dasein.cloud.platform.MQSupport;
+import org.dasein.cloud.platform.PlatformServices;
+import org.dasein.cloud.platform.RelationalDatabaseSupport;
+import org.dasein.cloud.storage.BlobStoreSupport;
+import org.dasein.cloud.storage.StorageServices;
+import org.dasein.cloud.test.DaseinTestManager;
+import org.dasein.cloud.test.cassette.Cassette;
+import org.dasein.cloud.test.metrics.InstrumentedProvider;
+import org.dasein.cloud.test.metrics.ListingThroughput;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Benchmarks the list APIs of every service, and their list*Status counterparts, with {@link ListingThroughput}.
+ * The tests only run when listing benchmarks are enabled through dasein.benchmark.listing and assert nothing about
+ * the results, which the stateless tests of each service already check. Each full listing is measured next to its
+ * status listing, if there is one, and the ratio between their times is logged. Listings are made directly on the
+ * driver rather than through the timing proxies, which copy every listing before returning it and would hide the
+ * time to the first element.
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+public class StatelessListingTests {
+    static private DaseinTestManager tm;
+
+    @BeforeClass
+    static public void configure() {
+        tm = new DaseinTestManager(StatelessListingTests.class);
+    }
+
+    @AfterClass
+    static public void cleanUp() {
+        if( tm != null ) {
+            tm.close();
+        }
+    }
+
+    @Rule
+    public final TestName name = new TestName();
+
+    public StatelessListingTests() { }
+
+    @Before
+    public void before() {
+        tm.begin(name.getMethodName());
+        assumeTrue(!tm.isTestSkipped() && ListingThroughput.isEnabled());
+    }
+
+    @After
+    public void after() {
+        tm.end();
+    }
+
+    private @Nonnull CloudProvider getProvider() {
+        CloudProvider provider = tm.getProvider();
+
+        // recorded and replayed calls have to go through the proxies
+        if( provider instanceof InstrumentedProvider && !Cassette.isActive() ) {
+            return ((InstrumentedProvider)provider).getDelegate();
+        }
+        return provider;
+    }
+
+    private @Nullable ListingThroughput.Stats measure(@Nonnull String api, @Nonnull ListingThroughput.Listing listing) throws CloudException, InternalException {
+        try {
+            ListingThroughput.Stats stats = ListingThroughput.measure(api, listing);
+
+            tm.out(api, stats);
+            return stats;
+        }
+        catch( OperationNotSupportedException e ) {
+            tm.ok(api + " is not supported in " + tm.getProvider().getCloudName());
+            return null;
+        }
+    }
+
+    private void compare(@Nonnull String api, @Nonnull ListingThroughput.Listing listing, @Nonnull String statusApi, @Nonnull ListingThroughput.Listing status) throws CloudException, InternalException {
+        ListingThroughput.Stats full = measure(api, listing);
+        ListingThroughput.Stats partial = measure(statusApi, status);
+
+        if( full != null && partial != null && partial.getTotalMillis() > 0.0 ) {
+            tm.out(statusApi + " Speed-up", String.format("%.1fx", full.getTotalMillis() / partial.getTotalMillis()));
+        }
+    }
+
+    @Test
+    public void computeListings() throws CloudException, InternalException {
+        ComputeServices services = getProvider().getComputeServices();
+
+        if( services == null ) {
+            tm.ok("No compute services in " + tm.getProvider().getCloudName());
+            return;
+        }
+        final VirtualMachineSupport vms = services.getVirtualMachineSupport();
+        final VolumeSupport volumes = services.getVolumeSupport();
+        final SnapshotSupport snapshots = services.getSnapshotSupport();
+        final MachineImageSupport images = services.getImageSupport();
+
+        if( vms != null ) {
+            compare("VirtualMachine.listVirtualMachines", new ListingThroughput.Listing() {
+                @Override
+                public Iterable<?> list() throws CloudException, InternalException {
+                    return vms.listVirtualMachines();
+                }
+            }, "VirtualMachine.listVirtualMachineStatus", new ListingThroughput.Listing() {
+                @Override
+                public Iterable<?> list() throws CloudException, InternalException {
+                    return vms.listVirtualMachineStatus();
+                }
+            });
+        }
+        if( volumes != null ) {
+            compare("Volume.listVolumes", new ListingThroughput.Listing() {
+                @Override
+                public Iterable<?> list() throws CloudException, InternalException {
+                    return volumes.listVolumes();
+                }
+            }, "Volume.listVolumeStatus", new ListingThroughput.Listing() {
+                @Override
+                public Iterable<?> list() throws CloudException, InternalException {
+                    return volumes.listVolumeStatus();
+                }
+            });
+        }
+        if( snapshots != null ) {
+            compare("Snapshot.listSnapshots", new ListingThroughput.Listing() {
+                @Override
+                public Iterable<?> list() throws CloudException, InternalException {
+                    return snapshots.listSnapshots();
+                }
+            }, "Snapshot.listSnapshotStatus", new ListingThroughput.Listing() {
+                @Override
+                public Iterable<?> list() throws CloudException, InternalException {
+                    return snapshots.listSnapshotStatus();
+                }
+            });
+        }
+        if( images != null ) {
+            compare("MachineImage.listImages", new ListingThroughput.Listing() {
+                @Override
+                public Iterable<?> list() throws CloudException, InternalException {
+                    return images.listImages(ImageClass.MACHINE);
+                }
+            }, "MachineImage.listImageStatus", new ListingThroughput.Listing() {
+                @Override
+                public Iterable<?> list() throws CloudException, InternalException {
+                    return images.listImageStatus(ImageClass.MACHINE);
+                }
+            });
+        }
+    }
+
+    @Test
+    public void networkListings() throws CloudException, InternalException {
+        NetworkServices services = getProvider().getNetworkServices();
+
+        if( services == null ) {
+            tm.ok("No network services in " + tm.getProvider().getCloudName());
+            return;
+        }
+        final FirewallSupport firewalls = services.getFirewallSupport();
+        final VLANSupport vlans = services.getVlanSupport();
+        final IpAddressSupport addresses = services.getIpAddressSupport();
+        final DNSSupport dns = services.getDnsSupport();
+        final LoadBalancerSupport loadBalancers = services.getLoadBalancerSupport();
+
+        if( firewalls != null ) {
+            compare("Firewall.list", new ListingThroughput.Listing() {
+                @Override
+                public Iterable<?> list() throws CloudException, InternalException {
+                    return firewalls.list();
+                }
+            }, "Firewall.listFirewallStatus", new ListingThroughput.Listing() {
+                @Override
+                public Iterable<?> list() throws CloudException, InternalException {
+                    return firewalls.listFirewallStatus();
+                }
+            });
+        }
+        if( vlans != null ) {
+            // only an existing VLAN is used, benchmarks do not provision anything
+            final String vlanId = tm.getTestVLANId(DaseinTestManager.STATELESS, false, null);
+
+            compare("VLAN.listVlans", new ListingThroughput.Listing() {
+                @Override
+                public Iterable<?> list() throws CloudException, InternalException {
+                    return vlans.listVlans();
+                }
+            }, "VLAN.listVlanStatus", new ListingThroughput.Listing() {
+                @Override
+                public Iterable<?> list() throws CloudException, InternalException {
+                    return vlans.listVlanStatus();
+                }
+            });
+            if( vlanId != null ) {
+                measure("VLAN.listSubnets", new ListingThroughput.Listing() {
+                    @Override
+                    public Iterable<?> list() throws CloudException, InternalException {
+                        return vlans.listSubnets(vlanId);
+                    }
+                });
+            }
+            compare("VLAN.listNetworkInterfaces", new ListingThroughput.Listing() {
+                @Override
+                public Iterable<?> list() throws CloudException, InternalException {
+                    return vlans.listNetworkInterfaces();
+                }
+            }, "VLAN.listNetworkInterfaceStatus", new ListingThroughput.Listing() {
+                @Override
+                public Iterable<?> list() throws CloudException, InternalException {
+                    return vlans.listNetworkInterfaceStatus();
+                }
+            });
+        }
+        if( addresses != null ) {
+            compare("IpAddress.listIpPool", new ListingThroughput.Listing() {
+                @Override
+                public Iterable<?> list() throws CloudException, InternalException {
+                    return addresses.listIpPool(IPVersion.IPV4, false);
+                }
+            }, "IpAddress.listIpPoolStatus", new ListingThroughput.Listing() {
+                @Override
+                public Iterable<?> list() throws CloudException, InternalException {
+                    return addresses.listIpPoolStatus(IPVersion.IPV4);
+                }
+            });
+        }
+        if( dns != null ) {
+            compare("DNS.listDnsZones", new ListingThroughput.Listing() {
+                @Override
+                public Iterable<?> list() throws CloudException, InternalException {
+                    return dns.listDnsZones();
+                }
+            }, "DNS.listDnsZoneStatus", new ListingThroughput.Listing() {
+                @Override
+                public Iterable<?> list() throws CloudException, InternalException {
+                    return dns.listDnsZoneStatus();
+                }
+            });
+        }
+        if( loadBalancers != null ) {
+            compare("LoadBalancer.listLoadBalancers", new ListingThroughput.Listing() {
+                @Override
+                public Iterable<?> list() throws CloudException, InternalException {
+                    return loadBalancers.listLoadBalancers();
+                }
+            }, "LoadBalancer.listLoadBalancerStatus", new ListingThroughput.Listing() {
+                @Override
+                public Iterable<?> list() throws CloudException, InternalException {
+                    return loadBalancers.listLoadBalancerStatus();
+                }
+            });
+        }
+    }
+
+    @Test
+    public void platformListings() throws CloudException, InternalException {
+        PlatformServices services = getProvider().getPlatformServices();
+
+        if( services == null ) {
+            tm.ok("No platform services in " + tm.getProvider().getCloudName());
+            return;
+        }
+        final RelationalDatabaseSupport databases = services.getRelationalDatabaseSupport();
+        final MQSupport queues = services.getMessageQueueSupport();
+
+        if( databases != null ) {
+            compare("RelationalDatabase.listDatabases", new ListingThroughput.Listing() {
+                @Override
+                public Iterable<?> list() throws CloudException, InternalException {
+                    return databases.listDatabases();
+                }
+            }, "RelationalDatabase.listDatabaseStatus", new ListingThroughput.Listing() {
+                @Override
+                public Iterable<?> list() throws CloudException, InternalException {
+                    return databases.listDatabaseStatus();
+                }
+            });
+        }
+        if( queues != null ) {
+            compare("MQ.listMessageQueues", new ListingThroughput.Listing() {
+                @Override
+                public Iterable<?> list() throws CloudException, InternalException {
+                    return queues.listMessageQueues();
+                }
+            }, "MQ.listMessageQueueStatus", new ListingThroughput.Listing() {
+                @Override
+                public Iterable<?> list() throws CloudException, InternalException {
+                    return queues.listMessageQueueStatus();
+                }
+            });
+        }
+    }
+
+    @Test
+    public void storageListings() throws CloudException, InternalException {
+        StorageServices services = getProvider().getStorageServices();
+        final BlobStoreSupport blobs = (services == null ? null : services.getOnlineStorageSupport());
+
+        if( blobs == null ) {
+            tm.ok("No object storage in " + tm.getProvider().getCloudName());
+            return;
+        }
+        measure("BlobStore.list", new ListingThroughput.Listing() {
+            @Override
+            public Iterable<?> list() throws CloudException, InternalException {
+                return blobs.list(null);
+            }
+        });
+    }
+
+    @Test
+    public void identityListings() throws CloudException, InternalException {
+        IdentityServices services = getProvider().getIdentityServices();
+        final ShellKeySupport keys = (services == null ? null : services.getShellKeySupport());
+
+        if( keys == null ) {
+            tm.ok("No keypair support in " + tm.getProvider().getCloudName());
+            return;
+        }
+        measure("ShellKey.list", new ListingThroughput.Listing() {
+            @Override
+            public Iterable<?> list() throws CloudException, InternalException {
+                return keys.list();
+            }
+        });
+    }
+}
@@ -20,6 +20,7 @@
 package org.dasein.cloud.test.compute;
 
 import java.util.*;
+import java.util.concurrent.Callable;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -34,11 +35,22 @@ import org.dasein.cloud.dc.DataCenter;
 import org.dasein.cloud.network.NetworkServices;
 import org.dasein.cloud.network.Subnet;
 import org.dasein.cloud.network.SubnetCreateOptions;
+import org.dasein.cloud.network.SubnetState;
 import org.dasein.cloud.network.VLAN;
+import org.dasein.cloud.network.VLANState;
 import org.dasein.cloud.network.VLANSupport;
 import org.dasein.cloud.test.DaseinTestManager;
+import org.dasein.cloud.test.fixture.FixtureRegistry;
+import org.dasein.cloud.test.fixture.ResourceJournal;
+import org.dasein.cloud.test.fixture.ResourceKind;
+import org.dasein.cloud.test.fixture.WarmPool;
 import org.dasein.cloud.test.identity.IdentityResources;
+import org.dasein.cloud.test.metrics.Timeline;
 import org.dasein.cloud.test.network.NetworkResources;
+import org.dasein.cloud.test.runner.Shard;
+import org.dasein.cloud.test.teardown.TeardownEngine;
+import org.dasein.cloud.test.wait.CloudStates;
+import org.dasein.cloud.test.wait.StateWaiter;
 import org.dasein.util.CalendarWrapper;
 import org.dasein.util.uom.storage.Gigabyte;
 import org.dasein.util.uom.storage.Storage;
@@ -61,10 +73,10 @@ public class ComputeResources {
 
     private CloudProvider provider;
 
-    private final Map<String, String> testMachineImages = new HashMap<String, String>();
-    private final Map<String, String> testSnapshots     = new HashMap<String, String>();
-    private final Map<String, String> testVMs           = new HashMap<String, String>();
-    private final Map<String, String> testVolumes       = new HashMap<String, String>();
+    private final FixtureRegistry<String> testMachineImages = new FixtureRegistry<String>(ResourceKind.IMAGE);
+    private final FixtureRegistry<String> testSnapshots     = new FixtureRegistry<String>(ResourceKind.SNAPSHOT);
+    private final FixtureRegistry<String> testVMs           = new FixtureRegistry<String>(ResourceKind.VM);
+    private final FixtureRegistry<String> testVolumes       = new FixtureRegistry<String>(ResourceKind.VOLUME);
 
     //defaults
     private String   testDataCenterId = DaseinTestManager.getSystemProperty("test.dataCenter");
@@ -118,125 +130,182 @@ public class ComputeResources {
     }
 
     public int close() {
+        TeardownEngine teardown = new TeardownEngine();
+
+        close(teardown);
+        return teardown.run();
+    }
+
+    /**
+     * Registers the compute resources a crashed run left behind so that clean up tears them down.
+     * @param orphans the orphaned resource IDs by kind
+     */
+    public void recover(@Nonnull Map<ResourceKind,List<String>> orphans) {
+        ResourceJournal.recover(orphans, testVMs);
+        ResourceJournal.recover(orphans, testMachineImages);
+        ResourceJournal.recover(orphans, testSnapshots);
+        ResourceJournal.recover(orphans, testVolumes);
+    }
+
+    /**
+     * Registers the virtual machine and volume left in the warm pool by a previous run.
+     * @param pool the warm pool
+     */
+    public void lease(@Nonnull WarmPool pool) {
         ComputeServices computeServices = provider.getComputeServices();
-        int count = 0;
 
         if( computeServices != null ) {
-            VirtualMachineSupport vmSupport = computeServices.getVirtualMachineSupport();
+            final VirtualMachineSupport vmSupport = computeServices.getVirtualMachineSupport();
+
+            if( vmSupport != null ) {
+                pool.lease(ResourceKind.VM, testVMs, new WarmPool.Validator() {
+                    @Override
+                    public boolean isValid(@Nonnull String resourceId) throws Exception {
+                        VirtualMachine vm = vmSupport.getVirtualMachine(resourceId);
+
+                        return (vm != null && !VmState.TERMINATED.equals(vm.getCurrentState()));
+                    }
+                });
+            }
+            final VolumeSupport volumeSupport = computeServices.getVolumeSupport();
+
+            if( volumeSupport != null ) {
+                pool.lease(ResourceKind.VOLUME, testVolumes, new WarmPool.Validator() {
+                    @Override
+                    public boolean isValid(@Nonnull String resourceId) throws Exception {
+                        Volume volume = volumeSupport.getVolume(resourceId);
+
+                        return (volume != null && !VolumeState.DELETED.equals(volume.getCurrentState()));
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Returns the stateful virtual machine and volume to the warm pool so that they are not torn down.
+     * @param pool the warm pool
+     */
+    public void release(@Nonnull WarmPool pool) {
+        pool.release(ResourceKind.VM, testVMs);
+        pool.release(ResourceKind.VOLUME, testVolumes);
+    }
+
+    /**
+     * Registers every stateful compute resource provisioned during the tests for removal.
+     * @param teardown the engine that removes the resources
+     */
+    public void close(@Nonnull TeardownEngine teardown) {
+        ComputeServices computeServices = provider.getComputeServices();
+
+        if( computeServices != null ) {
+            final VirtualMachineSupport vmSupport = computeServices.getVirtualMachineSupport();
 
             if( vmSupport != null ) {
                 for( Map.Entry<String, String> entry : testVMs.entrySet() ) {
                     if( !entry.getKey().equals(DaseinTestManager.STATELESS) ) {
-                        try {
-                            // Sometimes VMs don't have enough time to start before they are terminated
-                            // by tests, this causes stuck unterminated VMs. Let's try to take care of
-                            // that:
-                            long timeout = System.currentTimeMillis() + 5 * 60 * 1000;
-                            VirtualMachine vm = null;
-                            while(System.currentTimeMillis() < timeout) {
-                                vm = vmSupport.getVirtualMachine(entry.getValue());
-                                if( vm == null || !VmState.PENDING.equals(vm.getCurrentState()) ) {
-                                    break;
+                        final String vmId = entry.getValue();
+
+                        teardown.add(ResourceKind.VM, vmId, new Callable<Boolean>() {
+                            @Override
+                            public Boolean call() throws Exception {
+                                // Sometimes VMs don't have enough time to start before they are terminated
+                                // by tests, this causes stuck unterminated VMs. Let's try to take care of
+                                // that:
+                                VirtualMachine vm = StateWaiter.getInstance("VM").withTimeout(CalendarWrapper.MINUTE * 5L)
+                                        .await(vmId, CloudStates.virtualMachine(vmSupport), StateWaiter.notIn(VmState.PENDING));
+
+                                if( vm != null ) {
+                                    vmSupport.terminate(vmId);
+                                    // resources the VM uses cannot be removed until it is actually gone
+                                    StateWaiter.getInstance("VM").withTimeout(CalendarWrapper.MINUTE * 10L)
+                                            .await(vmId, CloudStates.virtualMachine(vmSupport), StateWaiter.inOrGone(VmState.TERMINATED));
                                 }
-                                Thread.sleep(10000);
-                            };
-                            if( vm != null ) {
-                                vmSupport.terminate(entry.getValue());
-                                count++;
-                            }
-                            else {
-                                count++;
+                                return true;
                             }
-                        } catch( Throwable t ) {
-                            logger.warn("Failed to de-provision test VM " + entry.getValue() + ": " + t.getMessage());
-                        }
+                        });
                     }
                 }
             }
 
-            MachineImageSupport imageSupport = computeServices.getImageSupport();
+            final MachineImageSupport imageSupport = computeServices.getImageSupport();
 
             if( imageSupport != null ) {
                 for( Map.Entry<String, String> entry : testMachineImages.entrySet() ) {
                     if( !entry.getKey().equals(DaseinTestManager.STATELESS) ) {
-                        try {
-                            MachineImage img = imageSupport.getImage(entry.getValue());
+                        final String imageId = entry.getValue();
 
-                            if( img != null ) {
-                                imageSupport.remove(entry.getValue());
-                                count++;
-                            }
-                            else {
-                                count++;
+                        teardown.add(ResourceKind.IMAGE, imageId, new Callable<Boolean>() {
+                            @Override
+                            public Boolean call() throws Exception {
+                                MachineImage img = imageSupport.getImage(imageId);
+
+                                if( img != null ) {
+                                    imageSupport.remove(imageId);
+                                }
+                                return true;
                             }
-                        } catch( Throwable t ) {
-                            logger.warn("Failed to de-provision test image " + entry.getValue() + ": " + t.getMessage());
-                        }
+                        });
                     }
                 }
             }
 
-            SnapshotSupport snapshotSupport = computeServices.getSnapshotSupport();
+            final SnapshotSupport snapshotSupport = computeServices.getSnapshotSupport();
 
             if( snapshotSupport != null ) {
                 for( Map.Entry<String, String> entry : testSnapshots.entrySet() ) {
                     if( !entry.getKey().equals(DaseinTestManager.STATELESS) ) {
-                        try {
-                            Snapshot snapshot = snapshotSupport.getSnapshot(entry.getValue());
+                        final String snapshotId = entry.getValue();
 
-                            if( snapshot != null ) {
-                                snapshotSupport.remove(entry.getValue());
-                                count++;
-                            }
-                            else {
-                                count++;
+                        teardown.add(ResourceKind.SNAPSHOT, snapshotId, new Callable<Boolean>() {
+                            @Override
+                            public Boolean call() throws Exception {
+                                Snapshot snapshot = snapshotSupport.getSnapshot(snapshotId);
+
+                                if( snapshot != null ) {
+                                    snapshotSupport.remove(snapshotId);
+                                }
+                                return true;
                             }
-                        } catch( Throwable t ) {
-                            logger.warn("Failed to de-provision test snapshot " + entry.getValue() + " post-test: " + t.getMessage());
-                        }
+                        });
                     }
                 }
             }
-            VolumeSupport volumeSupport = computeServices.getVolumeSupport();
+            final VolumeSupport volumeSupport = computeServices.getVolumeSupport();
 
             if( volumeSupport != null ) {
                 for( Map.Entry<String, String> entry : testVolumes.entrySet() ) {
                     if( !entry.getKey().equals(DaseinTestManager.STATELESS) ) {
-                        try {
-                            Volume volume = volumeSupport.getVolume(entry.getValue());
+                        final String volumeId = entry.getValue();
 
-                            if( volume != null ) {
-                                volumeSupport.detach(entry.getValue(), true);
-                            }
-                        } catch( Throwable ignore ) {
-                            // IGNORE
-                        }
-                    }
-                }
-                try {
-                    Thread.sleep(60000L);
-                } catch( InterruptedException ignore ) {
-                }
-                for( Map.Entry<String, String> entry : testVolumes.entrySet() ) {
-                    if( !entry.getKey().equals(DaseinTestManager.STATELESS) ) {
-                        try {
-                            Volume volume = volumeSupport.getVolume(entry.getValue());
+                        teardown.add(ResourceKind.VOLUME, volumeId, new Callable<Boolean>() {
+                            @Override
+                            public Boolean call() throws Exception {
+                                Volume volume = volumeSupport.getVolume(volumeId);
 
-                            if( volume != null ) {
-                                volumeSupport.remove(entry.getValue());
-                                count++;
-                            }
-                            else {
-                                count++;
+                                if( volume == null ) {
+                                    return true;
+                                }
+                                if( volume.getProviderVirtualMachineId() != null ) {
+                                    try {
+                                        volumeSupport.detach(volumeId, true);
+                                    }
+                                    catch( Throwable ignore ) {
+                                        // IGNORE
+                                    }
+                                    volume = StateWaiter.getInstance("Volume attachment").withTimeout(CalendarWrapper.MINUTE * 5L)
+                                            .await(volumeId, CloudStates.volumeAttachment(volumeSupport), StateWaiter.in("DETACHED"));
+                                }
+                                if( volume != null ) {
+                                    volumeSupport.remove(volumeId);
+                                }
+                                return true;
                             }
-                        } catch( Throwable t ) {
-                            logger.warn("Failed to de-provision test volume " + entry.getValue() + ": " + t.getMessage());
-                        }
+                        });
                     }
                 }
             }
         }
-        return count;
     }
 
     private @Nullable String findStatelessSnapshot() {
@@ -328,74 +397,78 @@ public class ComputeResources {
     }
 
     public @Nullable String getTestImageId( @Nonnull String label, boolean provisionIfNull ) {
-        String id = testMachineImages.get(label);
-
-        if( id == null ) {
-            if( label.equals(DaseinTestManager.STATELESS) ) {
-                for( Map.Entry<String, String> entry : testMachineImages.entrySet() ) {
-                    if( !entry.getKey().equals(DaseinTestManager.REMOVED) ) {
-                        id = entry.getValue();
-                        if( id != null ) {
-                            return id;
+        synchronized( testMachineImages.lock(label) ) {
+            String id = testMachineImages.get(label);
+
+            if( id == null ) {
+                if( label.equals(DaseinTestManager.STATELESS) ) {
+                    for( Map.Entry<String, String> entry : testMachineImages.entrySet() ) {
+                        if( !entry.getKey().equals(DaseinTestManager.REMOVED) ) {
+                            id = entry.getValue();
+                            if( id != null ) {
+                                return id;
+                            }
                         }
                     }
+                    return null;
                 }
-                return null;
-            }
-            if( provisionIfNull ) {
-                ComputeServices services = provider.getComputeServices();
+                if( provisionIfNull ) {
+                    ComputeServices services = provider.getComputeServices();
 
-                if( services != null ) {
-                    MachineImageSupport support = services.getImageSupport();
+                    if( services != null ) {
+                        MachineImageSupport support = services.getImageSupport();
 
-                    if( support != null ) {
-                        try {
-                            return provisionImage(support, label, "dsnimg", null);
-                        } catch( Throwable ignore ) {
-                            return null;
+                        if( support != null ) {
+                            try {
+                                return provisionImage(support, label, "dsnimg", null);
+                            } catch( Throwable ignore ) {
+                                return null;
+                            }
                         }
                     }
                 }
             }
+            return id;
         }
-        return id;
     }
 
     public @Nullable String getTestSnapshotId( @Nonnull String label, boolean provisionIfNull ) {
-        if( label.equals(DaseinTestManager.STATELESS) ) {
-            for( Map.Entry<String, String> entry : testSnapshots.entrySet() ) {
-                if( !entry.getKey().startsWith(DaseinTestManager.REMOVED) ) {
-                    String id = entry.getValue();
+        synchronized( testSnapshots.lock(label) ) {
+            if( label.equals(DaseinTestManager.STATELESS) ) {
+                for( Map.Entry<String, String> entry : testSnapshots.entrySet() ) {
+                    if( !entry.getKey().startsWith(DaseinTestManager.REMOVED) ) {
+                        String id = entry.getValue();
 
-                    if( id != null ) {
-                        return id;
+                        if( id != null ) {
+                            return id;
+                        }
                     }
                 }
+                return findStatelessSnapshot();
             }
-            return findStatelessSnapshot();
-        }
-        String id = testSnapshots.get(label);
+            String id = testSnapshots.get(label);
 
-        if( id != null ) {
-            return id;
-        }
-        if( !provisionIfNull ) {
-            return null;
-        }
-        ComputeServices services = provider.getComputeServices();
+            if( id != null ) {
+                return id;
+            }
+            if( !provisionIfNull ) {
+                return null;
+            }
+            ComputeServices services = provider.getComputeServices();
 
-        if( services != null ) {
-            SnapshotSupport support = services.getSnapshotSupport();
+            if( services != null ) {
+                SnapshotSupport support = services.getSnapshotSupport();
 
-            if( support != null ) {
-                try {
-                    return provisionSnapshot(support, label, "dsnsnap" + ( System.currentTimeMillis() % 10000 ), null);
-                } catch( Throwable ignore ) {
-                    return null;
+                if( support != null ) {
+                    try {
+                        return provisionSnapshot(support, label, "dsnsnap" + ( System.currentTimeMillis() % 10000 ), null);
+                    } catch( Throwable ignore ) {
+                        return null;
+                    }
                 }
             }
+            return null;
         }
-        return null;
     }
     
     public @Nullable String getTestVmId(@Nonnull String label, @Nullable VmState desiredState, boolean provisionIfNull, @Nullable String preferredDataCenterId) {
@@ -403,197 +476,197 @@ public class ComputeResources {
     }
 
     public @Nullable String getTestVmId( @Nonnull String label, @Nonnull String vmName, @Nullable VmState desiredState, boolean provisionIfNull, @Nullable String preferredDataCenterId ) {
-        if( label.equals(DaseinTestManager.STATELESS) ) {
-            for( Map.Entry<String, String> entry : testVMs.entrySet() ) {
-                if( !entry.getKey().startsWith(DaseinTestManager.REMOVED) ) {
-                    String id = entry.getValue();
+        synchronized( testVMs.lock(label) ) {
+            if( label.equals(DaseinTestManager.STATELESS) ) {
+                for( Map.Entry<String, String> entry : testVMs.entrySet() ) {
+                    if( !entry.getKey().startsWith(DaseinTestManager.REMOVED) ) {
+                        String id = entry.getValue();
 
-                    if( id != null ) {
-                        try {
-                            @SuppressWarnings("ConstantConditions") VirtualMachine vm = provider.getComputeServices().getVirtualMachineSupport().getVirtualMachine(id);
+                        if( id != null ) {
+                            try {
+                                @SuppressWarnings("ConstantConditions") VirtualMachine vm = provider.getComputeServices().getVirtualMachineSupport().getVirtualMachine(id);
 
-                            if( vm != null && !VmState.TERMINATED.equals(vm.getCurrentState()) ) {
-                                return id;
+                                if( vm != null && !VmState.TERMINATED.equals(vm.getCurrentState()) ) {
+                                    return id;
+                                }
+                            } catch( Throwable ignore ) {
+                                // ignore
                             }
-                        } catch( Throwable ignore ) {
-                            // ignore
                         }
                     }
                 }
             }
-        }
-        String id = testVMs.get(label);
+            String id = testVMs.get(label);
 
-        if( id == null && !provisionIfNull ) {
-            return null;
-        }
-        ComputeServices services = provider.getComputeServices();
-
-        if( services != null ) {
-            VirtualMachineSupport support = services.getVirtualMachineSupport();
+            if( id == null && !provisionIfNull ) {
+                return null;
+            }
+            ComputeServices services = provider.getComputeServices();
 
-            if( support != null ) {
-                try {
-                    VirtualMachine vm = ( id == null ? null : support.getVirtualMachine(id) );
+            if( services != null ) {
+                VirtualMachineSupport support = services.getVirtualMachineSupport();
 
-                    if( ( vm == null || VmState.TERMINATED.equals(vm.getCurrentState()) ) && provisionIfNull ) {
-                        id = provisionVM(support, label, "testvm-" + label, vmName, preferredDataCenterId);
-                        vm = support.getVirtualMachine(id);
-                    }
-                    if( vm != null && desiredState != null ) {
-                        setState(support, vm, desiredState);
-                    }
-                    return id;
-                } catch( Throwable t ) {
+                if( support != null ) {
                     try {
-                        if( support.isSubscribed() ) {
-                            logger.warn("Unable to provision test virtual machine under label " + label + ": " + t.getMessage());
+                        VirtualMachine vm = ( id == null ? null : support.getVirtualMachine(id) );
+
+                        if( ( vm == null || VmState.TERMINATED.equals(vm.getCurrentState()) ) && provisionIfNull ) {
+                            id = provisionVM(support, label, "testvm-" + label, vmName, preferredDataCenterId);
+                            vm = support.getVirtualMachine(id);
+                        }
+                        if( vm != null && desiredState != null ) {
+                            setState(support, vm, desiredState);
+                        }
+                        return id;
+                    } catch( Throwable t ) {
+                        try {
+                            if( support.isSubscribed() ) {
+                                logger.warn("Unable to provision test virtual machine under label " + label + ": " + t.getMessage());
+                            }
+                        } catch( Throwable ignore ) {
+                            // ignore
                         }
-                    } catch( Throwable ignore ) {
-                        // ignore
                     }
                 }
             }
+            return null;
         }
-        return null;
     }
 
     public @Nullable String getTestVLANVmId(@Nonnull String label, @Nullable VmState desiredState, @Nullable String vlanId, boolean provisionIfNull, @Nullable String preferredDataCenterId) {
-        if( label.equals(DaseinTestManager.STATELESS) ) {
-            for( Map.Entry<String,String> entry : testVMs.entrySet() ) {
-                if( !entry.getKey().startsWith(DaseinTestManager.REMOVED) ) {
-                    String id = entry.getValue();
+        synchronized( testVMs.lock(label) ) {
+            if( label.equals(DaseinTestManager.STATELESS) ) {
+                for( Map.Entry<String,String> entry : testVMs.entrySet() ) {
+                    if( !entry.getKey().startsWith(DaseinTestManager.REMOVED) ) {
+                        String id = entry.getValue();
 
-                    if( id != null ) {
-                        try {
-                            @SuppressWarnings("ConstantConditions") VirtualMachine vm = provider.getComputeServices().getVirtualMachineSupport().getVirtualMachine(id);
+                        if( id != null ) {
+                            try {
+                                @SuppressWarnings("ConstantConditions") VirtualMachine vm = provider.getComputeServices().getVirtualMachineSupport().getVirtualMachine(id);
 
-                            if( vm != null && !VmState.TERMINATED.equals(vm.getCurrentState()) && vm.getProviderVlanId() != null ) {
-                                if( vlanId == null ) {
-                                    return id;
-                                }
-                                else if( vm.getProviderVlanId().equalsIgnoreCase(vlanId) ) {
-                                    return id;
+                                if( vm != null && !VmState.TERMINATED.equals(vm.getCurrentState()) && vm.getProviderVlanId() != null ) {
+                                    if( vlanId == null ) {
+                                        return id;
+                                    }
+                                    else if( vm.getProviderVlanId().equalsIgnoreCase(vlanId) ) {
+                                        return id;
+                                    }
                                 }
                             }
-                        }
-                        catch( Throwable ignore ) {
-                            // ignore
+                            catch( Throwable ignore ) {
+                                // ignore
+                            }
                         }
                     }
                 }
+                return null;
             }
-            return null;
-        }
-        String id = testVMs.get(label);
+            String id = testVMs.get(label);
 
-        if( id == null && !provisionIfNull ) {
-            return null;
-        }
-        ComputeServices services = provider.getComputeServices();
+            if( id == null && !provisionIfNull ) {
+                return null;
+            }
+            ComputeServices services = provider.getComputeServices();
 
-        if( services != null ) {
-            VirtualMachineSupport support = services.getVirtualMachineSupport();
-            if( support != null ) {
-                try {
-                    VirtualMachine vm = (id == null ? null : support.getVirtualMachine(id));
-                    if( (vm == null || VmState.TERMINATED.equals(vm.getCurrentState()) || vm.getProviderVlanId() == null || !vm.getProviderVlanId().equalsIgnoreCase(vlanId)) && provisionIfNull ) {
-                        String testImageId = getTestImageId(DaseinTestManager.STATELESS, false);
-                        if( testImageId == null ) {
-                            throw new CloudException("No test image exists for provisioning a virtual machine");
-                        }
-                        long now = System.currentTimeMillis();
-                        String name = "dasein-test-" + label + " " + now;
-                        String host = "dsnvm" + (now%10000);
-                        VMLaunchOptions vmOpts = VMLaunchOptions.getInstance(testVMProductId, testImageId, name, host, "Test VM for stateful integration tests for Dasein Cloud").withExtendedAnalytics();
-                        NetworkResources network = DaseinTestManager.getNetworkResources();
-                        if( vlanId != null ) {
-                            NetworkServices ns = provider.getNetworkServices();
-                            VLANSupport vs = ns.getVlanSupport();
-                            VLAN v = vs.getVlan(vlanId);
-                            Iterable<Subnet> subnets = vs.listSubnets(vlanId);
-                            if( subnets.iterator().hasNext() ) {
-                                Subnet sub = subnets.iterator().next();
-                                vmOpts.inSubnet( null, v.getProviderDataCenterId(), sub.getProviderVlanId(), sub.getProviderSubnetId());
-                            } else {
-                                Subnet sub = vs.createSubnet(SubnetCreateOptions.getInstance(vlanId, "192.168.50.0/24", "dsnsub", "dasein test create vm for vlan"));
-                                vmOpts.inSubnet( null, v.getProviderDataCenterId(), sub.getProviderVlanId(), sub.getProviderSubnetId());
+            if( services != null ) {
+                VirtualMachineSupport support = services.getVirtualMachineSupport();
+                if( support != null ) {
+                    try {
+                        VirtualMachine vm = (id == null ? null : support.getVirtualMachine(id));
+                        if( (vm == null || VmState.TERMINATED.equals(vm.getCurrentState()) || vm.getProviderVlanId() == null || !vm.getProviderVlanId().equalsIgnoreCase(vlanId)) && provisionIfNull ) {
+                            String testImageId = getTestImageId(DaseinTestManager.STATELESS, false);
+                            if( testImageId == null ) {
+                                throw new CloudException("No test image exists for provisioning a virtual machine");
                             }
-                        } else {
-                            if( network != null ) {
-                                String networkId = network.getTestVLANId(DaseinTestManager.STATEFUL, true, preferredDataCenterId);
-
-                                if( networkId == null ) {
-                                    networkId = network.getTestVLANId(DaseinTestManager.STATELESS, false, preferredDataCenterId);
+                            long now = System.currentTimeMillis();
+                            String name = Shard.tag("dasein-test-" + label) + " " + now;
+                            String host = "dsnvm" + (now%10000);
+                            VMLaunchOptions vmOpts = VMLaunchOptions.getInstance(testVMProductId, testImageId, name, host, "Test VM for stateful integration tests for Dasein Cloud").withExtendedAnalytics();
+                            NetworkResources network = DaseinTestManager.getNetworkResources();
+                            if( vlanId != null ) {
+                                NetworkServices ns = provider.getNetworkServices();
+                                VLANSupport vs = ns.getVlanSupport();
+                                VLAN v = vs.getVlan(vlanId);
+                                Iterable<Subnet> subnets = vs.listSubnets(vlanId);
+                                if( subnets.iterator().hasNext() ) {
+                                    Subnet sub = subnets.iterator().next();
+                                    vmOpts.inSubnet( null, v.getProviderDataCenterId(), sub.getProviderVlanId(), sub.getProviderSubnetId());
+                                } else {
+                                    Subnet sub = vs.createSubnet(SubnetCreateOptions.getInstance(vlanId, "192.168.50.0/24", Shard.tag("dsnsub"), "dasein test create vm for vlan"));
+                                    vmOpts.inSubnet( null, v.getProviderDataCenterId(), sub.getProviderVlanId(), sub.getProviderSubnetId());
                                 }
+                            } else {
+                                if( network != null ) {
+                                    String networkId = network.getTestVLANId(DaseinTestManager.STATEFUL, true, preferredDataCenterId);
 
-                                // wait for network to be ready
-                                try {
-                                    Thread.sleep(10000L);
-                                }
-                                catch( InterruptedException ignore ) {
-                                }
+                                    if( networkId == null ) {
+                                        networkId = network.getTestVLANId(DaseinTestManager.STATELESS, false, preferredDataCenterId);
+                                    }
 
-                                if( networkId != null ) {
+                                    @SuppressWarnings("ConstantConditions") VLANSupport vlanSupport = provider.getNetworkServices().getVlanSupport();
 
-                                    String subnetId = network.getTestSubnetId(DaseinTestManager.STATEFUL, true, networkId, preferredDataCenterId);
+                                    if( networkId != null && vlanSupport != null ) {
+                                        // wait for network to be ready
+                                        StateWaiter.getInstance("VLAN").withTimeout(CalendarWrapper.MINUTE * 2L)
+                                                .await(networkId, CloudStates.vlan(vlanSupport), StateWaiter.notIn(VLANState.PENDING));
 
-                                    if( subnetId == null ) {
-                                        subnetId = network.getTestSubnetId(DaseinTestManager.STATELESS, true, networkId, preferredDataCenterId);
-                                    }
-                                    if( subnetId != null ) {
+                                        String subnetId = network.getTestSubnetId(DaseinTestManager.STATEFUL, true, networkId, preferredDataCenterId);
 
-                                        // wait for subnet to be ready
-                                        try { Thread.sleep(10000L); }
-                                        catch( InterruptedException ignore ) { }
+                                        if( subnetId == null ) {
+                                            subnetId = network.getTestSubnetId(DaseinTestManager.STATELESS, true, networkId, preferredDataCenterId);
+                                        }
+                                        if( subnetId != null ) {
 
-                                        @SuppressWarnings("ConstantConditions") Subnet subnet = provider.getNetworkServices().getVlanSupport().getSubnet(subnetId);
+                                            // wait for subnet to be ready
+                                            Subnet subnet = StateWaiter.getInstance("Subnet").withTimeout(CalendarWrapper.MINUTE * 2L)
+                                                    .await(subnetId, CloudStates.subnet(vlanSupport), StateWaiter.notIn(SubnetState.PENDING));
 
-                                        if( subnet != null ) {
-                                            String dcId = subnet.getProviderDataCenterId();
+                                            if( subnet != null ) {
+                                                String dcId = subnet.getProviderDataCenterId();
 
-                                            if( dcId == null ) {
-                                                for( DataCenter dc : provider.getDataCenterServices().listDataCenters(provider.getContext().getRegionId()) ) {
-                                                    if( (dc.isActive() && dc.isAvailable()) || dcId == null ) {
-                                                        dcId = dc.getProviderDataCenterId();
+                                                if( dcId == null ) {
+                                                    for( DataCenter dc : provider.getDataCenterServices().listDataCenters(provider.getContext().getRegionId()) ) {
+                                                        if( (dc.isActive() && dc.isAvailable()) || dcId == null ) {
+                                                            dcId = dc.getProviderDataCenterId();
+                                                        }
                                                     }
                                                 }
+                                                vmOpts.inSubnet(null, dcId, vlanId, subnetId);
                                             }
-                                            vmOpts.inSubnet(null, dcId, vlanId, subnetId);
                                         }
                                     }
                                 }
                             }
+                            id = launchVM(support, label, vmOpts, preferredDataCenterId);
+                            vm = support.getVirtualMachine(id);
                         }
-                        id = provisionVM(support, label, vmOpts, preferredDataCenterId);
-                        vm = support.getVirtualMachine(id);
-                    }
-                    if( vm != null && desiredState != null ) {
-                        setState(support, vm, desiredState);
-                    }
-                    if( vlanId != null && vm.getProviderVlanId().equalsIgnoreCase(vlanId) && id != null ) {
-                        return id;
-                    }
-                    else if( vlanId == null && id != null ) {
-                        return id;
-                    }
-                    else {
-                        return null;
-                    }
-                }
-                catch( Throwable t ) {
-                    try {
-                        if( support.isSubscribed() ) {
-                            logger.warn("Unable to provision test virtual machine under label " + label + ": " + t.getMessage());
+                        if( vm != null && desiredState != null ) {
+                            setState(support, vm, desiredState);
+                        }
+                        if( vlanId != null && vm.getProviderVlanId().equalsIgnoreCase(vlanId) && id != null ) {
+                            return id;
+                        }
+                        else if( vlanId == null && id != null ) {
+                            return id;
+                        }
+                        else {
+                            return null;
                         }
                     }
-                    catch( Throwable ignore ) {
-                        // ignore
+                    catch( Throwable t ) {
+                        try {
+                            if( support.isSubscribed() ) {
+                                logger.warn("Unable to provision test virtual machine under label " + label + ": " + t.getMessage());
+                            }
+                        }
+                        catch( Throwable ignore ) {
+                            // ignore
+                        }
                     }
                 }
             }
+            return null;
         }
-        return null;
     }
 
     public @Nullable String getTestVMProductId() {
@@ -601,38 +674,40 @@ public class ComputeResources {
     }
 
     public @Nullable String getTestVolumeId( @Nonnull String label, boolean provisionIfNull, @Nullable VolumeFormat desiredFormat, @Nullable String preferredDataCenterId ) {
-        if( label.equals(DaseinTestManager.STATELESS) ) {
-            for( Map.Entry<String, String> entry : testVolumes.entrySet() ) {
-                if( !entry.getKey().equals(DaseinTestManager.REMOVED) ) {
-                    String id = entry.getValue();
+        synchronized( testVolumes.lock(label) ) {
+            if( label.equals(DaseinTestManager.STATELESS) ) {
+                for( Map.Entry<String, String> entry : testVolumes.entrySet() ) {
+                    if( !entry.getKey().equals(DaseinTestManager.REMOVED) ) {
+                        String id = entry.getValue();
 
-                    if( id != null ) {
-                        return id;
+                        if( id != null ) {
+                            return id;
+                        }
                     }
                 }
             }
-        }
-        String id = testVolumes.get(label);
+            String id = testVolumes.get(label);
 
-        if( id != null ) {
-            return id;
-        }
-        if( provisionIfNull ) {
-            ComputeServices services = provider.getComputeServices();
+            if( id != null ) {
+                return id;
+            }
+            if( provisionIfNull ) {
+                ComputeServices services = provider.getComputeServices();
 
-            if( services != null ) {
-                VolumeSupport support = services.getVolumeSupport();
+                if( services != null ) {
+                    VolumeSupport support = services.getVolumeSupport();
 
-                if( support != null ) {
-                    try {
-                        return provisionVolume(support, label, "dsnvol" + ( System.currentTimeMillis() % 10000 ), desiredFormat, preferredDataCenterId);
-                    } catch( Throwable ignore ) {
-                        return null;
+                    if( support != null ) {
+                        try {
+                            return provisionVolume(support, label, "dsnvol" + ( System.currentTimeMillis() % 10000 ), desiredFormat, preferredDataCenterId);
+                        } catch( Throwable ignore ) {
+                            return null;
+                        }
                     }
                 }
             }
+            return null;
         }
-        return null;
     }
 
     public @Nullable String getTestVolumeProductId() {
@@ -883,340 +958,356 @@ public class ComputeResources {
     }
 
     public @Nonnull String provisionImage( @Nonnull MachineImageSupport support, @Nonnull String label, @Nonnull String namePrefix, @Nullable String vmId ) throws CloudException, InternalException {
-        VirtualMachineSupport vmSupport = null;
+        Timeline.Span span = Timeline.begin("provision", "Image");
 
-        ComputeServices services = provider.getComputeServices();
+        try {
+            namePrefix = Shard.tag(namePrefix);
+            VirtualMachineSupport vmSupport = null;
 
-        if( services != null ) {
-            vmSupport = services.getVirtualMachineSupport();
-        }
-        if( vmSupport == null ) {
-            throw new CloudException("Unable to provision a machine image because Dasein Cloud is showing no VM support");
-        }
-        if( vmId == null ) {
-            vmId = getTestVmId(DaseinTestManager.STATEFUL, VmState.RUNNING, true, null);
+            ComputeServices services = provider.getComputeServices();
+
+            if( services != null ) {
+                vmSupport = services.getVirtualMachineSupport();
+            }
+            if( vmSupport == null ) {
+                throw new CloudException("Unable to provision a machine image because Dasein Cloud is showing no VM support");
+            }
             if( vmId == null ) {
-                throw new CloudException("Could not identify a VM for imaging");
+                vmId = getTestVmId(DaseinTestManager.STATEFUL, VmState.RUNNING, true, null);
+                if( vmId == null ) {
+                    throw new CloudException("Could not identify a VM for imaging");
+                }
             }
-        }
-        VirtualMachine vm = vmSupport.getVirtualMachine(vmId);
+            VirtualMachine vm = vmSupport.getVirtualMachine(vmId);
 
-        if( vm == null ) {
-            throw new CloudException("Could not identify a VM for imaging");
-        }
-        String imageId = vm.getProviderMachineImageId();
-        MachineImage image = support.getImage(imageId);
+            if( vm == null ) {
+                throw new CloudException("Could not identify a VM for imaging");
+            }
+            String imageId = vm.getProviderMachineImageId();
+            MachineImage image = support.getImage(imageId);
 
-        if( image == null || support.getCapabilities().supportsImageCapture(image.getType()) ) {
-            prepareVmForImaging(vm, vmSupport, support);
+            if( image == null || support.getCapabilities().supportsImageCapture(image.getType()) ) {
+                prepareVmForImaging(vm, vmSupport, support);
 
-            String id = ImageCreateOptions.getInstance(vm, namePrefix + ( System.currentTimeMillis() % 10000 ), "Test machine image with label " + label).build(provider);
+                String id = ImageCreateOptions.getInstance(vm, namePrefix + ( System.currentTimeMillis() % 10000 ), "Test machine image with label " + label).build(provider);
 
-            synchronized ( testMachineImages ) {
-                while( testMachineImages.containsKey(label) ) {
-                    label = label + random.nextInt(9);
-                }
-                testMachineImages.put(label, id);
+                testMachineImages.register(label, id);
+                return id;
             }
-            return id;
-        }
-        else if( !support.getCapabilities().identifyLocalBundlingRequirement().equals(Requirement.REQUIRED) ) {
-            Iterator<MachineImageFormat> formats = support.getCapabilities().listSupportedFormatsForBundling().iterator();
-            MachineImageFormat format = ( formats.hasNext() ? formats.next() : null );
+            else if( !support.getCapabilities().identifyLocalBundlingRequirement().equals(Requirement.REQUIRED) ) {
+                Iterator<MachineImageFormat> formats = support.getCapabilities().listSupportedFormatsForBundling().iterator();
+                MachineImageFormat format = ( formats.hasNext() ? formats.next() : null );
 
-            if( format != null ) {
-                String id = support.bundleVirtualMachine(vmId, format, "dsnimg" + ( System.currentTimeMillis() % 100000 ), "dsnimg");
+                if( format != null ) {
+                    String id = support.bundleVirtualMachine(vmId, format, "dsnimg" + ( System.currentTimeMillis() % 100000 ), "dsnimg");
 
-                synchronized ( testMachineImages ) {
-                    while( testMachineImages.containsKey(label) ) {
-                        label = label + random.nextInt(9);
-                    }
-                    testMachineImages.put(label, id);
+                    testMachineImages.register(label, id);
+                    return id;
                 }
-                return id;
             }
+            throw new CloudException("No mechanism exists for provisioning images from a virtual machine");
+        }
+        finally {
+            span.end();
         }
-        throw new CloudException("No mechanism exists for provisioning images from a virtual machine");
     }
 
     public @Nonnull String provisionSnapshot( @SuppressWarnings("UnusedParameters") @Nonnull SnapshotSupport support, @Nonnull String label, @Nonnull String namePrefix, @Nullable String volumeId ) throws CloudException, InternalException {
-        SnapshotCreateOptions options;
+        Timeline.Span span = Timeline.begin("provision", "Snapshot");
+
+        try {
+            namePrefix = Shard.tag(namePrefix);
+            SnapshotCreateOptions options;
 
-        if( volumeId == null ) {
-            volumeId = getTestVolumeId(DaseinTestManager.STATEFUL + ( System.currentTimeMillis() % 1000 ), true, null, null);
             if( volumeId == null ) {
-                throw new CloudException("No volume from which to create a snapshot");
+                volumeId = getTestVolumeId(DaseinTestManager.STATEFUL + ( System.currentTimeMillis() % 1000 ), true, null, null);
+                if( volumeId == null ) {
+                    throw new CloudException("No volume from which to create a snapshot");
+                }
             }
-        }
-        @SuppressWarnings("ConstantConditions") VolumeSupport vs = provider.getComputeServices().getVolumeSupport();
+            @SuppressWarnings("ConstantConditions") VolumeSupport vs = provider.getComputeServices().getVolumeSupport();
 
-        if( vs != null ) {
-            Volume volume = vs.getVolume(volumeId);
+            if( vs != null ) {
+                Volume volume = vs.getVolume(volumeId);
 
-            if( volume != null ) {
-                long timeout = System.currentTimeMillis() + ( CalendarWrapper.MINUTE * 20L );
-
-                while( timeout > System.currentTimeMillis() ) {
-                    try {
-                        Thread.sleep(15000L);
-                    } catch( InterruptedException ignore ) {
-                    }
-                    try {
-                        volume = vs.getVolume(volumeId);
-                    } catch( Throwable ignore ) {
-                    }
-                    if( volume == null || volume.getCurrentState().equals(VolumeState.AVAILABLE) || volume.getCurrentState().equals(VolumeState.DELETED) ) {
-                        break;
-                    }
+                if( volume != null ) {
+                    volume = StateWaiter.getInstance("Volume").withTimeout(CalendarWrapper.MINUTE * 20L)
+                            .await(volumeId, CloudStates.volume(vs), StateWaiter.inOrGone(VolumeState.AVAILABLE, VolumeState.DELETED));
                 }
-            }
-            if( volume != null && volume.getProviderVirtualMachineId() == null && support.getCapabilities().identifyAttachmentRequirement().equals(Requirement.REQUIRED) ) {
-                String vmId = getTestVmId(DaseinTestManager.STATEFUL, VmState.RUNNING, true, volume.getProviderDataCenterId());
+                if( volume != null && volume.getProviderVirtualMachineId() == null && support.getCapabilities().identifyAttachmentRequirement().equals(Requirement.REQUIRED) ) {
+                    String vmId = getTestVmId(DaseinTestManager.STATEFUL, VmState.RUNNING, true, volume.getProviderDataCenterId());
 
-                if( vmId != null ) {
-                    @SuppressWarnings("ConstantConditions") VirtualMachine vm = provider.getComputeServices().getVirtualMachineSupport().getVirtualMachine(vmId);
+                    if( vmId != null ) {
+                        @SuppressWarnings("ConstantConditions") VirtualMachine vm = provider.getComputeServices().getVirtualMachineSupport().getVirtualMachine(vmId);
 
-                    if( vm != null ) {
-                        for( String deviceId : vs.getCapabilities().listPossibleDeviceIds(vm.getPlatform()) ) {
-                            try {
-                                vs.attach(volumeId, vmId, deviceId);
-                                break;
-                            } catch( Throwable ignore ) {
-                                // ignore
+                        if( vm != null ) {
+                            for( String deviceId : vs.getCapabilities().listPossibleDeviceIds(vm.getPlatform()) ) {
+                                try {
+                                    vs.attach(volumeId, vmId, deviceId);
+                                    break;
+                                } catch( Throwable ignore ) {
+                                    // ignore
+                                }
                             }
                         }
                     }
                 }
             }
-        }
-        options = SnapshotCreateOptions.getInstanceForCreate(volumeId, namePrefix + ( System.currentTimeMillis() % 10000 ), "Dasein Snapshot Test " + label);
-        String id = options.build(provider);
+            options = SnapshotCreateOptions.getInstanceForCreate(volumeId, namePrefix + ( System.currentTimeMillis() % 10000 ), "Dasein Snapshot Test " + label);
+            String id = options.build(provider);
 
-        if( id == null ) {
-            throw new CloudException("Unable to create a snapshot");
-        }
-        synchronized ( testSnapshots ) {
-            while( testSnapshots.containsKey(label) ) {
-                label = label + random.nextInt(9);
+            if( id == null ) {
+                throw new CloudException("Unable to create a snapshot");
             }
-            testSnapshots.put(label, id);
+            testSnapshots.register(label, id);
+            return id;
+        }
+        finally {
+            span.end();
         }
-        return id;
-
     }
 
     public @Nonnull Iterable<String> provisionManyVMs( @Nonnull VirtualMachineSupport support, @Nonnull String label, @Nonnull VMLaunchOptions options, @Nullable String preferredDataCenter, int count ) throws CloudException, InternalException {
+        return launchManyVMs(support, label, tag(options), preferredDataCenter, count);
+    }
 
-        if( preferredDataCenter != null ) {
-            options.inDataCenter(preferredDataCenter);
-        }
-        if( options.getBootstrapUser() == null && Requirement.REQUIRED.equals(support.getCapabilities().identifyPasswordRequirement(testImagePlatform)) ) {
-            options.withBootstrapUser("dasein", "x" + random.nextInt(100000) + System.currentTimeMillis());
-        }
-        if( options.getBootstrapKey() == null && Requirement.REQUIRED.equals(support.getCapabilities().identifyShellKeyRequirement(testImagePlatform)) ) {
-            IdentityResources identity = DaseinTestManager.getIdentityResources();
+    private @Nonnull Iterable<String> launchManyVMs( @Nonnull VirtualMachineSupport support, @Nonnull String label, @Nonnull VMLaunchOptions options, @Nullable String preferredDataCenter, int count ) throws CloudException, InternalException {
+        Timeline.Span span = Timeline.begin("provision", "VMs");
+
+        try {
+            if( preferredDataCenter != null ) {
+                options.inDataCenter(preferredDataCenter);
+            }
+            if( options.getBootstrapUser() == null && Requirement.REQUIRED.equals(support.getCapabilities().identifyPasswordRequirement(testImagePlatform)) ) {
+                options.withBootstrapUser("dasein", "x" + random.nextInt(100000) + System.currentTimeMillis());
+            }
+            if( options.getBootstrapKey() == null && Requirement.REQUIRED.equals(support.getCapabilities().identifyShellKeyRequirement(testImagePlatform)) ) {
+                IdentityResources identity = DaseinTestManager.getIdentityResources();
 
-            if( identity != null ) {
-                String keypairId = identity.getTestKeypairId(DaseinTestManager.STATEFUL, true);
+                if( identity != null ) {
+                    String keypairId = identity.getTestKeypairId(DaseinTestManager.STATEFUL, true);
 
-                if( keypairId != null ) {
-                    options.withBoostrapKey(keypairId);
+                    if( keypairId != null ) {
+                        options.withBoostrapKey(keypairId);
+                    }
                 }
             }
-        }
-        if( options.getVlanId() == null && Requirement.REQUIRED.equals(support.getCapabilities().identifyVlanRequirement()) ) {
-            NetworkResources network = DaseinTestManager.getNetworkResources();
+            if( options.getVlanId() == null && Requirement.REQUIRED.equals(support.getCapabilities().identifyVlanRequirement()) ) {
+                NetworkResources network = DaseinTestManager.getNetworkResources();
 
-            if( network != null ) {
-                String networkId = network.getTestVLANId(DaseinTestManager.STATEFUL, true, preferredDataCenter);
+                if( network != null ) {
+                    String networkId = network.getTestVLANId(DaseinTestManager.STATEFUL, true, preferredDataCenter);
 
-                if( networkId == null ) {
-                    networkId = network.getTestVLANId(DaseinTestManager.STATELESS, false, preferredDataCenter);
-                }
-                String subnetId = network.getTestSubnetId(DaseinTestManager.STATEFUL, true, networkId, preferredDataCenter);
+                    if( networkId == null ) {
+                        networkId = network.getTestVLANId(DaseinTestManager.STATELESS, false, preferredDataCenter);
+                    }
+                    String subnetId = network.getTestSubnetId(DaseinTestManager.STATEFUL, true, networkId, preferredDataCenter);
 
-                try {
-                    if( networkId != null || subnetId != null ) {
-                        if( subnetId != null ) {
-                            @SuppressWarnings("ConstantConditions") Subnet subnet = provider.getNetworkServices().getVlanSupport().getSubnet(subnetId);
+                    try {
+                        if( networkId != null || subnetId != null ) {
+                            if( subnetId != null ) {
+                                @SuppressWarnings("ConstantConditions") Subnet subnet = provider.getNetworkServices().getVlanSupport().getSubnet(subnetId);
 
-                            if( subnet != null ) {
-                                String dcId = subnet.getProviderDataCenterId();
+                                if( subnet != null ) {
+                                    String dcId = subnet.getProviderDataCenterId();
 
-                                if( dcId == null ) {
-                                    for( DataCenter dc : provider.getDataCenterServices().listDataCenters(provider.getContext().getRegionId()) ) {
-                                        if( ( dc.isActive() && dc.isAvailable() ) || dcId == null ) {
-                                            dcId = dc.getProviderDataCenterId();
+                                    if( dcId == null ) {
+                                        for( DataCenter dc : provider.getDataCenterServices().listDataCenters(provider.getContext().getRegionId()) ) {
+                                            if( ( dc.isActive() && dc.isAvailable() ) || dcId == null ) {
+                                                dcId = dc.getProviderDataCenterId();
+                                            }
                                         }
                                     }
+                                    options.inSubnet(null, dcId, networkId, subnetId);
                                 }
-                                options.inSubnet(null, dcId, networkId, subnetId);
                             }
-                        }
-                        else {
-                            @SuppressWarnings("ConstantConditions") VLAN vlan = provider.getNetworkServices().getVlanSupport().getVlan(networkId);
+                            else {
+                                @SuppressWarnings("ConstantConditions") VLAN vlan = provider.getNetworkServices().getVlanSupport().getVlan(networkId);
 
-                            if( vlan != null ) {
-                                String dcId = vlan.getProviderDataCenterId();
+                                if( vlan != null ) {
+                                    String dcId = vlan.getProviderDataCenterId();
 
-                                if( dcId == null ) {
-                                    for( DataCenter dc : provider.getDataCenterServices().listDataCenters(provider.getContext().getRegionId()) ) {
-                                        if( ( dc.isActive() && dc.isAvailable() ) || dcId == null ) {
-                                            dcId = dc.getProviderDataCenterId();
-                                            if (dcId.equals(preferredDataCenter)) // Go with preferred one, else go with last one.
-                                                break;
+                                    if( dcId == null ) {
+                                        for( DataCenter dc : provider.getDataCenterServices().listDataCenters(provider.getContext().getRegionId()) ) {
+                                            if( ( dc.isActive() && dc.isAvailable() ) || dcId == null ) {
+                                                dcId = dc.getProviderDataCenterId();
+                                                if (dcId.equals(preferredDataCenter)) // Go with preferred one, else go with last one.
+                                                    break;
+                                            }
                                         }
                                     }
+                                    options.inVlan(null, dcId, networkId);
                                 }
-                                options.inVlan(null, dcId, networkId);
                             }
                         }
+                    } catch( NullPointerException ignore ) {
+                        // ignore the fiasco
                     }
-                } catch( NullPointerException ignore ) {
-                    // ignore the fiasco
                 }
             }
-        }
-        if( options.getStaticIpIds().length < 1 && Requirement.REQUIRED.equals(support.getCapabilities().identifyStaticIPRequirement()) ) {
-            NetworkResources network = DaseinTestManager.getNetworkResources();
+            if( options.getStaticIpIds().length < 1 && Requirement.REQUIRED.equals(support.getCapabilities().identifyStaticIPRequirement()) ) {
+                NetworkResources network = DaseinTestManager.getNetworkResources();
 
-            if( network != null ) {
-                String ipId;
+                if( network != null ) {
+                    String ipId;
 
-                if( options.getVlanId() != null ) {
-                    ipId = network.getTestStaticIpId(label, true, null, true, options.getVlanId());
-                }
-                else {
-                    ipId = network.getTestStaticIpId(label, true, null, false, null);
-                }
-                if( ipId != null ) {
-                    options.withStaticIps(ipId);
+                    if( options.getVlanId() != null ) {
+                        ipId = network.getTestStaticIpId(label, true, null, true, options.getVlanId());
+                    }
+                    else {
+                        ipId = network.getTestStaticIpId(label, true, null, false, null);
+                    }
+                    if( ipId != null ) {
+                        options.withStaticIps(ipId);
+                    }
                 }
             }
-        }
-        if( options.getRootVolumeProductId() == null && Requirement.REQUIRED.equals(support.getCapabilities().identifyRootVolumeRequirement()) && testVolumeProductId != null ) {
-            options.withRootVolumeProduct(testVolumeProductId);
-        }
-        options.withMetaData("dsntestcase", "true");
+            if( options.getRootVolumeProductId() == null && Requirement.REQUIRED.equals(support.getCapabilities().identifyRootVolumeRequirement()) && testVolumeProductId != null ) {
+                options.withRootVolumeProduct(testVolumeProductId);
+            }
+            options.withMetaData("dsntestcase", "true");
 
 
-        Iterable<String> ids = options.buildMany(provider, count);
+            Iterable<String> ids = options.buildMany(provider, count);
 
-        for( String id : ids ) {
-            synchronized ( testVMs ) {
-                while( testVMs.containsKey(label) ) {
-                    label = label + random.nextInt(9);
-                }
-                testVMs.put(label, id);
+            for( String id : ids ) {
+                testVMs.register(label, id);
             }
+            return ids;
+        }
+        finally {
+            span.end();
         }
-        return ids;
     }
 
     public @Nonnull String provisionVM( @Nonnull VirtualMachineSupport support, @Nonnull String label, @Nonnull VMLaunchOptions options, @Nullable String preferredDataCenter ) throws CloudException, InternalException {
+        return launchVM(support, label, tag(options), preferredDataCenter);
+    }
 
-        if( preferredDataCenter != null ) {
-            options.inDataCenter(preferredDataCenter);
+    /**
+     * Tags the name of caller-built launch options with this shard, so VMs launched from them are told apart from
+     * those of other shards sharing the account. The options of an unsharded run are returned as they are.
+     * @param options the launch options as built by the caller
+     * @return the options to launch with
+     */
+    private @Nonnull VMLaunchOptions tag( @Nonnull VMLaunchOptions options ) {
+        if( !Shard.isSharded() ) {
+            return options;
         }
-        if( options.getBootstrapUser() == null && Requirement.REQUIRED.equals(support.getCapabilities().identifyPasswordRequirement(testImagePlatform)) ) {
-            options.withBootstrapUser("dasein", "x" + random.nextInt(100000) + System.currentTimeMillis());
+        // copy() leaves out the labels and the public IP association
+        VMLaunchOptions tagged = options.copy(Shard.tag(options.getFriendlyName()), options.getHostName());
+
+        if( options.getLabels() != null ) {
+            tagged.withLabels(options.getLabels());
         }
-        if( options.getBootstrapKey() == null && !Requirement.NONE.equals(support.getCapabilities().identifyShellKeyRequirement(testImagePlatform)) ) {
-            IdentityResources identity = DaseinTestManager.getIdentityResources();
+        return tagged.withAssociatePublicIpAddress(options.isAssociatePublicIpAddress());
+    }
 
-            if( identity != null ) {
-                String keypairId = identity.getTestKeypairId(DaseinTestManager.STATEFUL, true);
+    private @Nonnull String launchVM( @Nonnull VirtualMachineSupport support, @Nonnull String label, @Nonnull VMLaunchOptions options, @Nullable String preferredDataCenter ) throws CloudException, InternalException {
+        Timeline.Span span = Timeline.begin("provision", "VM");
 
-                if( keypairId != null ) {
-                    options.withBootstrapKey(keypairId);
-                }
+        try {
+            if( preferredDataCenter != null ) {
+                options.inDataCenter(preferredDataCenter);
             }
-        }
-        if( options.getVlanId() == null && Requirement.REQUIRED.equals(support.getCapabilities().identifyVlanRequirement()) ) {
-            NetworkResources network = DaseinTestManager.getNetworkResources();
+            if( options.getBootstrapUser() == null && Requirement.REQUIRED.equals(support.getCapabilities().identifyPasswordRequirement(testImagePlatform)) ) {
+                options.withBootstrapUser("dasein", "x" + random.nextInt(100000) + System.currentTimeMillis());
+            }
+            if( options.getBootstrapKey() == null && !Requirement.NONE.equals(support.getCapabilities().identifyShellKeyRequirement(testImagePlatform)) ) {
+                IdentityResources identity = DaseinTestManager.getIdentityResources();
 
-            if( network != null ) {
-                String networkId = network.getTestVLANId(label, true, preferredDataCenter);
+                if( identity != null ) {
+                    String keypairId = identity.getTestKeypairId(DaseinTestManager.STATEFUL, true);
 
-                if( networkId == null ) {
-                    networkId = network.getTestVLANId(DaseinTestManager.STATELESS, false, preferredDataCenter);
+                    if( keypairId != null ) {
+                        options.withBootstrapKey(keypairId);
+                    }
                 }
-                String subnetId = network.getTestSubnetId(DaseinTestManager.STATEFUL, true, networkId, preferredDataCenter);
+            }
+            if( options.getVlanId() == null && Requirement.REQUIRED.equals(support.getCapabilities().identifyVlanRequirement()) ) {
+                NetworkResources network = DaseinTestManager.getNetworkResources();
 
-                try {
-                    if( networkId != null || subnetId != null ) {
-                        if( subnetId != null ) {
-                            @SuppressWarnings("ConstantConditions") Subnet subnet = provider.getNetworkServices().getVlanSupport().getSubnet(subnetId);
+                if( network != null ) {
+                    String networkId = network.getTestVLANId(label, true, preferredDataCenter);
 
-                            if( subnet != null ) {
-                                String dcId = subnet.getProviderDataCenterId();
+                    if( networkId == null ) {
+                        networkId = network.getTestVLANId(DaseinTestManager.STATELESS, false, preferredDataCenter);
+                    }
+                    String subnetId = network.getTestSubnetId(DaseinTestManager.STATEFUL, true, networkId, preferredDataCenter);
 
-                                if( dcId == null ) {
-                                    for( DataCenter dc : provider.getDataCenterServices().listDataCenters(provider.getContext().getRegionId()) ) {
-                                        if( ( dc.isActive() && dc.isAvailable() ) || dcId == null ) {
-                                            dcId = dc.getProviderDataCenterId();
-                                        }
-                                    }
-                                }
-                                options.inSubnet(null, dcId, networkId, subnetId);
-                            }
-                        }
-                        else {
-                            @SuppressWarnings("ConstantConditions") VLAN vlan = provider.getNetworkServices().getVlanSupport().getVlan(networkId);
+                    try {
+                        if( networkId != null || subnetId != null ) {
+                            if( subnetId != null ) {
+                                @SuppressWarnings("ConstantConditions") Subnet subnet = provider.getNetworkServices().getVlanSupport().getSubnet(subnetId);
 
-                            if( vlan != null ) {
-                                String dcId = vlan.getProviderDataCenterId();
+                                if( subnet != null ) {
+                                    String dcId = subnet.getProviderDataCenterId();
 
-                                if( dcId == null ) {
-                                    if( preferredDataCenter != null ) // If we have a preferredDataCenter, lets run with it!
-                                        dcId = preferredDataCenter;
-                                    else
-                                        // so lets just go through all the dataCenters and pick the last one we find. why?
+                                    if( dcId == null ) {
                                         for( DataCenter dc : provider.getDataCenterServices().listDataCenters(provider.getContext().getRegionId()) ) {
-                                            if( (dc.isActive() && dc.isAvailable()) || dcId == null ) {
+                                            if( ( dc.isActive() && dc.isAvailable() ) || dcId == null ) {
                                                 dcId = dc.getProviderDataCenterId();
                                             }
                                         }
+                                    }
+                                    options.inSubnet(null, dcId, networkId, subnetId);
+                                }
+                            }
+                            else {
+                                @SuppressWarnings("ConstantConditions") VLAN vlan = provider.getNetworkServices().getVlanSupport().getVlan(networkId);
+
+                                if( vlan != null ) {
+                                    String dcId = vlan.getProviderDataCenterId();
+
+                                    if( dcId == null ) {
+                                        if( preferredDataCenter != null ) // If we have a preferredDataCenter, lets run with it!
+                                            dcId = preferredDataCenter;
+                                        else
+                                            // so lets just go through all the dataCenters and pick the last one we find. why?
+                                            for( DataCenter dc : provider.getDataCenterServices().listDataCenters(provider.getContext().getRegionId()) ) {
+                                                if( (dc.isActive() && dc.isAvailable()) || dcId == null ) {
+                                                    dcId = dc.getProviderDataCenterId();
+                                                }
+                                            }
+                                    }
+                                    options.inVlan(null, dcId, networkId);
                                 }
-                                options.inVlan(null, dcId, networkId);
                             }
                         }
+                    } catch( NullPointerException ignore ) {
+                        // ignore the fiasco
                     }
-                } catch( NullPointerException ignore ) {
-                    // ignore the fiasco
                 }
             }
-        }
-        if( options.getStaticIpIds().length < 1 && Requirement.REQUIRED.equals(support.getCapabilities().identifyStaticIPRequirement()) ) {
-            NetworkResources network = DaseinTestManager.getNetworkResources();
+            if( options.getStaticIpIds().length < 1 && Requirement.REQUIRED.equals(support.getCapabilities().identifyStaticIPRequirement()) ) {
+                NetworkResources network = DaseinTestManager.getNetworkResources();
 
-            if( network != null ) {
-                String ipId;
+                if( network != null ) {
+                    String ipId;
 
-                if( options.getVlanId() != null ) {
-                    ipId = network.getTestStaticIpId(label, true, null, true, options.getVlanId());
-                }
-                else {
-                    ipId = network.getTestStaticIpId(label, true, null, false, null);
-                }
-                if( ipId != null ) {
-                    options.withStaticIps(ipId);
+                    if( options.getVlanId() != null ) {
+                        ipId = network.getTestStaticIpId(label, true, null, true, options.getVlanId());
+                    }
+                    else {
+                        ipId = network.getTestStaticIpId(label, true, null, false, null);
+                    }
+                    if( ipId != null ) {
+                        options.withStaticIps(ipId);
+                    }
                 }
             }
-        }
-        if( options.getRootVolumeProductId() == null && Requirement.REQUIRED.equals(support.getCapabilities().identifyRootVolumeRequirement()) && testVolumeProductId != null ) {
-            options.withRootVolumeProduct(testVolumeProductId);
-        }
-        options.withMetaData("dsntestcase", "true");
-        String id = options.build(provider);
-
-        synchronized ( testVMs ) {
-            while( testVMs.containsKey(label) ) {
-                label = label + random.nextInt(9);
+            if( options.getRootVolumeProductId() == null && Requirement.REQUIRED.equals(support.getCapabilities().identifyRootVolumeRequirement()) && testVolumeProductId != null ) {
+                options.withRootVolumeProduct(testVolumeProductId);
             }
-            testVMs.put(label, id);
+            options.withMetaData("dsntestcase", "true");
+            String id = options.build(provider);
+
+            testVMs.register(label, id);
+            return id;
+        }
+        finally {
+            span.end();
         }
-        return id;
     }
 
     /**
@@ -1233,6 +1324,7 @@ public class ComputeResources {
      * @throws InternalException an error occurred within Dasein Cloud provisioning the VM
      */
     public @Nonnull String provisionVM( @Nonnull VirtualMachineSupport support, @Nonnull String label, @Nonnull String namePrefix, @Nonnull String hostPrefix, @Nullable String preferredDataCenter ) throws CloudException, InternalException {
+        namePrefix = Shard.tag(namePrefix);
         String testImageId = getTestImageId(DaseinTestManager.STATELESS, false);
         if( testImageId == null ) {
             throw new CloudException("No test image exists for provisioning a virtual machine");
@@ -1244,10 +1336,11 @@ public class ComputeResources {
         metadata.put("dsnNullTag", null);
         metadata.put("dsnEmptyTag", "");
         metadata.put("dsnExtraTag", "extra");
-        return provisionVM(support, label, VMLaunchOptions.getInstance(testVMProductId, testImageId, name, host, "Test VM for stateful integration tests for Dasein Cloud").withExtendedAnalytics().withMetaData(metadata).withUserData("#!/bin/bash\necho \"dasein\""), preferredDataCenter);
+        return launchVM(support, label, VMLaunchOptions.getInstance(testVMProductId, testImageId, name, host, "Test VM for stateful integration tests for Dasein Cloud").withExtendedAnalytics().withMetaData(metadata).withUserData("#!/bin/bash\necho \"dasein\""), preferredDataCenter);
     }
 
     public @Nonnull Iterable<String> provisionManyVMs( @Nonnull VirtualMachineSupport support, @Nonnull String label, @Nonnull String namePrefix, @Nonnull String hostPrefix, @Nullable String preferredDataCenter, int count ) throws CloudException, InternalException {
+        namePrefix = Shard.tag(namePrefix);
         String testImageId = getTestImageId(DaseinTestManager.STATELESS, false);
         if( testImageId == null ) {
             throw new CloudException("No test image exists for provisioning a virtual machine");
@@ -1256,111 +1349,113 @@ public class ComputeResources {
         String name = namePrefix + "-" + now;
         String host = hostPrefix + ( now % 10000 );
 
-        return provisionManyVMs(support, label, VMLaunchOptions.getInstance(testVMProductId, testImageId, name, host, "Test VM for stateful integration tests for Dasein Cloud").withExtendedAnalytics(), preferredDataCenter, count);
+        return launchManyVMs(support, label, VMLaunchOptions.getInstance(testVMProductId, testImageId, name, host, "Test VM for stateful integration tests for Dasein Cloud").withExtendedAnalytics(), preferredDataCenter, count);
     }
 
     public @Nonnull String provisionVolume( @Nonnull VolumeSupport support, @Nonnull String label, @Nonnull String namePrefix, @Nullable VolumeFormat desiredFormat, @Nullable String preferredDataCenterId ) throws CloudException, InternalException {
-        VolumeCreateOptions options;
+        Timeline.Span span = Timeline.begin("provision", "Volume");
+
+        try {
+            namePrefix = Shard.tag(namePrefix);
+            VolumeCreateOptions options;
 
-        if( desiredFormat == null ) {
-            for( VolumeFormat fmt : support.getCapabilities().listSupportedFormats() ) {
-                if( fmt.equals(VolumeFormat.BLOCK) ) {
-                    desiredFormat = VolumeFormat.BLOCK;
-                    break;
-                }
-            }
             if( desiredFormat == null ) {
-                desiredFormat = VolumeFormat.NFS;
+                for( VolumeFormat fmt : support.getCapabilities().listSupportedFormats() ) {
+                    if( fmt.equals(VolumeFormat.BLOCK) ) {
+                        desiredFormat = VolumeFormat.BLOCK;
+                        break;
+                    }
+                }
+                if( desiredFormat == null ) {
+                    desiredFormat = VolumeFormat.NFS;
+                }
             }
-        }
-        if( support.getCapabilities().getVolumeProductRequirement().equals(Requirement.REQUIRED) && testVolumeProductId != null ) {
-            Storage<Gigabyte> size;
+            if( support.getCapabilities().getVolumeProductRequirement().equals(Requirement.REQUIRED) && testVolumeProductId != null ) {
+                Storage<Gigabyte> size;
 
-            if( support.getCapabilities().isVolumeSizeDeterminedByProduct() ) {
-                VolumeProduct prd = null;
+                if( support.getCapabilities().isVolumeSizeDeterminedByProduct() ) {
+                    VolumeProduct prd = null;
 
-                for( VolumeProduct product : support.listVolumeProducts() ) {
-                    if( product.getProviderProductId().equals(testVolumeProductId) ) {
-                        prd = product;
-                        break;
+                    for( VolumeProduct product : support.listVolumeProducts() ) {
+                        if( product.getProviderProductId().equals(testVolumeProductId) ) {
+                            prd = product;
+                            break;
+                        }
                     }
-                }
-                if( prd != null ) {
-                    size = prd.getVolumeSize();
-                    if( size == null ) {
+                    if( prd != null ) {
+                        size = prd.getVolumeSize();
+                        if( size == null ) {
+                            size = support.getCapabilities().getMinimumVolumeSize();
+                        }
+                    }
+                    else {
                         size = support.getCapabilities().getMinimumVolumeSize();
                     }
                 }
                 else {
                     size = support.getCapabilities().getMinimumVolumeSize();
                 }
-            }
-            else {
-                size = support.getCapabilities().getMinimumVolumeSize();
-            }
-            if( desiredFormat.equals(VolumeFormat.BLOCK) ) {
-                options = VolumeCreateOptions.getInstance(testVolumeProductId, size, namePrefix + ( System.currentTimeMillis() % 1000 ), "Dasein Cloud Integration Tests Volume Tests", 0);
-            }
-            else {
-                NetworkResources network = DaseinTestManager.getNetworkResources();
-                String testVlanId = null;
-
-                if( network != null ) {
-                    testVlanId = network.getTestVLANId(DaseinTestManager.STATELESS, false, preferredDataCenterId);
-                }
-                if( testVlanId != null ) {
-                    options = VolumeCreateOptions.getNetworkInstance(testVolumeProductId, testVlanId, size, namePrefix + ( System.currentTimeMillis() % 10000 ), "Dasein Cloud Integration Tests Volume Tests", 0);
+                if( desiredFormat.equals(VolumeFormat.BLOCK) ) {
+                    options = VolumeCreateOptions.getInstance(testVolumeProductId, size, namePrefix + ( System.currentTimeMillis() % 1000 ), "Dasein Cloud Integration Tests Volume Tests", 0);
                 }
                 else {
-                    options = VolumeCreateOptions.getInstance(testVolumeProductId, size, namePrefix + ( System.currentTimeMillis() % 1000 ), "Dasein Cloud Integration Tests Volume Tests", 0);
+                    NetworkResources network = DaseinTestManager.getNetworkResources();
+                    String testVlanId = null;
+
+                    if( network != null ) {
+                        testVlanId = network.getTestVLANId(DaseinTestManager.STATELESS, false, preferredDataCenterId);
+                    }
+                    if( testVlanId != null ) {
+                        options = VolumeCreateOptions.getNetworkInstance(testVolumeProductId, testVlanId, size, namePrefix + ( System.currentTimeMillis() % 10000 ), "Dasein Cloud Integration Tests Volume Tests", 0);
+                    }
+                    else {
+                        options = VolumeCreateOptions.getInstance(testVolumeProductId, size, namePrefix + ( System.currentTimeMillis() % 1000 ), "Dasein Cloud Integration Tests Volume Tests", 0);
+                    }
                 }
             }
-        }
-        else {
-            if( desiredFormat.equals(VolumeFormat.BLOCK) ) {
-                options = VolumeCreateOptions.getInstance(support.getCapabilities().getMinimumVolumeSize(), namePrefix + ( System.currentTimeMillis() % 10000 ), "Dasein Test Integration tests volume");
-            }
             else {
-                NetworkResources network = DaseinTestManager.getNetworkResources();
-                String testVlanId = null;
-
-                if( network != null ) {
-                    testVlanId = network.getTestVLANId(DaseinTestManager.STATELESS, false, preferredDataCenterId);
-                }
-                if( testVlanId != null ) {
-                    options = VolumeCreateOptions.getNetworkInstance(testVlanId, support.getCapabilities().getMinimumVolumeSize(), namePrefix + ( System.currentTimeMillis() % 10000 ), "Dasein Cloud Integration Tests Volume Tests");
+                if( desiredFormat.equals(VolumeFormat.BLOCK) ) {
+                    options = VolumeCreateOptions.getInstance(support.getCapabilities().getMinimumVolumeSize(), namePrefix + ( System.currentTimeMillis() % 10000 ), "Dasein Test Integration tests volume");
                 }
                 else {
-                    options = VolumeCreateOptions.getInstance(support.getCapabilities().getMinimumVolumeSize(), namePrefix + ( System.currentTimeMillis() % 1000 ), "Dasein Cloud Integration Tests Volume Tests");
+                    NetworkResources network = DaseinTestManager.getNetworkResources();
+                    String testVlanId = null;
+
+                    if( network != null ) {
+                        testVlanId = network.getTestVLANId(DaseinTestManager.STATELESS, false, preferredDataCenterId);
+                    }
+                    if( testVlanId != null ) {
+                        options = VolumeCreateOptions.getNetworkInstance(testVlanId, support.getCapabilities().getMinimumVolumeSize(), namePrefix + ( System.currentTimeMillis() % 10000 ), "Dasein Cloud Integration Tests Volume Tests");
+                    }
+                    else {
+                        options = VolumeCreateOptions.getInstance(support.getCapabilities().getMinimumVolumeSize(), namePrefix + ( System.currentTimeMillis() % 1000 ), "Dasein Cloud Integration Tests Volume Tests");
+                    }
                 }
             }
-        }
-        if( preferredDataCenterId == null ) {
-            preferredDataCenterId = getTestDataCenterId(false);
-        }
-        if( preferredDataCenterId != null ) {
-            options.inDataCenter(preferredDataCenterId);
-        }
-        options.withMetaData("dsntestcase", "true");
-        if (support.getCapabilities().requiresVMOnCreate().equals(Requirement.REQUIRED)) {
-            String testVmId = getTestVmId(DaseinTestManager.STATEFUL, VmState.STOPPED, true, testDataCenterId);
-            options.withVirtualMachineId(testVmId);
-        }
-        String id = options.build(provider);
+            if( preferredDataCenterId == null ) {
+                preferredDataCenterId = getTestDataCenterId(false);
+            }
+            if( preferredDataCenterId != null ) {
+                options.inDataCenter(preferredDataCenterId);
+            }
+            options.withMetaData("dsntestcase", "true");
+            if (support.getCapabilities().requiresVMOnCreate().equals(Requirement.REQUIRED)) {
+                String testVmId = getTestVmId(DaseinTestManager.STATEFUL, VmState.STOPPED, true, testDataCenterId);
+                options.withVirtualMachineId(testVmId);
+            }
+            String id = options.build(provider);
 
-        Volume volume = support.getVolume(id);
+            Volume volume = support.getVolume(id);
 
-        if( volume != null && testDataCenterId == null ) {
-            testDataCenterId = volume.getProviderDataCenterId();
-        }
-        synchronized ( testVolumes ) {
-            while( testVolumes.containsKey(label) ) {
-                label = label + random.nextInt(9);
+            if( volume != null && testDataCenterId == null ) {
+                testDataCenterId = volume.getProviderDataCenterId();
             }
-            testVolumes.put(label, id);
+            testVolumes.register(label, id);
+            return id;
+        }
+        finally {
+            span.end();
         }
-        return id;
-
     }
 
     private boolean setState( @Nonnull VirtualMachineSupport support, @Nonnull VirtualMachine vm, @Nonnull VmState state ) {
@@ -1373,30 +1468,26 @@ public class ComputeResources {
             return false;
         }
         String id = vm.getProviderVirtualMachineId();
+        Timeline.Span span = Timeline.begin("wait", "VM " + state).tag("resourceId", id);
 
-        long timeout = System.currentTimeMillis() + ( CalendarWrapper.MINUTE * 20L );
-
+        try {
+            return changeState(support, vm, id, state);
+        }
+        finally {
+            span.end();
+        }
+    }
 
-        while( timeout > System.currentTimeMillis() ) {
-            if( !currentState.equals(VmState.PENDING) && !currentState.equals(VmState.PAUSING) && !currentState.equals(VmState.REBOOTING) && !currentState.equals(VmState.STOPPING) && !currentState.equals(VmState.SUSPENDING) ) {
-                break;
-            }
-            try {
-                Thread.sleep(15000L);
-            } catch( InterruptedException ignore ) {
-            }
-            try {
-                VirtualMachine v = support.getVirtualMachine(id);
+    private boolean changeState( @Nonnull VirtualMachineSupport support, @Nonnull VirtualMachine vm, @Nonnull String id, @Nonnull VmState state ) {
+        VmState currentState;
+        VirtualMachine v = StateWaiter.getInstance("VM").withTimeout(CalendarWrapper.MINUTE * 20L)
+                .await(id, CloudStates.virtualMachine(support), StateWaiter.notIn(VmState.PENDING, VmState.PAUSING, VmState.REBOOTING, VmState.STOPPING, VmState.SUSPENDING));
 
-                if( v == null ) {
-                    return state.equals(VmState.TERMINATED);
-                }
-                vm = v;
-                currentState = vm.getCurrentState();
-            } catch( Throwable ignore ) {
-                // ignore
-            }
+        if( v == null ) {
+            return false;
         }
+        vm = v;
+        currentState = vm.getCurrentState();
         try {
             if( state.equals(VmState.RUNNING) ) {
                 if( currentState.equals(VmState.PAUSED) ) {
@@ -1436,29 +1527,9 @@ public class ComputeResources {
         } catch( Throwable ignore ) {
             return false;
         }
-        timeout = System.currentTimeMillis() + ( CalendarWrapper.MINUTE * 20L );
-
-
-        while( timeout > System.currentTimeMillis() ) {
-            if( state.equals(currentState) ) {
-                return true;
-            }
-            try {
-                Thread.sleep(15000L);
-            } catch( InterruptedException ignore ) {
-            }
-            try {
-                VirtualMachine v = support.getVirtualMachine(id);
+        v = StateWaiter.getInstance("VM").withTimeout(CalendarWrapper.MINUTE * 20L)
+                .await(id, CloudStates.virtualMachine(support), StateWaiter.in(state));
 
-                if( v == null ) {
-                    return state.equals(VmState.TERMINATED);
-                }
-                vm = v;
-                currentState = vm.getCurrentState();
-            } catch( Throwable ignore ) {
-                // ignore
-            }
-        }
-        return false;
+        return (v != null && state.equals(v.getCurrentState()));
     }
 }
@@ -21,6 +21,7 @@ package org.dasein.cloud.test.compute;
 
 import org.dasein.cloud.test.DaseinTestManager;
 import org.dasein.cloud.test.ci.StatelessTopologyTests;
+import org.dasein.cloud.test.runner.ParallelSuite;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.runner.RunWith;
@@ -32,7 +33,7 @@ import org.junit.runners.Suite;
  *
  * @author George Reese
  */
-@RunWith(Suite.class)
+@RunWith(ParallelSuite.class)
 @Suite.SuiteClasses({
         StatefulVMTests.class,
         StatefulImageTests.class,
@@ -35,6 +35,9 @@ import org.dasein.cloud.compute.VirtualMachine;
 import org.dasein.cloud.compute.VirtualMachineSupport;
 import org.dasein.cloud.compute.VmState;
 import org.dasein.cloud.test.DaseinTestManager;
+import org.dasein.cloud.test.wait.CloudStates;
+import org.dasein.cloud.test.wait.SimpleExtractor;
+import org.dasein.cloud.test.wait.StateWaiter;
 import org.dasein.util.CalendarWrapper;
 import org.junit.After;
 import org.junit.AfterClass;
@@ -45,6 +48,7 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TestName;
 
+import javax.annotation.Nonnull;
 import java.util.Random;
 
 import static org.junit.Assert.*;
@@ -173,6 +177,61 @@ public class StatefulImageTests {
         }
     }
 
+    private void awaitTask(@Nonnull final AsynchronousTask<?> task, long timeout) throws Throwable {
+        StateWaiter.getInstance("Task").withMaxDelay(15000L).withTimeout(timeout).await(name.getMethodName(), new SimpleExtractor<Boolean>() {
+            @Override
+            public @Nonnull Boolean lookup(@Nonnull String id) {
+                tm.out("-->", task.isComplete() ? "Complete" : task.getPercentComplete() + "%");
+                return task.isComplete();
+            }
+        }, StateWaiter.in(true));
+        Throwable t = task.getTaskError();
+
+        if( t != null ) {
+            tm.out("-->", "Failure: " + t.getMessage());
+            throw t;
+        }
+    }
+
+    private void awaitImage(@Nonnull MachineImageSupport support, @Nonnull String imageId, long timeout) {
+        // a newly registered image may take a few lookups to show up
+        MachineImage image = StateWaiter.getInstance("Image").withTimeout(timeout).withGoneTolerance(3).await(imageId, CloudStates.image(support), StateWaiter.in(MachineImageState.ACTIVE, MachineImageState.DELETED));
+
+        tm.out("--> Current State", image == null ? null : image.getCurrentState());
+    }
+
+    private void awaitShare(@Nonnull final MachineImageSupport support, boolean shared) {
+        StateWaiter.getInstance("Image Share").withTimeout(CalendarWrapper.MINUTE * 3L).await(testImageId, new SimpleExtractor<Boolean>() {
+            @Override
+            public @Nonnull Boolean lookup(@Nonnull String imageId) throws Exception {
+                for( String share : support.listShares(imageId) ) {
+                    if( share.equals(testShareAccount) ) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        }, StateWaiter.in(shared));
+    }
+
+    private void awaitPublicShare(@Nonnull final MachineImageSupport support, boolean shared) {
+        StateWaiter.getInstance("Public Share").withTimeout(CalendarWrapper.MINUTE * 3L).await(testImageId, new SimpleExtractor<Boolean>() {
+            @Override
+            public @Nonnull Boolean lookup(@Nonnull String imageId) throws Exception {
+                return support.isImageSharedWithPublic(imageId);
+            }
+        }, StateWaiter.in(shared));
+    }
+
+    private void awaitNoShares(@Nonnull final MachineImageSupport support) {
+        StateWaiter.getInstance("Image Shares").withTimeout(CalendarWrapper.MINUTE * 3L).await(testImageId, new SimpleExtractor<Boolean>() {
+            @Override
+            public @Nonnull Boolean lookup(@Nonnull String imageId) throws Exception {
+                return support.isImageSharedWithPublic(imageId) || support.listShares(imageId).iterator().hasNext();
+            }
+        }, StateWaiter.in(false));
+    }
+
     @Test
     public void listShares() throws CloudException, InternalException {
         assumeTrue(!tm.isTestSkipped());
@@ -229,34 +288,11 @@ public class StatefulImageTests {
                         if( support.getCapabilities().supportsImageSharing() ) {
                             support.addImageShare(testImageId, testShareAccount);
 
+                            awaitShare(support, true);
+
                             boolean found = false;
 
                             shares = support.listShares(testImageId);
-
-                            long timeout = System.currentTimeMillis() + ( CalendarWrapper.MINUTE * 3L );
-
-                            while( timeout > System.currentTimeMillis() ) {
-                                found = false;
-                                for( String share : shares ) {
-                                    if( share.equals(testShareAccount) ) {
-                                        found = true;
-                                        break;
-                                    }
-                                }
-                                if( found ) {
-                                    break;
-                                }
-                                try {
-                                    Thread.sleep(15000L);
-                                }
-                                catch( InterruptedException ignore ) {
-                                }
-                                try {
-                                    shares = support.listShares(testImageId);
-                                }
-                                catch( Throwable ignore ) {
-                                }
-                            }
                             tm.out("After", shares);
                             for( String share : shares ) {
                                 if( share.equals(testShareAccount) ) {
@@ -318,34 +354,11 @@ public class StatefulImageTests {
                         if( support.getCapabilities().supportsImageSharing() ) {
                             support.removeImageShare(testImageId, testShareAccount);
 
+                            awaitShare(support, false);
+
                             boolean found = false;
 
                             shares = support.listShares(testImageId);
-
-                            long timeout = System.currentTimeMillis() + ( CalendarWrapper.MINUTE * 3L );
-
-                            while( timeout > System.currentTimeMillis() ) {
-                                found = false;
-                                for( String share : shares ) {
-                                    if( share.equals(testShareAccount) ) {
-                                        found = true;
-                                        break;
-                                    }
-                                }
-                                if( !found ) {
-                                    break;
-                                }
-                                try {
-                                    Thread.sleep(15000L);
-                                }
-                                catch( InterruptedException ignore ) {
-                                }
-                                try {
-                                    shares = support.listShares(testImageId);
-                                }
-                                catch( Throwable ignore ) {
-                                }
-                            }
                             tm.out("After", shares);
                             for( String share : shares ) {
                                 if( share.equals(testShareAccount) ) {
@@ -404,20 +417,9 @@ public class StatefulImageTests {
                         tm.out("Before", support.isImageSharedWithPublic(testImageId));
                         support.addPublicShare(testImageId);
 
-                        long timeout = ( System.currentTimeMillis() + CalendarWrapper.MINUTE * 3L );
-                        boolean shared = false;
+                        awaitPublicShare(support, true);
+                        boolean shared = support.isImageSharedWithPublic(testImageId);
 
-                        while( timeout > System.currentTimeMillis() ) {
-                            shared = support.isImageSharedWithPublic(testImageId);
-                            if( shared ) {
-                                break;
-                            }
-                            try {
-                                Thread.sleep(15000L);
-                            }
-                            catch( InterruptedException ignore ) {
-                            }
-                        }
                         tm.out("After", shared);
                         assertTrue("Image remains private", shared);
                     }
@@ -466,20 +468,9 @@ public class StatefulImageTests {
                         tm.out("Before", support.isImageSharedWithPublic(testImageId));
                         support.removePublicShare(testImageId);
 
-                        long timeout = ( System.currentTimeMillis() + CalendarWrapper.MINUTE * 3L );
-                        boolean shared = true;
+                        awaitPublicShare(support, false);
+                        boolean shared = support.isImageSharedWithPublic(testImageId);
 
-                        while( timeout > System.currentTimeMillis() ) {
-                            shared = support.isImageSharedWithPublic(testImageId);
-                            if( !shared ) {
-                                break;
-                            }
-                            try {
-                                Thread.sleep(15000L);
-                            }
-                            catch( InterruptedException ignore ) {
-                            }
-                        }
                         tm.out("After", shared);
                         assertFalse("Image remains public", shared);
                     }
@@ -532,23 +523,7 @@ public class StatefulImageTests {
                     catch( OperationNotSupportedException e ) {
                         fail("This operation should not throw an OperationNotSupportedException (just a NO-OP in clouds without sharing)");
                     }
-                    long timeout = System.currentTimeMillis() + ( CalendarWrapper.MINUTE * 3L );
-                    boolean shared;
-
-                    while( timeout > System.currentTimeMillis() ) {
-                        shared = support.isImageSharedWithPublic(testImageId);
-                        if( !shared ) {
-                            shared = support.listShares(testImageId).iterator().hasNext();
-                            if( !shared ) {
-                                break;
-                            }
-                        }
-                        try {
-                            Thread.sleep(15000L);
-                        }
-                        catch( InterruptedException ignore ) {
-                        }
-                    }
+                    awaitNoShares(support);
                     tm.out("After [Public]", support.isImageSharedWithPublic(testImageId));
                     tm.out("After [Private]", support.listShares(testImageId));
 
@@ -649,28 +624,7 @@ public class StatefulImageTests {
             tm.out("New Image", provisionedImage);
             assertNotNull("The image ID returned from provisioning the image was null", provisionedImage);
 
-            long timeout = System.currentTimeMillis() + ( CalendarWrapper.MINUTE * 20L );
-
-            while( timeout > System.currentTimeMillis() ) {
-                try {
-                    MachineImage image = support.getImage(provisionedImage);
-
-                    assertNotNull("The image disappeared after it was created, but before it became available", image);
-                    assertFalse("The image is now in a deleted state, but before it became available", MachineImageState.DELETED.equals(image.getCurrentState()));
-                    tm.out("--> Current State", image.getCurrentState());
-                    if( MachineImageState.ACTIVE.equals(image.getCurrentState()) ) {
-                        break;
-                    }
-                }
-                catch( Throwable t ) {
-                    tm.warn("Error fetching captured image " + provisionedImage);
-                }
-                try {
-                    Thread.sleep(15000L);
-                }
-                catch( InterruptedException ignore ) {
-                }
-            }
+            awaitImage(support, provisionedImage, CalendarWrapper.MINUTE * 20L);
             MachineImage image = support.getImage(provisionedImage);
 
             assertNotNull("The image disappeared after it was created, but before it became available", image);
@@ -761,28 +715,7 @@ public class StatefulImageTests {
 
             tm.out("Task", "");
 
-            long timeout = System.currentTimeMillis() + ( CalendarWrapper.MINUTE * 30L );
-
-            while( timeout > System.currentTimeMillis() ) {
-                if( task.isComplete() ) {
-                    Throwable t = task.getTaskError();
-
-                    if( t != null ) {
-                        tm.out("-->", "Failure: " + t.getMessage());
-                        throw t;
-                    }
-                    tm.out("-->", "Complete");
-                    break;
-                }
-                else {
-                    tm.out("-->", task.getPercentComplete() + "%");
-                }
-                try {
-                    Thread.sleep(15000L);
-                }
-                catch( InterruptedException ignore ) {
-                }
-            }
+            awaitTask(task, CalendarWrapper.MINUTE * 30L);
             MachineImage image = task.getResult();
 
             tm.out("New Image", image);
@@ -790,28 +723,7 @@ public class StatefulImageTests {
 
             provisionedImage = image.getProviderMachineImageId();
 
-            timeout = System.currentTimeMillis() + ( CalendarWrapper.MINUTE * 30L );
-
-            while( timeout > System.currentTimeMillis() ) {
-                try {
-                    MachineImage img = support.getImage(provisionedImage);
-
-                    assertNotNull("The image disappeared after it was created, but before it became available", img);
-                    assertFalse("The image is now in a deleted state, but before it became available", MachineImageState.DELETED.equals(img.getCurrentState()));
-                    tm.out("--> Current State", img.getCurrentState());
-                    if( MachineImageState.ACTIVE.equals(img.getCurrentState()) ) {
-                        break;
-                    }
-                }
-                catch( Throwable t ) {
-                    tm.warn("Error fetching captured image " + provisionedImage);
-                }
-                try {
-                    Thread.sleep(15000L);
-                }
-                catch( InterruptedException ignore ) {
-                }
-            }
+            awaitImage(support, provisionedImage, CalendarWrapper.MINUTE * 30L);
             image = support.getImage(provisionedImage);
 
             assertNotNull("The image disappeared after it was created, but before it became available", image);
@@ -896,28 +808,7 @@ public class StatefulImageTests {
             tm.out("New Image", provisionedImage);
             assertNotNull("The image ID returned from provisioning the image was null", provisionedImage);
 
-            long timeout = System.currentTimeMillis() + ( CalendarWrapper.MINUTE * 20L );
-
-            while( timeout > System.currentTimeMillis() ) {
-                try {
-                    MachineImage image = support.getImage(provisionedImage);
-
-                    assertNotNull("The image disappeared after it was created, but before it became available", image);
-                    assertFalse("The image is now in a deleted state, but before it became available", MachineImageState.DELETED.equals(image.getCurrentState()));
-                    tm.out("--> Current State", image.getCurrentState());
-                    if( MachineImageState.ACTIVE.equals(image.getCurrentState()) ) {
-                        break;
-                    }
-                }
-                catch( Throwable t ) {
-                    tm.warn("Error fetching captured image " + provisionedImage);
-                }
-                try {
-                    Thread.sleep(15000L);
-                }
-                catch( InterruptedException ignore ) {
-                }
-            }
+            awaitImage(support, provisionedImage, CalendarWrapper.MINUTE * 20L);
             MachineImage image = support.getImage(provisionedImage);
 
             assertNotNull("The image disappeared after it was created, but before it became available", image);
@@ -963,27 +854,7 @@ public class StatefulImageTests {
                                 options.withMetaData("dsntestcase", "true");
 
                                 provisionedImage = support.registerImageBundle(options).getProviderMachineImageId();
-                                long timeout = System.currentTimeMillis() + ( CalendarWrapper.MINUTE * 20L );
-
-                                while( timeout > System.currentTimeMillis() ) {
-                                    try {
-                                        MachineImage image = support.getImage(provisionedImage);
-
-                                        assertNotNull("The image disappeared after it was created, but before it became available", image);
-                                        tm.out("--> Current State", image.getCurrentState());
-                                        if( MachineImageState.ACTIVE.equals(image.getCurrentState()) ) {
-                                            break;
-                                        }
-                                    }
-                                    catch( Throwable t ) {
-                                        tm.warn("Error fetching captured image " + provisionedImage);
-                                    }
-                                    try {
-                                        Thread.sleep(15000L);
-                                    }
-                                    catch( InterruptedException ignore ) {
-                                    }
-                                }
+                                awaitImage(support, provisionedImage, CalendarWrapper.MINUTE * 20L);
                                 MachineImage image = support.getImage(provisionedImage);
 
                                 assertNotNull("The image disappeared after it was created, but before it became available", image);
@@ -1060,29 +931,7 @@ public class StatefulImageTests {
 
                             support.bundleVirtualMachineAsync(testVMId, fmt, "dsnbucket" + random.nextInt(100000), "dsnimgbundle", task);
                             tm.out("Task", "");
-
-                                long timeout = System.currentTimeMillis() + ( CalendarWrapper.MINUTE * 20L );
-
-                            while( timeout > System.currentTimeMillis() ) {
-                                if( task.isComplete() ) {
-                                    Throwable t = task.getTaskError();
-
-                                    if( t != null ) {
-                                        tm.out("-->", "Failure: " + t.getMessage());
-                                        throw t;
-                                    }
-                                    try {
-                                        Thread.sleep(15000L);
-                                    }
-                                    catch( InterruptedException ignore ) {
-                                    }
-                                }
-                                else {
-                                    tm.out("-->", task.getPercentComplete() + "%");
-                                }
-                                try { Thread.sleep(15000L); }
-                                catch( InterruptedException ignore ) { }
-                            }
+                            awaitTask(task, CalendarWrapper.MINUTE * 20L);
                             bundleLocation = task.getResult();
 
                             tm.out("Bundle Location", bundleLocation);
@@ -1093,40 +942,7 @@ public class StatefulImageTests {
                             options.withMetaData("dsntestcase", "true");
 
                             provisionedImage = support.registerImageBundle(options).getProviderMachineImageId();
-
-                                timeout = System.currentTimeMillis() + ( CalendarWrapper.MINUTE * 20L );
-
-                            while( timeout > System.currentTimeMillis() ) {
-                                try {
-                                    MachineImage img = support.getImage(provisionedImage);
-
-                                    assertNotNull("The image disappeared after it was created, but before it became available", img);
-                                    tm.out("--> Current State", img.getCurrentState());
-                                    if( MachineImageState.ACTIVE.equals(img.getCurrentState()) ) {
-                                        break;
-                                    }
-                                    try {
-                                        Thread.sleep(15000L);
-                                    }
-                                    catch( InterruptedException ignore ) {
-                                    }
-                                }
-                                MachineImage image = support.getImage(provisionedImage);
-
-                                assertNotNull("The image disappeared after it was created, but before it became available", image);
-                                assertEquals("The image never entered an ACTIVE state during the allotted time window", MachineImageState.ACTIVE, image.getCurrentState());
-                            }
-                            else {
-                                try {
-                                    support.bundleVirtualMachineAsync(testVMId, MachineImageFormat.OVF, "dsnbdlfail" + random.nextInt(100000), "dsnimgbundle", task);
-                                    fail("Bundling completed even though bundling is not supposed to be supported");
-                                }
-                                catch( Throwable t ) {
-                                    tm.warn("Error fetching captured image " + provisionedImage);
-                                }
-                                try { Thread.sleep(15000L); }
-                                catch( InterruptedException ignore ) { }
-                            }
+                            awaitImage(support, provisionedImage, CalendarWrapper.MINUTE * 20L);
                             MachineImage image = support.getImage(provisionedImage);
 
                             assertNotNull("The image disappeared after it was created, but before it became available", image);
@@ -0,0 +1,325 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.compute;
+
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.compute.ComputeServices;
+import org.dasein.cloud.compute.Snapshot;
+import org.dasein.cloud.compute.SnapshotFilterOptions;
+import org.dasein.cloud.compute.SnapshotSupport;
+import org.dasein.cloud.compute.VMFilterOptions;
+import org.dasein.cloud.compute.VirtualMachine;
+import org.dasein.cloud.compute.VirtualMachineSupport;
+import org.dasein.cloud.compute.Volume;
+import org.dasein.cloud.compute.VolumeFilterOptions;
+import org.dasein.cloud.compute.VolumeSupport;
+import org.dasein.cloud.test.DaseinTestManager;
+import org.dasein.cloud.test.cassette.Cassette;
+import org.dasein.cloud.test.metrics.InstrumentedProvider;
+import org.dasein.cloud.test.metrics.ListingThroughput;
+import org.dasein.cloud.test.metrics.ScaleCurves;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Runs the list and filter tests of virtual machines, volumes and snapshots with growing numbers of resources in the
+ * account. The tests only run in scale mode (see {@link ScaleCurves}). For each type, resources are provisioned in
+ * batches up to each configured level, alternating between names the filter tests match and names they do not,
+ * and the full and filtered listings are measured at every level. The filtered listing must return every matching
+ * resource at every level. If the cloud refuses to provision more resources, the curve ends at the last level
+ * reached.
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+public class StatefulScaleTests {
+    static private final String FILTER = ".*[Ff][Ii][Ll][Tt][Ee][Rr].*";
+
+    static private DaseinTestManager tm;
+
+    @BeforeClass
+    static public void configure() {
+        tm = new DaseinTestManager(StatefulScaleTests.class);
+    }
+
+    @AfterClass
+    static public void cleanUp() {
+        if( tm != null ) {
+            tm.close();
+        }
+    }
+
+    @Rule
+    public final TestName name = new TestName();
+
+    private String testDataCenterId;
+
+    public StatefulScaleTests() { }
+
+    @Before
+    public void before() {
+        tm.begin(name.getMethodName());
+        assumeTrue(!tm.isTestSkipped() && ScaleCurves.isEnabled());
+        testDataCenterId = DaseinTestManager.getDefaultDataCenterId(false);
+    }
+
+    @After
+    public void after() {
+        tm.end();
+    }
+
+    /**
+     * The resources of one type being grown: how to provision a batch of them and how to list them.
+     * @param <T> the type of resource
+     */
+    private abstract class Population<T> {
+        final String api;
+
+        Population(@Nonnull String api) {
+            this.api = api;
+        }
+
+        /**
+         * Provisions a batch of resources.
+         * @param count the number of resources to provision
+         * @param matching true if the filter tests should match the names of the resources
+         * @return the IDs of the new resources
+         * @throws CloudException an error occurred in the cloud provisioning the resources
+         * @throws InternalException an error occurred within the driver provisioning the resources
+         */
+        abstract @Nonnull Collection<String> provision(int count, boolean matching) throws CloudException, InternalException;
+
+        abstract @Nullable Iterable<T> list() throws CloudException, InternalException;
+
+        abstract @Nullable Iterable<T> filter() throws CloudException, InternalException;
+
+        abstract @Nonnull String getId(@Nonnull T resource);
+    }
+
+    private @Nonnull CloudProvider getProvider() {
+        CloudProvider provider = tm.getProvider();
+
+        // recorded and replayed calls have to go through the proxies
+        if( provider instanceof InstrumentedProvider && !Cassette.isActive() ) {
+            return ((InstrumentedProvider)provider).getDelegate();
+        }
+        return provider;
+    }
+
+    private <T> void grow(@Nonnull final Population<T> population) throws CloudException, InternalException {
+        Set<String> matching = new HashSet<String>();
+        int batchSize = ScaleCurves.getBatchSize();
+        int provisioned = 0;
+        boolean match = true;
+
+        for( int level : ScaleCurves.getLevels() ) {
+            try {
+                while( provisioned < level ) {
+                    Collection<String> ids = population.provision(Math.min(batchSize, level - provisioned), match);
+
+                    if( ids.isEmpty() ) {
+                        throw new CloudException("No resources were provisioned");
+                    }
+                    if( match ) {
+                        matching.addAll(ids);
+                    }
+                    provisioned += ids.size();
+                    match = !match;
+                }
+            }
+            catch( CloudException e ) {
+                tm.warn("Stopped at " + provisioned + " resources instead of " + level + ": " + e.getMessage());
+                return;
+            }
+            tm.out("Resources", provisioned);
+            ListingThroughput.Stats full = ListingThroughput.time(new ListingThroughput.Listing() {
+                @Override
+                public Iterable<?> list() throws CloudException, InternalException {
+                    return population.list();
+                }
+            }, ScaleCurves.getRepetitions());
+            ListingThroughput.Stats filtered = ListingThroughput.time(new ListingThroughput.Listing() {
+                @Override
+                public Iterable<?> list() throws CloudException, InternalException {
+                    return population.filter();
+                }
+            }, ScaleCurves.getRepetitions());
+
+            ScaleCurves.record(population.api, level, full);
+            ScaleCurves.record(population.api + "(filter)", level, filtered);
+            tm.out(population.api + " @" + level, full);
+            tm.out(population.api + "(filter) @" + level, filtered);
+
+            Iterable<T> resources = population.filter();
+            Set<String> found = new HashSet<String>();
+
+            assertNotNull("Filtering must return at least an empty collections and may not be null", resources);
+            for( T resource : resources ) {
+                found.add(population.getId(resource));
+            }
+            for( String id : matching ) {
+                assertTrue("Did not find the test filter resource " + id + " among the filtered resources with " + provisioned + " resources", found.contains(id));
+            }
+        }
+    }
+
+    @Test
+    public void vmScale() throws CloudException, InternalException {
+        ComputeServices services = tm.getProvider().getComputeServices();
+        final VirtualMachineSupport support = (services == null ? null : services.getVirtualMachineSupport());
+        final VirtualMachineSupport direct = (support == null ? null : getProvider().getComputeServices().getVirtualMachineSupport());
+        final ComputeResources resources = DaseinTestManager.getComputeResources();
+
+        if( support == null || direct == null || resources == null ) {
+            tm.ok("No virtual machine support in this cloud");
+            return;
+        }
+        grow(new Population<VirtualMachine>("VirtualMachine.listVirtualMachines") {
+            @Override
+            @Nonnull Collection<String> provision(int count, boolean matching) throws CloudException, InternalException {
+                List<String> ids = new ArrayList<String>();
+
+                for( String id : resources.provisionManyVMs(support, "scale", matching ? "dasein-scale-filter" : "dasein-scale", "dsnscale", testDataCenterId, count) ) {
+                    ids.add(id);
+                }
+                return ids;
+            }
+
+            @Override
+            @Nullable Iterable<VirtualMachine> list() throws CloudException, InternalException {
+                return direct.listVirtualMachines();
+            }
+
+            @Override
+            @Nullable Iterable<VirtualMachine> filter() throws CloudException, InternalException {
+                return direct.listVirtualMachines(VMFilterOptions.getInstance(FILTER));
+            }
+
+            @Override
+            @Nonnull String getId(@Nonnull VirtualMachine resource) {
+                return resource.getProviderVirtualMachineId();
+            }
+        });
+    }
+
+    @Test
+    public void volumeScale() throws CloudException, InternalException {
+        ComputeServices services = tm.getProvider().getComputeServices();
+        final VolumeSupport support = (services == null ? null : services.getVolumeSupport());
+        final VolumeSupport direct = (support == null ? null : getProvider().getComputeServices().getVolumeSupport());
+        final ComputeResources resources = DaseinTestManager.getComputeResources();
+
+        if( support == null || direct == null || resources == null ) {
+            tm.ok("No volume support in this cloud");
+            return;
+        }
+        grow(new Population<Volume>("Volume.listVolumes") {
+            @Override
+            @Nonnull Collection<String> provision(int count, boolean matching) throws CloudException, InternalException {
+                List<String> ids = new ArrayList<String>();
+
+                // volumes are created one at a time, there is no batch creation for them
+                for( int i=0; i<count; i++ ) {
+                    ids.add(resources.provisionVolume(support, "scale", matching ? "dsnscalefilter" : "dsnscale", null, testDataCenterId));
+                }
+                return ids;
+            }
+
+            @Override
+            @Nullable Iterable<Volume> list() throws CloudException, InternalException {
+                return direct.listVolumes();
+            }
+
+            @Override
+            @Nullable Iterable<Volume> filter() throws CloudException, InternalException {
+                return direct.listVolumes(VolumeFilterOptions.getInstance(FILTER));
+            }
+
+            @Override
+            @Nonnull String getId(@Nonnull Volume resource) {
+                return resource.getProviderVolumeId();
+            }
+        });
+    }
+
+    @Test
+    public void snapshotScale() throws CloudException, InternalException {
+        ComputeServices services = tm.getProvider().getComputeServices();
+        final SnapshotSupport support = (services == null ? null : services.getSnapshotSupport());
+        final SnapshotSupport direct = (support == null ? null : getProvider().getComputeServices().getSnapshotSupport());
+        final ComputeResources resources = DaseinTestManager.getComputeResources();
+
+        if( support == null || direct == null || resources == null ) {
+            tm.ok("Snapshots are not supported in " + tm.getContext().getRegionId() + " of " + tm.getProvider().getCloudName());
+            return;
+        }
+        // every snapshot is taken of the same volume
+        final String volumeId = tm.getTestVolumeId(DaseinTestManager.STATEFUL, true, null, testDataCenterId);
+
+        if( volumeId == null ) {
+            tm.warn("No volume to take snapshots of, so snapshot scale cannot be tested");
+            return;
+        }
+        grow(new Population<Snapshot>("Snapshot.listSnapshots") {
+            @Override
+            @Nonnull Collection<String> provision(int count, boolean matching) throws CloudException, InternalException {
+                List<String> ids = new ArrayList<String>();
+
+                for( int i=0; i<count; i++ ) {
+                    ids.add(resources.provisionSnapshot(support, "scale", matching ? "dsnscalefilter" : "dsnscale", volumeId));
+                }
+                return ids;
+            }
+
+            @Override
+            @Nullable Iterable<Snapshot> list() throws CloudException, InternalException {
+                return direct.listSnapshots();
+            }
+
+            @Override
+            @Nullable Iterable<Snapshot> filter() throws CloudException, InternalException {
+                return direct.listSnapshots(SnapshotFilterOptions.getInstance(FILTER));
+            }
+
+            @Override
+            @Nonnull String getId(@Nonnull Snapshot resource) {
+                return resource.getProviderSnapshotId();
+            }
+        });
+    }
+}
@@ -26,11 +26,18 @@ import org.dasein.cloud.Requirement;
 import org.dasein.cloud.compute.*;
 import org.dasein.cloud.dc.Region;
 import org.dasein.cloud.test.DaseinTestManager;
+import org.dasein.cloud.test.capability.Capability;
+import org.dasein.cloud.test.capability.Requires;
+import org.dasein.cloud.test.fixture.Fixture;
+import org.dasein.cloud.test.fixture.Fixtures;
+import org.dasein.cloud.test.fixture.ResourceKind;
+import org.dasein.cloud.test.runner.FixtureRunner;
 import org.dasein.util.CalendarWrapper;
 import org.dasein.util.uom.storage.Gigabyte;
 import org.dasein.util.uom.storage.Storage;
 import org.junit.*;
 import org.junit.rules.TestName;
+import org.junit.runner.RunWith;
 
 import static org.junit.Assert.*;
 import static org.junit.Assume.assumeTrue;
@@ -42,6 +49,9 @@ import static org.junit.Assume.assumeTrue;
  * @version 2013.04 initial version
  * @since 2013.04
  */
+@RunWith(FixtureRunner.class)
+@Fixture(kind=ResourceKind.SNAPSHOT)
+@Requires(Capability.SNAPSHOT)
 public class StatefulSnapshotTests {
     static private DaseinTestManager tm;
 
@@ -248,6 +258,7 @@ public class StatefulSnapshotTests {
     }
 
     @Test
+    @Fixtures({})
     public void filterSnapshots() throws CloudException, InternalException {
         ComputeServices services = tm.getProvider().getComputeServices();
 
@@ -302,6 +313,7 @@ public class StatefulSnapshotTests {
     }
 
     @Test
+    @Fixture(kind=ResourceKind.VOLUME)
     public void createSnapshot() throws CloudException, InternalException {
         ComputeServices services = tm.getProvider().getComputeServices();
 
@@ -347,6 +359,7 @@ public class StatefulSnapshotTests {
     }
 
     @Test
+    @Fixtures({})
     public void copySnapshot() throws CloudException, InternalException {
         ComputeServices services = tm.getProvider().getComputeServices();
 
@@ -388,6 +401,7 @@ public class StatefulSnapshotTests {
     }
 
     @Test
+    @Fixture(kind=ResourceKind.SNAPSHOT, label=DaseinTestManager.REMOVED)
     public void removeSnapshot() throws CloudException, InternalException {
         ComputeServices services = tm.getProvider().getComputeServices();
 
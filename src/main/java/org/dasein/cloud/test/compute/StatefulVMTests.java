@@ -30,7 +30,14 @@ import org.dasein.cloud.dc.FolderType;
 import org.dasein.cloud.dc.StoragePool;
 import org.dasein.cloud.network.*;
 import org.dasein.cloud.test.DaseinTestManager;
+import org.dasein.cloud.test.fixture.Fixture;
+import org.dasein.cloud.test.fixture.Fixtures;
+import org.dasein.cloud.test.fixture.ResourceKind;
 import org.dasein.cloud.test.network.NetworkResources;
+import org.dasein.cloud.test.runner.FixtureRunner;
+import org.dasein.cloud.test.wait.CloudStates;
+import org.dasein.cloud.test.wait.StateExtractor;
+import org.dasein.cloud.test.wait.StateWaiter;
 import org.dasein.util.CalendarWrapper;
 import org.dasein.util.uom.storage.Gigabyte;
 import org.dasein.util.uom.storage.Storage;
@@ -41,6 +48,7 @@ import org.junit.BeforeClass;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TestName;
+import org.junit.runner.RunWith;
 
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
@@ -60,6 +68,8 @@ import static org.junit.Assume.assumeTrue;
  *
  * @author George Reese
  */
+@RunWith(FixtureRunner.class)
+@Fixture(kind=ResourceKind.VM)
 public class StatefulVMTests {
     static private DaseinTestManager tm;
     @Rule
@@ -86,38 +96,29 @@ public class StatefulVMTests {
     }
 
     private @Nullable VirtualMachine awaitState( @Nonnull VirtualMachine vm, @Nonnull VmState targetState, @Nonnegative long timeout ) {
-        VmState currentState = vm.getCurrentState();
-        VirtualMachine v = vm;
-        int gone = 0;
+        if( targetState.equals(vm.getCurrentState()) ) {
+            return vm;
+        }
+        @SuppressWarnings("ConstantConditions") VirtualMachineSupport support = tm.getProvider().getComputeServices().getVirtualMachineSupport();
 
-        while( System.currentTimeMillis() < timeout ) {
-            if( targetState.equals(currentState) ) {
-                return v;
-            }
-            try {
-                Thread.sleep(60000L);
-            } catch( InterruptedException ignore ) {
+        // a VM may briefly drop out of some clouds' listings, which only means it is gone when waiting for termination
+        return StateWaiter.getInstance("VM").withTimeout(Math.max(0L, timeout - System.currentTimeMillis()))
+                .withGoneTolerance(targetState.equals(VmState.TERMINATED) ? 0 : 10)
+                .await(vm.getProviderVirtualMachineId(), CloudStates.virtualMachine(support), StateWaiter.in(targetState));
+    }
+
+    private @Nullable VirtualMachine awaitTag( @Nonnull final VirtualMachineSupport support, @Nonnull String vmId, @Nonnull final String tag ) {
+        return StateWaiter.getInstance("VM tag " + tag).withTimeout(CalendarWrapper.MINUTE * 5L).await(vmId, new StateExtractor<VirtualMachine, Boolean>() {
+            @Override
+            public @Nullable VirtualMachine lookup( @Nonnull String resourceId ) throws Exception {
+                return support.getVirtualMachine(resourceId);
             }
-            try {
-                //noinspection ConstantConditions
-                v = tm.getProvider().getComputeServices().getVirtualMachineSupport().getVirtualMachine(vm.getProviderVirtualMachineId());
-                if( v == null && !targetState.equals(VmState.TERMINATED) ) {
-                    gone++;
-                    if( gone > 10 ) {
-                        return null;
-                    }
-                }
-                else if( v == null ) {
-                    return null;
-                }
-                else {
-                    currentState = v.getCurrentState();
-                }
-            } catch( Throwable ignore ) {
-                // ignore
+
+            @Override
+            public @Nullable Boolean getState( @Nonnull VirtualMachine resource ) {
+                return resource.getTags().containsKey(tag);
             }
-        }
-        return v;
+        }, StateWaiter.in(true));
     }
 
     @Before
@@ -290,6 +291,7 @@ public class StatefulVMTests {
     }
 
     @Test
+    @Fixtures({})
     public void launchVMWithIP() throws CloudException, InternalException {
         assumeTrue(!tm.isTestSkipped());
 
@@ -481,6 +483,7 @@ public class StatefulVMTests {
     }
 
     @Test
+    @Fixtures({})
     public void launchVMWithResourcePool() throws CloudException, InternalException {
         assumeTrue(!tm.isTestSkipped());
 
@@ -567,6 +570,7 @@ public class StatefulVMTests {
     }
 
     @Test
+    @Fixtures({})
     public void launchVMWithAffinityGroup() throws CloudException, InternalException {
         assumeTrue(!tm.isTestSkipped());
 
@@ -582,7 +586,7 @@ public class StatefulVMTests {
                     if (affinityGroup.iterator().hasNext()) {
                         String testAffinityGroupId = affinityGroup.iterator().next().getAffinityGroupId();
 
-                        VirtualMachineSupport support = services.getVirtualMachineSupport();
+                        final VirtualMachineSupport support = services.getVirtualMachineSupport();
 
                         if( support != null ) {
                             if( support.isSubscribed() ) {
@@ -605,26 +609,19 @@ public class StatefulVMTests {
                                     VirtualMachine vm = support.getVirtualMachine(id);
                                     assertNotNull("Could not find the newly created virtual machine", vm);
 
-                                    long timeout = System.currentTimeMillis() + ( CalendarWrapper.MINUTE * 5L );
-
-                                    while( timeout > System.currentTimeMillis() ) {
-                                        if( vm == null ) {
-                                            break;
-                                        }
-                                        if( vm.getAffinityGroupId() != null ) {
-                                            break;
-                                        }
-                                        try {
-                                            Thread.sleep(15000L);
-                                        } catch( InterruptedException ignore ) {
+                                    vm = StateWaiter.getInstance("VM affinity group").withTimeout(CalendarWrapper.MINUTE * 5L).await(id, new StateExtractor<VirtualMachine, String>() {
+                                        @Override
+                                        public @Nullable VirtualMachine lookup( @Nonnull String resourceId ) throws Exception {
+                                            return support.getVirtualMachine(resourceId);
                                         }
-                                        try {
-                                            vm = support.getVirtualMachine(id);
-                                        } catch( Throwable ignore ) {
+
+                                        @Override
+                                        public @Nullable String getState( @Nonnull VirtualMachine resource ) {
+                                            return resource.getAffinityGroupId();
                                         }
-                                    }
-                                    tm.out("In affinity group", vm.getAffinityGroupId());
+                                    }, StateWaiter.<String>notIn());
                                     assertNotNull("Launched VM does not exist", vm);
+                                    tm.out("In affinity group", vm.getAffinityGroupId());
                                     assertEquals("Expected affinity group not found "+testAffinityGroupId, testAffinityGroupId, vm.getAffinityGroupId());
                                 }
                             }
@@ -660,6 +657,7 @@ public class StatefulVMTests {
     }
 
     @Test
+    @Fixtures({})
     public void launchVMWithStoragePool() throws CloudException, InternalException {
         assumeTrue(!tm.isTestSkipped());
 
@@ -703,25 +701,8 @@ public class StatefulVMTests {
                                         VirtualMachine vm = support.getVirtualMachine(id);
                                         assertNotNull("Could not find the newly created virtual machine", vm);
 
-                                        long timeout = System.currentTimeMillis() + ( CalendarWrapper.MINUTE * 5L );
-
-                                        while( timeout > System.currentTimeMillis() ) {
-                                            if( vm == null ) {
-                                                break;
-                                            }
-                                            Map<String, String> tags = vm.getTags();
-                                            if (tags.containsKey("datastore0")) {
-                                                break;
-                                            }
-                                            try {
-                                                Thread.sleep(15000L);
-                                            } catch( InterruptedException ignore ) {
-                                            }
-                                            try {
-                                                vm = support.getVirtualMachine(id);
-                                            } catch( Throwable ignore ) {
-                                            }
-                                        }
+                                        vm = awaitTag(support, id, "datastore0");
+                                        assertNotNull("Launched VM does not exist", vm);
 
                                         boolean foundStoragePool = false;
                                         Map<String, String> tags = vm.getTags();
@@ -773,6 +754,7 @@ public class StatefulVMTests {
     }
 
     @Test
+    @Fixtures({})
     public void launchVMWithVMFolder() throws CloudException, InternalException {
         assumeTrue(!tm.isTestSkipped());
 
@@ -815,25 +797,8 @@ public class StatefulVMTests {
                                         VirtualMachine vm = support.getVirtualMachine(id);
                                         assertNotNull("Could not find the newly created virtual machine", vm);
 
-                                        long timeout = System.currentTimeMillis() + ( CalendarWrapper.MINUTE * 5L );
-
-                                        while( timeout > System.currentTimeMillis() ) {
-                                            if( vm == null ) {
-                                                break;
-                                            }
-                                            Map<String, String> tags = vm.getTags();
-                                            if (tags.containsKey("vmFolder")) {
-                                                break;
-                                            }
-                                            try {
-                                                Thread.sleep(15000L);
-                                            } catch( InterruptedException ignore ) {
-                                            }
-                                            try {
-                                                vm = support.getVirtualMachine(id);
-                                            } catch( Throwable ignore ) {
-                                            }
-                                        }
+                                        vm = awaitTag(support, id, "vmFolder");
+                                        assertNotNull("Launched VM does not exist", vm);
 
                                         boolean foundFolder = false;
                                         Map<String, String> tags = vm.getTags();
@@ -885,6 +850,7 @@ public class StatefulVMTests {
     }
 
     @Test
+    @Fixtures({})
     public void launchVMWithClientRequestToken() throws CloudException, InternalException {
         assumeTrue(!tm.isTestSkipped());
 
@@ -930,6 +896,7 @@ public class StatefulVMTests {
     }
 
     @Test
+    @Fixtures({})
     public void filterVMs() throws CloudException, InternalException {
         assumeTrue(!tm.isTestSkipped());
         ComputeServices services = tm.getProvider().getComputeServices();
@@ -1387,6 +1354,7 @@ public class StatefulVMTests {
     }
     
     @Test
+    @Fixture(kind=ResourceKind.VM, label=DaseinTestManager.REMOVED)
     public void terminate() throws CloudException, InternalException {
         assumeTrue(!tm.isTestSkipped());
         ComputeServices services = tm.getProvider().getComputeServices();
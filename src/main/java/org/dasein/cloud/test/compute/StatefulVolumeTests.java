@@ -36,6 +36,12 @@ import org.dasein.cloud.compute.VolumeProduct;
 import org.dasein.cloud.compute.VolumeState;
 import org.dasein.cloud.compute.VolumeSupport;
 import org.dasein.cloud.test.DaseinTestManager;
+import org.dasein.cloud.test.capability.Capability;
+import org.dasein.cloud.test.capability.Requires;
+import org.dasein.cloud.test.fixture.Fixture;
+import org.dasein.cloud.test.fixture.Fixtures;
+import org.dasein.cloud.test.fixture.ResourceKind;
+import org.dasein.cloud.test.runner.FixtureRunner;
 import org.dasein.util.CalendarWrapper;
 import org.dasein.util.uom.storage.Gigabyte;
 import org.dasein.util.uom.storage.Storage;
@@ -46,6 +52,7 @@ import org.junit.BeforeClass;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TestName;
+import org.junit.runner.RunWith;
 
 import java.util.UUID;
 
@@ -59,6 +66,8 @@ import static org.junit.Assume.assumeTrue;
  * @version 2013.04 initial version
  * @since 2013.04
  */
+@RunWith(FixtureRunner.class)
+@Requires(Capability.VOLUME)
 public class StatefulVolumeTests {
     static private DaseinTestManager tm;
 
@@ -530,6 +539,7 @@ public class StatefulVolumeTests {
     }
 
     @Test
+    @Fixture(kind=ResourceKind.SNAPSHOT)
     public void createFromSnapshot() throws CloudException, InternalException {
         ComputeServices services = tm.getProvider().getComputeServices();
 
@@ -619,6 +629,7 @@ public class StatefulVolumeTests {
     }
 
     @Test
+    @Fixtures({@Fixture(kind=ResourceKind.VM), @Fixture(kind=ResourceKind.VOLUME)})
     public void attach() throws CloudException, InternalException {
         ComputeServices services = tm.getProvider().getComputeServices();
 
@@ -714,6 +725,7 @@ public class StatefulVolumeTests {
     }
 
     @Test
+    @Fixtures({@Fixture(kind=ResourceKind.VM), @Fixture(kind=ResourceKind.VOLUME)})
     public void detach() throws CloudException, InternalException {
         ComputeServices services = tm.getProvider().getComputeServices();
 
@@ -776,6 +788,7 @@ public class StatefulVolumeTests {
     }
 
     @Test
+    @Fixture(kind=ResourceKind.VOLUME)
     public void attachToBogusVM() throws CloudException, InternalException {
         ComputeServices services = tm.getProvider().getComputeServices();
 
@@ -840,6 +853,7 @@ public class StatefulVolumeTests {
     }
 
     @Test
+    @Fixture(kind=ResourceKind.VOLUME)
     public void detachUnattachedVolume() throws CloudException, InternalException {
         ComputeServices services = tm.getProvider().getComputeServices();
 
@@ -883,6 +897,7 @@ public class StatefulVolumeTests {
     }
 
     @Test
+    @Fixture(kind=ResourceKind.VOLUME, label=DaseinTestManager.REMOVED)
     public void removeVolume() throws CloudException, InternalException {
         ComputeServices services = tm.getProvider().getComputeServices();
 
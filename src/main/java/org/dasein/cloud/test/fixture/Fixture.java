@@ -0,0 +1,54 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.fixture;
+
+import org.dasein.cloud.test.DaseinTestManager;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares a shared fixture a test needs before it can run. When placed on a test class, it applies to every test
+ * method in the class that does not declare its own fixtures. Tests run by the {@link org.dasein.cloud.test.runner.FixtureRunner}
+ * have their fixtures provisioned in the background and are run as soon as those fixtures exist.
+ * <pre>
+ *     &#64;Test
+ *     &#64;Fixture(kind=ResourceKind.VM, label=DaseinTestManager.REMOVED)
+ *     public void terminate() throws CloudException, InternalException {
+ * </pre>
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD, ElementType.TYPE})
+public @interface Fixture {
+    /**
+     * @return the kind of resource required
+     */
+    ResourceKind kind();
+
+    /**
+     * @return the label under which the resource is shared, usually {@link DaseinTestManager#STATEFUL} or {@link DaseinTestManager#REMOVED}
+     */
+    String label() default DaseinTestManager.STATEFUL;
+}
@@ -0,0 +1,284 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.fixture;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.test.DaseinTestManager;
+import org.dasein.cloud.test.cassette.Cassette;
+import org.dasein.cloud.test.metrics.ApiLatency;
+import org.dasein.cloud.test.metrics.TestImpact;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A dependency graph of the fixtures required by a set of tests. Fixtures are provisioned on a bounded pool of
+ * background threads as soon as the fixtures they depend on exist, in the order the tests first need them. Callers
+ * poll {@link #isReady(Collection)} and block in {@link #awaitChange(long)} until the fixtures they need are done.
+ * A fixture that fails to provision still counts as done so that the test needing it runs and reports the problem
+ * itself.
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+public class FixtureGraph {
+    static private final Logger logger = Logger.getLogger(FixtureGraph.class);
+
+    static public final String WORKERS = "dasein.fixtures.workers";
+
+    /**
+     * @return the number of fixtures that may be provisioned concurrently, with the default of 0 disabling background
+     * provisioning, which is always disabled while cassettes are recorded or replayed
+     */
+    static public int getWorkers() {
+        // fixtures provisioned in the background would land in the shared cassette in no particular order
+        if( Cassette.isActive() ) {
+            return 0;
+        }
+        String prop = DaseinTestManager.getSystemProperty(WORKERS);
+
+        if( prop != null ) {
+            try {
+                return Math.max(0, Integer.parseInt(prop.trim()));
+            }
+            catch( NumberFormatException ignore ) {
+                // fall through to the default
+            }
+        }
+        return 0;
+    }
+
+    static private class Node {
+        final FixtureKey  key;
+        final List<Node>  dependencies = new ArrayList<Node>();
+        final List<Node>  dependents   = new ArrayList<Node>();
+        boolean           submitted;
+        boolean           done;
+
+        Node(@Nonnull FixtureKey key) {
+            this.key = key;
+        }
+    }
+
+    private final ExecutorService         executor;
+    private final Map<FixtureKey,Node>    nodes = new LinkedHashMap<FixtureKey, Node>();
+    private final FixtureProvisioner      provisioner;
+    private boolean                       started;
+    private long                          version;
+
+    public FixtureGraph(@Nonnull FixtureProvisioner provisioner, @Nonnegative int workers) {
+        this.provisioner = provisioner;
+        this.executor = Executors.newFixedThreadPool(Math.max(1, workers), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(@Nonnull Runnable r) {
+                Thread t = new Thread(r, "dasein-fixture-" + count.incrementAndGet());
+
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Adds a fixture and, transitively, everything it depends on to the graph.
+     * @param key the fixture a test requires
+     */
+    public synchronized void require(@Nonnull FixtureKey key) {
+        node(key, new ArrayList<FixtureKey>());
+        if( started ) {
+            submitReady();
+        }
+    }
+
+    private @Nonnull Node node(@Nonnull FixtureKey key, @Nonnull List<FixtureKey> path) {
+        Node node = nodes.get(key);
+
+        if( node != null ) {
+            return node;
+        }
+        if( path.contains(key) ) {
+            throw new IllegalStateException("Circular fixture dependency: " + path + " -> " + key);
+        }
+        path.add(key);
+        node = new Node(key);
+        for( FixtureKey dependency : provisioner.listDependencies(key) ) {
+            Node d = node(dependency, path);
+
+            node.dependencies.add(d);
+            d.dependents.add(node);
+        }
+        path.remove(key);
+        // dependencies are registered first so the map stays in a valid provisioning order
+        nodes.put(key, node);
+        return node;
+    }
+
+    /**
+     * Begins provisioning every fixture whose dependencies are satisfied.
+     */
+    public synchronized void start() {
+        started = true;
+        submitReady();
+    }
+
+    private void submitReady() {
+        for( Node node : nodes.values() ) {
+            if( !node.submitted && isDone(node.dependencies) ) {
+                submit(node);
+            }
+        }
+    }
+
+    private boolean isDone(@Nonnull List<Node> list) {
+        for( Node node : list ) {
+            if( !node.done ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void submit(@Nonnull final Node node) {
+        node.submitted = true;
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                long start = System.currentTimeMillis();
+                ApiLatency latency = new ApiLatency();
+                String id = null;
+
+                // no test is attached to this thread, so the calls are kept for the tests declaring the fixture
+                ApiLatency.attach(latency);
+                try {
+                    id = provisioner.provision(node.key);
+                }
+                catch( Throwable t ) {
+                    logger.warn("Failed to provision fixture " + node.key + ": " + t.getMessage());
+                }
+                finally {
+                    ApiLatency.detach();
+                    record(node, latency);
+                    DaseinTestManager.out(logger, null, "Fixture " + node.key, id + " (" + ((System.currentTimeMillis() - start) / 1000L) + " seconds)");
+                    completed(node);
+                }
+            }
+        });
+    }
+
+    private void record(@Nonnull Node node, @Nonnull ApiLatency latency) {
+        TestImpact impact = TestImpact.getInstance();
+
+        if( impact != null ) {
+            List<FixtureKey> dependencies = new ArrayList<FixtureKey>();
+
+            for( Node dependency : node.dependencies ) {
+                dependencies.add(dependency.key);
+            }
+            impact.recordFixture(node.key, dependencies, latency);
+        }
+    }
+
+    private synchronized void completed(@Nonnull Node node) {
+        node.done = true;
+        for( Node dependent : node.dependents ) {
+            if( !dependent.submitted && isDone(dependent.dependencies) ) {
+                submit(dependent);
+            }
+        }
+        version++;
+        notifyAll();
+    }
+
+    /**
+     * @return a counter that changes each time a fixture completes, for use with {@link #awaitChange(long)}
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * Checks whether all of the specified fixtures have finished provisioning. Fixtures that were never required
+     * are treated as ready.
+     * @param keys the fixtures to check
+     * @return true if the fixtures are ready
+     */
+    public synchronized boolean isReady(@Nonnull Collection<FixtureKey> keys) {
+        for( FixtureKey key : keys ) {
+            Node node = nodes.get(key);
+
+            if( node != null && !node.done ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Blocks until another fixture completes.
+     * @param sinceVersion the value of {@link #getVersion()} seen by the caller before it last checked readiness
+     * @throws InterruptedException the calling thread was interrupted while waiting
+     */
+    public synchronized void awaitChange(long sinceVersion) throws InterruptedException {
+        while( version == sinceVersion && !isDone(new ArrayList<Node>(nodes.values())) ) {
+            wait();
+        }
+    }
+
+    /**
+     * Blocks until the specified fixture has finished provisioning. Returns immediately for fixtures that were never
+     * required.
+     * @param key the fixture to wait for
+     * @throws InterruptedException the calling thread was interrupted while waiting
+     */
+    public synchronized void awaitReady(@Nonnull FixtureKey key) throws InterruptedException {
+        Node node = nodes.get(key);
+
+        while( node != null && !node.done ) {
+            wait();
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Waits for fixtures that are still being provisioned after {@link #shutdown()} so they can be cleaned up.
+     * @param timeout the maximum time to wait
+     * @param unit the unit of the timeout
+     * @return true if all provisioning finished
+     * @throws InterruptedException the calling thread was interrupted while waiting
+     */
+    public boolean awaitTermination(long timeout, @Nonnull TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+}
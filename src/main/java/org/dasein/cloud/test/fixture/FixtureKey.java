@@ -0,0 +1,126 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.fixture;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Identifies a shared fixture by its resource kind and the label it is shared under.
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+public class FixtureKey {
+    /**
+     * Lists the fixtures declared for a test method. Fixtures declared on the method itself take precedence over
+     * those declared on the test class.
+     * @param testMethod the test method
+     * @param testClass the class being run, which may be a subclass of the method's declaring class
+     * @return the fixtures the test needs, in declaration order
+     */
+    static public @Nonnull List<FixtureKey> listRequirements(@Nonnull Method testMethod, @Nonnull Class<?> testClass) {
+        List<FixtureKey> keys = findRequirements(testMethod);
+
+        if( keys == null ) {
+            keys = findRequirements(testClass);
+        }
+        return (keys == null ? Collections.<FixtureKey>emptyList() : keys);
+    }
+
+    /**
+     * Lists the fixtures declared for a test method identified by name.
+     * @param testClass the class being run
+     * @param methodName the name of the test method
+     * @return the fixtures the test needs, in declaration order, or an empty list if there is no such method
+     */
+    static public @Nonnull List<FixtureKey> listRequirements(@Nonnull Class<?> testClass, @Nonnull String methodName) {
+        for( Method method : testClass.getMethods() ) {
+            if( method.getName().equals(methodName) && method.getParameterTypes().length == 0 ) {
+                return listRequirements(method, testClass);
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    static private @Nullable List<FixtureKey> findRequirements(@Nonnull AnnotatedElement element) {
+        Fixtures fixtures = element.getAnnotation(Fixtures.class);
+        Fixture fixture = element.getAnnotation(Fixture.class);
+
+        if( fixtures == null && fixture == null ) {
+            return null;
+        }
+        List<FixtureKey> keys = new ArrayList<FixtureKey>();
+
+        if( fixture != null ) {
+            keys.add(new FixtureKey(fixture.kind(), fixture.label()));
+        }
+        if( fixtures != null ) {
+            for( Fixture f : fixtures.value() ) {
+                keys.add(new FixtureKey(f.kind(), f.label()));
+            }
+        }
+        return keys;
+    }
+
+    private final ResourceKind kind;
+    private final String       label;
+
+    public FixtureKey(@Nonnull ResourceKind kind, @Nonnull String label) {
+        this.kind = kind;
+        this.label = label;
+    }
+
+    public @Nonnull ResourceKind getKind() {
+        return kind;
+    }
+
+    public @Nonnull String getLabel() {
+        return label;
+    }
+
+    @Override
+    public boolean equals(@Nullable Object other) {
+        if( other == this ) {
+            return true;
+        }
+        if( !(other instanceof FixtureKey) ) {
+            return false;
+        }
+        FixtureKey key = (FixtureKey)other;
+
+        return kind.equals(key.kind) && label.equals(key.label);
+    }
+
+    @Override
+    public int hashCode() {
+        return kind.hashCode() * 31 + label.hashCode();
+    }
+
+    @Override
+    public @Nonnull String toString() {
+        return kind + ":" + label;
+    }
+}
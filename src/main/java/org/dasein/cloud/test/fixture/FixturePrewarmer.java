@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.test.fixture;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.test.DaseinTestManager;
+import org.dasein.cloud.test.capability.CapabilityMatrix;
+import org.junit.runner.Description;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Starts provisioning every fixture the tests about to run will need as soon as the test environment has been
+ * initialized, instead of waiting for the first test to ask for each one. Pre-warming is opt-in through the
+ * dasein.prewarm {@link System} property:
+ * <pre>
+ *     -Ddasein.prewarm=true -Ddasein.fixtures.workers=4
+ * </pre>
+ * The fixtures are taken from the {@link Fixture} declarations of the tests in the run, less any test excluded
+ * through dasein.inclusions or dasein.exclusions. A test that asks {@link DaseinTestManager} for a fixture still
+ * being provisioned blocks until it is ready rather than provisioning a second one.
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+public class FixturePrewarmer {
+    static private final Logger logger = Logger.getLogger(FixturePrewarmer.class);
+
+    static public final String PREWARM = "dasein.prewarm";
+
+    /**
+     * @return true if fixtures should be provisioned eagerly at initialization
+     */
+    static public boolean isEnabled() {
+        String prop = DaseinTestManager.getSystemProperty(PREWARM);
+
+        return (prop != null && prop.trim().equalsIgnoreCase("true") && FixtureGraph.getWorkers() > 0);
+    }
+
+    /**
+     * Lists the fixtures required by the tests beneath the specified description that are not skipped.
+     * @param description the description of the suite or test class about to run
+     * @return the required fixtures in the order the tests are run
+     */
+    static public @Nonnull List<FixtureKey> listRequirements(@Nonnull Description description) {
+        Set<FixtureKey> keys = new LinkedHashSet<FixtureKey>();
+
+        collect(description, keys);
+        return new ArrayList<FixtureKey>(keys);
+    }
+
+    static private void collect(@Nonnull Description description, @Nonnull Set<FixtureKey> keys) {
+        if( !description.isTest() ) {
+            for( Description child : description.getChildren() ) {
+                collect(child, keys);
+            }
+            return;
+        }
+        Class<?> testClass = description.getTestClass();
+        String methodName = description.getMethodName();
+
+        if( testClass == null || methodName == null ) {
+            return;
+        }
+        if( DaseinTestManager.isTestSkipped(testClass.getSimpleName(), methodName) ) {
+            return;
+        }
+        Method method = findMethod(testClass, methodName);
+
+        if( method != null && CapabilityMatrix.listUnmet(testClass, method).isEmpty() ) {
+            keys.addAll(FixtureKey.listRequirements(method, testClass));
+        }
+    }
+
+    static private @Nullable Method findMethod(@Nonnull Class<?> testClass, @Nonnull String methodName) {
+        try {
+            return testClass.getMethod(methodName);
+        }
+        catch( NoSuchMethodException e ) {
+            // parameterized and otherwise decorated test names do not map onto a method
+            return null;
+        }
+    }
+
+    /**
+     * Queues the fixtures required by the tests beneath the specified description and starts provisioning them.
+     * @param description the description of the suite or test class about to run
+     * @return the graph on which the fixtures are being provisioned
+     */
+    static public @Nonnull FixtureGraph start(@Nonnull Description description) {
+        FixtureGraph graph = new FixtureGraph(new FixtureProvisioner(), FixtureGraph.getWorkers());
+        List<FixtureKey> keys = listRequirements(description);
+
+        for( FixtureKey key : keys ) {
+            graph.require(key);
+        }
+        DaseinTestManager.out(logger, null, "Pre-warming", keys.toString());
+        graph.start();
+        return graph;
+    }
+}
@@ -0,0 +1,151 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.fixture;
+
+import org.dasein.cloud.platform.DatabaseEngine;
+import org.dasein.cloud.storage.Blob;
+import org.dasein.cloud.test.DaseinTestManager;
+import org.dasein.cloud.test.compute.ComputeResources;
+import org.dasein.cloud.test.identity.IdentityResources;
+import org.dasein.cloud.test.network.NetworkResources;
+import org.dasein.cloud.test.platform.PlatformResources;
+import org.dasein.cloud.test.storage.StorageResources;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Provisions shared fixtures through the same resource registries the tests use, so that a fixture provisioned
+ * ahead of time is simply found by the test's own call to {@link DaseinTestManager#getTestVMId(String, org.dasein.cloud.compute.VmState, boolean, String)}
+ * and friends.
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+public class FixtureProvisioner {
+    /**
+     * The label of the bucket used as the origin for CDN distributions, matching {@link org.dasein.cloud.test.platform.StatefulCDNTests}.
+     */
+    static public final String CDN_ORIGIN = "statefulCDN";
+
+    /**
+     * Lists the fixtures that must exist before the specified fixture can be provisioned.
+     * @param key the fixture to be provisioned
+     * @return the fixtures it depends on
+     */
+    public @Nonnull List<FixtureKey> listDependencies(@Nonnull FixtureKey key) {
+        switch( key.getKind() ) {
+            case SUBNET: return Collections.singletonList(new FixtureKey(ResourceKind.VLAN, DaseinTestManager.STATEFUL));
+            case IMAGE: return Collections.singletonList(new FixtureKey(ResourceKind.VM, DaseinTestManager.STATEFUL));
+            case CDN: return Collections.singletonList(new FixtureKey(ResourceKind.BUCKET, CDN_ORIGIN));
+            default: return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Provisions the specified fixture unless it already exists.
+     * @param key the fixture to provision
+     * @return the ID of the fixture or null if the cloud does not support the fixture or it failed to provision
+     */
+    public @Nullable String provision(@Nonnull FixtureKey key) {
+        String label = key.getLabel();
+        String dataCenterId = DaseinTestManager.getDefaultDataCenterId(true);
+
+        switch( key.getKind() ) {
+            case VM: {
+                ComputeResources compute = DaseinTestManager.getComputeResources();
+
+                return (compute == null ? null : compute.getTestVmId(label, null, true, dataCenterId));
+            }
+            case VOLUME: {
+                ComputeResources compute = DaseinTestManager.getComputeResources();
+
+                return (compute == null ? null : compute.getTestVolumeId(label, true, null, dataCenterId));
+            }
+            case SNAPSHOT: {
+                ComputeResources compute = DaseinTestManager.getComputeResources();
+
+                return (compute == null ? null : compute.getTestSnapshotId(label, true));
+            }
+            case IMAGE: {
+                ComputeResources compute = DaseinTestManager.getComputeResources();
+
+                return (compute == null ? null : compute.getTestImageId(label, true));
+            }
+            case VLAN: {
+                NetworkResources network = DaseinTestManager.getNetworkResources();
+
+                return (network == null ? null : network.getTestVLANId(label, true, dataCenterId));
+            }
+            case SUBNET: {
+                NetworkResources network = DaseinTestManager.getNetworkResources();
+                String vlanId = (network == null ? null : network.getTestVLANId(DaseinTestManager.STATEFUL, true, dataCenterId));
+
+                return (vlanId == null ? null : network.getTestSubnetId(label, true, vlanId, dataCenterId));
+            }
+            case FIREWALL: {
+                NetworkResources network = DaseinTestManager.getNetworkResources();
+
+                return (network == null ? null : network.getTestFirewallId(label, true, null));
+            }
+            case STATIC_IP: {
+                NetworkResources network = DaseinTestManager.getNetworkResources();
+
+                return (network == null ? null : network.getTestStaticIpId(label, true, null, false, null));
+            }
+            case LOAD_BALANCER: {
+                NetworkResources network = DaseinTestManager.getNetworkResources();
+
+                return (network == null ? null : network.getTestLoadBalancerId(label, "dsnlb", true, false));
+            }
+            case DNS_ZONE: {
+                NetworkResources network = DaseinTestManager.getNetworkResources();
+
+                return (network == null ? null : network.getTestZoneId(label, true));
+            }
+            case KEYPAIR: {
+                IdentityResources identity = DaseinTestManager.getIdentityResources();
+
+                return (identity == null ? null : identity.getTestKeypairId(label, true));
+            }
+            case RDBMS: {
+                PlatformResources platform = DaseinTestManager.getPlatformResources();
+
+                return (platform == null ? null : platform.getTestRDBMSId(label, true, DatabaseEngine.MYSQL));
+            }
+            case CDN: {
+                PlatformResources platform = DaseinTestManager.getPlatformResources();
+                StorageResources storage = DaseinTestManager.getStorageResources();
+                Blob origin = (storage == null ? null : storage.getTestRootBucket(CDN_ORIGIN, true, null));
+
+                return (platform == null || origin == null ? null : platform.getTestDistributionId(label, true, origin.getBucketName()));
+            }
+            case BUCKET: {
+                StorageResources storage = DaseinTestManager.getStorageResources();
+                Blob bucket = (storage == null ? null : storage.getTestRootBucket(label, true, null));
+
+                return (bucket == null ? null : bucket.getBucketName());
+            }
+        }
+        return null;
+    }
+}
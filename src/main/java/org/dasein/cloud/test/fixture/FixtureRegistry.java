@@ -0,0 +1,148 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.fixture;
+
+import org.dasein.cloud.test.metrics.RunReport;
+import org.dasein.cloud.test.metrics.Timeline;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The test resources of one {@link ResourceKind} provisioned by one of the resources classes, keyed by the label
+ * they were provisioned under. Most registries hold resource IDs, but any value identifying the resource may be
+ * stored. The registry may be read and updated from any number of threads. Code that looks up a labelled resource
+ * and provisions it when missing holds the lock for that label while doing so, which makes the look-up and
+ * provisioning atomic: a second thread asking for the same label waits and then finds the first thread's resource.
+ * Different labels are provisioned concurrently.
+ * <pre>
+ *     synchronized( testVolumes.lock(label) ) {
+ *         String id = testVolumes.get(label);
+ *         ...
+ *     }
+ * </pre>
+ * @param <T> the type of value identifying a resource
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+public class FixtureRegistry<T> {
+    private final ResourceKind                 kind;
+    private final ConcurrentMap<String,Object> locks     = new ConcurrentHashMap<String, Object>();
+    private final ConcurrentMap<String,T>      resources = new ConcurrentHashMap<String, T>();
+
+    public FixtureRegistry(@Nonnull ResourceKind kind) {
+        this.kind = kind;
+    }
+
+    public boolean containsKey(@Nonnull String label) {
+        return resources.containsKey(label);
+    }
+
+    /**
+     * @return a copy of the labels and resource IDs in the registry that is safe to iterate while other threads
+     * provision resources
+     */
+    public @Nonnull Set<Map.Entry<String,T>> entrySet() {
+        return new HashMap<String, T>(resources).entrySet();
+    }
+
+    public @Nullable T get(@Nonnull String label) {
+        return resources.get(label);
+    }
+
+    public @Nonnull ResourceKind getKind() {
+        return kind;
+    }
+
+    public boolean isEmpty() {
+        return resources.isEmpty();
+    }
+
+    /**
+     * @param label a label resources of this kind are provisioned under
+     * @return the object to synchronize on while looking up and provisioning a resource with the specified label
+     */
+    public @Nonnull Object lock(@Nonnull String label) {
+        Object lock = new Object();
+        Object existing = locks.putIfAbsent(label, lock);
+
+        return (existing == null ? lock : existing);
+    }
+
+    /**
+     * Sets the resource for a label, replacing any resource already registered under it.
+     * @param label the label
+     * @param resource the resource, with null removing the label
+     */
+    public void put(@Nonnull String label, @Nullable T resource) {
+        if( resource == null ) {
+            resources.remove(label);
+        }
+        else {
+            resources.put(label, resource);
+        }
+    }
+
+    /**
+     * Registers a newly provisioned resource. If the label is already in use, a numeric suffix is appended to make it
+     * unique. Labels therefore keep their prefix, such as {@link org.dasein.cloud.test.DaseinTestManager#REMOVED}.
+     * The resource is recorded in the {@link ResourceJournal}, if there is one, before this method returns.
+     * @param label the label the resource was provisioned under
+     * @param resource the new resource
+     * @return the label the resource was registered under
+     */
+    public @Nonnull String register(@Nonnull String label, @Nonnull T resource) {
+        String candidate = label;
+        int suffix = 1;
+
+        while( resources.putIfAbsent(candidate, resource) != null ) {
+            candidate = label + (++suffix);
+        }
+        ResourceJournal journal = ResourceJournal.getInstance();
+        String resourceId = ResourceJournal.getResourceId(kind, resource);
+
+        if( journal != null && resourceId != null ) {
+            journal.provisioned(kind, candidate, resourceId);
+        }
+        RunReport.provisioned(candidate);
+        Timeline.tag("resourceId", resourceId);
+        Timeline.tag("label", candidate);
+        return candidate;
+    }
+
+    public @Nullable T remove(@Nonnull String label) {
+        return resources.remove(label);
+    }
+
+    public int size() {
+        return resources.size();
+    }
+
+    @Override
+    public @Nonnull String toString() {
+        return resources.toString();
+    }
+}
@@ -0,0 +1,366 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.fixture;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.storage.Blob;
+import org.dasein.cloud.test.DaseinTestManager;
+import org.dasein.cloud.test.compute.ComputeResources;
+import org.dasein.cloud.test.identity.IdentityResources;
+import org.dasein.cloud.test.network.NetworkResources;
+import org.dasein.cloud.test.platform.PlatformResources;
+import org.dasein.cloud.test.storage.StorageResources;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An append-only journal of the resources provisioned during a test run, so that resources are not leaked when the
+ * JVM dies before {@link DaseinTestManager#cleanUp()} runs. Every resource registered through
+ * {@link FixtureRegistry#register(String, Object)} is written to the journal and forced to disk before the provisioning
+ * method returns, and {@link org.dasein.cloud.test.teardown.TeardownEngine} marks each resource it removes. Removal
+ * marks are not forced to disk: losing one only means a later recovery checks a resource that is already gone. The
+ * journal is enabled by pointing the dasein.journal.file {@link System} property at a file, which may be shared by
+ * several runs.
+ * <p>
+ * {@link #main(String[])} recovers from a crashed run: it registers every resource of the configured provider,
+ * account and region that was provisioned but never removed and tears them all down in parallel, then compacts the
+ * journal. Recovery must not be run while a test run against the same account and region is in progress.
+ * </p>
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+public class ResourceJournal {
+    static private final Logger logger = Logger.getLogger(ResourceJournal.class);
+
+    static public final String FILE = "dasein.journal.file";
+
+    static private final String PROVISIONED = "+";
+    static private final String REMOVED     = "-";
+
+    static private volatile ResourceJournal instance;
+
+    /**
+     * @return the journal of the current run or null if journaling is not enabled
+     */
+    static public @Nullable ResourceJournal getInstance() {
+        return instance;
+    }
+
+    /**
+     * Opens the journal configured through the dasein.journal.file property for the resources of the specified
+     * provider.
+     * @param provider the provider the resources classes use
+     * @return the journal or null if journaling is not enabled
+     */
+    static public synchronized @Nullable ResourceJournal open(@Nonnull CloudProvider provider) {
+        String path = DaseinTestManager.getSystemProperty(FILE);
+
+        if( path == null ) {
+            return null;
+        }
+        if( instance != null ) {
+            instance.close();
+        }
+        try {
+            instance = new ResourceJournal(new File(path), WarmPool.getOwner(provider));
+        }
+        catch( IOException e ) {
+            logger.error("Unable to open the resource journal " + path + ", provisioned resources will not be journaled: " + e.getMessage());
+        }
+        return instance;
+    }
+
+    /**
+     * Converts a resource held in a {@link FixtureRegistry} into the ID the teardown uses for it.
+     * @param kind the kind of resource
+     * @param resource the registered resource
+     * @return the resource ID or null if the resource has no usable ID
+     */
+    static public @Nullable String getResourceId(@Nonnull ResourceKind kind, @Nonnull Object resource) {
+        if( resource instanceof Blob ) {
+            Blob blob = (Blob)resource;
+
+            if( kind.equals(ResourceKind.BUCKET) ) {
+                return blob.getBucketName();
+            }
+            if( blob.getObjectName() == null ) {
+                return null;
+            }
+            return (blob.getBucketName() == null ? blob.getObjectName() : blob.getBucketName() + "/" + blob.getObjectName());
+        }
+        return resource.toString();
+    }
+
+    /**
+     * Registers orphaned resources of a registry's kind under {@link DaseinTestManager#REMOVED} labels so that clean
+     * up tears them down.
+     * @param orphans the orphaned resource IDs by kind, as returned by {@link #listOrphans()}
+     * @param registry the registry the resources are torn down from
+     */
+    static public void recover(@Nonnull Map<ResourceKind,List<String>> orphans, @Nonnull FixtureRegistry<String> registry) {
+        List<String> ids = orphans.get(registry.getKind());
+
+        if( ids != null ) {
+            for( String id : ids ) {
+                registry.register(DaseinTestManager.REMOVED, id);
+            }
+        }
+    }
+
+    /**
+     * Tears down every resource left behind by crashed runs against the configured provider.
+     * @param args ignored
+     */
+    static public void main(String ... args) {
+        DaseinTestManager.init();
+        ResourceJournal journal = getInstance();
+
+        if( journal == null ) {
+            logger.error("No resource journal is configured, set " + FILE);
+            DaseinTestManager.cleanUp();
+            return;
+        }
+        Map<ResourceKind,List<String>> orphans = journal.listOrphans();
+        ComputeResources compute = DaseinTestManager.getComputeResources();
+        IdentityResources identity = DaseinTestManager.getIdentityResources();
+        NetworkResources network = DaseinTestManager.getNetworkResources();
+        PlatformResources platform = DaseinTestManager.getPlatformResources();
+        StorageResources storage = DaseinTestManager.getStorageResources();
+
+        for( Map.Entry<ResourceKind,List<String>> entry : orphans.entrySet() ) {
+            DaseinTestManager.out(logger, null, "Orphaned " + entry.getKey(), entry.getValue().size() + " " + entry.getValue());
+        }
+        if( compute != null ) {
+            compute.recover(orphans);
+        }
+        if( identity != null ) {
+            identity.recover(orphans);
+        }
+        if( network != null ) {
+            network.recover(orphans);
+        }
+        if( platform != null ) {
+            platform.recover(orphans);
+        }
+        if( storage != null ) {
+            storage.recover(orphans);
+        }
+        DaseinTestManager.cleanUp();
+        journal.compact();
+    }
+
+    private final FileChannel channel;
+    private final File        file;
+    private final String      owner;
+
+    private ResourceJournal(@Nonnull File file, @Nonnull String owner) throws IOException {
+        this.file = file;
+        this.owner = owner;
+        this.channel = new FileOutputStream(file, true).getChannel();
+    }
+
+    /**
+     * Records a newly provisioned resource and forces the record to disk. Stateless resources are shared between
+     * runs and never torn down, so they are not journaled.
+     * @param kind the kind of resource
+     * @param label the label the resource was registered under
+     * @param resourceId the ID of the resource
+     */
+    public void provisioned(@Nonnull ResourceKind kind, @Nonnull String label, @Nonnull String resourceId) {
+        if( !label.equals(DaseinTestManager.STATELESS) ) {
+            append(PROVISIONED, kind, label, resourceId, true);
+        }
+    }
+
+    /**
+     * Records that a resource was removed, or otherwise handed off, and no longer needs recovering.
+     * @param kind the kind of resource
+     * @param resourceId the ID of the resource
+     */
+    public void removed(@Nonnull ResourceKind kind, @Nonnull String resourceId) {
+        append(REMOVED, kind, "", resourceId, false);
+    }
+
+    private synchronized void append(@Nonnull String op, @Nonnull ResourceKind kind, @Nonnull String label, @Nonnull String resourceId, boolean force) {
+        String line = op + "\t" + System.currentTimeMillis() + "\t" + kind.name() + "\t" + owner + "\t" + label + "\t" + resourceId + "\n";
+
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(line.getBytes("utf-8"));
+            // other runs may share the file, so records are written whole and never during compaction
+            FileLock lock = channel.lock();
+
+            try {
+                while( buffer.hasRemaining() ) {
+                    channel.write(buffer);
+                }
+                if( force ) {
+                    channel.force(false);
+                }
+            }
+            finally {
+                lock.release();
+            }
+        }
+        catch( IOException e ) {
+            logger.error("Unable to journal " + kind + " " + resourceId + ": " + e.getMessage());
+        }
+    }
+
+    public synchronized void close() {
+        try {
+            channel.close();
+        }
+        catch( IOException ignore ) {
+            // ignore
+        }
+        synchronized( ResourceJournal.class ) {
+            if( instance == this ) {
+                instance = null;
+            }
+        }
+    }
+
+    /**
+     * @return the resources of this journal's provider, account and region that were provisioned but never removed,
+     * in the order they were provisioned
+     */
+    public synchronized @Nonnull Map<ResourceKind,List<String>> listOrphans() {
+        Map<ResourceKind,List<String>> orphans = new EnumMap<ResourceKind, List<String>>(ResourceKind.class);
+
+        try {
+            for( String[] record : read().values() ) {
+                if( owner.equals(record[3]) ) {
+                    ResourceKind kind = ResourceKind.valueOf(record[2]);
+                    List<String> ids = orphans.get(kind);
+
+                    if( ids == null ) {
+                        ids = new ArrayList<String>();
+                        orphans.put(kind, ids);
+                    }
+                    ids.add(record[5]);
+                }
+            }
+        }
+        catch( IOException e ) {
+            logger.error("Unable to read the resource journal " + file + ": " + e.getMessage());
+        }
+        return orphans;
+    }
+
+    /**
+     * Rewrites the journal so that it holds only the resources still waiting to be removed. The journal may already
+     * be closed.
+     */
+    public synchronized void compact() {
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+
+            try {
+                FileChannel target = raf.getChannel();
+                FileLock lock = target.lock();
+
+                try {
+                    StringBuilder str = new StringBuilder();
+
+                    for( String[] record : read().values() ) {
+                        for( int i=0; i<record.length; i++ ) {
+                            str.append(i == 0 ? "" : "\t").append(record[i]);
+                        }
+                        str.append("\n");
+                    }
+                    target.truncate(0L);
+                    target.write(ByteBuffer.wrap(str.toString().getBytes("utf-8")));
+                    target.force(false);
+                }
+                finally {
+                    lock.release();
+                }
+            }
+            finally {
+                raf.close();
+            }
+        }
+        catch( IOException e ) {
+            logger.error("Unable to compact the resource journal " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return the provisioned records that have no matching removal, keyed by owner, kind and resource ID
+     * @throws IOException the journal could not be read
+     */
+    private @Nonnull Map<String,String[]> read() throws IOException {
+        if( !file.exists() ) {
+            return Collections.emptyMap();
+        }
+        Map<String,String[]> outstanding = new LinkedHashMap<String, String[]>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "utf-8"));
+
+        try {
+            String line;
+
+            while( (line = reader.readLine()) != null ) {
+                String[] record = line.split("\t", -1);
+
+                // a torn record from a crash mid-write is incomplete and skipped
+                if( record.length != 6 ) {
+                    continue;
+                }
+                try {
+                    ResourceKind.valueOf(record[2]);
+                }
+                catch( IllegalArgumentException e ) {
+                    continue;
+                }
+                String key = record[3] + "\t" + record[2] + "\t" + record[5];
+
+                if( PROVISIONED.equals(record[0]) ) {
+                    outstanding.put(key, record);
+                }
+                else if( REMOVED.equals(record[0]) ) {
+                    outstanding.remove(key);
+                }
+            }
+        }
+        finally {
+            reader.close();
+        }
+        return outstanding;
+    }
+}
@@ -0,0 +1,41 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.fixture;
+
+/**
+ * The kinds of cloud resources the test harness provisions for the stateful tests. The first group may be
+ * declared as shared {@link Fixture}s, the rest are only tracked so they can be torn down in the right order.
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+public enum ResourceKind {
+    VM, VOLUME, SNAPSHOT, IMAGE,
+    VLAN, SUBNET, FIREWALL, STATIC_IP, LOAD_BALANCER, DNS_ZONE,
+    KEYPAIR,
+    RDBMS, CDN,
+    BUCKET,
+
+    NETWORK_FIREWALL, INTERNET_GATEWAY, ROUTING_TABLE, SSL_CERTIFICATE,
+    USER, GROUP,
+    QUEUE, TOPIC,
+    OBJECT, CHILD_BUCKET,
+    INFRASTRUCTURE, TOPOLOGY
+}
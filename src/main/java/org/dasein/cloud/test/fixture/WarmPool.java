@@ -0,0 +1,381 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.fixture;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.ProviderContext;
+import org.dasein.cloud.test.DaseinTestManager;
+import org.dasein.cloud.test.runner.Shard;
+import org.dasein.util.CalendarWrapper;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An opt-in pool of {@link DaseinTestManager#STATEFUL} fixtures that survive from one test run to the next. When a
+ * run starts, the resources classes lease the pooled fixtures belonging to the same provider, account and region,
+ * validate that they still exist and register them under their old labels, so the usual getTest*Id(label,
+ * provisionIfNull) calls find them instead of provisioning new ones. At clean up the fixtures are released back to
+ * the pool rather than torn down. Pooled VMs run in pooled VLANs, subnets and firewalls, so the fixtures of a provider
+ * expire together: once any of them is older than the time to live, all of them are torn down instead of being leased.
+ * <p>The pool is configured through {@link System} properties:</p>
+ * <ul>
+ *     <li>dasein.pool.file - the JSON file backing the pool, which enables pooling</li>
+ *     <li>dasein.pool.ttl - the number of minutes a fixture may be reused after it was created (default 240)</li>
+ *     <li>dasein.pool.reap - tear down every pooled fixture for the provider at the end of the run</li>
+ * </ul>
+ * Leased fixtures are removed from the file while a run holds them, so concurrent runs sharing a pool file never
+ * share a fixture. {@link #main(String[])} reaps the pool without running any tests.
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+public class WarmPool {
+    static private final Logger logger = Logger.getLogger(WarmPool.class);
+
+    static public final String FILE = "dasein.pool.file";
+    static public final String REAP = "dasein.pool.reap";
+    static public final String TTL  = "dasein.pool.ttl";
+
+    /**
+     * The label under which fixtures are pooled. Fixtures with other labels are created and destroyed by individual
+     * tests and are always torn down.
+     */
+    static public final String POOLED = DaseinTestManager.STATEFUL;
+
+    /**
+     * Checks whether a leased fixture can still be used.
+     */
+    public interface Validator {
+        /**
+         * @param resourceId the ID of the pooled resource
+         * @return true if the resource exists and is in a usable state
+         * @throws Exception the resource could not be checked, in which case it stays in the pool for a later run
+         */
+        public boolean isValid(@Nonnull String resourceId) throws Exception;
+    }
+
+    static private class Entry {
+        String kind;
+        String label;
+        String resourceId;
+        long   created;
+        String owner;
+    }
+
+    static public boolean isEnabled() {
+        return (DaseinTestManager.getSystemProperty(FILE) != null);
+    }
+
+    static public boolean isReaping() {
+        return "true".equalsIgnoreCase(DaseinTestManager.getSystemProperty(REAP));
+    }
+
+    static public long getTimeToLive() {
+        String prop = DaseinTestManager.getSystemProperty(TTL);
+
+        if( prop != null ) {
+            try {
+                return Math.max(0L, Long.parseLong(prop.trim())) * CalendarWrapper.MINUTE;
+            }
+            catch( NumberFormatException ignore ) {
+                // fall through to the default
+            }
+        }
+        return CalendarWrapper.MINUTE * 240L;
+    }
+
+    /**
+     * Leases every fixture pooled for the provider's cloud, account and region.
+     * @param provider the provider the resources classes use
+     * @return the pool or null if pooling is not enabled
+     */
+    static public @Nullable WarmPool open(@Nonnull CloudProvider provider) {
+        String path = DaseinTestManager.getSystemProperty(FILE);
+
+        if( path == null ) {
+            return null;
+        }
+        WarmPool pool = new WarmPool(new File(path), getOwner(provider));
+
+        try {
+            pool.take();
+        }
+        catch( Exception e ) {
+            logger.warn("Unable to read the fixture pool " + path + ", no fixtures will be reused: " + e.getMessage());
+        }
+        return pool;
+    }
+
+    static public @Nonnull String getOwner(@Nonnull CloudProvider provider) {
+        ProviderContext ctx = provider.getContext();
+
+        String owner = provider.getProviderName() + "/" + provider.getCloudName() + "/" + (ctx == null ? null : ctx.getAccountNumber()) + "/" + (ctx == null ? null : ctx.getRegionId());
+
+        // shards of one run each keep their own fixtures
+        return (Shard.isSharded() ? owner + "/" + Shard.getTag() : owner);
+    }
+
+    /**
+     * Tears down every pooled fixture of the configured provider without running any tests.
+     * @param args ignored
+     */
+    static public void main(String ... args) {
+        System.setProperty(REAP, "true");
+        DaseinTestManager.init();
+        DaseinTestManager.cleanUp();
+    }
+
+    private final File                    file;
+    private final Map<String,Long>        leased    = new HashMap<String, Long>();
+    private final Map<String,List<Entry>> available = new HashMap<String, List<Entry>>();
+    private final List<Entry>             released  = new ArrayList<Entry>();
+    private final String                  owner;
+    private boolean                       expired;
+
+    private WarmPool(@Nonnull File file, @Nonnull String owner) {
+        this.file = file;
+        this.owner = owner;
+    }
+
+    /**
+     * Registers the pooled fixtures of the specified kind. Fixtures that are no longer usable, expired fixtures and,
+     * when reaping, all fixtures are registered under a removed label so that teardown destroys them.
+     * @param kind the kind of fixture
+     * @param registry the registry to lease the fixtures into
+     * @param validator checks that a fixture still exists and is usable
+     */
+    public synchronized void lease(@Nonnull ResourceKind kind, @Nonnull FixtureRegistry<String> registry, @Nonnull Validator validator) {
+        List<Entry> entries = available.remove(kind.name());
+
+        if( entries == null ) {
+            return;
+        }
+        ResourceJournal journal = ResourceJournal.getInstance();
+        boolean reaping = isReaping();
+
+        for( Entry entry : entries ) {
+            if( reaping || expired ) {
+                registry.register(DaseinTestManager.REMOVED, entry.resourceId);
+                continue;
+            }
+            try {
+                if( !validator.isValid(entry.resourceId) ) {
+                    // it may still exist in some broken state, in which case it has to be torn down
+                    logger.info("Dropping pooled " + kind + " " + entry.resourceId + " as it is no longer usable");
+                    registry.register(DaseinTestManager.REMOVED, entry.resourceId);
+                }
+                else if( registry.containsKey(entry.label) ) {
+                    // should not happen, but a fixture that is not leased must not be lost either
+                    registry.register(DaseinTestManager.REMOVED, entry.resourceId);
+                }
+                else {
+                    registry.put(entry.label, entry.resourceId);
+                    leased.put(kind + ":" + entry.resourceId, entry.created);
+                    if( journal != null ) {
+                        // the fixture is out of the pool file until it is released, so a crash must not lose it
+                        journal.provisioned(kind, entry.label, entry.resourceId);
+                    }
+                    DaseinTestManager.out(logger, null, "Leased " + kind, entry.label + " -> " + entry.resourceId);
+                }
+            }
+            catch( Throwable t ) {
+                logger.warn("Unable to validate pooled " + kind + " " + entry.resourceId + ", keeping it in the pool: " + t.getMessage());
+                released.add(entry);
+            }
+        }
+    }
+
+    /**
+     * Removes the pooled fixture of the specified kind from the registry so that it is not torn down and returns it
+     * to the pool. Nothing is released when reaping.
+     * @param kind the kind of fixture
+     * @param registry the registry holding the fixture
+     */
+    public synchronized void release(@Nonnull ResourceKind kind, @Nonnull FixtureRegistry<String> registry) {
+        if( isReaping() ) {
+            return;
+        }
+        String resourceId = registry.remove(POOLED);
+
+        if( resourceId != null ) {
+            Entry entry = new Entry();
+            Long created = leased.get(kind + ":" + resourceId);
+
+            entry.kind = kind.name();
+            entry.label = POOLED;
+            entry.resourceId = resourceId;
+            entry.created = (created == null ? System.currentTimeMillis() : created);
+            entry.owner = owner;
+            released.add(entry);
+
+            ResourceJournal journal = ResourceJournal.getInstance();
+
+            if( journal != null ) {
+                journal.removed(kind, resourceId);
+            }
+        }
+    }
+
+    /**
+     * Writes the released fixtures, and any leased fixtures no resources class claimed, back to the pool file.
+     */
+    public synchronized void save() {
+        for( List<Entry> entries : available.values() ) {
+            released.addAll(entries);
+        }
+        available.clear();
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+
+            try {
+                FileChannel channel = raf.getChannel();
+                FileLock lock = channel.lock();
+
+                try {
+                    List<Entry> entries = read(channel);
+
+                    entries.addAll(released);
+                    write(channel, entries);
+                }
+                finally {
+                    lock.release();
+                }
+            }
+            finally {
+                raf.close();
+            }
+            DaseinTestManager.out(logger, null, "Pooled Fixtures", String.valueOf(released.size()));
+            released.clear();
+        }
+        catch( Exception e ) {
+            logger.error("Unable to write the fixture pool " + file + ", the pooled fixtures are now orphaned: " + e.getMessage());
+        }
+    }
+
+    private void take() throws IOException, JSONException {
+        if( !file.exists() ) {
+            return;
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+
+        try {
+            FileChannel channel = raf.getChannel();
+            FileLock lock = channel.lock();
+
+            try {
+                List<Entry> others = new ArrayList<Entry>();
+                long ttl = getTimeToLive();
+
+                for( Entry entry : read(channel) ) {
+                    if( owner.equals(entry.owner) ) {
+                        if( System.currentTimeMillis() - entry.created > ttl ) {
+                            expired = true;
+                        }
+                        List<Entry> entries = available.get(entry.kind);
+
+                        if( entries == null ) {
+                            entries = new ArrayList<Entry>();
+                            available.put(entry.kind, entries);
+                        }
+                        entries.add(entry);
+                    }
+                    else {
+                        others.add(entry);
+                    }
+                }
+                write(channel, others);
+            }
+            finally {
+                lock.release();
+            }
+        }
+        finally {
+            raf.close();
+        }
+    }
+
+    private @Nonnull List<Entry> read(@Nonnull FileChannel channel) throws IOException, JSONException {
+        List<Entry> entries = new ArrayList<Entry>();
+        ByteBuffer buffer = ByteBuffer.allocate((int)channel.size());
+
+        channel.position(0L);
+        while( buffer.hasRemaining() && channel.read(buffer) > -1 ) {
+            // keep reading
+        }
+        String json = new String(buffer.array(), "utf-8").trim();
+
+        if( json.length() < 1 ) {
+            return entries;
+        }
+        JSONArray list = new JSONObject(json).getJSONArray("fixtures");
+
+        for( int i=0; i<list.length(); i++ ) {
+            JSONObject ob = list.getJSONObject(i);
+            Entry entry = new Entry();
+
+            entry.kind = ob.getString("kind");
+            entry.label = ob.getString("label");
+            entry.resourceId = ob.getString("id");
+            entry.created = ob.getLong("created");
+            entry.owner = ob.getString("owner");
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    private void write(@Nonnull FileChannel channel, @Nonnull List<Entry> entries) throws IOException, JSONException {
+        JSONArray list = new JSONArray();
+
+        for( Entry entry : entries ) {
+            JSONObject ob = new JSONObject();
+
+            ob.put("kind", entry.kind);
+            ob.put("label", entry.label);
+            ob.put("id", entry.resourceId);
+            ob.put("created", entry.created);
+            ob.put("owner", entry.owner);
+            list.put(ob);
+        }
+        JSONObject json = new JSONObject();
+
+        json.put("fixtures", list);
+        byte[] bytes = json.toString(2).getBytes("utf-8");
+
+        channel.truncate(0L);
+        channel.position(0L);
+        channel.write(ByteBuffer.wrap(bytes));
+        channel.force(true);
+    }
+}
@@ -32,6 +32,13 @@ import org.dasein.cloud.identity.IdentityServices;
 import org.dasein.cloud.identity.SSHKeypair;
 import org.dasein.cloud.identity.ShellKeySupport;
 import org.dasein.cloud.test.DaseinTestManager;
+import org.dasein.cloud.test.fixture.FixtureRegistry;
+import org.dasein.cloud.test.fixture.ResourceJournal;
+import org.dasein.cloud.test.fixture.ResourceKind;
+import org.dasein.cloud.test.fixture.WarmPool;
+import org.dasein.cloud.test.metrics.Timeline;
+import org.dasein.cloud.test.runner.Shard;
+import org.dasein.cloud.test.teardown.TeardownEngine;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -44,10 +51,10 @@ import java.security.KeyPair;
 import java.security.KeyPairGenerator;
 import java.security.NoSuchAlgorithmException;
 import java.security.interfaces.RSAPublicKey;
-import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.Random;
+import java.util.concurrent.Callable;
 
 /**
  * Manages all identity resources for automated provisioning and de-provisioning during integration tests.
@@ -59,11 +66,9 @@ import java.util.Random;
 public class IdentityResources {
     static private final Logger logger = Logger.getLogger(IdentityResources.class);
 
-    static private final Random random = new Random();
-
-    private final HashMap<String,String> testGroups = new HashMap<String, String>();
-    private final HashMap<String,String> testKeys   = new HashMap<String, String>();
-    private final HashMap<String,String> testUsers  = new HashMap<String, String>();
+    private final FixtureRegistry<String> testGroups = new FixtureRegistry<String>(ResourceKind.GROUP);
+    private final FixtureRegistry<String> testKeys   = new FixtureRegistry<String>(ResourceKind.KEYPAIR);
+    private final FixtureRegistry<String> testUsers  = new FixtureRegistry<String>(ResourceKind.USER);
     private CloudProvider   provider;
 
     public IdentityResources(@Nonnull CloudProvider provider) {
@@ -105,50 +110,104 @@ public class IdentityResources {
     }
 
     public int close() {
-        int count = 0;
+        TeardownEngine teardown = new TeardownEngine();
+
+        close(teardown);
+        return teardown.run();
+    }
+
+    /**
+     * Registers the identity resources a crashed run left behind so that clean up tears them down.
+     * @param orphans the orphaned resource IDs by kind
+     */
+    public void recover(@Nonnull Map<ResourceKind,List<String>> orphans) {
+        ResourceJournal.recover(orphans, testGroups);
+        ResourceJournal.recover(orphans, testKeys);
+        ResourceJournal.recover(orphans, testUsers);
+    }
+
+    /**
+     * Registers the keypair left in the warm pool by a previous run.
+     * @param pool the warm pool
+     */
+    public void lease(@Nonnull WarmPool pool) {
+        IdentityServices identityServices = provider.getIdentityServices();
 
+        if( identityServices != null ) {
+            final ShellKeySupport keySupport = identityServices.getShellKeySupport();
+
+            if( keySupport != null ) {
+                pool.lease(ResourceKind.KEYPAIR, testKeys, new WarmPool.Validator() {
+                    @Override
+                    public boolean isValid(@Nonnull String resourceId) throws Exception {
+                        return (keySupport.getKeypair(resourceId) != null);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Returns the stateful keypair to the warm pool so that it is not torn down.
+     * @param pool the warm pool
+     */
+    public void release(@Nonnull WarmPool pool) {
+        pool.release(ResourceKind.KEYPAIR, testKeys);
+    }
+
+    /**
+     * Registers every stateful identity resource provisioned during the tests for removal.
+     * @param teardown the engine that removes the resources
+     */
+    public void close(@Nonnull TeardownEngine teardown) {
         try {
             IdentityServices identityServices = provider.getIdentityServices();
 
             if( identityServices != null ) {
-                ShellKeySupport keySupport = identityServices.getShellKeySupport();
+                final ShellKeySupport keySupport = identityServices.getShellKeySupport();
 
                 if( keySupport != null ) {
                     for( Map.Entry<String,String> entry : testKeys.entrySet() ) {
                         if( !entry.getKey().equals(DaseinTestManager.STATELESS) ) {
-                            try {
-                                keySupport.deleteKeypair(entry.getValue());
-                                count++;
-                            }
-                            catch( Throwable t ) {
-                                logger.warn("Failed to de-provision test keypair " + entry.getValue() + ": " + t.getMessage());
-                            }
+                            final String keypairId = entry.getValue();
+
+                            teardown.add(ResourceKind.KEYPAIR, keypairId, new Callable<Boolean>() {
+                                @Override
+                                public Boolean call() throws Exception {
+                                    keySupport.deleteKeypair(keypairId);
+                                    return true;
+                                }
+                            });
                         }
                     }
                 }
-                IdentityAndAccessSupport iamSupport = identityServices.getIdentityAndAccessSupport();
+                final IdentityAndAccessSupport iamSupport = identityServices.getIdentityAndAccessSupport();
 
                 if( iamSupport != null ) {
                     for( Map.Entry<String,String> entry : testUsers.entrySet() ) {
                         if( !entry.getKey().equals(DaseinTestManager.STATELESS) ) {
-                            try {
-                                iamSupport.removeUser(entry.getValue());
-                                count++;
-                            }
-                            catch( Throwable t ) {
-                                logger.warn("Failed to de-provision test user " + entry.getValue() + ": " + t.getMessage());
-                            }
+                            final String userId = entry.getValue();
+
+                            teardown.add(ResourceKind.USER, userId, new Callable<Boolean>() {
+                                @Override
+                                public Boolean call() throws Exception {
+                                    iamSupport.removeUser(userId);
+                                    return true;
+                                }
+                            });
                         }
                     }
                     for( Map.Entry<String,String> entry : testGroups.entrySet() ) {
                         if( !entry.getKey().equals(DaseinTestManager.STATELESS) ) {
-                            try {
-                                iamSupport.removeGroup(entry.getValue());
-                                count++;
-                            }
-                            catch( Throwable t ) {
-                                logger.warn("Failed to de-provision test group " + entry.getValue() + ": " + t.getMessage());
-                            }
+                            final String groupId = entry.getValue();
+
+                            teardown.add(ResourceKind.GROUP, groupId, new Callable<Boolean>() {
+                                @Override
+                                public Boolean call() throws Exception {
+                                    iamSupport.removeGroup(groupId);
+                                    return true;
+                                }
+                            });
                         }
                     }
                 }
@@ -157,7 +216,6 @@ public class IdentityResources {
         catch( Throwable ignore ) {
             // ignore
         }
-        return count;
     }
 
     public int report() {
@@ -192,127 +250,133 @@ public class IdentityResources {
     }
 
     public @Nullable String getTestGroupId(@Nonnull String label, boolean provisionIfNull) {
-        if( label.equals(DaseinTestManager.STATELESS) ) {
-            for( Map.Entry<String,String> entry : testGroups.entrySet() ) {
-                if( !entry.getKey().equals(DaseinTestManager.REMOVED) ) {
-                    String id = entry.getValue();
+        synchronized( testGroups.lock(label) ) {
+            if( label.equals(DaseinTestManager.STATELESS) ) {
+                for( Map.Entry<String,String> entry : testGroups.entrySet() ) {
+                    if( !entry.getKey().equals(DaseinTestManager.REMOVED) ) {
+                        String id = entry.getValue();
 
-                    if( id != null ) {
-                        return id;
+                        if( id != null ) {
+                            return id;
+                        }
                     }
                 }
+                return findStatelessGroup();
             }
-            return findStatelessGroup();
-        }
-        String id = testGroups.get(label);
+            String id = testGroups.get(label);
 
-        if( id != null ) {
-            return id;
-        }
-        if( provisionIfNull ) {
-            IdentityServices services = provider.getIdentityServices();
+            if( id != null ) {
+                return id;
+            }
+            if( provisionIfNull ) {
+                IdentityServices services = provider.getIdentityServices();
 
-            if( services != null ) {
-                IdentityAndAccessSupport support = services.getIdentityAndAccessSupport();
+                if( services != null ) {
+                    IdentityAndAccessSupport support = services.getIdentityAndAccessSupport();
 
-                if( support != null ) {
-                    try {
-                        return provisionGroup(support, label, "dsngroup");
-                    }
-                    catch( Throwable ignore ) {
-                        // ignore
+                    if( support != null ) {
+                        try {
+                            return provisionGroup(support, label, "dsngroup");
+                        }
+                        catch( Throwable ignore ) {
+                            // ignore
+                        }
                     }
                 }
             }
+            return null;
         }
-        return null;
     }
 
     public @Nullable String getTestKeypairId(@Nonnull String label, boolean provisionIfNull) {
-        if( label.equals(DaseinTestManager.STATELESS) ) {
-            for( Map.Entry<String,String> entry : testKeys.entrySet() ) {
-                if( !entry.getKey().equals(DaseinTestManager.REMOVED) ) {
-                    String id = entry.getValue();
+        synchronized( testKeys.lock(label) ) {
+            if( label.equals(DaseinTestManager.STATELESS) ) {
+                for( Map.Entry<String,String> entry : testKeys.entrySet() ) {
+                    if( !entry.getKey().equals(DaseinTestManager.REMOVED) ) {
+                        String id = entry.getValue();
 
-                    if( id != null ) {
-                        return id;
+                        if( id != null ) {
+                            return id;
+                        }
                     }
                 }
+                return findStatelessKeypair();
             }
-            return findStatelessKeypair();
-        }
-        String id = testKeys.get(label);
+            String id = testKeys.get(label);
 
-        if( id != null ) {
-            return id;
-        }
-        if( provisionIfNull ) {
-            IdentityServices services = provider.getIdentityServices();
+            if( id != null ) {
+                return id;
+            }
+            if( provisionIfNull ) {
+                IdentityServices services = provider.getIdentityServices();
 
-            if( services != null ) {
-                ShellKeySupport support = services.getShellKeySupport();
+                if( services != null ) {
+                    ShellKeySupport support = services.getShellKeySupport();
 
-                if( support != null ) {
-                    try {
-                        return provisionKeypair(support, label, "dsnkp");
-                    }
-                    catch( Throwable ignore ) {
-                        // ignore
+                    if( support != null ) {
+                        try {
+                            return provisionKeypair(support, label, "dsnkp");
+                        }
+                        catch( Throwable ignore ) {
+                            // ignore
+                        }
                     }
                 }
             }
+            return null;
         }
-        return null;
     }
 
     public @Nullable String getTestUserId(@Nonnull String label, boolean provisionIfNull, @Nullable String groupToJoin) {
-        if( label.equals(DaseinTestManager.STATELESS) ) {
-            for( Map.Entry<String,String> entry : testUsers.entrySet() ) {
-                if( !entry.getKey().equals(DaseinTestManager.REMOVED) ) {
-                    String id = entry.getValue();
+        synchronized( testUsers.lock(label) ) {
+            if( label.equals(DaseinTestManager.STATELESS) ) {
+                for( Map.Entry<String,String> entry : testUsers.entrySet() ) {
+                    if( !entry.getKey().equals(DaseinTestManager.REMOVED) ) {
+                        String id = entry.getValue();
 
-                    if( id != null ) {
-                        return id;
+                        if( id != null ) {
+                            return id;
+                        }
                     }
                 }
+                return findStatelessUser(groupToJoin);
             }
-            return findStatelessUser(groupToJoin);
-        }
-        String id = testUsers.get(label);
+            String id = testUsers.get(label);
 
-        if( id != null ) {
+            if( id != null ) {
 
-            if( groupToJoin != null ) {
-                IdentityServices services = provider.getIdentityServices();
+                if( groupToJoin != null ) {
+                    IdentityServices services = provider.getIdentityServices();
 
-                if( services != null ) {
-                    IdentityAndAccessSupport support = services.getIdentityAndAccessSupport();
+                    if( services != null ) {
+                        IdentityAndAccessSupport support = services.getIdentityAndAccessSupport();
 
-                    if( support != null ) {
-                        try { support.addUserToGroups(id, groupToJoin); }
-                        catch( Throwable ignore ) { }
+                        if( support != null ) {
+                            try { support.addUserToGroups(id, groupToJoin); }
+                            catch( Throwable ignore ) { }
+                        }
                     }
                 }
+                return id;
             }
-            return id;
-        }
-        if( provisionIfNull ) {
-            IdentityServices services = provider.getIdentityServices();
+            if( provisionIfNull ) {
+                IdentityServices services = provider.getIdentityServices();
 
-            if( services != null ) {
-                IdentityAndAccessSupport support = services.getIdentityAndAccessSupport();
+                if( services != null ) {
+                    IdentityAndAccessSupport support = services.getIdentityAndAccessSupport();
 
-                if( support != null ) {
-                    try {
-                        return provisionUser(support, label, "dsnuser", groupToJoin);
-                    }
-                    catch( Throwable ignore ) {
-                        // ignore
+                    if( support != null ) {
+                        try {
+                            return provisionUser(support, label, "dsnuser", groupToJoin);
+                        }
+                        catch( Throwable ignore ) {
+                            // ignore
+                        }
                     }
                 }
             }
+            return null;
         }
-        return null;
     }
 
     public @Nullable String findStatelessGroup() {
@@ -401,56 +465,65 @@ public class IdentityResources {
     }
 
     public @Nonnull String provisionGroup(@Nonnull IdentityAndAccessSupport support, @Nonnull String label, @Nonnull String namePrefix) throws CloudException, InternalException {
-        String id = support.createGroup(namePrefix + " " + System.currentTimeMillis(), "/dsntest", false).getProviderGroupId();
+        Timeline.Span span = Timeline.begin("provision", "Group");
 
-        if( id == null ) {
-            throw new CloudException("No group was created");
-        }
-        synchronized( testGroups ) {
-            while( testGroups.containsKey(label) ) {
-                label = label + random.nextInt(9);
+        try {
+            namePrefix = Shard.tag(namePrefix);
+            String id = support.createGroup(namePrefix + " " + System.currentTimeMillis(), "/dsntest", false).getProviderGroupId();
+
+            if( id == null ) {
+                throw new CloudException("No group was created");
             }
-            testGroups.put(label, id);
+            testGroups.register(label, id);
+            return id;
+        }
+        finally {
+            span.end();
         }
-        return id;
     }
 
     public @Nonnull String provisionKeypair(@Nonnull ShellKeySupport support, @Nonnull String label, @Nonnull String namePrefix) throws CloudException, InternalException {
-        String id = null;
+        Timeline.Span span = Timeline.begin("provision", "Keypair");
+
+        try {
+            namePrefix = Shard.tag(namePrefix);
+            String id = null;
 
-        if( support.getCapabilities().identifyKeyImportRequirement().equals(Requirement.REQUIRED) ) {
-            String publicKey = generateKey();
-            if( publicKey != null ) {
-                id = support.importKeypair(namePrefix+ (System.currentTimeMillis()%10000), publicKey).getProviderKeypairId();
+            if( support.getCapabilities().identifyKeyImportRequirement().equals(Requirement.REQUIRED) ) {
+                String publicKey = generateKey();
+                if( publicKey != null ) {
+                    id = support.importKeypair(namePrefix+ (System.currentTimeMillis()%10000), publicKey).getProviderKeypairId();
+                }
             }
-        }
-        else {
-            id = support.createKeypair(namePrefix + (System.currentTimeMillis()%10000)).getProviderKeypairId();
-        }
-        if( id == null ) {
-            throw new CloudException("No keypair was generated");
-        }
-        synchronized( testKeys ) {
-            while( testKeys.containsKey(label) ) {
-                label = label + random.nextInt(9);
+            else {
+                id = support.createKeypair(namePrefix + (System.currentTimeMillis()%10000)).getProviderKeypairId();
+            }
+            if( id == null ) {
+                throw new CloudException("No keypair was generated");
             }
-            testKeys.put(label, id);
+            testKeys.register(label, id);
+            return id;
+        }
+        finally {
+            span.end();
         }
-        return id;
     }
 
     public @Nonnull String provisionUser(@Nonnull IdentityAndAccessSupport support, @Nonnull String label, @Nonnull String namePrefix, @Nullable String ... preferredGroups) throws CloudException, InternalException {
-        String id = support.createUser(namePrefix + (System.currentTimeMillis()%10000), "/dsntest", preferredGroups == null ? new String[0] : preferredGroups).getProviderUserId();
+        Timeline.Span span = Timeline.begin("provision", "User");
 
-        if( id == null ) {
-            throw new CloudException("No user was created");
-        }
-        synchronized( testUsers ) {
-            while( testUsers.containsKey(label) ) {
-                label = label + random.nextInt(9);
+        try {
+            namePrefix = Shard.tag(namePrefix);
+            String id = support.createUser(namePrefix + (System.currentTimeMillis()%10000), "/dsntest", preferredGroups == null ? new String[0] : preferredGroups).getProviderUserId();
+
+            if( id == null ) {
+                throw new CloudException("No user was created");
             }
-            testUsers.put(label, id);
+            testUsers.register(label, id);
+            return id;
+        }
+        finally {
+            span.end();
         }
-        return id;
     }
 }
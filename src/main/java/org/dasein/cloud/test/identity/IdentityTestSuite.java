@@ -20,6 +20,7 @@
 package org.dasein.cloud.test.identity;
 
 import org.dasein.cloud.test.DaseinTestManager;
+import org.dasein.cloud.test.runner.ParallelSuite;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.runner.RunWith;
@@ -31,7 +32,7 @@ import org.junit.runners.Suite;
  *
  * @author George Reese
  */
-@RunWith(Suite.class)
+@RunWith(ParallelSuite.class)
 @Suite.SuiteClasses({
         StatefulKeypairTests.class,
         StatefulIAMTests.class,
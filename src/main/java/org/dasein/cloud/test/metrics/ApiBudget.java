@@ -0,0 +1,338 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.metrics;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.test.DaseinTestManager;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Per-test API call budgets taken from a known good run. In record mode, the API call counts and the p90 latency
+ * of each API are stored for every test at clean up. In check mode, each test is compared against its stored
+ * budget when it ends, and every API that exceeds its budget by more than the allowed factor is reported. An API
+ * the baseline never saw has a budget of zero, so a list turning into a series of gets shows up as new calls.
+ * Budgets are configured through {@link System} properties:
+ * <ul>
+ *     <li>dasein.budget.file - the baseline file (required)</li>
+ *     <li>dasein.budget.mode - record or check (required)</li>
+ *     <li>dasein.budget.factor - how many times its baseline count an API may be called (default 1.5)</li>
+ *     <li>dasein.budget.latency - how many times its baseline p90 an API's p90 may be (default 3)</li>
+ *     <li>dasein.budget.fail - true to fail tests that exceed their budget rather than warn (default false)</li>
+ * </ul>
+ * Call counts come from the API Log and are only available when tests run one at a time. Latencies, and the call
+ * counts of instrumented services, are attributed per thread and are checked for parallel runs too. The lookups and
+ * listings of state waiters are held to their latency budget only, since how often they poll depends on the cloud
+ * rather than on the code under test. Tests missing from the baseline are not checked.
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+public class ApiBudget {
+    static private final Logger logger = Logger.getLogger(ApiBudget.class);
+
+    static public final String FACTOR  = "dasein.budget.factor";
+    static public final String FAIL    = "dasein.budget.fail";
+    static public final String FILE    = "dasein.budget.file";
+    static public final String LATENCY = "dasein.budget.latency";
+    static public final String MODE    = "dasein.budget.mode";
+
+    static private ApiBudget instance;
+    static private boolean   loaded;
+
+    /**
+     * @return the budgets for this run or null if neither recording nor checking is enabled
+     */
+    static public synchronized @Nullable ApiBudget getInstance() {
+        if( !loaded ) {
+            String path = DaseinTestManager.getSystemProperty(FILE);
+            String mode = DaseinTestManager.getSystemProperty(MODE);
+
+            loaded = true;
+            if( path != null && mode != null ) {
+                if( mode.equalsIgnoreCase("record") ) {
+                    instance = new ApiBudget(new File(path), true);
+                }
+                else if( mode.equalsIgnoreCase("check") ) {
+                    instance = new ApiBudget(new File(path), false);
+                    try {
+                        instance.load();
+                    }
+                    catch( Exception e ) {
+                        logger.warn("Unable to read the API budgets in " + path + ", budgets will not be checked: " + e.getMessage());
+                    }
+                }
+                else {
+                    logger.warn("Unknown API budget mode " + mode + ", expected record or check");
+                }
+            }
+        }
+        return instance;
+    }
+
+    static private float getFloatProperty(@Nonnull String key, float defaultValue) {
+        String prop = DaseinTestManager.getSystemProperty(key);
+
+        if( prop != null ) {
+            try {
+                float value = Float.parseFloat(prop.trim());
+
+                if( value > 0f ) {
+                    return value;
+                }
+            }
+            catch( NumberFormatException ignore ) {
+                // fall through to the default
+            }
+        }
+        return defaultValue;
+    }
+
+    static private @Nonnull String read(@Nonnull File file) throws IOException {
+        InputStream input = new FileInputStream(file);
+
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            byte[] bytes = new byte[8192];
+            int count;
+
+            while( (count = input.read(bytes)) != -1 ) {
+                buffer.write(bytes, 0, count);
+            }
+            return new String(buffer.toByteArray(), "utf-8");
+        }
+        finally {
+            input.close();
+        }
+    }
+
+    private final File                    file;
+    private final boolean                 recording;
+    private final float                   factor;
+    private final float                   latencyFactor;
+    private final Map<String,JSONObject>  budgets    = new TreeMap<String, JSONObject>();
+    private final Map<String,List<String>> overBudget = new TreeMap<String, List<String>>();
+    private int                           checked;
+
+    private ApiBudget(@Nonnull File file, boolean recording) {
+        this.file = file;
+        this.recording = recording;
+        this.factor = getFloatProperty(FACTOR, 1.5f);
+        this.latencyFactor = getFloatProperty(LATENCY, 3f);
+    }
+
+    public boolean isRecording() {
+        return recording;
+    }
+
+    /**
+     * @return true if tests that exceed their budget should fail
+     */
+    public boolean isFailing() {
+        return !recording && "true".equalsIgnoreCase(DaseinTestManager.getSystemProperty(FAIL));
+    }
+
+    private void load() throws IOException, JSONException {
+        JSONObject json = new JSONObject(read(file)).getJSONObject("tests");
+
+        for( Iterator<?> it = json.keys(); it.hasNext(); ) {
+            String test = (String)it.next();
+
+            budgets.put(test, json.getJSONObject(test));
+        }
+    }
+
+    /**
+     * Records the calls of a test in record mode or compares them against the test's budget in check mode.
+     * @param test the test as suite.method
+     * @param calls the API call counts of the test or null if they are not known
+     * @param latency the API latencies of the test
+     * @return one line for each API that exceeded its budget, empty when recording
+     */
+    public @Nonnull List<String> apply(@Nonnull String test, @Nullable Map<String,Integer> calls, @Nonnull ApiLatency latency) {
+        try {
+            if( recording ) {
+                record(test, calls, latency);
+                return new ArrayList<String>();
+            }
+            return check(test, calls, latency);
+        }
+        catch( JSONException e ) {
+            logger.warn("Unable to apply the API budget of " + test + ": " + e.getMessage());
+            return new ArrayList<String>();
+        }
+    }
+
+    private void record(@Nonnull String test, @Nullable Map<String,Integer> calls, @Nonnull ApiLatency latency) throws JSONException {
+        JSONObject budget = new JSONObject();
+
+        if( calls != null ) {
+            budget.put("calls", new JSONObject(calls));
+        }
+        JSONObject apis = new JSONObject();
+
+        for( Map.Entry<String,LatencyHistogram> entry : latency.getHistograms().entrySet() ) {
+            JSONObject api = new JSONObject();
+
+            api.put("count", entry.getValue().getCount());
+            api.put("p90Micros", entry.getValue().getPercentile(90d));
+            apis.put(entry.getKey(), api);
+        }
+        budget.put("apis", apis);
+        synchronized( budgets ) {
+            budgets.put(test, budget);
+        }
+    }
+
+    private @Nonnull List<String> check(@Nonnull String test, @Nullable Map<String,Integer> calls, @Nonnull ApiLatency latency) throws JSONException {
+        List<String> exceeded = new ArrayList<String>();
+        JSONObject budget;
+
+        synchronized( budgets ) {
+            budget = budgets.get(test);
+        }
+        if( budget == null ) {
+            return exceeded;
+        }
+        if( calls != null && budget.has("calls") ) {
+            JSONObject baseline = budget.getJSONObject("calls");
+
+            for( Map.Entry<String,Integer> entry : calls.entrySet() ) {
+                long base = baseline.optLong(entry.getKey(), 0L);
+
+                if( entry.getValue() > base * factor ) {
+                    exceeded.add(describe(entry.getKey() + " calls", entry.getValue(), base));
+                }
+            }
+        }
+        JSONObject apis = budget.optJSONObject("apis");
+
+        if( apis != null ) {
+            for( Map.Entry<String,LatencyHistogram> entry : latency.getHistograms().entrySet() ) {
+                JSONObject api = apis.optJSONObject(entry.getKey());
+                LatencyHistogram h = entry.getValue();
+                long count = (api == null ? 0L : api.getLong("count"));
+
+                if( !ApiLatency.isWaiterSeries(entry.getKey()) && h.getCount() > count * factor ) {
+                    exceeded.add(describe(entry.getKey() + " timed calls", h.getCount(), count));
+                }
+                if( api != null ) {
+                    long p90 = api.getLong("p90Micros");
+
+                    if( h.getPercentile(90d) > p90 * latencyFactor ) {
+                        exceeded.add(describe(entry.getKey() + " p90 micros", h.getPercentile(90d), p90));
+                    }
+                }
+            }
+        }
+        synchronized( overBudget ) {
+            checked++;
+            if( !exceeded.isEmpty() ) {
+                overBudget.put(test, exceeded);
+            }
+        }
+        return exceeded;
+    }
+
+    private @Nonnull String describe(@Nonnull String what, long actual, long baseline) {
+        if( baseline < 1L ) {
+            return what + ": " + actual + " (new)";
+        }
+        return what + ": " + actual + " (baseline " + baseline + ", " + (actual * 100L / baseline) + "%)";
+    }
+
+    /**
+     * Writes the recorded budgets in record mode. Budgets already in the file for tests that did not run are kept
+     * so a baseline can be built up one suite at a time.
+     */
+    public void save() {
+        if( !recording ) {
+            return;
+        }
+        try {
+            JSONObject tests = new JSONObject();
+
+            if( file.exists() ) {
+                try {
+                    tests = new JSONObject(read(file)).getJSONObject("tests");
+                }
+                catch( JSONException e ) {
+                    logger.warn("Replacing unreadable API budgets in " + file + ": " + e.getMessage());
+                }
+            }
+            synchronized( budgets ) {
+                for( Map.Entry<String,JSONObject> entry : budgets.entrySet() ) {
+                    tests.put(entry.getKey(), entry.getValue());
+                }
+            }
+            JSONObject json = new JSONObject();
+
+            json.put("tests", tests);
+            OutputStream output = new FileOutputStream(file);
+
+            try {
+                output.write(json.toString(2).getBytes("utf-8"));
+            }
+            finally {
+                output.close();
+            }
+        }
+        catch( Exception e ) {
+            logger.warn("Unable to write the API budgets to " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Logs the tests that exceeded their budgets, one line for each API over budget.
+     * @param logger the logger to write to
+     */
+    public void report(@Nonnull Logger logger) {
+        if( recording ) {
+            synchronized( budgets ) {
+                DaseinTestManager.out(logger, null, "Recorded", budgets.size() + " tests to " + file);
+            }
+            return;
+        }
+        synchronized( overBudget ) {
+            DaseinTestManager.out(logger, null, "Checked", checked + " tests against " + file);
+            DaseinTestManager.out(logger, null, "Over Budget", String.valueOf(overBudget.size()));
+            for( Map.Entry<String,List<String>> entry : overBudget.entrySet() ) {
+                for( String line : entry.getValue() ) {
+                    DaseinTestManager.out(logger, null, "---> " + entry.getKey(), line);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.metrics;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.test.DaseinTestManager;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histograms of cloud API calls, keyed by API name. Every call is recorded for the run as a whole and for
+ * the suite and test, if any, attached to the calling thread. Test managers attach their scopes when a test begins
+ * and detach them when it ends; calls made on other threads, such as fixture pre-warming and teardown, only count
+ * towards the run. Once an API has been seen, recording a call does not allocate.
+ * <p>
+ * Provider calls are only timed when the dasein.instrument {@link System} property is true (see
+ * {@link InstrumentedProvider}). Without it the histograms hold nothing but the lookups and listings of the state
+ * waiters, and the test logs label them as waiter latency accordingly.
+ * <pre>
+ *     long start = System.nanoTime();
+ *     ...
+ *     ApiLatency.record("VirtualMachineSupport.getVirtualMachine", System.nanoTime() - start);
+ * </pre>
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+public class ApiLatency {
+    /**
+     * Suffix of the series recorded by state waiters for each single resource lookup, such as VM.lookup.
+     */
+    static public final String WAITER_LOOKUP = ".lookup";
+    /**
+     * Suffix of the series recorded by batch pollers for each listing taken on behalf of waiters, such as VM.list.
+     */
+    static public final String WAITER_LIST   = ".list";
+
+    static private final ApiLatency               run    = new ApiLatency();
+    static private final ThreadLocal<ApiLatency[]> scopes = new ThreadLocal<ApiLatency[]>();
+
+    /**
+     * Tells whether a series was recorded by the wait machinery rather than by a driver or instrumented call. How
+     * often waiters poll depends on how long the cloud takes to change state, so these series say nothing about how
+     * many calls the code under test makes.
+     * @param api the name of the series
+     * @return true if the series holds waiter lookups or listings
+     */
+    static public boolean isWaiterSeries(@Nonnull String api) {
+        return (api.endsWith(WAITER_LOOKUP) || api.endsWith(WAITER_LIST));
+    }
+
+    /**
+     * Records a call against the run and the scopes attached to the calling thread.
+     * @param api the name of the API called
+     * @param nanos how long the call took in nanoseconds
+     */
+    static public void record(@Nonnull String api, long nanos) {
+        ApiLatency[] current = scopes.get();
+
+        run.add(api, nanos);
+        if( current != null ) {
+            for( ApiLatency scope : current ) {
+                scope.add(api, nanos);
+            }
+        }
+    }
+
+    /**
+     * Records the size of a call's result against the run and the scopes attached to the calling thread.
+     * @param api the name of the API called
+     * @param elements the number of elements the call returned
+     * @param bytes the number of bytes the call returned
+     */
+    static public void recordResult(@Nonnull String api, long elements, long bytes) {
+        ApiLatency[] current = scopes.get();
+
+        run.addResult(api, elements, bytes);
+        if( current != null ) {
+            for( ApiLatency scope : current ) {
+                scope.addResult(api, elements, bytes);
+            }
+        }
+    }
+
+    /**
+     * Attributes calls made by the current thread to the specified scopes until {@link #detach()} is called.
+     * @param suite the latencies of the running test class
+     * @param test the latencies of the running test
+     */
+    static public void attach(@Nonnull ApiLatency suite, @Nonnull ApiLatency test) {
+        scopes.set(new ApiLatency[] { suite, test });
+    }
+
+    /**
+     * Attributes calls made by the current thread to a single scope until {@link #detach()} is called.
+     * @param scope the latencies of the work being done outside of any test
+     */
+    static public void attach(@Nonnull ApiLatency scope) {
+        scopes.set(new ApiLatency[] { scope });
+    }
+
+    static public void detach() {
+        scopes.remove();
+    }
+
+    /**
+     * @return the latencies of every call made during the run
+     */
+    static public @Nonnull ApiLatency getRun() {
+        return run;
+    }
+
+    private final ConcurrentMap<String,LatencyHistogram> histograms = new ConcurrentHashMap<String, LatencyHistogram>();
+    private final ConcurrentMap<String,AtomicLongArray>  results    = new ConcurrentHashMap<String, AtomicLongArray>();
+
+    private void add(@Nonnull String api, long nanos) {
+        LatencyHistogram histogram = histograms.get(api);
+
+        if( histogram == null ) {
+            LatencyHistogram h = new LatencyHistogram();
+
+            histogram = histograms.putIfAbsent(api, h);
+            if( histogram == null ) {
+                histogram = h;
+            }
+        }
+        histogram.record(nanos);
+    }
+
+    private void addResult(@Nonnull String api, long elements, long bytes) {
+        AtomicLongArray result = results.get(api);
+
+        if( result == null ) {
+            AtomicLongArray r = new AtomicLongArray(2);
+
+            result = results.putIfAbsent(api, r);
+            if( result == null ) {
+                result = r;
+            }
+        }
+        result.addAndGet(0, elements);
+        result.addAndGet(1, bytes);
+    }
+
+    /**
+     * @param api the name of an API
+     * @return the total number of elements the API's calls returned
+     */
+    public long getElements(@Nonnull String api) {
+        AtomicLongArray result = results.get(api);
+
+        return (result == null ? 0L : result.get(0));
+    }
+
+    /**
+     * @param api the name of an API
+     * @return the total number of bytes the API's calls returned
+     */
+    public long getBytes(@Nonnull String api) {
+        AtomicLongArray result = results.get(api);
+
+        return (result == null ? 0L : result.get(1));
+    }
+
+    public @Nullable LatencyHistogram getHistogram(@Nonnull String api) {
+        return histograms.get(api);
+    }
+
+    public boolean isEmpty() {
+        return histograms.isEmpty();
+    }
+
+    /**
+     * @return the histograms recorded so far, sorted by API name
+     */
+    public @Nonnull SortedMap<String,LatencyHistogram> getHistograms() {
+        return new TreeMap<String, LatencyHistogram>(histograms);
+    }
+
+    /**
+     * Logs one line per API with its latency percentiles and, where results were measured, their size.
+     * @param logger the logger to write to
+     * @param prefix the prefix of each line or null for none
+     */
+    public void report(@Nonnull Logger logger, @Nullable String prefix) {
+        for( Map.Entry<String,LatencyHistogram> entry : getHistograms().entrySet() ) {
+            AtomicLongArray result = results.get(entry.getKey());
+            String value = entry.getValue().toString();
+
+            if( result != null ) {
+                value = value + ", " + result.get(0) + " elements, " + result.get(1) + " bytes";
+            }
+            DaseinTestManager.out(logger, prefix, "---> " + entry.getKey(), value);
+        }
+    }
+
+    public void reset() {
+        histograms.clear();
+        results.clear();
+    }
+}
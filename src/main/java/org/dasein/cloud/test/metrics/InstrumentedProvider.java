@@ -0,0 +1,255 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.metrics;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.ContextRequirements;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.ProviderContext;
+import org.dasein.cloud.admin.AdminServices;
+import org.dasein.cloud.ci.CIServices;
+import org.dasein.cloud.compute.ComputeServices;
+import org.dasein.cloud.dc.DataCenterServices;
+import org.dasein.cloud.identity.IdentityServices;
+import org.dasein.cloud.network.NetworkServices;
+import org.dasein.cloud.platform.PlatformServices;
+import org.dasein.cloud.storage.StorageServices;
+import org.dasein.cloud.test.DaseinTestManager;
+import org.dasein.cloud.test.cassette.Cassette;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link CloudProvider} that delegates to a connected provider and hands out instrumented proxies of its services
+ * (see {@link TimingHandler}), so that every call the tests and the resources classes make through a support
+ * interface is timed the same way whichever driver is under test. Timing is enabled by setting the
+ * dasein.instrument {@link System} property to true. The services are also handed out this way when calls are
+ * recorded to or replayed from a {@link Cassette}, in which case timing wraps the recording proxies.
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+public class InstrumentedProvider extends CloudProvider {
+    static private final Logger logger = Logger.getLogger(InstrumentedProvider.class);
+
+    static public final String INSTRUMENT = "dasein.instrument";
+
+    static public boolean isEnabled() {
+        return (isTimed() || Cassette.isActive());
+    }
+
+    static public boolean isTimed() {
+        return "true".equalsIgnoreCase(DaseinTestManager.getSystemProperty(INSTRUMENT));
+    }
+
+    /**
+     * @param provider a connected provider
+     * @return an instrumented view of the provider if instrumentation is enabled, otherwise the provider itself
+     */
+    static public @Nonnull CloudProvider instrument(@Nonnull CloudProvider provider) {
+        if( !isEnabled() || provider instanceof InstrumentedProvider || provider.getContext() == null ) {
+            return provider;
+        }
+        try {
+            return new InstrumentedProvider(provider);
+        }
+        catch( Exception e ) {
+            logger.warn("Unable to instrument " + provider.getProviderName() + ", calls will not be timed: " + e.getMessage());
+            return provider;
+        }
+    }
+
+    private final CloudProvider          delegate;
+    private final Map<Class<?>,Object[]> services = new ConcurrentHashMap<Class<?>, Object[]>();
+
+    private InstrumentedProvider(@Nonnull CloudProvider delegate) throws CloudException, InternalException {
+        ProviderContext ctx = delegate.getContext();
+
+        // shares the delegate's context without making this provider the context's cloud
+        connect(ctx, null, ctx.getCloud());
+        this.delegate = delegate;
+    }
+
+    /**
+     * @return the provider being instrumented
+     */
+    public @Nonnull CloudProvider getDelegate() {
+        return delegate;
+    }
+
+    private @Nullable <T> T services(@Nonnull Class<T> iface, @Nullable T target) {
+        if( target == null ) {
+            return null;
+        }
+        // the proxy is kept so that the support proxies it hands out are reused as well
+        Object[] pair = services.get(iface);
+
+        if( pair == null || pair[0] != target ) {
+            T proxy = Cassette.wrap(iface, target);
+
+            pair = new Object[] { target, (isTimed() ? TimingHandler.instrument(iface, proxy) : proxy) };
+            services.put(iface, pair);
+        }
+        return iface.cast(pair[1]);
+    }
+
+    @Override
+    public void close() {
+        // connect() closes the provider before the delegate is set
+        if( delegate != null ) {
+            delegate.close();
+        }
+    }
+
+    @Override
+    public AdminServices getAdminServices() {
+        return services(AdminServices.class, delegate.getAdminServices());
+    }
+
+    @Override
+    public ContextRequirements getContextRequirements() {
+        return delegate.getContextRequirements();
+    }
+
+    @Override
+    public @Nonnull String getCloudName() {
+        return delegate.getCloudName();
+    }
+
+    @Override
+    public DataCenterServices getDataCenterServices() {
+        return services(DataCenterServices.class, delegate.getDataCenterServices());
+    }
+
+    @Override
+    public CIServices getCIServices() {
+        return services(CIServices.class, delegate.getCIServices());
+    }
+
+    @Override
+    public ComputeServices getComputeServices() {
+        return services(ComputeServices.class, delegate.getComputeServices());
+    }
+
+    @Override
+    public IdentityServices getIdentityServices() {
+        return services(IdentityServices.class, delegate.getIdentityServices());
+    }
+
+    @Override
+    public NetworkServices getNetworkServices() {
+        return services(NetworkServices.class, delegate.getNetworkServices());
+    }
+
+    @Override
+    public PlatformServices getPlatformServices() {
+        return services(PlatformServices.class, delegate.getPlatformServices());
+    }
+
+    @Override
+    public @Nonnull String getProviderName() {
+        return delegate.getProviderName();
+    }
+
+    @Override
+    public synchronized StorageServices getStorageServices() {
+        return services(StorageServices.class, delegate.getStorageServices());
+    }
+
+    @Override
+    public boolean hasAdminServices() {
+        return delegate.hasAdminServices();
+    }
+
+    @Override
+    public boolean hasCIServices() {
+        return delegate.hasCIServices();
+    }
+
+    @Override
+    public boolean hasComputeServices() {
+        return delegate.hasComputeServices();
+    }
+
+    @Override
+    public boolean hasIdentityServices() {
+        return delegate.hasIdentityServices();
+    }
+
+    @Override
+    public boolean hasNetworkServices() {
+        return delegate.hasNetworkServices();
+    }
+
+    @Override
+    public boolean hasPlatformServices() {
+        return delegate.hasPlatformServices();
+    }
+
+    @Override
+    public boolean hasStorageServices() {
+        return delegate.hasStorageServices();
+    }
+
+    @Override
+    public void hold() {
+        delegate.hold();
+    }
+
+    @Override
+    public synchronized boolean isConnected() {
+        return delegate.isConnected();
+    }
+
+    @Override
+    public void release() {
+        delegate.release();
+    }
+
+    @Override
+    public String testContext() {
+        long start = System.nanoTime();
+
+        try {
+            return Cassette.call("CloudProvider.testContext", new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    return delegate.testContext();
+                }
+            });
+        }
+        catch( RuntimeException e ) {
+            throw e;
+        }
+        catch( Exception e ) {
+            // testContext() does not throw checked exceptions, so the cassette cannot have recorded one
+            throw new RuntimeException(e);
+        }
+        finally {
+            ApiLatency.record("CloudProvider.testContext", System.nanoTime() - start);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.metrics;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-size, log-bucketed histogram of latencies measured in microseconds. Each power of two is split into eight
+ * buckets, so percentiles are accurate to within 12.5% of the true value while the histogram covers everything from
+ * one microsecond to centuries in 488 buckets. The maximum, count and total are tracked exactly. Recording a value
+ * only updates atomic counters and never allocates, so it is safe to call from any number of threads on the timed
+ * path without distorting the timings.
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+public class LatencyHistogram {
+    static private final int SUB_BITS = 3;
+    static private final int SUB      = 1 << SUB_BITS;
+    static private final int BUCKETS  = (64 - SUB_BITS) * SUB;
+
+    static int getBucket(long micros) {
+        if( micros < SUB ) {
+            return (int)Math.max(0L, micros);
+        }
+        int exp = 63 - Long.numberOfLeadingZeros(micros);
+
+        return (exp - SUB_BITS + 1) * SUB + (int)((micros >>> (exp - SUB_BITS)) & (SUB - 1));
+    }
+
+    static long getUpperBound(int bucket) {
+        if( bucket < SUB ) {
+            return bucket;
+        }
+        int exp = bucket / SUB + SUB_BITS - 1;
+        long sub = SUB + (bucket % SUB);
+
+        return ((sub + 1) << (exp - SUB_BITS)) - 1;
+    }
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong      count   = new AtomicLong(0L);
+    private final AtomicLong      max     = new AtomicLong(0L);
+    private final AtomicLong      total   = new AtomicLong(0L);
+
+    /**
+     * Records a single measurement.
+     * @param nanos the measured latency in nanoseconds
+     */
+    public void record(long nanos) {
+        long micros = Math.max(0L, nanos / 1000L);
+        long current = max.get();
+
+        buckets.incrementAndGet(getBucket(micros));
+        count.incrementAndGet();
+        total.addAndGet(micros);
+        while( micros > current && !max.compareAndSet(current, micros) ) {
+            current = max.get();
+        }
+    }
+
+    public @Nonnegative long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return the largest latency recorded in microseconds
+     */
+    public @Nonnegative long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @return the mean latency in microseconds
+     */
+    public @Nonnegative long getMean() {
+        long c = count.get();
+
+        return (c < 1L ? 0L : total.get() / c);
+    }
+
+    /**
+     * Estimates a percentile from the buckets. The estimate is the upper bound of the bucket the percentile falls in,
+     * capped at the exact maximum.
+     * @param percentile the percentile, from 0 to 100
+     * @return the estimated latency in microseconds
+     */
+    public @Nonnegative long getPercentile(double percentile) {
+        long c = count.get();
+
+        if( c < 1L ) {
+            return 0L;
+        }
+        long rank = Math.max(1L, (long)Math.ceil(c * (percentile / 100d)));
+        long seen = 0L;
+
+        for( int i=0; i<BUCKETS; i++ ) {
+            seen += buckets.get(i);
+            if( seen >= rank ) {
+                return Math.min(getUpperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * @return the histogram summarized in milliseconds as count, p50, p90, p99 and max
+     */
+    @Override
+    public @Nonnull String toString() {
+        return getCount() + "x, p50 " + (getPercentile(50d) / 1000f) + "ms, p90 " + (getPercentile(90d) / 1000f) + "ms, p99 "
+                + (getPercentile(99d) / 1000f) + "ms, max " + (getMax() / 1000f) + "ms";
+    }
+}
@@ -0,0 +1,336 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.metrics;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.test.DaseinTestManager;
+import org.json.JSONObject;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Measures the throughput of the list APIs of a driver. Each listing is called once to warm up and then the
+ * configured number of times, and the time until the first element, the total time, the elements per second and
+ * the heap allocated per element are recorded. Allocation is measured on the calling thread only, so it misses
+ * pages a driver fetches in a background thread, and is not reported on virtual machines that cannot measure it.
+ * Listing benchmarks are configured through {@link System} properties:
+ * <ul>
+ *     <li>dasein.benchmark.listing - the number of measured calls to each list API (default 0, disabled)</li>
+ *     <li>dasein.benchmark.listing.file - a file to write the results to as JSON at clean up</li>
+ * </ul>
+ * <pre>
+ *     -Ddasein.benchmark.listing=20 -Ddasein.benchmark.listing.file=target/listing.json
+ * </pre>
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+public class ListingThroughput {
+    static private final Logger logger = Logger.getLogger(ListingThroughput.class);
+
+    static public final String FILE        = "dasein.benchmark.listing.file";
+    static public final String REPETITIONS = "dasein.benchmark.listing";
+
+    /**
+     * A call to a list API.
+     */
+    static public interface Listing {
+        public @Nullable Iterable<?> list() throws CloudException, InternalException;
+    }
+
+    /**
+     * The measurements of one list API.
+     */
+    static public class Stats {
+        private int  calls;
+        private long elements;
+        private long firstNanos;
+        private long totalNanos;
+        private long bytes;
+
+        /**
+         * @return the number of measured calls
+         */
+        public int getCalls() {
+            return calls;
+        }
+
+        /**
+         * @return the average number of elements listed by a call
+         */
+        public double getElementsPerCall() {
+            return (calls == 0 ? 0.0 : ((double)elements) / calls);
+        }
+
+        /**
+         * @return the average number of bytes allocated by a call or -1 if allocation could not be measured
+         */
+        public long getBytesPerCall() {
+            if( bytes < 0L ) {
+                return -1L;
+            }
+            return (calls == 0 ? 0L : bytes / calls);
+        }
+
+        /**
+         * @return the average number of elements listed per second
+         */
+        public double getElementsPerSecond() {
+            return (totalNanos == 0L ? 0.0 : elements * 1000000000.0 / totalNanos);
+        }
+
+        /**
+         * @return the average number of bytes allocated per element or -1 if allocation could not be measured
+         */
+        public long getBytesPerElement() {
+            if( bytes < 0L ) {
+                return -1L;
+            }
+            return (elements == 0L ? 0L : bytes / elements);
+        }
+
+        /**
+         * @return the average number of milliseconds until the first element was returned, or until the listing
+         * was complete for empty listings
+         */
+        public double getFirstElementMillis() {
+            return (calls == 0 ? 0.0 : firstNanos / 1000000.0 / calls);
+        }
+
+        /**
+         * @return the average number of milliseconds a complete listing took
+         */
+        public double getTotalMillis() {
+            return (calls == 0 ? 0.0 : totalNanos / 1000000.0 / calls);
+        }
+
+        @Nonnull JSONObject toJSON() throws Exception {
+            JSONObject json = new JSONObject();
+
+            json.put("calls", calls);
+            json.put("elementsPerCall", getElementsPerCall());
+            json.put("firstElementMillis", getFirstElementMillis());
+            json.put("totalMillis", getTotalMillis());
+            json.put("elementsPerSecond", getElementsPerSecond());
+            json.put("bytesPerElement", getBytesPerElement());
+            json.put("bytesPerCall", getBytesPerCall());
+            return json;
+        }
+
+        @Override
+        public @Nonnull String toString() {
+            return String.format("%.1f elements in %.1fms (first %.1fms), %.0f/s, %s", getElementsPerCall(), getTotalMillis(), getFirstElementMillis(), getElementsPerSecond(), (bytes < 0L ? "allocation unknown" : getBytesPerElement() + " bytes/element"));
+        }
+    }
+
+    static private final Map<String,Stats> listings = new TreeMap<String, Stats>();
+
+    static private Method allocatedBytes;
+    static private boolean allocationChecked;
+
+    /**
+     * @return the number of measured calls made to each list API, 0 if listing benchmarks are disabled
+     */
+    static public int getRepetitions() {
+        String prop = DaseinTestManager.getSystemProperty(REPETITIONS);
+
+        if( prop != null ) {
+            try {
+                return Math.max(0, Integer.parseInt(prop.trim()));
+            }
+            catch( NumberFormatException ignore ) {
+                // fall through to disabled
+            }
+        }
+        return 0;
+    }
+
+    static public boolean isEnabled() {
+        return (getRepetitions() > 0);
+    }
+
+    /**
+     * @return the number of bytes allocated by the current thread so far or -1 if the virtual machine does not say
+     */
+    static private long getAllocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+        synchronized( listings ) {
+            if( !allocationChecked ) {
+                allocationChecked = true;
+                try {
+                    // the HotSpot extension is looked up reflectively so the harness still runs on other VMs
+                    Class<?> type = Class.forName("com.sun.management.ThreadMXBean");
+
+                    if( type.isInstance(bean) ) {
+                        allocatedBytes = type.getMethod("getThreadAllocatedBytes", long.class);
+                    }
+                }
+                catch( Exception ignore ) {
+                    // allocation is not measured
+                }
+            }
+        }
+        if( allocatedBytes != null ) {
+            try {
+                return (Long)allocatedBytes.invoke(bean, Thread.currentThread().getId());
+            }
+            catch( Exception ignore ) {
+                // allocation is not measured
+            }
+        }
+        return -1L;
+    }
+
+    /**
+     * Measures a list API the configured number of times with {@link #time(Listing, int)} and records the results
+     * under the name of the API for the clean up report.
+     * @param api the name of the API such as VirtualMachine.listVirtualMachines
+     * @param listing the call to the API
+     * @return the measurements of the API, including those of any earlier calls to this method for the same API
+     * @throws CloudException an error occurred in the cloud listing the resources
+     * @throws InternalException an error occurred within the driver listing the resources
+     */
+    static public @Nonnull Stats measure(@Nonnull String api, @Nonnull Listing listing) throws CloudException, InternalException {
+        Stats stats = time(listing, getRepetitions());
+
+        synchronized( listings ) {
+            Stats total = listings.get(api);
+
+            if( total == null ) {
+                listings.put(api, stats);
+                return stats;
+            }
+            total.calls += stats.calls;
+            total.elements += stats.elements;
+            total.firstNanos += stats.firstNanos;
+            total.totalNanos += stats.totalNanos;
+            total.bytes = (total.bytes < 0L || stats.bytes < 0L ? -1L : total.bytes + stats.bytes);
+            return total;
+        }
+    }
+
+    /**
+     * Measures a listing without recording the results. The listing is called once without being measured and then
+     * the specified number of times, reading every element each time.
+     * @param listing the call to the API
+     * @param repetitions the number of measured calls
+     * @return the measurements of the calls
+     * @throws CloudException an error occurred in the cloud listing the resources
+     * @throws InternalException an error occurred within the driver listing the resources
+     */
+    static public @Nonnull Stats time(@Nonnull Listing listing, int repetitions) throws CloudException, InternalException {
+        Stats stats = new Stats();
+
+        list(listing, new Stats());
+        for( int i=0; i<Math.max(1, repetitions); i++ ) {
+            list(listing, stats);
+        }
+        return stats;
+    }
+
+    static private void list(@Nonnull Listing listing, @Nonnull Stats stats) throws CloudException, InternalException {
+        long allocated = getAllocatedBytes();
+        long start = System.nanoTime();
+        Iterable<?> list = listing.list();
+        long first = -1L;
+        int count = 0;
+
+        if( list != null ) {
+            Iterator<?> it = list.iterator();
+
+            while( it.hasNext() ) {
+                it.next();
+                if( count++ == 0 ) {
+                    first = System.nanoTime() - start;
+                }
+            }
+        }
+        long total = System.nanoTime() - start;
+        long bytes = getAllocatedBytes();
+
+        stats.calls++;
+        stats.elements += count;
+        stats.firstNanos += (first < 0L ? total : first);
+        stats.totalNanos += total;
+        stats.bytes = (stats.bytes < 0L || allocated < 0L || bytes < 0L ? -1L : stats.bytes + (bytes - allocated));
+    }
+
+    /**
+     * Logs the measurements of every list API measured so far.
+     * @param logger the logger to write to
+     */
+    static public void report(@Nonnull Logger logger) {
+        synchronized( listings ) {
+            for( Map.Entry<String,Stats> entry : listings.entrySet() ) {
+                DaseinTestManager.out(logger, null, "---> " + entry.getKey(), entry.getValue().toString());
+            }
+        }
+    }
+
+    /**
+     * Writes the measurements to the file named by dasein.benchmark.listing.file, if any.
+     */
+    static public void save() {
+        String path = DaseinTestManager.getSystemProperty(FILE);
+
+        if( path == null ) {
+            return;
+        }
+        File file = new File(path);
+
+        try {
+            JSONObject apis = new JSONObject();
+
+            synchronized( listings ) {
+                for( Map.Entry<String,Stats> entry : listings.entrySet() ) {
+                    apis.put(entry.getKey(), entry.getValue().toJSON());
+                }
+            }
+            JSONObject json = new JSONObject();
+
+            json.put("repetitions", getRepetitions());
+            json.put("listings", apis);
+            OutputStream output = new FileOutputStream(file);
+
+            try {
+                output.write(json.toString(2).getBytes("utf-8"));
+            }
+            finally {
+                output.close();
+            }
+        }
+        catch( Exception e ) {
+            logger.warn("Unable to write the listing benchmarks to " + file + ": " + e.getMessage());
+        }
+    }
+}
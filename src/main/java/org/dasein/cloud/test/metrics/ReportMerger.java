@@ -0,0 +1,263 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.metrics;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.test.DaseinTestManager;
+import org.dasein.util.CalendarWrapper;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import javax.annotation.Nonnull;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Combines the {@link RunReport}s of the shards of a run into a single report. The test records of every shard are
+ * copied as they are and followed by one summary of the whole run. Counts are added up across shards, while the
+ * duration is that of the slowest shard, since shards run side by side. A shard that died before writing its
+ * summary is counted from its test records. All reports must be in the format of the output, CSV or JSON lines.
+ * <pre>
+ *     java org.dasein.cloud.test.metrics.ReportMerger run.json shard0.json shard1.json shard2.json
+ * </pre>
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+public class ReportMerger {
+    static private final Logger logger = Logger.getLogger(ReportMerger.class);
+
+    static private boolean isCSV(@Nonnull String path) {
+        return path.toLowerCase().endsWith(".csv");
+    }
+
+    /**
+     * Splits a row of a CSV report into its fields.
+     * @param line the row
+     * @return the fields, with quotes removed
+     */
+    static @Nonnull List<String> split(@Nonnull String line) {
+        List<String> fields = new ArrayList<String>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+
+        for( int i=0; i<line.length(); i++ ) {
+            char c = line.charAt(i);
+
+            if( quoted ) {
+                if( c == '"' && i+1 < line.length() && line.charAt(i+1) == '"' ) {
+                    field.append('"');
+                    i++;
+                }
+                else if( c == '"' ) {
+                    quoted = false;
+                }
+                else {
+                    field.append(c);
+                }
+            }
+            else if( c == '"' ) {
+                quoted = true;
+            }
+            else if( c == ',' ) {
+                fields.add(field.toString());
+                field.setLength(0);
+            }
+            else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    static private long parse(@Nonnull List<String> fields, @Nonnull List<String> header, @Nonnull String column) {
+        int index = header.indexOf(column);
+
+        if( index < 0 || index >= fields.size() || fields.get(index).length() < 1 ) {
+            return 0L;
+        }
+        return Long.parseLong(fields.get(index));
+    }
+
+    private boolean csv;
+    private long    tests;
+    private long    skipped;
+    private long    provisioned;
+    private long    deprovisioned;
+    private long    apiCalls;
+    private long    duration;
+    private int     shards;
+    private int     incomplete;
+
+    private void merge(@Nonnull File input, @Nonnull Writer output, boolean first) throws IOException, JSONException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(input), "utf-8"));
+
+        try {
+            List<String> header = null;
+            long shardTests = 0L;
+            long shardSkipped = 0L;
+            boolean summarized = false;
+            String line;
+
+            while( (line = reader.readLine()) != null ) {
+                if( line.trim().length() < 1 ) {
+                    continue;
+                }
+                if( csv && header == null ) {
+                    header = split(line);
+                    if( first ) {
+                        output.write(line);
+                        output.write("\n");
+                    }
+                    continue;
+                }
+                String record;
+                String status;
+
+                if( csv ) {
+                    List<String> fields = split(line);
+
+                    record = fields.get(0);
+                    status = (fields.size() > 3 ? fields.get(3) : "");
+                    if( record.equals("summary") ) {
+                        tests += parse(fields, header, "tests");
+                        skipped += parse(fields, header, "skipped");
+                        provisioned += parse(fields, header, "provisioned");
+                        deprovisioned += parse(fields, header, "deprovisioned");
+                        apiCalls += parse(fields, header, "api_calls");
+                        duration = Math.max(duration, parse(fields, header, "duration_ms"));
+                        summarized = true;
+                        continue;
+                    }
+                }
+                else {
+                    JSONObject json = new JSONObject(line);
+
+                    record = json.getString("record");
+                    status = json.optString("status", "");
+                    if( record.equals("summary") ) {
+                        tests += json.optLong("tests", 0L);
+                        skipped += json.optLong("skipped", 0L);
+                        provisioned += json.optLong("provisioned", 0L);
+                        deprovisioned += json.optLong("deprovisioned", 0L);
+                        apiCalls += json.optLong("apiCalls", 0L);
+                        duration = Math.max(duration, json.optLong("durationMs", 0L));
+                        summarized = true;
+                        continue;
+                    }
+                }
+                shardTests++;
+                if( status.equals("skipped") || status.equals("ignored") ) {
+                    shardSkipped++;
+                }
+                output.write(line);
+                output.write("\n");
+            }
+            shards++;
+            if( !summarized ) {
+                logger.warn(input + " has no run summary, its tests are counted from their records");
+                tests += shardTests;
+                skipped += shardSkipped;
+                incomplete++;
+            }
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    private void summarize(@Nonnull Writer output) throws IOException, JSONException {
+        if( csv ) {
+            output.write("summary,,,," + duration + ",," + apiCalls + "," + provisioned + "," + deprovisioned + "," + tests + "," + skipped + "," + (tests - skipped) + ",,\n");
+        }
+        else {
+            JSONObject json = new JSONObject();
+
+            json.put("record", "summary");
+            json.put("shards", shards);
+            json.put("tests", tests);
+            json.put("skipped", skipped);
+            json.put("run", tests - skipped);
+            json.put("provisioned", provisioned);
+            json.put("deprovisioned", deprovisioned);
+            json.put("apiCalls", apiCalls);
+            json.put("durationMs", duration);
+            output.write(json.toString());
+            output.write("\n");
+        }
+    }
+
+    private void report() {
+        int minutes = (int)(duration/ CalendarWrapper.MINUTE);
+        float seconds = ((float)(duration%CalendarWrapper.MINUTE))/1000f;
+
+        logger.info("--------------- Results ---------------");
+        DaseinTestManager.out(logger, null, "Shards", shards + (incomplete > 0 ? " (" + incomplete + " incomplete)" : ""));
+        DaseinTestManager.out(logger, null, "Tests", String.valueOf(tests));
+        DaseinTestManager.out(logger, null, "Skipped", String.valueOf(skipped));
+        DaseinTestManager.out(logger, null, "Run", String.valueOf(tests - skipped));
+        DaseinTestManager.out(logger, null, "Resources Provisioned", String.valueOf(provisioned));
+        DaseinTestManager.out(logger, null, "Resources De-provisioned", String.valueOf(deprovisioned));
+        DaseinTestManager.out(logger, null, "Total Calls", String.valueOf(apiCalls));
+        DaseinTestManager.out(logger, null, "Duration", minutes + " minutes " + seconds + " seconds");
+        logger.info("-------------------------------------------------------------------------------------------------");
+    }
+
+    /**
+     * Merges shard reports.
+     * @param args the report to write followed by the shard reports to merge
+     * @throws Exception a report could not be read or written
+     */
+    static public void main(String ... args) throws Exception {
+        if( args.length < 2 ) {
+            System.err.println("Usage: " + ReportMerger.class.getName() + " <output> <shard report> [<shard report> ...]");
+            System.exit(1);
+        }
+        ReportMerger merger = new ReportMerger();
+
+        merger.csv = isCSV(args[0]);
+        for( int i=1; i<args.length; i++ ) {
+            if( isCSV(args[i]) != merger.csv ) {
+                throw new IllegalArgumentException(args[i] + " is not in the format of " + args[0]);
+            }
+        }
+        Writer output = new OutputStreamWriter(new FileOutputStream(args[0]), "utf-8");
+
+        try {
+            for( int i=1; i<args.length; i++ ) {
+                merger.merge(new File(args[i]), output, i == 1);
+            }
+            merger.summarize(output);
+        }
+        finally {
+            output.close();
+        }
+        merger.report();
+    }
+}
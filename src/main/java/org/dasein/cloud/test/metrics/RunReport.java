@@ -0,0 +1,408 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.metrics;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.test.DaseinTestManager;
+import org.dasein.cloud.test.runner.Shard;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.runner.Description;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+import org.junit.runner.notification.RunNotifier;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes a machine-readable report of the run with one record per test and a summary record at clean up. Each
+ * record is written and flushed as soon as the test finishes, so a run that dies part way still leaves a usable
+ * report of the tests that completed. A test record holds:
+ * <ul>
+ *     <li>the suite, method and status (passed, failed, skipped or ignored)</li>
+ *     <li>the duration and the part of it spent in the test's before methods</li>
+ *     <li>the API call counts and the {@link ApiLatency} histograms of the test</li>
+ *     <li>the resources provisioned during the test and how many resources teardowns removed on its thread</li>
+ * </ul>
+ * The summary record holds the same figures as the Results block of {@link DaseinTestManager#cleanUp()}, with the
+ * de-provisioned count being every resource a {@link org.dasein.cloud.test.teardown.TeardownEngine} actually removed. The report
+ * is enabled by setting the dasein.report.file {@link System} property to the file to write. A file ending in .csv
+ * gets one comma-separated row per record, anything else one JSON object per line. Records of a sharded run carry
+ * the index of their {@link Shard}, and {@link ReportMerger} combines the reports of all shards.
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+public class RunReport extends RunListener {
+    static private final Logger logger = Logger.getLogger(RunReport.class);
+
+    static public final String FILE = "dasein.report.file";
+
+    static private final String CSV_HEADER = "record,suite,method,status,duration_ms,setup_ms,api_calls,provisioned,deprovisioned,tests,skipped,run,api_latency,shard";
+
+    static private final ThreadLocal<TestRecord> current       = new ThreadLocal<TestRecord>();
+    static private final AtomicInteger           deprovisioned = new AtomicInteger(0);
+
+    static private RunReport   instance;
+    static private RunNotifier listening;
+
+    static private class TestRecord {
+        final String          suite;
+        final String          method;
+        final long            start = System.currentTimeMillis();
+        long                  bodyStart;
+        long                  end;
+        boolean               ended;
+        String                status = "passed";
+        Map<String,Integer>   apiCalls;
+        ApiLatency            latency;
+        int                   provisioned;
+        int                   deprovisioned;
+
+        TestRecord(@Nonnull String suite, @Nonnull String method) {
+            this.suite = suite;
+            this.method = method;
+        }
+    }
+
+    static public boolean isEnabled() {
+        return (DaseinTestManager.getSystemProperty(FILE) != null);
+    }
+
+    static private synchronized @Nullable RunReport getInstance() {
+        if( instance == null && isEnabled() ) {
+            instance = new RunReport(new File(DaseinTestManager.getSystemProperty(FILE)));
+        }
+        return instance;
+    }
+
+    /**
+     * Registers the report for test outcomes with a notifier. Registering with the same notifier again has no effect.
+     * @param notifier the notifier of the run
+     */
+    static public synchronized void listen(@Nonnull RunNotifier notifier) {
+        RunReport report = getInstance();
+
+        if( report != null && listening != notifier ) {
+            notifier.addListener(report);
+            listening = notifier;
+        }
+    }
+
+    static private synchronized boolean isListening() {
+        return (listening != null);
+    }
+
+    /**
+     * Starts a record for the test the calling thread is about to run.
+     * @param suite the test class
+     * @param method the test method
+     */
+    static public void begin(@Nonnull String suite, @Nonnull String method) {
+        if( getInstance() != null ) {
+            current.set(new TestRecord(suite, method));
+        }
+    }
+
+    /**
+     * Marks the end of the calling thread's before methods and the start of the test itself.
+     */
+    static public void bodyStarted() {
+        TestRecord record = current.get();
+
+        if( record != null ) {
+            record.bodyStart = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Counts a resource provisioned by the calling thread.
+     * @param label the label the resource was registered under
+     */
+    static public void provisioned(@Nonnull String label) {
+        TestRecord record = current.get();
+
+        if( record != null ) {
+            record.provisioned++;
+        }
+    }
+
+    /**
+     * Counts a resource a teardown successfully removed, against the run and the calling thread's record if any.
+     */
+    static public void deprovisioned() {
+        TestRecord record = current.get();
+
+        deprovisioned.incrementAndGet();
+        if( record != null ) {
+            record.deprovisioned++;
+        }
+    }
+
+    /**
+     * @return the number of resources teardowns have successfully removed so far in this run
+     */
+    static public int getDeprovisioned() {
+        return deprovisioned.get();
+    }
+
+    static public void skipped() {
+        TestRecord record = current.get();
+
+        if( record != null ) {
+            record.status = "skipped";
+        }
+    }
+
+    /**
+     * Completes the calling thread's record with the figures the test manager gathered. The record is written once the
+     * runner reports the test's outcome or right away when no runner is reporting outcomes.
+     * @param apiCalls the API call counts of the test or null if they are not known
+     * @param latency the API latencies of the test
+     */
+    static public void end(@Nullable Map<String,Integer> apiCalls, @Nonnull ApiLatency latency) {
+        TestRecord record = current.get();
+
+        if( record != null ) {
+            record.end = System.currentTimeMillis();
+            record.ended = true;
+            record.apiCalls = apiCalls;
+            record.latency = latency;
+            if( !isListening() ) {
+                current.remove();
+                record.status = (record.status.equals("skipped") ? record.status : "unknown");
+                write(record);
+            }
+        }
+    }
+
+    /**
+     * Writes the summary of the run.
+     */
+    static public void summarize(int tests, int skipped, int provisioned, int apiCalls, long duration) {
+        RunReport report = getInstance();
+        int deprovisioned = getDeprovisioned();
+
+        if( report == null ) {
+            return;
+        }
+        if( report.csv ) {
+            report.append("summary,,,," + duration + ",," + apiCalls + "," + provisioned + "," + deprovisioned + "," + tests + "," + skipped + "," + (tests - skipped) + ",," + getShard());
+        }
+        else {
+            try {
+                JSONObject json = new JSONObject();
+
+                json.put("record", "summary");
+                if( Shard.isSharded() ) {
+                    json.put("shard", Shard.getIndex());
+                }
+                json.put("tests", tests);
+                json.put("skipped", skipped);
+                json.put("run", tests - skipped);
+                json.put("provisioned", provisioned);
+                json.put("deprovisioned", deprovisioned);
+                json.put("apiCalls", apiCalls);
+                json.put("durationMs", duration);
+                report.append(json.toString());
+            }
+            catch( JSONException e ) {
+                logger.warn("Unable to report the run summary: " + e.getMessage());
+            }
+        }
+    }
+
+    static private void write(@Nonnull TestRecord record) {
+        RunReport report = getInstance();
+
+        if( report != null ) {
+            report.append(report.csv ? toCSV(record) : toJSON(record));
+        }
+    }
+
+    static private @Nonnull String getShard() {
+        return (Shard.isSharded() ? String.valueOf(Shard.getIndex()) : "");
+    }
+
+    static private long getSetupTime(@Nonnull TestRecord record) {
+        return (record.bodyStart > 0L ? record.bodyStart - record.start : 0L);
+    }
+
+    static private int getTotalCalls(@Nonnull TestRecord record) {
+        int total = 0;
+
+        if( record.apiCalls != null ) {
+            for( Integer count : record.apiCalls.values() ) {
+                total += count;
+            }
+        }
+        return total;
+    }
+
+    static private @Nonnull String toJSON(@Nonnull TestRecord record) {
+        try {
+            JSONObject json = new JSONObject();
+
+            json.put("record", "test");
+            if( Shard.isSharded() ) {
+                json.put("shard", Shard.getIndex());
+            }
+            json.put("suite", record.suite);
+            json.put("method", record.method);
+            json.put("status", record.status);
+            json.put("durationMs", (record.ended ? record.end : System.currentTimeMillis()) - record.start);
+            json.put("setupMs", getSetupTime(record));
+            if( record.apiCalls != null ) {
+                json.put("apiCalls", new JSONObject(record.apiCalls));
+            }
+            if( record.latency != null ) {
+                JSONObject apis = new JSONObject();
+
+                for( Map.Entry<String,LatencyHistogram> entry : record.latency.getHistograms().entrySet() ) {
+                    LatencyHistogram h = entry.getValue();
+                    JSONObject api = new JSONObject();
+
+                    api.put("count", h.getCount());
+                    api.put("p50Micros", h.getPercentile(50d));
+                    api.put("p90Micros", h.getPercentile(90d));
+                    api.put("p99Micros", h.getPercentile(99d));
+                    api.put("maxMicros", h.getMax());
+                    api.put("elements", record.latency.getElements(entry.getKey()));
+                    api.put("bytes", record.latency.getBytes(entry.getKey()));
+                    apis.put(entry.getKey(), api);
+                }
+                json.put("apiLatency", apis);
+            }
+            json.put("provisioned", record.provisioned);
+            json.put("deprovisioned", record.deprovisioned);
+            return json.toString();
+        }
+        catch( JSONException e ) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static private @Nonnull String toCSV(@Nonnull TestRecord record) {
+        StringBuilder latency = new StringBuilder();
+
+        if( record.latency != null ) {
+            for( Map.Entry<String,LatencyHistogram> entry : record.latency.getHistograms().entrySet() ) {
+                if( latency.length() > 0 ) {
+                    latency.append("; ");
+                }
+                latency.append(entry.getKey()).append(" ").append(entry.getValue());
+            }
+        }
+        return "test," + quote(record.suite) + "," + quote(record.method) + "," + record.status + ","
+                + ((record.ended ? record.end : System.currentTimeMillis()) - record.start) + "," + getSetupTime(record) + ","
+                + getTotalCalls(record) + "," + record.provisioned + "," + record.deprovisioned + ",,,," + quote(latency.toString()) + "," + getShard();
+    }
+
+    static private @Nonnull String quote(@Nonnull String value) {
+        if( value.indexOf(',') < 0 && value.indexOf('"') < 0 ) {
+            return value;
+        }
+        return "\"" + value.replaceAll("\"", "\"\"") + "\"";
+    }
+
+    private final boolean csv;
+    private final File    file;
+    private Writer        writer;
+
+    private RunReport(@Nonnull File file) {
+        this.file = file;
+        this.csv = file.getName().toLowerCase().endsWith(".csv");
+    }
+
+    private synchronized void append(@Nonnull String line) {
+        try {
+            if( writer == null ) {
+                writer = new OutputStreamWriter(new FileOutputStream(file), "utf-8");
+                if( csv ) {
+                    writer.write(CSV_HEADER);
+                    writer.write("\n");
+                }
+            }
+            writer.write(line);
+            writer.write("\n");
+            writer.flush();
+        }
+        catch( IOException e ) {
+            logger.warn("Unable to write to the run report " + file + ": " + e.getMessage());
+        }
+    }
+
+    private @Nullable TestRecord getRecord(@Nonnull Description description) {
+        TestRecord record = current.get();
+
+        if( record == null || !description.getDisplayName().startsWith(record.method + "(") ) {
+            return null;
+        }
+        return record;
+    }
+
+    @Override
+    public void testFailure(Failure failure) {
+        TestRecord record = getRecord(failure.getDescription());
+
+        if( record != null ) {
+            record.status = "failed";
+        }
+    }
+
+    @Override
+    public void testAssumptionFailure(Failure failure) {
+        TestRecord record = getRecord(failure.getDescription());
+
+        if( record != null ) {
+            record.status = "skipped";
+        }
+    }
+
+    @Override
+    public void testIgnored(Description description) {
+        Class<?> testClass = description.getTestClass();
+        TestRecord record = new TestRecord(testClass == null ? "" : testClass.getSimpleName(), String.valueOf(description.getMethodName()));
+
+        record.status = "ignored";
+        record.ended = true;
+        record.end = record.start;
+        write(record);
+    }
+
+    @Override
+    public void testFinished(Description description) {
+        TestRecord record = getRecord(description);
+
+        if( record != null ) {
+            current.remove();
+            write(record);
+        }
+    }
+}
@@ -0,0 +1,221 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.metrics;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.test.DaseinTestManager;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Latency and memory of list APIs as the number of resources in the account grows. In scale mode, an account is
+ * populated with batches of test resources up to each configured level, and the full and filtered listings of the
+ * resources are measured with {@link ListingThroughput} at every level. The curves are reported at clean up.
+ * Scale mode is configured through {@link System} properties:
+ * <ul>
+ *     <li>dasein.scale - a comma separated list of the resource counts to measure at, such as 50,500,5000 (default
+ *     none, disabled)</li>
+ *     <li>dasein.scale.batch - the number of resources provisioned at once (default 25)</li>
+ *     <li>dasein.scale.repetitions - the number of measured calls to each listing at each level (default 3)</li>
+ *     <li>dasein.scale.file - a file to write the curves to as JSON at clean up, each curve an array of points in
+ *     increasing order of the resource count n</li>
+ * </ul>
+ * Every resource provisioned in scale mode is a test resource and is removed at clean up like any other. Large
+ * levels are best run against the simulated provider or an account with quotas to match.
+ * <pre>
+ *     -Ddasein.scale=50,500,5000 -Ddasein.scale.file=target/scale.json
+ * </pre>
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+public class ScaleCurves {
+    static private final Logger logger = Logger.getLogger(ScaleCurves.class);
+
+    static public final String BATCH       = "dasein.scale.batch";
+    static public final String FILE        = "dasein.scale.file";
+    static public final String LEVELS      = "dasein.scale";
+    static public final String REPETITIONS = "dasein.scale.repetitions";
+
+    static private final Map<String,TreeMap<Integer,ListingThroughput.Stats>> curves = new TreeMap<String, TreeMap<Integer, ListingThroughput.Stats>>();
+
+    /**
+     * @return the resource counts to measure at in ascending order, empty if scale mode is disabled
+     */
+    static public @Nonnull int[] getLevels() {
+        String prop = DaseinTestManager.getSystemProperty(LEVELS);
+        TreeSet<Integer> levels = new TreeSet<Integer>();
+
+        if( prop != null ) {
+            for( String level : prop.split(",") ) {
+                try {
+                    int n = Integer.parseInt(level.trim());
+
+                    if( n > 0 ) {
+                        levels.add(n);
+                    }
+                }
+                catch( NumberFormatException ignore ) {
+                    logger.warn("Ignoring invalid scale level " + level);
+                }
+            }
+        }
+        int[] values = new int[levels.size()];
+        int i = 0;
+
+        for( Integer level : levels ) {
+            values[i++] = level;
+        }
+        return values;
+    }
+
+    static public boolean isEnabled() {
+        return (getLevels().length > 0);
+    }
+
+    static private int getIntProperty(@Nonnull String key, int defaultValue) {
+        String prop = DaseinTestManager.getSystemProperty(key);
+
+        if( prop != null ) {
+            try {
+                int value = Integer.parseInt(prop.trim());
+
+                if( value > 0 ) {
+                    return value;
+                }
+            }
+            catch( NumberFormatException ignore ) {
+                // fall through to the default
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * @return the number of resources to provision at once
+     */
+    static public int getBatchSize() {
+        return getIntProperty(BATCH, 25);
+    }
+
+    /**
+     * @return the number of measured calls to each listing at each level
+     */
+    static public int getRepetitions() {
+        return getIntProperty(REPETITIONS, 3);
+    }
+
+    /**
+     * Records the measurements of a listing at one level.
+     * @param api the name of the listing such as VirtualMachine.listVirtualMachines(filter)
+     * @param level the number of test resources in the account
+     * @param stats the measurements
+     */
+    static public void record(@Nonnull String api, @Nonnegative int level, @Nonnull ListingThroughput.Stats stats) {
+        synchronized( curves ) {
+            TreeMap<Integer,ListingThroughput.Stats> curve = curves.get(api);
+
+            if( curve == null ) {
+                curve = new TreeMap<Integer, ListingThroughput.Stats>();
+                curves.put(api, curve);
+            }
+            curve.put(level, stats);
+        }
+    }
+
+    /**
+     * Logs every curve, one line per level, with the growth in latency since the previous level.
+     * @param logger the logger to write to
+     */
+    static public void report(@Nonnull Logger logger) {
+        synchronized( curves ) {
+            for( Map.Entry<String,TreeMap<Integer,ListingThroughput.Stats>> curve : curves.entrySet() ) {
+                ListingThroughput.Stats previous = null;
+
+                for( Map.Entry<Integer,ListingThroughput.Stats> point : curve.getValue().entrySet() ) {
+                    ListingThroughput.Stats stats = point.getValue();
+                    long bytes = stats.getBytesPerCall();
+                    String line = String.format("%.1fms, %s", stats.getTotalMillis(), (bytes < 0L ? "allocation unknown" : (bytes / 1024L) + "KB/call"));
+
+                    if( previous != null && previous.getTotalMillis() > 0.0 ) {
+                        line = line + String.format(", x%.1f", stats.getTotalMillis() / previous.getTotalMillis());
+                    }
+                    DaseinTestManager.out(logger, null, "---> " + curve.getKey() + " @" + point.getKey(), line);
+                    previous = stats;
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the curves to the file named by dasein.scale.file, if any.
+     */
+    static public void save() {
+        String path = DaseinTestManager.getSystemProperty(FILE);
+
+        if( path == null ) {
+            return;
+        }
+        File file = new File(path);
+
+        try {
+            JSONObject apis = new JSONObject();
+
+            synchronized( curves ) {
+                for( Map.Entry<String,TreeMap<Integer,ListingThroughput.Stats>> curve : curves.entrySet() ) {
+                    // an array rather than an object keyed by level, so readers see the levels in numeric order
+                    JSONArray points = new JSONArray();
+
+                    for( Map.Entry<Integer,ListingThroughput.Stats> point : curve.getValue().entrySet() ) {
+                        JSONObject json = point.getValue().toJSON();
+
+                        json.put("n", point.getKey().intValue());
+                        points.put(json);
+                    }
+                    apis.put(curve.getKey(), points);
+                }
+            }
+            JSONObject json = new JSONObject();
+
+            json.put("repetitions", getRepetitions());
+            json.put("curves", apis);
+            OutputStream output = new FileOutputStream(file);
+
+            try {
+                output.write(json.toString(2).getBytes("utf-8"));
+            }
+            finally {
+                output.close();
+            }
+        }
+        catch( Exception e ) {
+            logger.warn("Unable to write the scale curves to " + file + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,319 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.metrics;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.test.DaseinTestManager;
+import org.dasein.cloud.test.fixture.FixtureGraph;
+import org.dasein.cloud.test.fixture.FixtureKey;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.runner.Description;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * A map of each test to the APIs it called, used to run only the tests affected by a change to a driver. Every test
+ * that runs records the names in its API Log along with the support interface methods timed by the instrumented
+ * provider, such as FirewallSupport.list. Fixtures provisioned within a test are part of the test's set. Fixtures
+ * provisioned in the background by a {@link FixtureGraph} are recorded separately, together with the fixtures they
+ * depend on, and added to the set of every test declaring them. A test during which nothing was observed, as in
+ * parallel runs without dasein.instrument, keeps its previous set. Impact selection is configured through
+ * {@link System} properties:
+ * <ul>
+ *     <li>dasein.impact.file - the file holding the map, updated at clean up with the tests that ran</li>
+ *     <li>dasein.impact.changed - a comma separated list of changed API or support interface names, such as
+ *     Firewall.list,FirewallSupport</li>
+ * </ul>
+ * When changes are listed, the affected tests are added to the dasein.inclusions of the run. A name selects every
+ * test that called it or any API it prefixes, ignoring case. Tests the map has never seen are selected too, since
+ * nothing is known about what they call, and the whole run is selected if there is no map.
+ * <pre>
+ *     -Ddasein.impact.file=impact.json -Ddasein.impact.changed=FirewallSupport,Firewall.authorize
+ * </pre>
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+public class TestImpact {
+    static private final Logger logger = Logger.getLogger(TestImpact.class);
+
+    static public final String CHANGED = "dasein.impact.changed";
+    static public final String FILE    = "dasein.impact.file";
+
+    static private TestImpact instance;
+    static private boolean    loaded;
+
+    /**
+     * @return the test to API map of this run or null if no map file is configured
+     */
+    static public synchronized @Nullable TestImpact getInstance() {
+        if( !loaded ) {
+            String path = DaseinTestManager.getSystemProperty(FILE);
+
+            loaded = true;
+            if( path != null ) {
+                instance = new TestImpact(new File(path));
+                try {
+                    instance.load();
+                }
+                catch( Exception e ) {
+                    logger.warn("Unable to read the test impact map in " + path + ": " + e.getMessage());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * @return the changed API and support interface names of this run or null if no change was listed
+     */
+    static public @Nullable Set<String> getChanges() {
+        String prop = DaseinTestManager.getSystemProperty(CHANGED);
+
+        if( prop == null || prop.trim().equals("") ) {
+            return null;
+        }
+        Set<String> changes = new TreeSet<String>();
+
+        for( String name : prop.split(",") ) {
+            if( !name.trim().equals("") ) {
+                changes.add(name.trim().toLowerCase());
+            }
+        }
+        return changes;
+    }
+
+    static private boolean matches(@Nonnull Set<String> changes, @Nonnull String api) {
+        String a = api.toLowerCase();
+
+        for( String change : changes ) {
+            if( a.equals(change) || a.startsWith(change + ".") ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static private void collect(@Nonnull Description description, @Nonnull Set<String> tests) {
+        if( !description.isTest() ) {
+            for( Description child : description.getChildren() ) {
+                collect(child, tests);
+            }
+            return;
+        }
+        Class<?> testClass = description.getTestClass();
+        String methodName = description.getMethodName();
+
+        if( testClass != null && methodName != null ) {
+            tests.add(testClass.getSimpleName() + "." + methodName);
+        }
+    }
+
+    static private @Nonnull String read(@Nonnull File file) throws IOException {
+        InputStream input = new FileInputStream(file);
+
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            byte[] bytes = new byte[8192];
+            int count;
+
+            while( (count = input.read(bytes)) != -1 ) {
+                buffer.write(bytes, 0, count);
+            }
+            return new String(buffer.toByteArray(), "utf-8");
+        }
+        finally {
+            input.close();
+        }
+    }
+
+    private final File                    file;
+    private final Map<String,Set<String>> apis     = new TreeMap<String, Set<String>>();
+    private final Map<String,Set<String>> fixtures = new TreeMap<String, Set<String>>();
+    private boolean                       known;
+    private int                           recorded;
+    private int                           recordedFixtures;
+
+    private TestImpact(@Nonnull File file) {
+        this.file = file;
+    }
+
+    private void load() throws IOException, JSONException {
+        if( !file.exists() ) {
+            return;
+        }
+        JSONObject json = new JSONObject(read(file));
+
+        load(json.getJSONObject("tests"), apis);
+        if( json.has("fixtures") ) {
+            load(json.getJSONObject("fixtures"), fixtures);
+        }
+        known = true;
+    }
+
+    private void load(@Nonnull JSONObject json, @Nonnull Map<String,Set<String>> map) throws JSONException {
+        for( Iterator<?> it = json.keys(); it.hasNext(); ) {
+            String key = (String)it.next();
+            JSONArray list = json.getJSONArray(key);
+            Set<String> names = new TreeSet<String>();
+
+            for( int i=0; i<list.length(); i++ ) {
+                names.add(list.getString(i));
+            }
+            map.put(key, names);
+        }
+    }
+
+    /**
+     * Replaces the APIs recorded for a fixture with those called while provisioning it outside of any test.
+     * @param fixture the fixture provisioned
+     * @param dependencies the fixtures it depends on, whose APIs it inherits
+     * @param latency the API latencies of the provisioning
+     */
+    public synchronized void recordFixture(@Nonnull FixtureKey fixture, @Nonnull Collection<FixtureKey> dependencies, @Nonnull ApiLatency latency) {
+        Set<String> names = new TreeSet<String>(latency.getHistograms().keySet());
+
+        for( FixtureKey dependency : dependencies ) {
+            Set<String> inherited = fixtures.get(dependency.toString());
+
+            if( inherited != null ) {
+                names.addAll(inherited);
+            }
+        }
+        if( names.isEmpty() ) {
+            return;
+        }
+        fixtures.put(fixture.toString(), names);
+        recordedFixtures++;
+    }
+
+    /**
+     * Replaces the APIs recorded for a test with those it called in this run, unless none were observed.
+     * @param test the test as suite.method
+     * @param calls the names in the test's API Log or null if they are not known
+     * @param latency the API latencies of the test
+     * @param requirements the fixtures the test declares
+     */
+    public synchronized void record(@Nonnull String test, @Nullable Collection<String> calls, @Nonnull ApiLatency latency, @Nonnull Collection<FixtureKey> requirements) {
+        Set<String> names = new TreeSet<String>(latency.getHistograms().keySet());
+
+        if( calls != null ) {
+            names.addAll(calls);
+        }
+        // nothing observed means the calls could not be seen, not that there were none
+        if( names.isEmpty() ) {
+            return;
+        }
+        for( FixtureKey key : requirements ) {
+            Set<String> inherited = fixtures.get(key.toString());
+
+            if( inherited != null ) {
+                names.addAll(inherited);
+            }
+        }
+        apis.put(test, names);
+        recorded++;
+    }
+
+    /**
+     * Selects the tests affected by a set of changes.
+     * @param changes the changed API and support interface names in lower case
+     * @param run the description of the whole run or null if it is not known
+     * @return the affected tests as suite.method or null if no map has been recorded yet
+     */
+    public synchronized @Nullable Set<String> select(@Nonnull Set<String> changes, @Nullable Description run) {
+        if( !known ) {
+            return null;
+        }
+        Set<String> selected = new TreeSet<String>();
+
+        for( Map.Entry<String,Set<String>> entry : apis.entrySet() ) {
+            for( String api : entry.getValue() ) {
+                if( matches(changes, api) ) {
+                    selected.add(entry.getKey());
+                    break;
+                }
+            }
+        }
+        if( run != null ) {
+            Set<String> tests = new TreeSet<String>();
+
+            collect(run, tests);
+            for( String test : tests ) {
+                if( !apis.containsKey(test) ) {
+                    selected.add(test);
+                }
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Writes the map, keeping the entries of tests that did not run in this run.
+     */
+    public synchronized void save() {
+        if( recorded < 1 && recordedFixtures < 1 ) {
+            return;
+        }
+        try {
+            JSONObject json = new JSONObject();
+
+            json.put("tests", toJSON(apis));
+            json.put("fixtures", toJSON(fixtures));
+            OutputStream output = new FileOutputStream(file);
+
+            try {
+                output.write(json.toString(2).getBytes("utf-8"));
+            }
+            finally {
+                output.close();
+            }
+            logger.info("Recorded the APIs of " + recorded + " tests in " + file);
+        }
+        catch( Exception e ) {
+            logger.warn("Unable to write the test impact map to " + file + ": " + e.getMessage());
+        }
+    }
+
+    private @Nonnull JSONObject toJSON(@Nonnull Map<String,Set<String>> map) throws JSONException {
+        JSONObject json = new JSONObject();
+
+        for( Map.Entry<String,Set<String>> entry : map.entrySet() ) {
+            json.put(entry.getKey(), new JSONArray(entry.getValue()));
+        }
+        return json;
+    }
+}
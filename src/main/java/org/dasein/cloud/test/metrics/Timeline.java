@@ -0,0 +1,237 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.metrics;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.test.DaseinTestManager;
+import org.json.JSONObject;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Records a timeline of the run as spans in the Chrome trace event format, which can be opened in about:tracing or
+ * Perfetto. Spans cover initialization, provisioning, state waits, the before, body and after of each test and the
+ * removals at clean up, each on the thread that did the work. Spans are nested per thread, and
+ * {@link #tag(String, String)} adds arguments, such as the ID of the resource being worked on, to the innermost open
+ * span. Each span is written as soon as it ends, so the trace of a run that dies part way can still be opened.
+ * The timeline is enabled by setting the dasein.trace.file {@link System} property to the file to write.
+ * <pre>
+ *     Timeline.Span span = Timeline.begin("provision", "VLAN");
+ *
+ *     try {
+ *         ...
+ *     }
+ *     finally {
+ *         span.end();
+ *     }
+ * </pre>
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+public class Timeline {
+    static private final Logger logger = Logger.getLogger(Timeline.class);
+
+    static public final String FILE = "dasein.trace.file";
+
+    static private final long                          origin = System.nanoTime();
+    static private final ThreadLocal<LinkedList<Span>> open   = new ThreadLocal<LinkedList<Span>>();
+    static private final Set<Long>                     named  = new HashSet<Long>();
+
+    static private boolean loaded;
+    static private Writer  writer;
+    static private boolean empty = true;
+
+    /**
+     * A span of work on one thread. Spans are ended by the thread that began them.
+     */
+    static public class Span {
+        private final String             category;
+        private final String             name;
+        private final long               start;
+        private final Map<String,String> args = new LinkedHashMap<String, String>();
+
+        private Span(@Nonnull String category, @Nonnull String name) {
+            this.category = category;
+            this.name = name;
+            this.start = System.nanoTime();
+        }
+
+        /**
+         * Adds an argument shown with the span in the trace viewer.
+         * @param key the name of the argument
+         * @param value the value of the argument
+         * @return this span
+         */
+        public @Nonnull Span tag(@Nonnull String key, @Nullable String value) {
+            if( this != NONE ) {
+                args.put(key, value);
+            }
+            return this;
+        }
+
+        /**
+         * Ends the span and writes it to the trace.
+         */
+        public void end() {
+            if( this == NONE ) {
+                return;
+            }
+            long end = System.nanoTime();
+            LinkedList<Span> spans = open.get();
+
+            if( spans != null ) {
+                spans.remove(this);
+            }
+            write(this, end);
+        }
+    }
+
+    static private final Span NONE = new Span("", "");
+
+    static private synchronized @Nullable Writer getWriter() {
+        if( !loaded ) {
+            String path = DaseinTestManager.getSystemProperty(FILE);
+
+            loaded = true;
+            if( path != null ) {
+                try {
+                    writer = new OutputStreamWriter(new FileOutputStream(new File(path)), "utf-8");
+                    // viewers accept an array without its closing bracket, which is only written at close
+                    writer.write("[\n");
+                    writer.flush();
+                }
+                catch( IOException e ) {
+                    logger.warn("Unable to write the timeline to " + path + ": " + e.getMessage());
+                    writer = null;
+                }
+            }
+        }
+        return writer;
+    }
+
+    static public boolean isEnabled() {
+        return (getWriter() != null);
+    }
+
+    /**
+     * Begins a span on the calling thread.
+     * @param category the kind of work, such as provision or wait
+     * @param name what is being worked on, such as the kind of resource
+     * @return the new span, which must be ended by the calling thread
+     */
+    static public @Nonnull Span begin(@Nonnull String category, @Nonnull String name) {
+        if( !isEnabled() ) {
+            return NONE;
+        }
+        Span span = new Span(category, name);
+        LinkedList<Span> spans = open.get();
+
+        if( spans == null ) {
+            spans = new LinkedList<Span>();
+            open.set(spans);
+        }
+        spans.addLast(span);
+        return span;
+    }
+
+    /**
+     * Adds an argument to the innermost span open on the calling thread, if any.
+     * @param key the name of the argument
+     * @param value the value of the argument
+     */
+    static public void tag(@Nonnull String key, @Nullable String value) {
+        LinkedList<Span> spans = open.get();
+
+        if( spans != null && !spans.isEmpty() ) {
+            spans.getLast().tag(key, value);
+        }
+    }
+
+    static private synchronized void write(@Nonnull Span span, long end) {
+        if( writer == null ) {
+            return;
+        }
+        Thread thread = Thread.currentThread();
+
+        try {
+            if( named.add(thread.getId()) ) {
+                JSONObject meta = new JSONObject();
+
+                meta.put("name", "thread_name");
+                meta.put("ph", "M");
+                meta.put("pid", 1);
+                meta.put("tid", thread.getId());
+                meta.put("args", new JSONObject().put("name", thread.getName()));
+                append(meta);
+            }
+            JSONObject event = new JSONObject();
+
+            event.put("name", span.name);
+            event.put("cat", span.category);
+            event.put("ph", "X");
+            event.put("ts", (span.start - origin) / 1000L);
+            event.put("dur", (end - span.start) / 1000L);
+            event.put("pid", 1);
+            event.put("tid", thread.getId());
+            event.put("args", new JSONObject(span.args));
+            append(event);
+            writer.flush();
+        }
+        catch( Exception e ) {
+            logger.warn("Unable to write to the timeline: " + e.getMessage());
+        }
+    }
+
+    static private void append(@Nonnull JSONObject event) throws IOException {
+        if( !empty ) {
+            writer.write(",\n");
+        }
+        writer.write(event.toString());
+        empty = false;
+    }
+
+    /**
+     * Completes the trace. Spans ending after this are not recorded.
+     */
+    static public synchronized void close() {
+        if( writer != null ) {
+            try {
+                writer.write("\n]\n");
+                writer.close();
+            }
+            catch( IOException e ) {
+                logger.warn("Unable to complete the timeline: " + e.getMessage());
+            }
+            writer = null;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.metrics;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Times every call made through a proxy over a Dasein Cloud interface and records it in {@link ApiLatency} as
+ * <i>Interface.method</i>, with the Support suffix dropped from the interface name. Results that are
+ * {@link Iterable} are copied into a list before the call is considered complete, so that drivers which page
+ * through results lazily are timed in full, and the number of elements is recorded. The lengths of byte array and
+ * string results are recorded as bytes. Methods returning other Dasein support interfaces, such as the service
+ * accessors, return instrumented proxies in turn.
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+public class TimingHandler implements InvocationHandler {
+    /**
+     * Wraps an object in a proxy that times every call made through the specified interface.
+     * @param iface the interface to instrument
+     * @param target the object implementing the interface
+     * @param <T> the type of the interface
+     * @return the instrumented proxy or null if the target was null
+     */
+    static public @Nullable <T> T instrument(@Nonnull Class<T> iface, @Nullable T target) {
+        if( target == null ) {
+            return null;
+        }
+        return iface.cast(Proxy.newProxyInstance(iface.getClassLoader(), new Class<?>[] { iface }, new TimingHandler(iface, target)));
+    }
+
+    static private boolean isInstrumentable(@Nonnull Class<?> type) {
+        return (type.isInterface() && type.getName().startsWith("org.dasein.cloud.") && (type.getSimpleName().endsWith("Support") || type.getSimpleName().endsWith("Services")));
+    }
+
+    private final Map<Method,String>   apis    = new ConcurrentHashMap<Method, String>();
+    private final Map<Method,Object[]> proxies = new ConcurrentHashMap<Method, Object[]>();
+    private final String               name;
+    private final Object               target;
+    private final boolean              timed;
+
+    private TimingHandler(@Nonnull Class<?> iface, @Nonnull Object target) {
+        String n = iface.getSimpleName();
+
+        // the service accessors only hand out support objects, it is the support objects that call the cloud
+        this.timed = !n.endsWith("Services") || n.equals("DataCenterServices");
+        this.name = (n.endsWith("Support") ? n.substring(0, n.length() - "Support".length()) : n);
+        this.target = target;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if( method.getDeclaringClass().equals(Object.class) ) {
+            return invoke(method, args);
+        }
+        if( isInstrumentable(method.getReturnType()) ) {
+            return getProxy(method, invoke(method, args));
+        }
+        if( !timed ) {
+            return invoke(method, args);
+        }
+        String api = apis.get(method);
+
+        if( api == null ) {
+            api = name + "." + method.getName();
+            apis.put(method, api);
+        }
+        long start = System.nanoTime();
+        Object result;
+
+        try {
+            result = invoke(method, args);
+            if( result instanceof Iterable && !(result instanceof Collection) ) {
+                ArrayList<Object> list = new ArrayList<Object>();
+
+                for( Object item : (Iterable<?>)result ) {
+                    list.add(item);
+                }
+                result = list;
+            }
+        }
+        finally {
+            ApiLatency.record(api, System.nanoTime() - start);
+        }
+        if( result instanceof Collection ) {
+            ApiLatency.recordResult(api, ((Collection<?>)result).size(), 0L);
+        }
+        else if( result instanceof byte[] ) {
+            ApiLatency.recordResult(api, 1L, ((byte[])result).length);
+        }
+        else if( result instanceof String ) {
+            ApiLatency.recordResult(api, 1L, ((String)result).length());
+        }
+        return result;
+    }
+
+    private @Nullable Object invoke(@Nonnull Method method, @Nullable Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        }
+        catch( InvocationTargetException e ) {
+            throw e.getCause();
+        }
+    }
+
+    private @Nullable Object getProxy(@Nonnull Method method, @Nullable Object result) {
+        if( result == null ) {
+            return null;
+        }
+        // accessors generally return the same support object every time, so its proxy is reused
+        Object[] pair = proxies.get(method);
+
+        if( pair == null || pair[0] != result ) {
+            Class<?> iface = method.getReturnType();
+
+            pair = new Object[] { result, Proxy.newProxyInstance(iface.getClassLoader(), new Class<?>[] { iface }, new TimingHandler(iface, result)) };
+            proxies.put(method, pair);
+        }
+        return pair[1];
+    }
+}
@@ -27,6 +27,8 @@ import org.dasein.cloud.network.DNSSupport;
 import org.dasein.cloud.network.DNSZone;
 import org.dasein.cloud.network.NetworkServices;
 import org.dasein.cloud.test.DaseinTestManager;
+import org.dasein.cloud.test.capability.Capability;
+import org.dasein.cloud.test.capability.Requires;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -50,6 +52,7 @@ import static org.junit.Assume.assumeTrue;
  * @version 2013.04 initial version
  * @since 2013.04
  */
+@Requires(Capability.DNS)
 public class StatefulDNSTests {
     static private DaseinTestManager tm;
 
@@ -141,6 +144,7 @@ public class StatefulDNSTests {
     }
 
     @Test
+    @Requires(Capability.DNS)
     public void createZone() throws CloudException, InternalException {
         NetworkServices services = tm.getProvider().getNetworkServices();
 
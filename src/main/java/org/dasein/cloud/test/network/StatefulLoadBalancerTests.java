@@ -43,6 +43,8 @@ import org.dasein.cloud.compute.VmState;
 import org.dasein.cloud.dc.DataCenter;
 import org.dasein.cloud.network.*;
 import org.dasein.cloud.test.DaseinTestManager;
+import org.dasein.cloud.test.capability.Capability;
+import org.dasein.cloud.test.capability.Requires;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -60,6 +62,7 @@ import javax.annotation.Nonnull;
  * @version 2013.04 initial version
  * @since 2013.04
  */
+@Requires(Capability.LOAD_BALANCER)
 public class StatefulLoadBalancerTests {
     static private DaseinTestManager tm;
 
@@ -298,11 +301,13 @@ public class StatefulLoadBalancerTests {
     }
 
     @Test
+    @Requires(Capability.LOAD_BALANCER)
     public void createLoadBalancer() throws CloudException, InternalException {
         createLoadBalancer(false);
     }
 
     @Test
+    @Requires(Capability.LOAD_BALANCER)
     public void createLoadBalancerWithHttpsListener() throws CloudException, InternalException {
         createLoadBalancer(true);
     }
@@ -342,6 +347,7 @@ public class StatefulLoadBalancerTests {
     }
 
     @Test
+    @Requires(Capability.LOAD_BALANCER)
     public void addRemoveListeners() throws CloudException, InternalException {
         NetworkServices services = tm.getProvider().getNetworkServices();
 
@@ -405,6 +411,7 @@ public class StatefulLoadBalancerTests {
     }
 
     @Test
+    @Requires(Capability.LOAD_BALANCER)
     public void createLoadBalancerWithHealthCheck() throws CloudException, InternalException {
         NetworkServices services = tm.getProvider().getNetworkServices();
 
@@ -450,6 +457,7 @@ public class StatefulLoadBalancerTests {
      * @throws InternalException
      */
     @Test
+    @Requires(Capability.LOAD_BALANCER)
     public void modifyHealthCheck() throws CloudException, InternalException {
         NetworkServices services = tm.getProvider().getNetworkServices();
 
@@ -538,6 +546,7 @@ public class StatefulLoadBalancerTests {
     }
 
     @Test
+    @Requires(Capability.LOAD_BALANCER)
     public void createInternalLoadBalancer() throws CloudException, InternalException {
         NetworkServices services = tm.getProvider().getNetworkServices();
 
@@ -1046,6 +1055,7 @@ public class StatefulLoadBalancerTests {
 
 
     @Test
+    @Requires(Capability.LOAD_BALANCER)
     public void createSSLCertificate() throws CloudException, InternalException {
         NetworkServices services = tm.getProvider().getNetworkServices();
 
@@ -1119,6 +1129,7 @@ public class StatefulLoadBalancerTests {
     }
 
     @Test
+    @Requires(Capability.LOAD_BALANCER)
     public void listLoadBalancers() throws CloudException, InternalException {
         NetworkServices services = tm.getProvider().getNetworkServices();
 
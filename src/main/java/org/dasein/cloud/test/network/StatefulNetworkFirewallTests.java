@@ -31,6 +31,8 @@ import org.dasein.cloud.network.Permission;
 import org.dasein.cloud.network.Protocol;
 import org.dasein.cloud.network.RuleTarget;
 import org.dasein.cloud.test.DaseinTestManager;
+import org.dasein.cloud.test.capability.Capability;
+import org.dasein.cloud.test.capability.Requires;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -55,6 +57,7 @@ import static org.junit.Assume.assumeTrue;
  *
  * @author George Reese
  */
+@Requires(Capability.NETWORK_FIREWALL)
 public class StatefulNetworkFirewallTests {
     static private final Random random = new Random();
 
@@ -312,42 +315,50 @@ public class StatefulNetworkFirewallTests {
     }
 
     @Test
+    @Requires(Capability.NETWORK_FIREWALL)
     public void addIngressAllow() throws CloudException, InternalException {
         checkAddRule(Direction.INGRESS, Permission.ALLOW);
     }
 
     @Test
+    @Requires(Capability.NETWORK_FIREWALL)
     public void addIngressDeny() throws CloudException, InternalException {
         checkAddRule(Direction.INGRESS, Permission.DENY);
     }
 
     @Test
+    @Requires(Capability.NETWORK_FIREWALL)
     public void addEgressAllow() throws CloudException, InternalException {
         checkAddRule(Direction.EGRESS, Permission.ALLOW);
     }
 
     @Test
+    @Requires(Capability.NETWORK_FIREWALL)
     public void addEgressDeny() throws CloudException, InternalException {
         checkAddRule(Direction.EGRESS, Permission.DENY);
     }
 
 
     @Test
+    @Requires(Capability.NETWORK_FIREWALL)
     public void revokeIngressAllow() throws CloudException, InternalException {
         checkRemoveRule();
     }
 
     @Test
+    @Requires(Capability.NETWORK_FIREWALL)
     public void revokeIngressDeny() throws CloudException, InternalException {
         checkRemoveRule();
     }
 
     @Test
+    @Requires(Capability.NETWORK_FIREWALL)
     public void revokeEgressAllow() throws CloudException, InternalException {
         checkRemoveRule();
     }
 
     @Test
+    @Requires(Capability.NETWORK_FIREWALL)
     public void revokeEgressDeny() throws CloudException, InternalException {
         checkRemoveRule();
     }
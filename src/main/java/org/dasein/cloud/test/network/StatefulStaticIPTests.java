@@ -38,6 +38,8 @@ import org.dasein.cloud.network.Subnet;
 import org.dasein.cloud.network.VLAN;
 import org.dasein.cloud.network.VLANSupport;
 import org.dasein.cloud.test.DaseinTestManager;
+import org.dasein.cloud.test.capability.Capability;
+import org.dasein.cloud.test.capability.Requires;
 import org.dasein.cloud.test.compute.ComputeResources;
 import org.dasein.util.CalendarWrapper;
 import org.junit.After;
@@ -63,6 +65,7 @@ import static org.junit.Assume.assumeTrue;
  * @version 2013.04 initial version
  * @since 2013.04
  */
+@Requires(Capability.STATIC_IP)
 public class StatefulStaticIPTests {
     static private final Random random = new Random();
 
@@ -381,16 +384,19 @@ public class StatefulStaticIPTests {
     }
 
     @Test
+    @Requires(Capability.STATIC_IP)
     public void requestIPv4() throws CloudException, InternalException {
         request(IPVersion.IPV4, false);
     }
 
     @Test
+    @Requires(Capability.STATIC_IP)
     public void requestIPv6() throws CloudException, InternalException {
         request(IPVersion.IPV6, false);
     }
 
     @Test
+    @Requires(Capability.STATIC_IP)
     public void requestIPv4InVLAN() throws CloudException, InternalException {
         request(IPVersion.IPV4, true);
     }
@@ -482,6 +488,7 @@ public class StatefulStaticIPTests {
     }
 
     @Test
+    @Requires(Capability.STATIC_IP)
     public void assignPostLaunchIPv4() throws CloudException, InternalException {
         if( inVlan ) {
             tm.ok("VM is still launched in VLAN, skipping the test "+name.getMethodName());
@@ -492,6 +499,7 @@ public class StatefulStaticIPTests {
     }
 
     @Test
+    @Requires(Capability.STATIC_IP)
     public void assignPostLaunchIPv6() throws CloudException, InternalException {
         if( inVlan ) {
             tm.ok("VM is still launched in VLAN, skipping the test "+name.getMethodName());
@@ -502,6 +510,7 @@ public class StatefulStaticIPTests {
     }
 
     @Test
+    @Requires(Capability.STATIC_IP)
     public void assignPostLaunchIPv4InVLAN() throws CloudException, InternalException {
         if( !inVlan ) {
             tm.ok("VM is launched outside VLAN, skipping the test "+name.getMethodName());
@@ -513,6 +522,7 @@ public class StatefulStaticIPTests {
     }
 
     @Test
+    @Requires(Capability.STATIC_IP)
     public void assignPostLaunchIPv6inVLAN() throws CloudException, InternalException {
         if( !inVlan ) {
             tm.ok("VM is launched outside VLAN, skipping the test "+name.getMethodName());
@@ -524,6 +534,7 @@ public class StatefulStaticIPTests {
     }
 
     @Test
+    @Requires(Capability.STATIC_IP)
     public void releaseFromPool() throws CloudException, InternalException {
         NetworkServices services = tm.getProvider().getNetworkServices();
 
@@ -557,6 +568,7 @@ public class StatefulStaticIPTests {
     }
 
     @Test
+    @Requires(Capability.STATIC_IP)
     public void releaseFromVirtualMachine() throws CloudException, InternalException {
         NetworkServices services = tm.getProvider().getNetworkServices();
 
@@ -683,11 +695,13 @@ public class StatefulStaticIPTests {
     }
 
     @Test
+    @Requires(Capability.STATIC_IP)
     public void forwardIPv4() throws CloudException, InternalException {
         forward(IPVersion.IPV4);
     }
 
     @Test
+    @Requires(Capability.STATIC_IP)
     public void forwardIPv6() throws CloudException, InternalException {
         forward(IPVersion.IPV6);
     }
@@ -745,11 +759,13 @@ public class StatefulStaticIPTests {
     }
 
     @Test
+    @Requires(Capability.STATIC_IP)
     public void stopForwardIPv4() throws CloudException, InternalException {
         stopForward(IPVersion.IPV4);
     }
 
     @Test
+    @Requires(Capability.STATIC_IP)
     public void stopForwardIPv6() throws CloudException, InternalException {
         stopForward(IPVersion.IPV6);
     }
@@ -28,11 +28,19 @@ import org.dasein.cloud.dc.DataCenter;
 import org.dasein.cloud.dc.DataCenterServices;
 import org.dasein.cloud.network.*;
 import org.dasein.cloud.test.DaseinTestManager;
+import org.dasein.cloud.test.capability.Capability;
+import org.dasein.cloud.test.capability.Requires;
 import org.dasein.cloud.test.compute.ComputeResources;
+import org.dasein.cloud.test.wait.CloudStates;
+import org.dasein.cloud.test.wait.SimpleExtractor;
+import org.dasein.cloud.test.wait.StateExtractor;
+import org.dasein.cloud.test.wait.StateWaiter;
 import org.dasein.util.CalendarWrapper;
 import org.junit.*;
 import org.junit.rules.TestName;
 
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.util.Collection;
 
 import static org.junit.Assert.*;
@@ -44,6 +52,7 @@ import static org.junit.Assume.assumeTrue;
  *
  * @author George Reese
  */
+@Requires(Capability.VLAN)
 public class StatefulVLANTests {
     static private DaseinTestManager tm;
 
@@ -101,33 +110,12 @@ public class StatefulVLANTests {
                 ) {
             testVLANId = getVLANId(support, name.getMethodName(), null, null);
             // in the event it is new...
-            try {
-                Integer count = 0;
-                while( count < 5 ) {
-                    VLAN v = support.getVlan(testVLANId);
-                    if( v != null && v.getCurrentState().equals(VLANState.AVAILABLE) ) {
-                        count = 5;
-                    } else {
-                        try {
-                            Thread.sleep(5000L);
-                        } catch( InterruptedException ignore ) {
-                        }
-                    }
-                    count++;
-                }
-            } catch( Exception e ) {
-                tm.out("Exception while getting vlan for " + name.getMethodName());
-            }
+            awaitVlan(support, testVLANId);
         }
         if( name.getMethodName().equals("removeVLAN")
                 || name.getMethodName().equals("removeSubnet")
                 || name.getMethodName().equals("removeRoutingTable") ) {
             testVLANId = getVLANId(support, name.getMethodName(), DaseinTestManager.REMOVED, true);
-            // wait...
-            try {
-                Thread.sleep(5000L);
-            } catch( InterruptedException ignore ) {
-            }
         }
 //        DISABLED
 //        if( name.getMethodName().equals("removeVLANwithFirewallRule") ) {
@@ -145,20 +133,12 @@ public class StatefulVLANTests {
             testRoutingTableId = tm.getTestRoutingTableId(DaseinTestManager.STATEFUL, false, testVLANId, null);
             if( testRoutingTableId == null ) {
                 testRoutingTableId = tm.getTestRoutingTableId(DaseinTestManager.STATEFUL, true, testVLANId, null);
-                // wait...
-                try {
-                    Thread.sleep(5000L);
-                } catch( InterruptedException ignore ) {
-                }
+                awaitRoutingTable(support, testRoutingTableId);
             }
         }
         if( name.getMethodName().equals("removeSubnet") ) {
             testSubnetId = tm.getTestSubnetId(DaseinTestManager.REMOVED, true, testVLANId, null);
-            // wait...
-            try {
-                Thread.sleep(5000L);
-            } catch( InterruptedException ignore ) {
-            }
+            awaitSubnet(support, testSubnetId);
             if( testSubnetId == null ) {
                 testSubnetId = tm.getTestSubnetId(DaseinTestManager.STATELESS, false, testVLANId, null);
             }
@@ -167,11 +147,7 @@ public class StatefulVLANTests {
             }
             if( testSubnetId == null ) {
                 testSubnetId = tm.getTestSubnetId(DaseinTestManager.STATEFUL, true, testVLANId, null);
-                // wait...
-                try {
-                    Thread.sleep(5000L);
-                } catch( InterruptedException ignore ) {
-                }
+                awaitSubnet(support, testSubnetId);
             }
             if( testVLANId != null ) {
                 try {
@@ -188,11 +164,7 @@ public class StatefulVLANTests {
                 testSubnetId = tm.getTestSubnetId(DaseinTestManager.STATEFUL, false, testVLANId, null);
                 if( testSubnetId == null ) {
                     testSubnetId = tm.getTestSubnetId(DaseinTestManager.STATEFUL, true, testVLANId, testDataCenterId);
-                    // wait...
-                    try {
-                        Thread.sleep(5000L);
-                    } catch( InterruptedException ignore ) {
-                    }
+                    awaitSubnet(support, testSubnetId);
                 }
             }
         }
@@ -224,24 +196,10 @@ public class StatefulVLANTests {
                             testVLANVMId = tm.getTestVLANVMId(DaseinTestManager.STATELESS, VmState.RUNNING, rtb.getProviderVlanId(), true, null);
                         }
                         if( testVLANVMId != null ) {
-                            try {
-                                Integer count = 0;
-                                ComputeServices cs = tm.getProvider().getComputeServices();
-                                VirtualMachineSupport vs = cs.getVirtualMachineSupport();
-                                while( count < 20 ) {
-                                    VirtualMachine vm = vs.getVirtualMachine(testVLANVMId);
-                                    if( vm.getCurrentState().equals(VmState.RUNNING) ) {
-                                        count = 20;
-                                    } else {
-                                        try {
-                                            Thread.sleep(5000L);
-                                        } catch( InterruptedException ignore ) {
-                                        }
-                                    }
-                                    count++;
-                                }
-                            } catch( Exception e ) {
-                                tm.out("Exception while getting virtual machine for " + name.getMethodName());
+                            ComputeServices cs = tm.getProvider().getComputeServices();
+
+                            if( cs != null && cs.getVirtualMachineSupport() != null ) {
+                                StateWaiter.getInstance("VM").withTimeout(CalendarWrapper.MINUTE * 2L).await(testVLANVMId, CloudStates.virtualMachine(cs.getVirtualMachineSupport()), StateWaiter.in(VmState.RUNNING));
                             }
                         } else {
                             tm.out("Unable to produce virtual machine for " + name.getMethodName());
@@ -293,10 +251,7 @@ public class StatefulVLANTests {
         }
         if( vId != null ) {
             // wait for vlan to be available
-            try {
-                Thread.sleep(5000L);
-            } catch( InterruptedException ignore ) {
-            }
+            awaitVlan(support, vId);
             try {
                 VLAN v = support.getVlan(vId);
                 if( v != null ) {
@@ -314,6 +269,52 @@ public class StatefulVLANTests {
         }
     }
 
+    private void awaitVlan(@Nonnull VLANSupport support, @Nullable String vlanId) {
+        if( vlanId != null ) {
+            StateWaiter.getInstance("VLAN").withTimeout(CalendarWrapper.MINUTE * 2L).await(vlanId, CloudStates.vlan(support), StateWaiter.notIn(VLANState.PENDING));
+        }
+    }
+
+    private void awaitSubnet(@Nonnull VLANSupport support, @Nullable String subnetId) {
+        if( subnetId != null ) {
+            StateWaiter.getInstance("Subnet").withTimeout(CalendarWrapper.MINUTE * 2L).await(subnetId, CloudStates.subnet(support), StateWaiter.notIn(SubnetState.PENDING));
+        }
+    }
+
+    private void awaitRoutingTable(@Nonnull VLANSupport support, @Nullable String routingTableId) {
+        if( routingTableId != null ) {
+            StateWaiter.getInstance("Routing Table").withTimeout(CalendarWrapper.MINUTE).await(routingTableId, CloudStates.routingTable(support), StateWaiter.<Integer>notIn());
+        }
+    }
+
+    private void awaitRoute(@Nonnull final VLANSupport support, @Nonnull final String destinationCidr) {
+        StateWaiter.getInstance("Route").withTimeout(CalendarWrapper.MINUTE).await(testRoutingTableId, new SimpleExtractor<Boolean>() {
+            @Override
+            public @Nullable Boolean lookup(@Nonnull String routingTableId) throws Exception {
+                RoutingTable rtb = support.getRoutingTable(routingTableId);
+
+                if( rtb == null ) {
+                    return null;
+                }
+                for( Route route : rtb.getRoutes() ) {
+                    if( destinationCidr.equalsIgnoreCase(route.getDestinationCidr()) ) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        }, StateWaiter.in(true));
+    }
+
+    private void awaitInternetGateway(@Nonnull final VLANSupport support, boolean connected) {
+        StateWaiter.getInstance("Internet Gateway").withTimeout(CalendarWrapper.MINUTE).await(testVLANId, new SimpleExtractor<Boolean>() {
+            @Override
+            public @Nonnull Boolean lookup(@Nonnull String vlanId) throws Exception {
+                return support.isConnectedViaInternetGateway(vlanId);
+            }
+        }, StateWaiter.in(connected));
+    }
+
     @Test
     public void provisionSubnet() throws CloudException, InternalException {
         NetworkServices services = tm.getProvider().getNetworkServices();
@@ -334,10 +335,7 @@ public class StatefulVLANTests {
                             assertNotNull("The test VLAN does not exist", vlan);
                             String id = resources.provisionSubnet(support, "provisionSubnet", testVLANId, "dsnsub", vlan.getProviderDataCenterId());
                             tm.out("New Subnet", id);
-                            try {
-                                Thread.sleep(1500L);
-                            } catch( InterruptedException ignore ) {
-                            }
+                            awaitSubnet(support, id);
                             assertNotNull("Could not find the subnet in the cloud after provisioning", support.getSubnet(id));
                         } else {
                             try {
@@ -383,10 +381,7 @@ public class StatefulVLANTests {
                     if( supported ) {
                         String id = resources.provisionVLAN(support, "provisionVlan", "dnsvlan", null);
                         tm.out("New VLAN", id);
-                        try {
-                            Thread.sleep(1500L);
-                        } catch( InterruptedException ignore ) {
-                        }
+                        awaitVlan(support, id);
                         assertNotNull("Could not find the new VLAN in the cloud after creation", support.getVlan(id));
                     } else if( support.isSubscribed() ) {
                         try {
@@ -427,10 +422,7 @@ public class StatefulVLANTests {
                             String id = resources.provisionRoutingTable(support, vlan.getProviderVlanId(), "provisionRoutingTable", "dnsrtb");
                             tm.out("New Routing Table", id);
                             testRoutingTableId = id;
-                            try {
-                                Thread.sleep(3500L);
-                            } catch( InterruptedException ignore ) {
-                            }
+                            awaitRoutingTable(support, id);
                             assertNotNull("Could not find the new Routing Table in the cloud after creation", support.getRoutingTable(id));
                         } else if( support.isSubscribed() ) {
                             try {
@@ -477,11 +469,7 @@ public class StatefulVLANTests {
                         assertNotNull("Test VLAN no longer exists, cannot test removing it", vlan);
                         tm.out("State", vlan.getCurrentState());
                         support.removeVlan(testVLANId);
-                        try {
-                            Thread.sleep(5000L);
-                        }
-                        catch( InterruptedException ignore ) {
-                        }
+                        StateWaiter.getInstance("VLAN").withTimeout(CalendarWrapper.MINUTE).await(testVLANId, CloudStates.vlan(support), StateWaiter.<VLANState>inOrGone());
                         vlan = support.getVlan(testVLANId);
                         tm.out("After", vlan);
                         tm.out("State", ( vlan == null ? "DELETED" : vlan.getCurrentState() ));
@@ -532,10 +520,7 @@ public class StatefulVLANTests {
                     assertNotNull("Test VLAN no longer exists, cannot test removing it", vlan);
                     tm.out("State", vlan.getCurrentState());
                     support.removeVlan(testVLANId);
-                    try {
-                        Thread.sleep(5000L);
-                    } catch( InterruptedException ignore ) {
-                    }
+                    StateWaiter.getInstance("VLAN").withTimeout(CalendarWrapper.MINUTE).await(testVLANId, CloudStates.vlan(support), StateWaiter.<VLANState>inOrGone());
                     vlan = support.getVlan(testVLANId);
                     tm.out("After", vlan);
                     tm.out("State", ( vlan == null ? "DELETED" : vlan.getCurrentState() ));
@@ -572,11 +557,7 @@ public class StatefulVLANTests {
                     assertNotNull("Test route table no longer exists, cannot test removing it", rtb);
 
                     support.removeRoutingTable(testRoutingTableId);
-
-                    try {
-                        Thread.sleep(5000L);
-                    } catch( InterruptedException ignore ) {
-                    }
+                    StateWaiter.getInstance("Routing Table").withTimeout(CalendarWrapper.MINUTE).await(testRoutingTableId, CloudStates.routingTable(support), StateWaiter.<Integer>inOrGone());
 
                     rtb = support.getRoutingTable(testRoutingTableId);
 
@@ -614,10 +595,7 @@ public class StatefulVLANTests {
                     assertNotNull("Test subnet no longer exists, cannot test removing it", subnet);
                     tm.out("State", subnet.getCurrentState());
                     support.removeSubnet(testSubnetId);
-                    try {
-                        Thread.sleep(5000L);
-                    } catch( InterruptedException ignore ) {
-                    }
+                    StateWaiter.getInstance("Subnet").withTimeout(CalendarWrapper.MINUTE).await(testSubnetId, CloudStates.subnet(support), StateWaiter.<SubnetState>inOrGone());
                     subnet = support.getSubnet(testSubnetId);
                     tm.out("After", subnet);
                     tm.out("State", ( subnet == null ? "DELETED" : subnet.getCurrentState() ));
@@ -640,6 +618,7 @@ public class StatefulVLANTests {
     }
 
     @Test
+    @Requires(Capability.VLAN)
     public void launchVM() throws CloudException, InternalException {
         NetworkServices networkServices = tm.getProvider().getNetworkServices();
         if( networkServices == null ) {
@@ -658,7 +637,7 @@ public class StatefulVLANTests {
             return;
         }
 
-        VirtualMachineSupport vmSupport = computeServices.getVirtualMachineSupport();
+        final VirtualMachineSupport vmSupport = computeServices.getVirtualMachineSupport();
         if( vmSupport == null ) {
             tm.ok("No virtual machine support in " + tm.getProvider().getCloudName());
             return;
@@ -743,26 +722,17 @@ public class StatefulVLANTests {
         tm.out("Virtual Machine", vmId);
         assertNotNull("No error received launching VM in VLAN/subnet, but there was no virtual machine", vmId);
 
-        VirtualMachine vm = vmSupport.getVirtualMachine(vmId);
-
-        long timeout = System.currentTimeMillis() + ( CalendarWrapper.MINUTE * 5L );
-
-        while( timeout > System.currentTimeMillis() ) {
-            if( vm == null ) {
-                break;
-            }
-            if( vm.getProviderVlanId() != null ) {
-                break;
-            }
-            try {
-                Thread.sleep(15000L);
-            } catch( InterruptedException ignore ) {
+        VirtualMachine vm = StateWaiter.getInstance("VM VLAN").withTimeout(CalendarWrapper.MINUTE * 5L).await(vmId, new StateExtractor<VirtualMachine, String>() {
+            @Override
+            public @Nullable VirtualMachine lookup(@Nonnull String id) throws Exception {
+                return vmSupport.getVirtualMachine(id);
             }
-            try {
-                vm = vmSupport.getVirtualMachine(vmId);
-            } catch( Throwable ignore ) {
+
+            @Override
+            public @Nullable String getState(@Nonnull VirtualMachine resource) {
+                return resource.getProviderVlanId();
             }
-        }
+        }, StateWaiter.<String>notIn());
         assertNotNull("Launched VM does not exist", vm);
         tm.out("In VLAN", vm.getProviderVlanId());
         if (!vlanSupport.getCapabilities().getSubnetSupport().equals(Requirement.NONE)) {
@@ -788,10 +758,7 @@ public class StatefulVLANTests {
                             tm.out("Before", connected);
                             assertFalse("The VLAN is already connected via an internet gateway and thus this test cannot run", connected);
                             resources.provisionInternetGateway(support, "provisionInternetGateway", testVLANId);
-                            try {
-                                Thread.sleep(5000L);
-                            } catch( InterruptedException ignore ) {
-                            }
+                            awaitInternetGateway(support, true);
                             connected = support.isConnectedViaInternetGateway(testVLANId);
                             tm.out("After", connected);
                             assertTrue("The VLAN is not connected via an Internet Gateway", connected);
@@ -847,11 +814,7 @@ public class StatefulVLANTests {
                                 assertTrue("Gateway found by Id and Gateway found by VLAN do not match", iGatewayIdByVlan.equalsIgnoreCase(foundId));
 
                                 support.removeInternetGateway(testVLANId);
-
-                                try {
-                                    Thread.sleep(5000L);
-                                } catch( InterruptedException ignore ) {
-                                }
+                                awaitInternetGateway(support, false);
 
                                 iGateway = support.getInternetGatewayById(testInternetGatewayId);
 
@@ -922,10 +885,7 @@ public class StatefulVLANTests {
                                 }
 
                                 if( !successfulCidr.equalsIgnoreCase("") ) {
-                                    try {
-                                        Thread.sleep(5000L);
-                                    } catch( InterruptedException ignore ) {
-                                    }
+                                    awaitRoute(support, successfulCidr);
 
                                     rtb = support.getRoutingTable(testRoutingTableId);
                                     tm.out("Route Table", rtb);
@@ -1009,10 +969,7 @@ public class StatefulVLANTests {
                                 }
 
                                 if( !successfulCidr.equalsIgnoreCase("") ) {
-                                    try {
-                                        Thread.sleep(5000L);
-                                    } catch( InterruptedException ignore ) {
-                                    }
+                                    awaitRoute(support, successfulCidr);
 
                                     rtb = support.getRoutingTable(testRoutingTableId);
                                     tm.out("Route Table", rtb);
@@ -1090,10 +1047,7 @@ public class StatefulVLANTests {
                     }
 
                     if( !successfulCidr.equalsIgnoreCase("") ) {
-                        try {
-                            Thread.sleep(5000L);
-                        } catch( InterruptedException ignore ) {
-                        }
+                        awaitRoute(support, successfulCidr);
 
                         rtb = support.getRoutingTable(testRoutingTableId);
                         tm.out("Route Table", rtb);
@@ -27,20 +27,25 @@ import org.dasein.cloud.InternalException;
 import org.dasein.cloud.platform.*;
 import org.dasein.cloud.storage.Blob;
 import org.dasein.cloud.test.DaseinTestManager;
+import org.dasein.cloud.test.fixture.FixtureRegistry;
+import org.dasein.cloud.test.fixture.ResourceJournal;
+import org.dasein.cloud.test.fixture.ResourceKind;
+import org.dasein.cloud.test.fixture.WarmPool;
+import org.dasein.cloud.test.metrics.Timeline;
+import org.dasein.cloud.test.runner.Shard;
 import org.dasein.cloud.test.storage.StorageResources;
-import org.dasein.util.CalendarWrapper;
+import org.dasein.cloud.test.teardown.TeardownEngine;
+import org.dasein.cloud.test.wait.CloudStates;
+import org.dasein.cloud.test.wait.StatePredicate;
+import org.dasein.cloud.test.wait.StateWaiter;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 
 /**
  * Manages all identity resources for automated provisioning and de-provisioning during integration tests.
@@ -55,10 +60,13 @@ public class PlatformResources {
 
     static private final Random random = new Random();
 
-    private final HashMap<String,String> testCDNs   = new HashMap<String, String>();
-    private final HashMap<String,String> testQueues = new HashMap<String, String>();
-    private final HashMap<String,String> testRDBMS  = new HashMap<String, String>();
-    private final HashMap<String,String> testTopics = new HashMap<String, String>();
+    // the states from which a database may be removed or no longer needs to be
+    static private final StatePredicate<DatabaseState> REMOVABLE = StateWaiter.inOrGone(DatabaseState.DELETING, DatabaseState.DELETED, DatabaseState.AVAILABLE, DatabaseState.STORAGE_FULL, DatabaseState.FAILED);
+
+    private final FixtureRegistry<String> testCDNs   = new FixtureRegistry<String>(ResourceKind.CDN);
+    private final FixtureRegistry<String> testQueues = new FixtureRegistry<String>(ResourceKind.QUEUE);
+    private final FixtureRegistry<String> testRDBMS  = new FixtureRegistry<String>(ResourceKind.RDBMS);
+    private final FixtureRegistry<String> testTopics = new FixtureRegistry<String>(ResourceKind.TOPIC);
 
     private CloudProvider   provider;
 
@@ -66,160 +74,156 @@ public class PlatformResources {
         this.provider = provider;
     }
 
-    private boolean canRemove(@Nullable Database db) {
-        if( db == null ) {
-            return true;
-        }
-        switch( db.getCurrentState() ) {
-            case DELETING: case DELETED: case AVAILABLE: case STORAGE_FULL: case FAILED: return true;
-            default: return false;
+    public int close() {
+        TeardownEngine teardown = new TeardownEngine();
+
+        close(teardown);
+        return teardown.run();
+    }
+
+    /**
+     * Registers the platform resources a crashed run left behind so that clean up tears them down.
+     * @param orphans the orphaned resource IDs by kind
+     */
+    public void recover(@Nonnull Map<ResourceKind,List<String>> orphans) {
+        ResourceJournal.recover(orphans, testCDNs);
+        ResourceJournal.recover(orphans, testQueues);
+        ResourceJournal.recover(orphans, testRDBMS);
+        ResourceJournal.recover(orphans, testTopics);
+    }
+
+    /**
+     * Registers the relational database left in the warm pool by a previous run.
+     * @param pool the warm pool
+     */
+    public void lease(@Nonnull WarmPool pool) {
+        PlatformServices platformServices = provider.getPlatformServices();
+
+        if( platformServices != null ) {
+            final RelationalDatabaseSupport rdbmsSupport = platformServices.getRelationalDatabaseSupport();
+
+            if( rdbmsSupport != null ) {
+                pool.lease(ResourceKind.RDBMS, testRDBMS, new WarmPool.Validator() {
+                    @Override
+                    public boolean isValid(@Nonnull String resourceId) throws Exception {
+                        Database db = rdbmsSupport.getDatabase(resourceId);
+
+                        return (db != null && !DatabaseState.DELETED.equals(db.getCurrentState()) && !DatabaseState.DELETING.equals(db.getCurrentState()));
+                    }
+                });
+            }
         }
     }
 
-    public int close() {
-        int count = 0;
+    /**
+     * Returns the stateful relational database to the warm pool so that it is not torn down.
+     * @param pool the warm pool
+     */
+    public void release(@Nonnull WarmPool pool) {
+        pool.release(ResourceKind.RDBMS, testRDBMS);
+    }
 
+    /**
+     * Registers every stateful platform resource provisioned during the tests for removal.
+     * @param teardown the engine that removes the resources
+     */
+    public void close(@Nonnull TeardownEngine teardown) {
         try {
             PlatformServices services = provider.getPlatformServices();
 
             if( services != null ) {
-                // start CDN termination first, wait later
-                ArrayList<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
-
-                CDNSupport cdnSupport = services.getCDNSupport();
+                final CDNSupport cdnSupport = services.getCDNSupport();
 
                 if( cdnSupport != null ) {
                     for( Map.Entry<String,String> entry : testCDNs.entrySet() ) {
                         if( !entry.getKey().equals(DaseinTestManager.STATELESS) ) {
-                            try {
-                                Distribution d = cdnSupport.getDistribution(entry.getValue());
+                            final String distributionId = entry.getValue();
 
-                                if( d != null ) {
-                                    results.add(cleanCDN(cdnSupport, entry.getValue()));
-                                    count++;
-                                }
-                                else {
-                                    count++;
+                            teardown.add(ResourceKind.CDN, distributionId, new Callable<Boolean>() {
+                                @Override
+                                public Boolean call() throws Exception {
+                                    Distribution d = cdnSupport.getDistribution(distributionId);
+
+                                    if( d != null ) {
+                                        cdnSupport.delete(distributionId);
+                                    }
+                                    return true;
                                 }
-                            }
-                            catch( Throwable t ) {
-                                logger.warn("Failed to de-provision test CDN " + entry.getValue() + ": " + t.getMessage());
-                            }
+                            });
                         }
                     }
                 }
 
-                MQSupport mqSupport = services.getMessageQueueSupport();
+                final MQSupport mqSupport = services.getMessageQueueSupport();
 
                 if( mqSupport != null ) {
                     for( Map.Entry<String,String> entry : testQueues.entrySet() ) {
                         if( !entry.getKey().equals(DaseinTestManager.STATELESS) ) {
-                            try {
-                                MessageQueue mq = mqSupport.getMessageQueue(entry.getValue());
+                            final String queueId = entry.getValue();
 
-                                if( mq != null ) {
-                                    mqSupport.removeMessageQueue(mq.getProviderMessageQueueId(), "Dasein Cloud test clean-up");
-                                    count++;
-                                }
-                                else {
-                                    count++;
+                            teardown.add(ResourceKind.QUEUE, queueId, new Callable<Boolean>() {
+                                @Override
+                                public Boolean call() throws Exception {
+                                    MessageQueue mq = mqSupport.getMessageQueue(queueId);
+
+                                    if( mq != null ) {
+                                        mqSupport.removeMessageQueue(mq.getProviderMessageQueueId(), "Dasein Cloud test clean-up");
+                                    }
+                                    return true;
                                 }
-                            }
-                            catch( Throwable t ) {
-                                logger.warn("Failed to de-provision test message queue " + entry.getValue() + ": " + t.getMessage());
-                            }
+                            });
                         }
                     }
                 }
 
-                PushNotificationSupport pushSupport = services.getPushNotificationSupport();
+                final PushNotificationSupport pushSupport = services.getPushNotificationSupport();
 
                 if( pushSupport != null ) {
                     for( Map.Entry<String,String> entry : testTopics.entrySet() ) {
                         if( !entry.getKey().equals(DaseinTestManager.STATELESS) ) {
-                            try {
-                                Topic topic = pushSupport.getTopic(entry.getValue());
+                            final String topicId = entry.getValue();
 
-                                if( topic != null ) {
-                                    pushSupport.removeTopic(entry.getValue());
-                                    count++;
-                                }
-                                else {
-                                    count++;
+                            teardown.add(ResourceKind.TOPIC, topicId, new Callable<Boolean>() {
+                                @Override
+                                public Boolean call() throws Exception {
+                                    Topic topic = pushSupport.getTopic(topicId);
+
+                                    if( topic != null ) {
+                                        pushSupport.removeTopic(topicId);
+                                    }
+                                    return true;
                                 }
-                            }
-                            catch( Throwable t ) {
-                                logger.warn("Failed to de-provision test notification topic " + entry.getValue() + ": " + t.getMessage());
-                            }
+                            });
                         }
                     }
                 }
 
-                RelationalDatabaseSupport rdbmsSupport = services.getRelationalDatabaseSupport();
+                final RelationalDatabaseSupport rdbmsSupport = services.getRelationalDatabaseSupport();
 
                 if( rdbmsSupport != null ) {
                     for( Map.Entry<String,String> entry : testRDBMS.entrySet() ) {
                         if( !entry.getKey().equals(DaseinTestManager.STATELESS) ) {
-                            try {
-                                long timeout = System.currentTimeMillis() + (CalendarWrapper.MINUTE*20L);
-                                Database db = rdbmsSupport.getDatabase(entry.getValue());
+                            final String databaseId = entry.getValue();
+
+                            teardown.add(ResourceKind.RDBMS, databaseId, new Callable<Boolean>() {
+                                @Override
+                                public Boolean call() throws Exception {
+                                    Database db = StateWaiter.getInstance("Database").withMaxDelay(15000L).await(databaseId, CloudStates.database(rdbmsSupport), REMOVABLE);
 
-                                while( timeout > System.currentTimeMillis() ) {
-                                    if( canRemove(db) ) {
-                                        break;
+                                    if( db != null && !db.getCurrentState().equals(DatabaseState.DELETED) && !db.getCurrentState().equals(DatabaseState.DELETING) ) {
+                                        rdbmsSupport.removeDatabase(databaseId);
                                     }
-                                    try { Thread.sleep(15000L); }
-                                    catch( InterruptedException ignore ) { }
-                                    try { db = rdbmsSupport.getDatabase(db.getProviderDatabaseId()); }
-                                    catch( Throwable ignore ) { }
+                                    return true;
                                 }
-                                if( db != null && !db.getCurrentState().equals(DatabaseState.DELETED) && !db.getCurrentState().equals(DatabaseState.DELETING) ) {
-                                    rdbmsSupport.removeDatabase(entry.getValue());
-                                    count++;
-                                }
-                                else {
-                                    count++;
-                                }
-                            }
-                            catch( Throwable t ) {
-                                logger.warn("Failed to de-provision test relational database " + entry.getValue() + ": " + t.getMessage());
-                            }
+                            });
                         }
                     }
                 }
-
-                // no wait for CDN stuff
-                boolean done;
-
-                do {
-                    done = true;
-                    try { Thread.sleep(15000L); }
-                    catch( InterruptedException ignore ) { }
-                    for( Future<Boolean> result : results ) {
-                        if( !result.isDone() ) {
-                            done = false;
-                            break;
-                        }
-                    }
-                } while( !done );
             }
         }
         catch( Throwable ignore ) {
             // ignore
         }
-        return count;
-    }
-
-    ExecutorService service = Executors.newCachedThreadPool();
-
-    private Future<Boolean> cleanCDN(final @Nonnull CDNSupport support, final @Nonnull String distributionId) {
-        return service.submit(new Callable<Boolean>() {
-            @Override
-            public Boolean call() throws Exception {
-                support.delete(distributionId);
-                return true;
-            }
-        });
     }
 
     public int report() {
@@ -263,152 +267,160 @@ public class PlatformResources {
     }
 
     public @Nullable String getTestDistributionId(@Nonnull String label, boolean provisionIfNull, @Nullable String origin) {
-        if( label.equals(DaseinTestManager.STATELESS) ) {
-            for( Map.Entry<String,String> entry : testCDNs.entrySet() ) {
-                if( !entry.getKey().startsWith(DaseinTestManager.REMOVED) ) {
-                    String id = entry.getValue();
-
-                    if( id != null ) {
-                        return id;
+        synchronized( testCDNs.lock(label) ) {
+            if( label.equals(DaseinTestManager.STATELESS) ) {
+                for( Map.Entry<String,String> entry : testCDNs.entrySet() ) {
+                    if( !entry.getKey().startsWith(DaseinTestManager.REMOVED) ) {
+                        String id = entry.getValue();
+
+                        if( id != null ) {
+                            return id;
+                        }
                     }
                 }
+                return findStatelessDistribution();
             }
-            return findStatelessDistribution();
-        }
-        String id = testCDNs.get(label);
+            String id = testCDNs.get(label);
 
-        if( id != null ) {
-            return id;
-        }
-        if( provisionIfNull ) {
-            PlatformServices services = provider.getPlatformServices();
+            if( id != null ) {
+                return id;
+            }
+            if( provisionIfNull ) {
+                PlatformServices services = provider.getPlatformServices();
 
-            if( services != null ) {
-                CDNSupport support = services.getCDNSupport();
+                if( services != null ) {
+                    CDNSupport support = services.getCDNSupport();
 
-                if( support != null ) {
-                    try {
-                        return provisionDistribution(support, label, "Dasein CDN", origin);
-                    }
-                    catch( Throwable ignore ) {
-                        // ignore
+                    if( support != null ) {
+                        try {
+                            return provisionDistribution(support, label, "Dasein CDN", origin);
+                        }
+                        catch( Throwable ignore ) {
+                            // ignore
+                        }
                     }
                 }
             }
+            return null;
         }
-        return null;
     }
 
 
     public @Nullable String getTestQueueId(@Nonnull String label, boolean provisionIfNull) {
-        if( label.equals(DaseinTestManager.STATELESS) ) {
-            for( Map.Entry<String,String> entry : testQueues.entrySet() ) {
-                if( !entry.getKey().equals(DaseinTestManager.REMOVED) ) {
-                    String id = entry.getValue();
-
-                    if( id != null ) {
-                        return id;
+        synchronized( testQueues.lock(label) ) {
+            if( label.equals(DaseinTestManager.STATELESS) ) {
+                for( Map.Entry<String,String> entry : testQueues.entrySet() ) {
+                    if( !entry.getKey().equals(DaseinTestManager.REMOVED) ) {
+                        String id = entry.getValue();
+
+                        if( id != null ) {
+                            return id;
+                        }
                     }
                 }
+                return findStatelessMQ();
             }
-            return findStatelessMQ();
-        }
-        String id = testQueues.get(label);
+            String id = testQueues.get(label);
 
-        if( id != null ) {
-            return id;
-        }
-        if( provisionIfNull ) {
-            PlatformServices services = provider.getPlatformServices();
+            if( id != null ) {
+                return id;
+            }
+            if( provisionIfNull ) {
+                PlatformServices services = provider.getPlatformServices();
 
-            if( services != null ) {
-                MQSupport mqSupport = services.getMessageQueueSupport();
+                if( services != null ) {
+                    MQSupport mqSupport = services.getMessageQueueSupport();
 
-                if( mqSupport != null ) {
-                    try {
-                        return provisionMQ(mqSupport, label, "dsnmq");
-                    }
-                    catch( Throwable ignore ) {
-                        // ignore
+                    if( mqSupport != null ) {
+                        try {
+                            return provisionMQ(mqSupport, label, "dsnmq");
+                        }
+                        catch( Throwable ignore ) {
+                            // ignore
+                        }
                     }
                 }
             }
+            return null;
         }
-        return null;
     }
 
     public @Nullable String getTestRDBMSId(@Nonnull String label, boolean provisionIfNull, @Nullable DatabaseEngine engine) {
-        if( label.equals(DaseinTestManager.STATELESS) ) {
-            for( Map.Entry<String,String> entry : testRDBMS.entrySet() ) {
-                if( !entry.getKey().equals(DaseinTestManager.REMOVED) ) {
-                    String id = entry.getValue();
-
-                    if( id != null ) {
-                        return id;
+        synchronized( testRDBMS.lock(label) ) {
+            if( label.equals(DaseinTestManager.STATELESS) ) {
+                for( Map.Entry<String,String> entry : testRDBMS.entrySet() ) {
+                    if( !entry.getKey().equals(DaseinTestManager.REMOVED) ) {
+                        String id = entry.getValue();
+
+                        if( id != null ) {
+                            return id;
+                        }
                     }
                 }
+                return findStatelessRDBMS();
             }
-            return findStatelessRDBMS();
-        }
-        String id = testRDBMS.get(label);
+            String id = testRDBMS.get(label);
 
-        if( id != null ) {
-            return id;
-        }
-        if( provisionIfNull ) {
-            PlatformServices services = provider.getPlatformServices();
+            if( id != null ) {
+                return id;
+            }
+            if( provisionIfNull ) {
+                PlatformServices services = provider.getPlatformServices();
 
-            if( services != null ) {
-                RelationalDatabaseSupport rdbmsSupport = services.getRelationalDatabaseSupport();
+                if( services != null ) {
+                    RelationalDatabaseSupport rdbmsSupport = services.getRelationalDatabaseSupport();
 
-                if( rdbmsSupport != null ) {
-                    try {
-                        return provisionRDBMS(rdbmsSupport, label, "dsnrdbms", engine);
-                    }
-                    catch( Throwable ignore ) {
-                        // ignore
+                    if( rdbmsSupport != null ) {
+                        try {
+                            return provisionRDBMS(rdbmsSupport, label, "dsnrdbms", engine);
+                        }
+                        catch( Throwable ignore ) {
+                            // ignore
+                        }
                     }
                 }
             }
+            return null;
         }
-        return null;
     }
 
     public @Nullable String getTestTopicId(@Nonnull String label, boolean provisionIfNull) {
-        if( label.equals(DaseinTestManager.STATELESS) ) {
-            for( Map.Entry<String,String> entry : testTopics.entrySet() ) {
-                if( !entry.getKey().startsWith(DaseinTestManager.REMOVED) ) {
-                    String id = entry.getValue();
-
-                    if( id != null ) {
-                        return id;
+        synchronized( testTopics.lock(label) ) {
+            if( label.equals(DaseinTestManager.STATELESS) ) {
+                for( Map.Entry<String,String> entry : testTopics.entrySet() ) {
+                    if( !entry.getKey().startsWith(DaseinTestManager.REMOVED) ) {
+                        String id = entry.getValue();
+
+                        if( id != null ) {
+                            return id;
+                        }
                     }
                 }
+                return findStatelessTopic();
             }
-            return findStatelessTopic();
-        }
-        String id = testTopics.get(label);
+            String id = testTopics.get(label);
 
-        if( id != null ) {
-            return id;
-        }
-        if( provisionIfNull ) {
-            PlatformServices services = provider.getPlatformServices();
+            if( id != null ) {
+                return id;
+            }
+            if( provisionIfNull ) {
+                PlatformServices services = provider.getPlatformServices();
 
-            if( services != null ) {
-                PushNotificationSupport support = services.getPushNotificationSupport();
+                if( services != null ) {
+                    PushNotificationSupport support = services.getPushNotificationSupport();
 
-                if( support != null ) {
-                    try {
-                        return provisionTopic(support, label, "dsntopic");
-                    }
-                    catch( Throwable ignore ) {
-                        // ignore
+                    if( support != null ) {
+                        try {
+                            return provisionTopic(support, label, "dsntopic");
+                        }
+                        catch( Throwable ignore ) {
+                            // ignore
+                        }
                     }
                 }
             }
+            return null;
         }
-        return null;
     }
 
     public @Nullable String findStatelessDistribution() {
@@ -512,41 +524,47 @@ public class PlatformResources {
     }
 
     public @Nonnull String provisionDistribution(@Nonnull CDNSupport support, @Nonnull String label, @Nonnull String namePrefix, @Nullable String origin) throws CloudException, InternalException {
-        if( origin == null ) {
-            StorageResources r = DaseinTestManager.getStorageResources();
+        Timeline.Span span = Timeline.begin("provision", "Distribution");
+
+        try {
+            namePrefix = Shard.tag(namePrefix);
+            if( origin == null ) {
+                StorageResources r = DaseinTestManager.getStorageResources();
 
-            if( r != null ) {
-                Blob bucket = r.getTestRootBucket(label, true, null);
+                if( r != null ) {
+                    Blob bucket = r.getTestRootBucket(label, true, null);
 
-                if( bucket != null ) {
-                    origin = bucket.getBucketName();
+                    if( bucket != null ) {
+                        origin = bucket.getBucketName();
+                    }
                 }
             }
-        }
-        if( origin == null ) {
-            origin = "http://localhost";
-        }
-        String id = support.create(origin, namePrefix + random.nextInt(10000),  true, "dsncdn" + random.nextInt(10000) + ".dasein.org");
-
-        synchronized( testCDNs ) {
-            while( testCDNs.containsKey(label) ) {
-                label = label + random.nextInt(9);
+            if( origin == null ) {
+                origin = "http://localhost";
             }
-            testCDNs.put(label, id);
+            String id = support.create(origin, namePrefix + random.nextInt(10000),  true, "dsncdn" + random.nextInt(10000) + ".dasein.org");
+
+            testCDNs.register(label, id);
+            return id;
+        }
+        finally {
+            span.end();
         }
-        return id;
     }
 
     public @Nonnull String provisionMQ(@Nonnull MQSupport support, @Nonnull String label, @Nonnull String namePrefix) throws CloudException, InternalException {
-        MQCreateOptions options = MQCreateOptions.getInstance(namePrefix + (System.currentTimeMillis()%10000), "Test MQ auto-provisioned by Dasein Cloud integration tests");
-        String id = support.createMessageQueue(options);
-        synchronized( testQueues ) {
-            while( testQueues.containsKey(label) ) {
-                label = label + random.nextInt(9);
-            }
-            testQueues.put(label, id);
+        Timeline.Span span = Timeline.begin("provision", "MQ");
+
+        try {
+            namePrefix = Shard.tag(namePrefix);
+            MQCreateOptions options = MQCreateOptions.getInstance(namePrefix + (System.currentTimeMillis()%10000), "Test MQ auto-provisioned by Dasein Cloud integration tests");
+            String id = support.createMessageQueue(options);
+            testQueues.register(label, id);
+            return id;
+        }
+        finally {
+            span.end();
         }
-        return id;
     }
 
     public static @Nonnull String randomPassword() {
@@ -611,46 +629,52 @@ public class PlatformResources {
     }
 
     public @Nonnull String provisionRDBMS(@Nonnull RelationalDatabaseSupport support, @Nonnull String label, @Nonnull String namePrefix, @Nullable DatabaseEngine engine) throws CloudException, InternalException {
-        String version = support.getDefaultVersion(engine);
+        Timeline.Span span = Timeline.begin("provision", "RDBMS");
 
-        String id = null;
-        DatabaseProduct databaseProduct = getCheapestProduct(support, engine, null);
-        do {
-            try {
-                id = support.createFromScratch(namePrefix + ( System.currentTimeMillis() % 10000 ), databaseProduct, version, "dasein", randomPassword(), 3000);
-            } catch (CloudException e) {
-                if( CloudErrorType.CAPACITY.equals(e.getErrorType()) ) {
-                    databaseProduct = getCheapestProduct(support, engine, databaseProduct);
-                }
-                else {
-                    throw e;
+        try {
+            namePrefix = Shard.tag(namePrefix);
+            String version = support.getDefaultVersion(engine);
+
+            String id = null;
+            DatabaseProduct databaseProduct = getCheapestProduct(support, engine, null);
+            do {
+                try {
+                    id = support.createFromScratch(namePrefix + ( System.currentTimeMillis() % 10000 ), databaseProduct, version, "dasein", randomPassword(), 3000);
+                } catch (CloudException e) {
+                    if( CloudErrorType.CAPACITY.equals(e.getErrorType()) ) {
+                        databaseProduct = getCheapestProduct(support, engine, databaseProduct);
+                    }
+                    else {
+                        throw e;
+                    }
                 }
+            } while( id == null );
+
+            if( id == null ) {
+                throw new CloudException("No database was generated");
             }
-        } while( id == null );
 
-        if( id == null ) {
-            throw new CloudException("No database was generated");
+            testRDBMS.register(label, id);
+            return id;
         }
-
-        synchronized( testRDBMS ) {
-            while( testRDBMS.containsKey(label) ) {
-                label = label + random.nextInt(9);
-            }
-            testRDBMS.put(label, id);
+        finally {
+            span.end();
         }
-        return id;
     }
 
     public @Nonnull String provisionTopic(@Nonnull PushNotificationSupport support, @Nonnull String label, @Nonnull String namePrefix) throws CloudException, InternalException {
-        String id = support.createTopic(namePrefix + random.nextInt(10000)).getProviderTopicId();
+        Timeline.Span span = Timeline.begin("provision", "Topic");
 
-        synchronized( testTopics ) {
-            while( testTopics.containsKey(label) ) {
-                label = label + random.nextInt(9);
-            }
-            testTopics.put(label, id);
+        try {
+            namePrefix = Shard.tag(namePrefix);
+            String id = support.createTopic(namePrefix + random.nextInt(10000)).getProviderTopicId();
+
+            testTopics.register(label, id);
+            return id;
+        }
+        finally {
+            span.end();
         }
-        return id;
     }
 
 }
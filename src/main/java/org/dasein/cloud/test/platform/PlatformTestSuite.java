@@ -20,6 +20,7 @@
 package org.dasein.cloud.test.platform;
 
 import org.dasein.cloud.test.DaseinTestManager;
+import org.dasein.cloud.test.runner.ParallelSuite;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.runner.RunWith;
@@ -30,7 +31,7 @@ import org.junit.runners.Suite;
  * @version 2013.07 added MQ support (issue #6)
  * @since 2013.02
  */
-@RunWith(Suite.class)
+@RunWith(ParallelSuite.class)
 @Suite.SuiteClasses({
         StatefulPushNotificationTests.class,
         StatefulMonitoringTests.class,
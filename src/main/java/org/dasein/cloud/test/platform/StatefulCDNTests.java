@@ -26,6 +26,12 @@ import org.dasein.cloud.platform.Distribution;
 import org.dasein.cloud.platform.PlatformServices;
 import org.dasein.cloud.storage.Blob;
 import org.dasein.cloud.test.DaseinTestManager;
+import org.dasein.cloud.test.capability.Capability;
+import org.dasein.cloud.test.capability.Requires;
+import org.dasein.cloud.test.fixture.Fixture;
+import org.dasein.cloud.test.fixture.Fixtures;
+import org.dasein.cloud.test.fixture.ResourceKind;
+import org.dasein.cloud.test.runner.FixtureRunner;
 import org.dasein.util.CalendarWrapper;
 import org.junit.After;
 import org.junit.AfterClass;
@@ -34,6 +40,7 @@ import org.junit.BeforeClass;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TestName;
+import org.junit.runner.RunWith;
 
 import java.util.Arrays;
 import java.util.Collections;
@@ -49,6 +56,9 @@ import static org.junit.Assume.assumeTrue;
  *
  * @author George Reese
  */
+@RunWith(FixtureRunner.class)
+@Fixture(kind=ResourceKind.CDN)
+@Requires(Capability.CDN)
 public class StatefulCDNTests {
     static private DaseinTestManager tm;
 
@@ -105,6 +115,7 @@ public class StatefulCDNTests {
     }
 
     @Test
+    @Fixtures({})
     public void createDistribution() throws CloudException, InternalException {
         PlatformServices services = tm.getProvider().getPlatformServices();
 
@@ -324,6 +335,7 @@ public class StatefulCDNTests {
     }
 
     @Test
+    @Fixtures({})
     public void removeDistribution() throws CloudException, InternalException {
         PlatformServices services = tm.getProvider().getPlatformServices();
 
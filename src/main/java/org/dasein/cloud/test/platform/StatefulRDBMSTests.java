@@ -38,6 +38,11 @@ import org.dasein.cloud.platform.DatabaseState;
 import org.dasein.cloud.platform.PlatformServices;
 import org.dasein.cloud.platform.RelationalDatabaseSupport;
 import org.dasein.cloud.test.DaseinTestManager;
+import org.dasein.cloud.test.capability.Capability;
+import org.dasein.cloud.test.capability.Requires;
+import org.dasein.cloud.test.fixture.Fixture;
+import org.dasein.cloud.test.fixture.ResourceKind;
+import org.dasein.cloud.test.runner.FixtureRunner;
 import org.dasein.util.CalendarWrapper;
 import org.junit.After;
 import org.junit.AfterClass;
@@ -46,6 +51,7 @@ import org.junit.BeforeClass;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TestName;
+import org.junit.runner.RunWith;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -72,6 +78,8 @@ import static org.junit.Assume.assumeTrue;
  * @version 2013.04 initial version
  * @since 2013.04
  */
+@RunWith(FixtureRunner.class)
+@Requires(Capability.RDBMS)
 public class StatefulRDBMSTests {
     static private DaseinTestManager tm;
 
@@ -110,7 +118,8 @@ public class StatefulRDBMSTests {
         tm.end();
     }
 
-    @Test 
+    @Test
+    @Requires(Capability.RDBMS)
     public void getDefaultVersions() throws CloudException, InternalException {
         PlatformServices services = tm.getProvider().getPlatformServices();
 
@@ -148,7 +157,8 @@ public class StatefulRDBMSTests {
      * @throws CloudException
      * @throws InternalException
      */
-    @Test 
+    @Test
+    @Requires(Capability.RDBMS)
     public void deleteBackup() throws CloudException, InternalException {
         PlatformServices services = tm.getProvider().getPlatformServices();
         if( services == null ) {
@@ -181,7 +191,8 @@ public class StatefulRDBMSTests {
      * @throws CloudException
      * @throws InternalException
      */
-    @Test 
+    @Test
+    @Requires(Capability.RDBMS)
     public void createBackup() throws CloudException, InternalException {
         PlatformServices services = tm.getProvider().getPlatformServices();
         if( services == null ) {
@@ -204,6 +215,7 @@ public class StatefulRDBMSTests {
     }
 
     @Test
+    @Requires(Capability.RDBMS)
     public void createDatabase() throws CloudException, InternalException {
         PlatformServices services = tm.getProvider().getPlatformServices();
 
@@ -260,6 +272,8 @@ public class StatefulRDBMSTests {
      * @throws InternalException
      */
     @Test
+    @Requires(Capability.RDBMS)
+    @Fixture(kind=ResourceKind.RDBMS)
     public void checkAccess() throws CloudException, InternalException {
         PlatformServices services = tm.getProvider().getPlatformServices();
         if( services == null ) {
@@ -352,6 +366,8 @@ public class StatefulRDBMSTests {
      * Test if all CIDR ranges are set and revoked correctly
      */
     @Test
+    @Requires(Capability.RDBMS)
+    @Fixture(kind=ResourceKind.RDBMS)
     public void listAccess() throws CloudException, InternalException {
         PlatformServices services = tm.getProvider().getPlatformServices();
         if( services == null ) {
@@ -430,6 +446,8 @@ public class StatefulRDBMSTests {
      * @throws InternalException
      */
     @Test
+    @Requires(Capability.RDBMS)
+    @Fixture(kind=ResourceKind.RDBMS)
     public void alterDatabase() throws CloudException, InternalException {
         PlatformServices services = tm.getProvider().getPlatformServices();
 
@@ -558,6 +576,7 @@ public class StatefulRDBMSTests {
      * @throws InternalException
      */
     @Test
+    @Requires(Capability.RDBMS)
     public void createOracleDatabase() throws CloudException, InternalException {
         PlatformServices services = tm.getProvider().getPlatformServices();
         if( services == null ) {
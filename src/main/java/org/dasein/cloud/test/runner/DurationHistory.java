@@ -0,0 +1,254 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.runner;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.test.DaseinTestManager;
+import org.junit.runner.Description;
+import org.junit.runner.Runner;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The durations of past test runs, used by {@link ParallelSuite} to start the longest test classes first so that
+ * parallel workers finish at about the same time. Each test's duration is kept as an exponentially weighted moving
+ * average in a properties file named by the dasein.history.file {@link System} property. The file is updated at the
+ * end of every run. Tests with no history are estimated from their class name: a minute for tests in Stateful*
+ * classes, two seconds for Stateless* classes and ten seconds for anything else. Without the property, scheduling
+ * relies on these estimates alone. Each {@link Shard} of a sharded run keeps its own file, named after the property
+ * with the shard's tag appended, since shards finishing at different times would otherwise overwrite each other.
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+public class DurationHistory extends RunListener {
+    static private final Logger logger = Logger.getLogger(DurationHistory.class);
+
+    static public final String FILE = "dasein.history.file";
+
+    /**
+     * The weight of the latest run in a test's average.
+     */
+    static private final double WEIGHT = 0.3d;
+
+    static private DurationHistory instance;
+
+    static public synchronized @Nonnull DurationHistory getInstance() {
+        if( instance == null ) {
+            String path = DaseinTestManager.getSystemProperty(FILE);
+
+            if( path != null && Shard.isSharded() ) {
+                path = path + "." + Shard.getTag();
+            }
+            instance = read(path, false);
+        }
+        return instance;
+    }
+
+    /**
+     * Reads a history file that is never written, for estimates that must not change while a run is in progress.
+     * @param path the history file or null to rely on estimates by class name alone
+     * @return the history
+     */
+    static public @Nonnull DurationHistory read(@Nullable String path) {
+        return read(path, true);
+    }
+
+    static private @Nonnull DurationHistory read(@Nullable String path, boolean readOnly) {
+        DurationHistory history = new DurationHistory(path == null ? null : new File(path), readOnly);
+
+        try {
+            history.load();
+        }
+        catch( IOException e ) {
+            logger.warn("Unable to read the test history " + path + ", durations will be estimated: " + e.getMessage());
+        }
+        return history;
+    }
+
+    static private @Nonnull String getKey(@Nonnull Description description) {
+        Class<?> testClass = description.getTestClass();
+
+        return (testClass == null ? "" : testClass.getSimpleName()) + "." + description.getMethodName();
+    }
+
+    private final File                  file;
+    private final boolean               readOnly;
+    private final Map<String,Long>      averages  = new HashMap<String, Long>();
+    private final Map<String,Long>      measured  = new ConcurrentHashMap<String, Long>();
+    private final Map<Description,Long> started   = new ConcurrentHashMap<Description, Long>();
+
+    private DurationHistory(@Nullable File file, boolean readOnly) {
+        this.file = file;
+        this.readOnly = readOnly;
+    }
+
+    private void load() throws IOException {
+        if( file == null || !file.exists() ) {
+            return;
+        }
+        Properties properties = new Properties();
+        InputStream input = new FileInputStream(file);
+
+        try {
+            properties.load(input);
+        }
+        finally {
+            input.close();
+        }
+        for( String key : properties.stringPropertyNames() ) {
+            try {
+                averages.put(key, Long.parseLong(properties.getProperty(key).trim()));
+            }
+            catch( NumberFormatException ignore ) {
+                // a damaged entry is estimated like a new test
+            }
+        }
+    }
+
+    /**
+     * Estimates how long a test, or all tests below a suite or class, will take.
+     * @param description the test, class or suite
+     * @return the expected duration in milliseconds
+     */
+    public @Nonnegative long estimate(@Nonnull Description description) {
+        if( description.isTest() ) {
+            Long average = averages.get(getKey(description));
+
+            if( average != null ) {
+                return average;
+            }
+            Class<?> testClass = description.getTestClass();
+            String name = (testClass == null ? "" : testClass.getSimpleName());
+
+            if( name.startsWith("Stateful") ) {
+                return 60000L;
+            }
+            else if( name.startsWith("Stateless") ) {
+                return 2000L;
+            }
+            return 10000L;
+        }
+        long total = 0L;
+
+        for( Description child : description.getChildren() ) {
+            total += estimate(child);
+        }
+        return total;
+    }
+
+    /**
+     * Orders runners longest first. A pool of workers taking runners in this order packs them so that all workers
+     * finish at about the same time.
+     * @param runners the runners to order
+     * @return a new list with the runners in order of decreasing expected duration
+     */
+    public @Nonnull List<Runner> sortLongestFirst(@Nonnull List<Runner> runners) {
+        final Map<Runner,Long> estimates = new HashMap<Runner, Long>();
+        List<Runner> sorted = new ArrayList<Runner>(runners);
+
+        for( Runner runner : runners ) {
+            estimates.put(runner, estimate(runner.getDescription()));
+        }
+        Collections.sort(sorted, new Comparator<Runner>() {
+            @Override
+            public int compare(Runner a, Runner b) {
+                return estimates.get(b).compareTo(estimates.get(a));
+            }
+        });
+        if( logger.isDebugEnabled() ) {
+            for( Runner runner : sorted ) {
+                logger.debug("Expecting " + runner.getDescription().getDisplayName() + " to take " + (estimates.get(runner) / 1000L) + " seconds");
+            }
+        }
+        return sorted;
+    }
+
+    @Override
+    public void testStarted(Description description) {
+        started.put(description, System.currentTimeMillis());
+    }
+
+    @Override
+    public void testAssumptionFailure(Failure failure) {
+        // a test that did not run says nothing about how long it takes
+        started.remove(failure.getDescription());
+    }
+
+    @Override
+    public void testFinished(Description description) {
+        Long start = started.remove(description);
+
+        if( start != null ) {
+            measured.put(getKey(description), System.currentTimeMillis() - start);
+        }
+    }
+
+    /**
+     * Folds the durations measured in this run into the averages and writes them to the history file.
+     */
+    public synchronized void save() {
+        if( file == null || readOnly || measured.isEmpty() ) {
+            return;
+        }
+        Properties properties = new Properties();
+
+        for( Map.Entry<String,Long> entry : measured.entrySet() ) {
+            Long average = averages.get(entry.getKey());
+
+            averages.put(entry.getKey(), average == null ? entry.getValue() : Math.round(average * (1d - WEIGHT) + entry.getValue() * WEIGHT));
+        }
+        measured.clear();
+        for( Map.Entry<String,Long> entry : averages.entrySet() ) {
+            properties.setProperty(entry.getKey(), String.valueOf(entry.getValue()));
+        }
+        try {
+            OutputStream output = new FileOutputStream(file);
+
+            try {
+                properties.store(output, "Dasein Cloud test durations in milliseconds");
+            }
+            finally {
+                output.close();
+            }
+        }
+        catch( IOException e ) {
+            logger.warn("Unable to write the test history " + file + ": " + e.getMessage());
+        }
+    }
+}
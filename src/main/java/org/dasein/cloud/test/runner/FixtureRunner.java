@@ -0,0 +1,130 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.runner;
+
+import org.dasein.cloud.test.DaseinTestManager;
+import org.dasein.cloud.test.capability.CapabilityMatrix;
+import org.dasein.cloud.test.fixture.FixtureGraph;
+import org.dasein.cloud.test.fixture.FixtureKey;
+import org.dasein.cloud.test.fixture.FixtureProvisioner;
+import org.junit.runner.Description;
+import org.junit.runner.notification.RunNotifier;
+import org.junit.runners.model.FrameworkMethod;
+import org.junit.runners.model.InitializationError;
+import org.junit.runners.model.Statement;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the tests of a stateful test class in the order their {@link org.dasein.cloud.test.fixture.Fixture}s become
+ * available rather than in JUnit's order. Before the first test runs, every fixture needed by a test that is not
+ * skipped is queued for provisioning on a {@link FixtureGraph}, so provisioning overlaps with the execution of tests
+ * whose fixtures are already in place. When fixtures are being pre-warmed, the pre-warming graph is used instead.
+ * Tests with no declared fixtures run first. Scheduling is opt-in through the dasein.fixtures.workers {@link System}
+ * property, the number of fixtures provisioned at once. With the default of 0, tests run in standard JUnit order.
+ * <pre>
+ *     &#64;RunWith(FixtureRunner.class)
+ *     &#64;Fixture(kind=ResourceKind.VM)
+ *     public class StatefulVMTests {
+ * </pre>
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+public class FixtureRunner extends ReportingRunner {
+    public FixtureRunner(@Nonnull Class<?> testClass) throws InitializationError {
+        super(testClass);
+    }
+
+    @Override
+    protected Statement childrenInvoker(final RunNotifier notifier) {
+        final int workers = FixtureGraph.getWorkers();
+
+        if( workers < 1 ) {
+            return super.childrenInvoker(notifier);
+        }
+        return new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                runScheduled(notifier, workers);
+            }
+        };
+    }
+
+    private void runScheduled(@Nonnull RunNotifier notifier, int workers) throws InterruptedException {
+        Class<?> testClass = getTestClass().getJavaClass();
+        String suite = testClass.getSimpleName();
+        // the description reflects any filters applied to this runner, getChildren() does not
+        Collection<Description> included = getDescription().getChildren();
+        List<FrameworkMethod> pending = new ArrayList<FrameworkMethod>();
+        Map<FrameworkMethod,List<FixtureKey>> requirements = new HashMap<FrameworkMethod, List<FixtureKey>>();
+        // share the pre-warming graph when there is one so no fixture is provisioned twice
+        FixtureGraph shared = DaseinTestManager.getFixtureGraph();
+        FixtureGraph graph = (shared == null ? new FixtureGraph(new FixtureProvisioner(), workers) : shared);
+
+        for( FrameworkMethod method : getChildren() ) {
+            if( !included.contains(describeChild(method)) ) {
+                continue;
+            }
+            List<FixtureKey> keys = new ArrayList<FixtureKey>();
+
+            if( !DaseinTestManager.isTestSkipped(suite, method.getName()) && CapabilityMatrix.listUnmet(testClass, method.getMethod()).isEmpty() ) {
+                keys.addAll(FixtureKey.listRequirements(method.getMethod(), testClass));
+            }
+            for( FixtureKey key : keys ) {
+                graph.require(key);
+            }
+            requirements.put(method, keys);
+            pending.add(method);
+        }
+        graph.start();
+        try {
+            while( !pending.isEmpty() ) {
+                FrameworkMethod next = null;
+
+                while( next == null ) {
+                    long version = graph.getVersion();
+
+                    for( FrameworkMethod method : pending ) {
+                        if( graph.isReady(requirements.get(method)) ) {
+                            next = method;
+                            break;
+                        }
+                    }
+                    if( next == null ) {
+                        graph.awaitChange(version);
+                    }
+                }
+                pending.remove(next);
+                runChild(next, notifier);
+            }
+        }
+        finally {
+            if( graph != shared ) {
+                graph.shutdown();
+            }
+        }
+    }
+}
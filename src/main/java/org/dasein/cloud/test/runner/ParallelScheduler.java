@@ -0,0 +1,78 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.runner;
+
+import org.apache.log4j.Logger;
+import org.junit.runners.model.RunnerScheduler;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the children of a suite on a fixed pool of worker threads. {@link #finished()} blocks until every
+ * scheduled child has completed so that the suite's {@link org.junit.AfterClass} methods (and therefore
+ * {@link org.dasein.cloud.test.DaseinTestManager#cleanUp()}) only execute once all tests are done.
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+public class ParallelScheduler implements RunnerScheduler {
+    static private final Logger logger = Logger.getLogger(ParallelScheduler.class);
+
+    private final ExecutorService executor;
+
+    public ParallelScheduler(@Nonnull final String suiteName, @Nonnegative int workers) {
+        executor = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(@Nonnull Runnable r) {
+                Thread t = new Thread(r, "dasein-" + suiteName + "-" + count.incrementAndGet());
+
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    @Override
+    public void schedule(@Nonnull Runnable childStatement) {
+        executor.submit(childStatement);
+    }
+
+    @Override
+    public void finished() {
+        executor.shutdown();
+        try {
+            while( !executor.awaitTermination(1L, TimeUnit.MINUTES) ) {
+                logger.debug("Waiting for parallel test classes to complete");
+            }
+        }
+        catch( InterruptedException e ) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
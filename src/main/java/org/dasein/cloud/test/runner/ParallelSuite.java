@@ -0,0 +1,206 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.runner;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.test.DaseinTestManager;
+import org.dasein.cloud.test.metrics.RunReport;
+import org.junit.runner.Description;
+import org.junit.runner.Runner;
+import org.junit.runner.manipulation.Filter;
+import org.junit.runner.manipulation.NoTestsRemainException;
+import org.junit.runner.notification.RunNotifier;
+import org.junit.runners.Suite;
+import org.junit.runners.model.InitializationError;
+import org.junit.runners.model.RunnerBuilder;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Drop-in replacement for {@link Suite} that runs the test classes of a suite concurrently. Parallelism is
+ * controlled through {@link System} properties:
+ * <ul>
+ *     <li>dasein.parallel.workers - the number of test classes a suite runs at the same time (default 1)</li>
+ *     <li>dasein.parallel.stateful - the maximum number of Stateful* classes running at once across all suites
+ *     (defaults to the number of workers)</li>
+ *     <li>dasein.parallel.stateless - the maximum number of Stateless* classes running at once across all suites
+ *     (defaults to the number of workers)</li>
+ * </ul>
+ * With the default of a single worker, the suite behaves exactly like {@link Suite}. Test methods within a
+ * class always run one after another on the same thread, so each class's {@link DaseinTestManager} and its
+ * log prefix are never shared between threads. With more than one worker, test classes start longest first based
+ * on their {@link DurationHistory}, which the outermost suite updates at the end of the run. When the run is split
+ * into {@link Shard}s, the outermost suite only runs the test classes of its shard.
+ * <pre>
+ *     -Ddasein.parallel.workers=8 -Ddasein.parallel.stateful=3
+ * </pre>
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+public class ParallelSuite extends Suite {
+    static private final Logger logger = Logger.getLogger(ParallelSuite.class);
+
+    static public final String WORKERS   = "dasein.parallel.workers";
+    static public final String STATEFUL  = "dasein.parallel.stateful";
+    static public final String STATELESS = "dasein.parallel.stateless";
+
+    static private Description runDescription;
+    static private Semaphore   statefulPermits;
+    static private Semaphore   statelessPermits;
+
+    /**
+     * @return the description of the outermost suite being run in this JVM or null if no suite has started
+     */
+    static public synchronized @Nullable Description getRunDescription() {
+        return runDescription;
+    }
+
+    /**
+     * @return the number of worker threads each parallel suite uses to run its test classes
+     */
+    static public int getWorkers() {
+        return getIntProperty(WORKERS, 1);
+    }
+
+    /**
+     * @return true if test classes may be running concurrently in this JVM
+     */
+    static public boolean isParallel() {
+        return getWorkers() > 1;
+    }
+
+    static private int getIntProperty(@Nonnull String key, int defaultValue) {
+        String prop = DaseinTestManager.getSystemProperty(key);
+
+        if( prop != null ) {
+            try {
+                int value = Integer.parseInt(prop.trim());
+
+                if( value > 0 ) {
+                    return value;
+                }
+            }
+            catch( NumberFormatException ignore ) {
+                // fall through to the default
+            }
+        }
+        return defaultValue;
+    }
+
+    static private synchronized @Nullable Semaphore getPermits(@Nonnull Description description) {
+        Class<?> testClass = description.getTestClass();
+        String name = (testClass == null ? description.getDisplayName() : testClass.getSimpleName());
+
+        if( name.startsWith("Stateful") ) {
+            if( statefulPermits == null ) {
+                statefulPermits = new Semaphore(getIntProperty(STATEFUL, getWorkers()), true);
+            }
+            return statefulPermits;
+        }
+        else if( name.startsWith("Stateless") ) {
+            if( statelessPermits == null ) {
+                statelessPermits = new Semaphore(getIntProperty(STATELESS, getWorkers()), true);
+            }
+            return statelessPermits;
+        }
+        return null;
+    }
+
+    public ParallelSuite(@Nonnull Class<?> klass, @Nonnull RunnerBuilder builder) throws InitializationError {
+        super(klass, ReportingRunner.builder(builder));
+        int workers = getWorkers();
+
+        if( workers > 1 ) {
+            setScheduler(new ParallelScheduler(klass.getSimpleName(), workers));
+        }
+    }
+
+    @Override
+    public void run(@Nonnull RunNotifier notifier) {
+        boolean outermost = false;
+
+        synchronized( ParallelSuite.class ) {
+            if( runDescription == null ) {
+                if( Shard.isSharded() ) {
+                    Filter shard = Shard.getFilter(getDescription());
+
+                    try {
+                        filter(shard);
+                    }
+                    catch( NoTestsRemainException e ) {
+                        logger.warn("No test classes were assigned to " + shard.describe());
+                        return;
+                    }
+                    logger.info("Running " + shard.describe());
+                }
+                runDescription = getDescription();
+                outermost = true;
+            }
+        }
+        RunReport.listen(notifier);
+        if( !outermost ) {
+            super.run(notifier);
+            return;
+        }
+        DurationHistory history = DurationHistory.getInstance();
+
+        notifier.addListener(history);
+        try {
+            super.run(notifier);
+        }
+        finally {
+            notifier.removeListener(history);
+            history.save();
+        }
+    }
+
+    @Override
+    protected List<Runner> getChildren() {
+        List<Runner> children = super.getChildren();
+
+        // the order only matters when classes compete for workers
+        if( children == null || !isParallel() ) {
+            return children;
+        }
+        return DurationHistory.getInstance().sortLongestFirst(children);
+    }
+
+    @Override
+    protected void runChild(@Nonnull Runner runner, @Nonnull RunNotifier notifier) {
+        // nested suites are not throttled, only the test classes they eventually run
+        Semaphore permits = (runner instanceof Suite ? null : getPermits(runner.getDescription()));
+
+        if( permits == null ) {
+            super.runChild(runner, notifier);
+            return;
+        }
+        permits.acquireUninterruptibly();
+        try {
+            super.runChild(runner, notifier);
+        }
+        finally {
+            permits.release();
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.runner;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.test.capability.CapabilityMatrix;
+import org.dasein.cloud.test.capability.Requires;
+import org.dasein.cloud.test.metrics.RunReport;
+import org.dasein.cloud.test.metrics.Timeline;
+import org.junit.runner.Description;
+import org.junit.runner.RunWith;
+import org.junit.runner.Runner;
+import org.junit.runner.notification.RunNotifier;
+import org.junit.runners.BlockJUnit4ClassRunner;
+import org.junit.runners.Suite;
+import org.junit.runners.model.FrameworkMethod;
+import org.junit.runners.model.InitializationError;
+import org.junit.runners.model.RunnerBuilder;
+import org.junit.runners.model.Statement;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+
+/**
+ * Standard JUnit 4 runner that reports each test to the {@link RunReport} and the {@link Timeline}. It marks the
+ * point where a test's before methods end and the test itself begins so the report can separate setup time from test
+ * time, and records the before methods, the test and the after methods as separate spans. Tests whose
+ * {@link Requires} declarations are not met by the {@link CapabilityMatrix} are reported as ignored without running
+ * any before methods, and a class whose own requirements are not met is skipped without running its before class
+ * methods.
+ * {@link ParallelSuite} uses it for every test class that does not name its own runner.
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+public class ReportingRunner extends BlockJUnit4ClassRunner {
+    static private final Logger logger = Logger.getLogger(ReportingRunner.class);
+
+    static private final ThreadLocal<Timeline.Span> phase = new ThreadLocal<Timeline.Span>();
+
+    /**
+     * Wraps a builder so that plain test classes are run by a {@link ReportingRunner}. Classes with their own
+     * {@link RunWith} or {@link Suite.SuiteClasses} are left to the wrapped builder.
+     * @param builder the builder to wrap
+     * @return a builder creating reporting runners
+     */
+    static public @Nonnull RunnerBuilder builder(@Nonnull final RunnerBuilder builder) {
+        return new RunnerBuilder() {
+            @Override
+            public Runner runnerForClass(Class<?> testClass) throws Throwable {
+                if( testClass.getAnnotation(RunWith.class) == null && testClass.getAnnotation(Suite.SuiteClasses.class) == null ) {
+                    try {
+                        return new ReportingRunner(testClass);
+                    }
+                    catch( InitializationError ignore ) {
+                        // let the wrapped builder decide how to report the problem
+                    }
+                }
+                return builder.runnerForClass(testClass);
+            }
+        };
+    }
+
+    public ReportingRunner(@Nonnull Class<?> testClass) throws InitializationError {
+        super(testClass);
+    }
+
+    @Override
+    public void run(@Nonnull RunNotifier notifier) {
+        RunReport.listen(notifier);
+        super.run(notifier);
+    }
+
+    @Override
+    protected Statement classBlock(@Nonnull final RunNotifier notifier) {
+        final List<String> unmet = CapabilityMatrix.listUnmet(getTestClass().getJavaClass(), null);
+
+        if( unmet.isEmpty() ) {
+            return super.classBlock(notifier);
+        }
+        return new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                logger.info("Skipping " + getTestClass().getJavaClass().getSimpleName() + ", requires " + unmet);
+                for( Description child : getDescription().getChildren() ) {
+                    notifier.fireTestIgnored(child);
+                }
+            }
+        };
+    }
+
+    @Override
+    protected void runChild(@Nonnull FrameworkMethod method, @Nonnull RunNotifier notifier) {
+        List<String> unmet = CapabilityMatrix.listUnmet(getTestClass().getJavaClass(), method.getMethod());
+
+        if( !unmet.isEmpty() ) {
+            logger.info("Skipping " + getName(method) + ", requires " + unmet);
+            notifier.fireTestIgnored(describeChild(method));
+            return;
+        }
+        super.runChild(method, notifier);
+    }
+
+    private @Nonnull String getName(@Nonnull FrameworkMethod method) {
+        return getTestClass().getJavaClass().getSimpleName() + "." + method.getName();
+    }
+
+    static private void endPhase() {
+        Timeline.Span span = phase.get();
+
+        if( span != null ) {
+            phase.remove();
+            span.end();
+        }
+    }
+
+    @Override
+    protected Statement methodInvoker(@Nonnull FrameworkMethod method, @Nonnull Object test) {
+        final Statement body = super.methodInvoker(method, test);
+        final String name = getName(method);
+
+        return new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                endPhase();
+                RunReport.bodyStarted();
+                Timeline.Span span = Timeline.begin("test", name);
+
+                try {
+                    body.evaluate();
+                }
+                finally {
+                    span.end();
+                }
+            }
+        };
+    }
+
+    // JUnit 4.9 deprecates these in favor of rules, but rules cannot tell the before methods from the test
+    @Override
+    @SuppressWarnings("deprecation")
+    protected Statement withBefores(@Nonnull FrameworkMethod method, @Nonnull Object target, @Nonnull Statement statement) {
+        final Statement befores = super.withBefores(method, target, statement);
+        final String name = getName(method);
+
+        return new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                // the span ends when the test itself starts or, if a before method fails, here
+                phase.set(Timeline.begin("before", name));
+                try {
+                    befores.evaluate();
+                }
+                finally {
+                    endPhase();
+                }
+            }
+        };
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    protected Statement withAfters(@Nonnull FrameworkMethod method, @Nonnull Object target, @Nonnull final Statement statement) {
+        final String name = getName(method);
+        final Statement afters = super.withAfters(method, target, new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                try {
+                    statement.evaluate();
+                }
+                finally {
+                    phase.set(Timeline.begin("after", name));
+                }
+            }
+        });
+
+        return new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                try {
+                    afters.evaluate();
+                }
+                finally {
+                    endPhase();
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,201 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.runner;
+
+import org.dasein.cloud.test.DaseinTestManager;
+import org.junit.runner.Description;
+import org.junit.runner.manipulation.Filter;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Splits a run across several JVMs or hosts. Every test class of the run is assigned to one shard, and each shard only
+ * runs the classes assigned to it. The assignment is deterministic: classes are taken longest first, by their
+ * estimated durations, and each goes to the shard with the least expected work so far. The estimates come from a
+ * weights file in the {@link DurationHistory} format that no run ever writes, typically a copy of the history of an
+ * earlier unsharded run, so every shard computes the same assignment whenever and wherever it starts, as long as
+ * they are all given the same weights file (or none at all). Sharding is configured through {@link System}
+ * properties:
+ * <ul>
+ *     <li>dasein.shard.count - the number of shards the run is split into</li>
+ *     <li>dasein.shard.index - the shard this JVM runs, from 0 to count-1</li>
+ *     <li>dasein.shard.weights - the durations to assign by (defaults to estimates by class name)</li>
+ * </ul>
+ * Each shard adds its own tag to the names of the resources it provisions and to the owner of its pooled and
+ * journaled fixtures, so shards running against the same account never take or clean up each other's resources.
+ * The reports of the shards can be combined with {@link org.dasein.cloud.test.metrics.ReportMerger}.
+ * <pre>
+ *     -Ddasein.shard.count=4 -Ddasein.shard.index=2 -Ddasein.shard.weights=weights.properties
+ * </pre>
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+public class Shard {
+    static public final String COUNT   = "dasein.shard.count";
+    static public final String INDEX   = "dasein.shard.index";
+    static public final String WEIGHTS = "dasein.shard.weights";
+
+    static private int getIntProperty(@Nonnull String key, int defaultValue) {
+        String prop = DaseinTestManager.getSystemProperty(key);
+
+        if( prop != null ) {
+            try {
+                return Integer.parseInt(prop.trim());
+            }
+            catch( NumberFormatException ignore ) {
+                // fall through to the default
+            }
+        }
+        return defaultValue;
+    }
+
+    static public @Nonnegative int getCount() {
+        return Math.max(1, getIntProperty(COUNT, 1));
+    }
+
+    static public @Nonnegative int getIndex() {
+        int index = getIntProperty(INDEX, 0);
+
+        if( index < 0 || index >= getCount() ) {
+            throw new IllegalArgumentException(INDEX + " must be between 0 and " + (getCount() - 1) + ", not " + index);
+        }
+        return index;
+    }
+
+    static public boolean isSharded() {
+        return getCount() > 1;
+    }
+
+    /**
+     * @return a short tag identifying this shard, which is empty when the run is not sharded
+     */
+    static public @Nonnull String getTag() {
+        return (isSharded() ? "s" + getIndex() : "");
+    }
+
+    /**
+     * Adds this shard's tag to the prefix of a resource name.
+     * @param namePrefix the prefix the resource name is built from
+     * @return the prefix to use in this shard
+     */
+    static public @Nonnull String tag(@Nonnull String namePrefix) {
+        return namePrefix + getTag();
+    }
+
+    static private void collectClasses(@Nonnull Description description, @Nonnull Map<String,Description> classes) {
+        for( Description child : description.getChildren() ) {
+            if( child.isTest() ) {
+                String name = child.getClassName();
+
+                if( !classes.containsKey(name) ) {
+                    classes.put(name, description);
+                }
+            }
+            else {
+                collectClasses(child, classes);
+            }
+        }
+    }
+
+    /**
+     * Assigns the test classes of a run to shards.
+     * @param run the description of the whole run
+     * @param count the number of shards
+     * @return the shard of each test class, by class name
+     */
+    static public @Nonnull Map<String,Integer> assign(@Nonnull Description run, @Nonnegative int count) {
+        Map<String,Description> classes = new HashMap<String, Description>();
+        final Map<String,Long> estimates = new HashMap<String, Long>();
+        // the history of this run changes as shards finish, the weights never do
+        DurationHistory history = DurationHistory.read(DaseinTestManager.getSystemProperty(WEIGHTS));
+
+        collectClasses(run, classes);
+        for( Map.Entry<String,Description> entry : classes.entrySet() ) {
+            estimates.put(entry.getKey(), history.estimate(entry.getValue()));
+        }
+        List<String> names = new ArrayList<String>(classes.keySet());
+
+        Collections.sort(names, new Comparator<String>() {
+            @Override
+            public int compare(String a, String b) {
+                int c = estimates.get(b).compareTo(estimates.get(a));
+
+                // break ties by name so every shard arrives at the same order
+                return (c != 0 ? c : a.compareTo(b));
+            }
+        });
+        Map<String,Integer> shards = new HashMap<String, Integer>();
+        long[] load = new long[count];
+
+        for( String name : names ) {
+            int lightest = 0;
+
+            for( int i=1; i<count; i++ ) {
+                if( load[i] < load[lightest] ) {
+                    lightest = i;
+                }
+            }
+            load[lightest] += estimates.get(name);
+            shards.put(name, lightest);
+        }
+        return shards;
+    }
+
+    /**
+     * Creates a filter that keeps only the test classes assigned to this shard.
+     * @param run the description of the whole run
+     * @return the filter for this shard
+     */
+    static public @Nonnull Filter getFilter(@Nonnull Description run) {
+        final int index = getIndex();
+        final int count = getCount();
+        final Map<String,Integer> shards = assign(run, count);
+
+        return new Filter() {
+            @Override
+            public boolean shouldRun(Description description) {
+                if( description.isTest() ) {
+                    Integer shard = shards.get(description.getClassName());
+
+                    return (shard == null || shard == index);
+                }
+                for( Description child : description.getChildren() ) {
+                    if( shouldRun(child) ) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            @Override
+            public String describe() {
+                return "shard " + index + " of " + count;
+            }
+        };
+    }
+}
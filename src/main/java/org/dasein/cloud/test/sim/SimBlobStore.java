@@ -0,0 +1,263 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.sim;
+
+import org.dasein.cloud.Capabilities;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.storage.Blob;
+import org.dasein.cloud.storage.FileTransfer;
+import org.dasein.cloud.util.NamingConstraints;
+import org.dasein.util.uom.storage.Byte;
+import org.dasein.util.uom.storage.Storage;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Simulates BlobStoreSupport with flat buckets holding objects whose content is kept in memory. Objects outside of
+ * buckets, nested buckets and public sharing are not supported. Downloads complete before they are returned.
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+class SimBlobStore extends SimSupport<Blob, SimSupport.Stateless> {
+    private final Map<String,Blob>   objects  = new LinkedHashMap<String, Blob>();
+    private final Map<String,byte[]> contents = new LinkedHashMap<String, byte[]>();
+
+    SimBlobStore(@Nonnull SimCloud cloud) {
+        super(cloud, "bucket");
+    }
+
+    @Override
+    protected void setState(@Nonnull Blob resource, @Nonnull Stateless state) {
+        // buckets have no state
+    }
+
+    static private @Nonnull String key(@Nonnull String bucket, @Nonnull String object) {
+        return bucket + "/" + object;
+    }
+
+    private @Nonnull String getLocation(@Nonnull String bucket) {
+        return "sim://" + cloud.getRegionId() + "/" + bucket;
+    }
+
+    public boolean allowsNestedBuckets() {
+        return false;
+    }
+
+    public boolean allowsPublicSharing() {
+        return false;
+    }
+
+    public boolean allowsRootObjects() {
+        return false;
+    }
+
+    public void clearBucket(@Nonnull String bucket) throws CloudException {
+        require(bucket);
+        synchronized( objects ) {
+            for( Iterator<String> it = objects.keySet().iterator(); it.hasNext(); ) {
+                String key = it.next();
+
+                if( key.startsWith(bucket + "/") ) {
+                    it.remove();
+                    contents.remove(key);
+                }
+            }
+        }
+    }
+
+    public @Nonnull Blob createBucket(@Nonnull String bucket, boolean findFreeName) throws CloudException {
+        synchronized( this ) {
+            String name = bucket;
+
+            for( int i=1; find(name) != null; i++ ) {
+                if( !findFreeName ) {
+                    throw new CloudException("The bucket " + bucket + " already exists");
+                }
+                name = bucket + "-" + i;
+            }
+            Blob blob = Blob.getInstance(cloud.getRegionId(), getLocation(name), name, System.currentTimeMillis());
+
+            add(name, blob, null, null);
+            return copy(blob);
+        }
+    }
+
+    public @Nonnull FileTransfer download(@Nullable String bucket, @Nonnull String object, @Nonnull File toFile) throws CloudException {
+        byte[] content;
+
+        if( bucket == null ) {
+            throw new CloudException("No such object: " + object);
+        }
+        synchronized( objects ) {
+            content = contents.get(key(bucket, object));
+        }
+        if( content == null ) {
+            throw new CloudException("No such object: " + key(bucket, object));
+        }
+        FileTransfer transfer = new FileTransfer();
+
+        transfer.setBytesToTransfer(content.length);
+        try {
+            OutputStream output = new FileOutputStream(toFile);
+
+            try {
+                output.write(content);
+            }
+            finally {
+                output.close();
+            }
+            transfer.setBytesTransferred(content.length);
+            transfer.completeWithResult(toFile);
+        }
+        catch( IOException e ) {
+            transfer.complete(e);
+        }
+        return transfer;
+    }
+
+    public boolean exists(@Nonnull String bucket) {
+        return (find(bucket) != null);
+    }
+
+    public @Nullable Blob getBucket(@Nonnull String bucket) {
+        return find(bucket);
+    }
+
+    public @Nonnull NamingConstraints getBucketNameRules() {
+        return NamingConstraints.getAlphaNumeric(3, 63);
+    }
+
+    public int getMaxBuckets() {
+        return 100;
+    }
+
+    public @Nonnull Storage<Byte> getMaxObjectSize() {
+        return new Storage<Byte>(64 * 1024 * 1024, Storage.BYTE);
+    }
+
+    public int getMaxObjectsPerBucket() {
+        return Capabilities.LIMIT_UNLIMITED;
+    }
+
+    public @Nullable Blob getObject(@Nullable String bucket, @Nonnull String object) {
+        if( bucket == null ) {
+            return null;
+        }
+        synchronized( objects ) {
+            return objects.get(key(bucket, object));
+        }
+    }
+
+    public @Nonnull NamingConstraints getObjectNameRules() {
+        return NamingConstraints.getAlphaNumeric(1, 255);
+    }
+
+    public @Nullable Storage<Byte> getObjectSize(@Nullable String bucket, @Nullable String object) {
+        Blob blob = (object == null ? null : getObject(bucket, object));
+
+        return (blob == null ? null : blob.getSize());
+    }
+
+    public boolean isPublic(@Nullable String bucket, @Nullable String object) {
+        return false;
+    }
+
+    public @Nonnull Iterable<Blob> list(@Nullable String bucket) throws CloudException {
+        if( bucket == null ) {
+            return findAll();
+        }
+        require(bucket);
+        List<Blob> list = new ArrayList<Blob>();
+
+        synchronized( objects ) {
+            for( Blob blob : objects.values() ) {
+                if( bucket.equals(blob.getBucketName()) ) {
+                    list.add(copy(blob));
+                }
+            }
+        }
+        return list;
+    }
+
+    public void removeBucket(@Nonnull String bucket) throws CloudException {
+        if( list(bucket).iterator().hasNext() ) {
+            throw new CloudException("The bucket " + bucket + " is not empty");
+        }
+        delete(bucket, null, null);
+    }
+
+    public void removeObject(@Nullable String bucket, @Nonnull String object) throws CloudException {
+        synchronized( objects ) {
+            if( bucket == null || objects.remove(key(bucket, object)) == null ) {
+                throw new CloudException("No such object: " + object);
+            }
+            contents.remove(key(bucket, object));
+        }
+    }
+
+    public @Nonnull Blob upload(@Nonnull File sourceFile, @Nullable String bucket, @Nonnull String object) throws CloudException, InternalException {
+        if( bucket == null ) {
+            throw new CloudException("Objects must be uploaded into a bucket");
+        }
+        require(bucket);
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+
+        try {
+            InputStream input = new FileInputStream(sourceFile);
+
+            try {
+                byte[] buffer = new byte[8192];
+                int count;
+
+                while( (count = input.read(buffer)) != -1 ) {
+                    content.write(buffer, 0, count);
+                }
+            }
+            finally {
+                input.close();
+            }
+        }
+        catch( IOException e ) {
+            throw new InternalException(e);
+        }
+        Blob blob = Blob.getInstance(cloud.getRegionId(), getLocation(bucket) + "/" + object, bucket, object, System.currentTimeMillis(), new Storage<Byte>(content.size(), Storage.BYTE));
+
+        synchronized( objects ) {
+            objects.put(key(bucket, object), blob);
+            contents.put(key(bucket, object), content.toByteArray());
+        }
+        return blob;
+    }
+}
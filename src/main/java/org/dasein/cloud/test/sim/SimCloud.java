@@ -0,0 +1,262 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.sim;
+
+import org.dasein.cloud.ProviderContext;
+import org.dasein.cloud.compute.ComputeServices;
+import org.dasein.cloud.compute.MachineImageSupport;
+import org.dasein.cloud.compute.SnapshotSupport;
+import org.dasein.cloud.compute.VirtualMachineSupport;
+import org.dasein.cloud.compute.VolumeSupport;
+import org.dasein.cloud.dc.DataCenterServices;
+import org.dasein.cloud.network.DNSSupport;
+import org.dasein.cloud.network.FirewallSupport;
+import org.dasein.cloud.network.LoadBalancerSupport;
+import org.dasein.cloud.network.NetworkServices;
+import org.dasein.cloud.network.VLANSupport;
+import org.dasein.cloud.platform.MQSupport;
+import org.dasein.cloud.platform.PlatformServices;
+import org.dasein.cloud.platform.RelationalDatabaseSupport;
+import org.dasein.cloud.storage.BlobStoreSupport;
+import org.dasein.cloud.storage.StorageServices;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One simulated region of one account. The state of the region is shared by every {@link SimulatedProvider}
+ * connected to it, so resources created through one provider are visible through the others as they would be in a
+ * real cloud. The region has two data centers.
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+public class SimCloud {
+    static private final Map<String,SimCloud> clouds = new HashMap<String, SimCloud>();
+
+    /**
+     * @param ctx the context of a simulated provider
+     * @return the region the context connects to
+     */
+    static public synchronized @Nonnull SimCloud getInstance(@Nonnull ProviderContext ctx) {
+        String accountNumber = (ctx.getAccountNumber() == null ? "sim" : ctx.getAccountNumber());
+        String regionId = (ctx.getRegionId() == null ? "sim-1" : ctx.getRegionId());
+        String key = accountNumber + "|" + regionId;
+        SimCloud cloud = clouds.get(key);
+
+        if( cloud == null ) {
+            cloud = new SimCloud(accountNumber, regionId);
+            clouds.put(key, cloud);
+        }
+        return cloud;
+    }
+
+    private final String        accountNumber;
+    private final SimConditions conditions = new SimConditions();
+    private final AtomicLong    ids        = new AtomicLong(System.currentTimeMillis() % 100000L * 1000L);
+    private final String        regionId;
+
+    private final BlobStoreSupport          blobStore;
+    private final DataCenterServices        dataCenters;
+    private final DNSSupport                dns;
+    private final FirewallSupport           firewalls;
+    private final MachineImageSupport       images;
+    private final LoadBalancerSupport       loadBalancers;
+    private final MQSupport                 queues;
+    private final RelationalDatabaseSupport databases;
+    private final SnapshotSupport           snapshots;
+    private final VirtualMachineSupport     virtualMachines;
+    private final VLANSupport               vlans;
+    private final VolumeSupport             volumes;
+
+    private final SimImages          simImages;
+    private final SimVirtualMachines simVirtualMachines;
+    private final SimVolumes         simVolumes;
+    private final SimFirewalls       simFirewalls;
+    private final SimVlans           simVlans;
+
+    private final ComputeServices  computeServices;
+    private final NetworkServices  networkServices;
+    private final PlatformServices platformServices;
+    private final StorageServices  storageServices;
+
+    private SimCloud(@Nonnull String accountNumber, @Nonnull String regionId) {
+        this.accountNumber = accountNumber;
+        this.regionId = regionId;
+        simImages = new SimImages(this);
+        simVirtualMachines = new SimVirtualMachines(this);
+        simVolumes = new SimVolumes(this);
+        simFirewalls = new SimFirewalls(this);
+        simVlans = new SimVlans(this);
+        dataCenters = SimHandler.proxy(DataCenterServices.class, new SimDataCenters(this), conditions);
+        images = SimHandler.proxy(MachineImageSupport.class, simImages, conditions);
+        virtualMachines = SimHandler.proxy(VirtualMachineSupport.class, simVirtualMachines, conditions);
+        volumes = SimHandler.proxy(VolumeSupport.class, simVolumes, conditions);
+        snapshots = SimHandler.proxy(SnapshotSupport.class, new SimSnapshots(this), conditions);
+        firewalls = SimHandler.proxy(FirewallSupport.class, simFirewalls, conditions);
+        vlans = SimHandler.proxy(VLANSupport.class, simVlans, conditions);
+        dns = SimHandler.proxy(DNSSupport.class, new SimDns(this), conditions);
+        loadBalancers = SimHandler.proxy(LoadBalancerSupport.class, new SimLoadBalancers(this), conditions);
+        blobStore = SimHandler.proxy(BlobStoreSupport.class, new SimBlobStore(this), conditions);
+        queues = SimHandler.proxy(MQSupport.class, new SimQueues(this), conditions);
+        databases = SimHandler.proxy(RelationalDatabaseSupport.class, new SimDatabases(this), conditions);
+        // the services only hand out the support objects, so they are not subject to the conditions
+        computeServices = SimHandler.proxy(ComputeServices.class, this, null);
+        networkServices = SimHandler.proxy(NetworkServices.class, this, null);
+        platformServices = SimHandler.proxy(PlatformServices.class, this, null);
+        storageServices = SimHandler.proxy(StorageServices.class, this, null);
+    }
+
+    /**
+     * Builds a capabilities object answering from pairs of method names and values, adding the account and region.
+     * @param iface the capabilities interface
+     * @param delegate the implementation of the capabilities that depend on their arguments or null if there are none
+     * @param pairs alternating method names and the values they return
+     * @param <T> the type of the interface
+     * @return the capabilities
+     */
+    @Nonnull <T> T capabilities(@Nonnull Class<T> iface, @Nullable Object delegate, @Nonnull Object ... pairs) {
+        Map<String,Object> values = new HashMap<String, Object>();
+
+        values.put("getAccountNumber", accountNumber);
+        values.put("getRegionId", regionId);
+        for( int i=0; i<pairs.length - 1; i += 2 ) {
+            values.put((String)pairs[i], pairs[i+1]);
+        }
+        return SimHandler.capabilities(iface, delegate, values);
+    }
+
+    public @Nonnull String getAccountNumber() {
+        return accountNumber;
+    }
+
+    public @Nonnull SimConditions getConditions() {
+        return conditions;
+    }
+
+    public @Nonnull List<String> getDataCenterIds() {
+        return Arrays.asList(regionId + "a", regionId + "b");
+    }
+
+    public @Nonnull String getRegionId() {
+        return regionId;
+    }
+
+    /**
+     * @param prefix the prefix of the kind of resource
+     * @return a new identifier unique within the region
+     */
+    @Nonnull String nextId(@Nonnull String prefix) {
+        return prefix + "-" + Long.toHexString(ids.incrementAndGet());
+    }
+
+    @Nonnull SimFirewalls getFirewalls() {
+        return simFirewalls;
+    }
+
+    @Nonnull SimImages getImages() {
+        return simImages;
+    }
+
+    @Nonnull SimVirtualMachines getVirtualMachines() {
+        return simVirtualMachines;
+    }
+
+    @Nonnull SimVlans getVlans() {
+        return simVlans;
+    }
+
+    @Nonnull SimVolumes getVolumes() {
+        return simVolumes;
+    }
+
+    public @Nonnull ComputeServices getComputeServices() {
+        return computeServices;
+    }
+
+    public @Nonnull DataCenterServices getDataCenterServices() {
+        return dataCenters;
+    }
+
+    public @Nonnull NetworkServices getNetworkServices() {
+        return networkServices;
+    }
+
+    public @Nonnull PlatformServices getPlatformServices() {
+        return platformServices;
+    }
+
+    public @Nonnull StorageServices getStorageServices() {
+        return storageServices;
+    }
+
+    public @Nonnull BlobStoreSupport getBlobStoreSupport() {
+        return blobStore;
+    }
+
+    public @Nonnull BlobStoreSupport getOnlineStorageSupport() {
+        return blobStore;
+    }
+
+    public @Nonnull DNSSupport getDnsSupport() {
+        return dns;
+    }
+
+    public @Nonnull FirewallSupport getFirewallSupport() {
+        return firewalls;
+    }
+
+    public @Nonnull MachineImageSupport getImageSupport() {
+        return images;
+    }
+
+    public @Nonnull LoadBalancerSupport getLoadBalancerSupport() {
+        return loadBalancers;
+    }
+
+    public @Nonnull MQSupport getMessageQueueSupport() {
+        return queues;
+    }
+
+    public @Nonnull RelationalDatabaseSupport getRelationalDatabaseSupport() {
+        return databases;
+    }
+
+    public @Nonnull SnapshotSupport getSnapshotSupport() {
+        return snapshots;
+    }
+
+    public @Nonnull VirtualMachineSupport getVirtualMachineSupport() {
+        return virtualMachines;
+    }
+
+    public @Nonnull VLANSupport getVlanSupport() {
+        return vlans;
+    }
+
+    public @Nonnull VolumeSupport getVolumeSupport() {
+        return volumes;
+    }
+}
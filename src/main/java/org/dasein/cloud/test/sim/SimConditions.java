@@ -0,0 +1,140 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.sim;
+
+import org.dasein.cloud.CloudErrorType;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.test.DaseinTestManager;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import java.util.Random;
+
+/**
+ * The network and control plane conditions of a simulated cloud. Every call through a simulated support interface
+ * waits for a latency drawn from the configured distribution and may be throttled, and every state transition of a
+ * simulated resource takes the configured time. Conditions are set through {@link System} properties:
+ * <ul>
+ *     <li>dasein.sim.latency - the mean latency of a call in milliseconds (default 0)</li>
+ *     <li>dasein.sim.jitter - the spread of the latency in milliseconds (default 0)</li>
+ *     <li>dasein.sim.distribution - normal, uniform or exponential (default normal); with normal the jitter is the
+ *     standard deviation, with uniform latencies fall within the jitter either side of the mean and with exponential
+ *     the jitter is ignored</li>
+ *     <li>dasein.sim.throttle - the fraction of calls rejected with a throttling error (default 0)</li>
+ *     <li>dasein.sim.transition - how long a resource takes to move from one state to the next in milliseconds
+ *     (default 1000)</li>
+ *     <li>dasein.sim.seed - the seed of the random draws, for repeatable runs</li>
+ * </ul>
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+public class SimConditions {
+    static public final String DISTRIBUTION = "dasein.sim.distribution";
+    static public final String JITTER       = "dasein.sim.jitter";
+    static public final String LATENCY      = "dasein.sim.latency";
+    static public final String SEED         = "dasein.sim.seed";
+    static public final String THROTTLE     = "dasein.sim.throttle";
+    static public final String TRANSITION   = "dasein.sim.transition";
+
+    static private double getDoubleProperty(@Nonnull String key, double defaultValue) {
+        String prop = DaseinTestManager.getSystemProperty(key);
+
+        if( prop != null ) {
+            try {
+                double value = Double.parseDouble(prop.trim());
+
+                if( value >= 0d ) {
+                    return value;
+                }
+            }
+            catch( NumberFormatException ignore ) {
+                // fall through to the default
+            }
+        }
+        return defaultValue;
+    }
+
+    private final String distribution;
+    private final double jitter;
+    private final double latency;
+    private final Random random;
+    private final double throttle;
+    private final long   transition;
+
+    public SimConditions() {
+        String prop = DaseinTestManager.getSystemProperty(DISTRIBUTION);
+        String seed = DaseinTestManager.getSystemProperty(SEED);
+
+        distribution = (prop == null ? "normal" : prop.trim().toLowerCase());
+        jitter = getDoubleProperty(JITTER, 0d);
+        latency = getDoubleProperty(LATENCY, 0d);
+        throttle = Math.min(1d, getDoubleProperty(THROTTLE, 0d));
+        transition = (long)getDoubleProperty(TRANSITION, 1000d);
+        random = (seed == null ? new Random() : new Random(seed.hashCode()));
+    }
+
+    /**
+     * @return how long a resource takes to move from one state to the next in milliseconds
+     */
+    public @Nonnegative long getTransition() {
+        return transition;
+    }
+
+    private synchronized long nextLatency() {
+        double value;
+
+        if( distribution.equals("uniform") ) {
+            value = latency + (random.nextDouble() * 2d - 1d) * jitter;
+        }
+        else if( distribution.equals("exponential") ) {
+            value = -latency * Math.log(1d - random.nextDouble());
+        }
+        else {
+            value = latency + random.nextGaussian() * jitter;
+        }
+        return Math.max(0L, Math.round(value));
+    }
+
+    private synchronized boolean isThrottled() {
+        return throttle > 0d && random.nextDouble() < throttle;
+    }
+
+    /**
+     * Simulates the round trip of a call to the cloud.
+     * @param api the API being called
+     * @throws CloudException the call was throttled
+     */
+    public void call(@Nonnull String api) throws CloudException {
+        long millis = nextLatency();
+
+        if( millis > 0L ) {
+            try {
+                Thread.sleep(millis);
+            }
+            catch( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if( isThrottled() ) {
+            throw new CloudException(CloudErrorType.THROTTLING, 503, "Throttling", "Rate exceeded for " + api);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.sim;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Deep copies of the resources the simulator keeps, so that every call hands out new objects the way a driver builds
+ * them from each response. Strings, numbers, enums and proxies are shared, arrays, collections and maps are rebuilt
+ * and any other object is copied field by field without running its constructors.
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+final class SimCopy {
+    static private final Map<Class<?>,List<Field>>     fields       = new ConcurrentHashMap<Class<?>, List<Field>>();
+    static private final Map<Class<?>,Constructor<?>>  constructors = new ConcurrentHashMap<Class<?>, Constructor<?>>();
+
+    private SimCopy() { }
+
+    /**
+     * @param value the value to copy
+     * @param <T> the type of the value
+     * @return a copy sharing no mutable state with the value
+     * @throws IllegalStateException the value holds an object that cannot be instantiated
+     */
+    static @Nullable <T> T copy(@Nullable T value) {
+        return copy(value, new IdentityHashMap<Object, Object>());
+    }
+
+    @SuppressWarnings("unchecked")
+    static private @Nullable <T> T copy(@Nullable T value, @Nonnull Map<Object,Object> copies) {
+        if( value == null || isShared(value) ) {
+            return value;
+        }
+        Object copy = copies.get(value);
+
+        if( copy != null ) {
+            return (T)copy;
+        }
+        Class<?> type = value.getClass();
+
+        if( type.isArray() ) {
+            int length = Array.getLength(value);
+
+            copy = Array.newInstance(type.getComponentType(), length);
+            copies.put(value, copy);
+            for( int i=0; i<length; i++ ) {
+                Array.set(copy, i, copy(Array.get(value, i), copies));
+            }
+        }
+        else if( value instanceof Date ) {
+            copy = ((Date)value).clone();
+        }
+        else if( value instanceof Map ) {
+            Map<Object,Object> map = newMap((Map<Object,Object>)value);
+
+            copies.put(value, map);
+            for( Map.Entry<Object,Object> entry : ((Map<Object,Object>)value).entrySet() ) {
+                map.put(copy(entry.getKey(), copies), copy(entry.getValue(), copies));
+            }
+            copy = map;
+        }
+        else if( value instanceof Collection ) {
+            Collection<Object> collection = newCollection((Collection<Object>)value);
+
+            copies.put(value, collection);
+            for( Object item : (Collection<Object>)value ) {
+                collection.add(copy(item, copies));
+            }
+            copy = collection;
+        }
+        else if( isJdk(type) ) {
+            // anything else from the JDK is not model data
+            return value;
+        }
+        else {
+            copy = allocate(type);
+            copies.put(value, copy);
+            try {
+                for( Field field : getFields(type) ) {
+                    field.set(copy, copy(field.get(value), copies));
+                }
+            }
+            catch( IllegalAccessException e ) {
+                throw new IllegalStateException("Unable to copy " + type.getName() + ": " + e.getMessage());
+            }
+        }
+        return (T)copy;
+    }
+
+    static private boolean isShared(@Nonnull Object value) {
+        return (value instanceof String || value instanceof Number || value instanceof Boolean || value instanceof Character
+                || value instanceof Enum || value instanceof Class || Proxy.isProxyClass(value.getClass()));
+    }
+
+    static private boolean isJdk(@Nonnull Class<?> type) {
+        String name = type.getName();
+
+        return (name.startsWith("java.") || name.startsWith("javax.") || name.startsWith("sun.") || name.startsWith("com.sun."));
+    }
+
+    @SuppressWarnings("unchecked")
+    static private @Nonnull Map<Object,Object> newMap(@Nonnull Map<Object,Object> original) {
+        if( original instanceof SortedMap ) {
+            return new TreeMap<Object, Object>(((SortedMap<Object,Object>)original).comparator());
+        }
+        Object map = newContainer(original.getClass());
+
+        return (map instanceof Map ? (Map<Object,Object>)map : new LinkedHashMap<Object, Object>());
+    }
+
+    @SuppressWarnings("unchecked")
+    static private @Nonnull Collection<Object> newCollection(@Nonnull Collection<Object> original) {
+        if( original instanceof SortedSet ) {
+            return new TreeSet<Object>(((SortedSet<Object>)original).comparator());
+        }
+        Object collection = newContainer(original.getClass());
+
+        if( collection instanceof Collection ) {
+            return (Collection<Object>)collection;
+        }
+        return (original instanceof Set ? new LinkedHashSet<Object>() : new ArrayList<Object>());
+    }
+
+    static private @Nullable Object newContainer(@Nonnull Class<?> type) {
+        if( Modifier.isPublic(type.getModifiers()) && type.getName().startsWith("java.util.") ) {
+            try {
+                return type.getConstructor().newInstance();
+            }
+            catch( Exception ignore ) {
+                // fall back to the general kind of container
+            }
+        }
+        return null;
+    }
+
+    static private @Nonnull List<Field> getFields(@Nonnull Class<?> type) {
+        List<Field> list = fields.get(type);
+
+        if( list == null ) {
+            list = new ArrayList<Field>();
+            for( Class<?> c = type; c != null && !isJdk(c); c = c.getSuperclass() ) {
+                for( Field field : c.getDeclaredFields() ) {
+                    if( !Modifier.isStatic(field.getModifiers()) && !field.isSynthetic() ) {
+                        field.setAccessible(true);
+                        list.add(field);
+                    }
+                }
+            }
+            fields.put(type, list);
+        }
+        return list;
+    }
+
+    /**
+     * Creates an instance of a class without running any of its constructors, since many model classes are only
+     * built through factory methods.
+     * @param type the class to instantiate
+     * @return the new, uninitialized instance
+     */
+    static private @Nonnull Object allocate(@Nonnull Class<?> type) {
+        try {
+            Constructor<?> constructor = constructors.get(type);
+
+            if( constructor == null ) {
+                Class<?> factoryClass = Class.forName("sun.reflect.ReflectionFactory");
+                Object factory = factoryClass.getMethod("getReflectionFactory").invoke(null);
+                Method method = factoryClass.getMethod("newConstructorForSerialization", Class.class, Constructor.class);
+
+                constructor = (Constructor<?>)method.invoke(factory, type, Object.class.getDeclaredConstructor());
+                constructor.setAccessible(true);
+                constructors.put(type, constructor);
+            }
+            return constructor.newInstance();
+        }
+        catch( Exception e ) {
+            throw new IllegalStateException("Unable to instantiate " + type.getName() + ": " + e.getMessage());
+        }
+    }
+}
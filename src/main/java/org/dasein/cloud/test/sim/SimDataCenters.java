@@ -0,0 +1,76 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.sim;
+
+import org.dasein.cloud.dc.DataCenter;
+import org.dasein.cloud.dc.DataCenterCapabilities;
+import org.dasein.cloud.dc.Region;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Simulates the data center services of a {@link SimCloud}: one region with two data centers.
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+class SimDataCenters {
+    private final SimCloud cloud;
+
+    SimDataCenters(@Nonnull SimCloud cloud) {
+        this.cloud = cloud;
+    }
+
+    public @Nonnull DataCenterCapabilities getCapabilities() {
+        return cloud.capabilities(DataCenterCapabilities.class, null);
+    }
+
+    public @Nullable DataCenter getDataCenter(@Nonnull String dataCenterId) {
+        for( DataCenter dc : listDataCenters(cloud.getRegionId()) ) {
+            if( dc.getProviderDataCenterId().equals(dataCenterId) ) {
+                return dc;
+            }
+        }
+        return null;
+    }
+
+    public @Nullable Region getRegion(@Nonnull String regionId) {
+        return (regionId.equals(cloud.getRegionId()) ? listRegions().iterator().next() : null);
+    }
+
+    public @Nonnull Iterable<DataCenter> listDataCenters(@Nonnull String regionId) {
+        List<DataCenter> list = new ArrayList<DataCenter>();
+
+        if( regionId.equals(cloud.getRegionId()) ) {
+            for( String id : cloud.getDataCenterIds() ) {
+                list.add(new DataCenter(id, id, regionId, true, true));
+            }
+        }
+        return list;
+    }
+
+    public @Nonnull Iterable<Region> listRegions() {
+        return Collections.singletonList(new Region(cloud.getRegionId(), cloud.getRegionId(), true, true));
+    }
+}
@@ -0,0 +1,195 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.sim;
+
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.ResourceStatus;
+import org.dasein.cloud.platform.Database;
+import org.dasein.cloud.platform.DatabaseEngine;
+import org.dasein.cloud.platform.DatabaseProduct;
+import org.dasein.cloud.platform.DatabaseState;
+import org.dasein.cloud.platform.RelationalDatabaseCapabilities;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Simulates RelationalDatabaseSupport with MySQL and PostgreSQL databases built from scratch, restarts and access
+ * rules. Snapshots, backups and configurations are not supported.
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+class SimDatabases extends SimSupport<Database, DatabaseState> {
+    static private final List<DatabaseEngine> ENGINES = Arrays.asList(DatabaseEngine.MYSQL, DatabaseEngine.POSTGRES);
+
+    private final Map<String,List<String>> access = new HashMap<String, List<String>>();
+
+    SimDatabases(@Nonnull SimCloud cloud) {
+        super(cloud, "database");
+    }
+
+    @Override
+    protected void setState(@Nonnull Database resource, @Nonnull DatabaseState state) {
+        resource.setCurrentState(state);
+    }
+
+    public void addAccess(@Nonnull String databaseId, @Nonnull String sourceCidr) throws CloudException {
+        require(databaseId);
+        synchronized( access ) {
+            List<String> list = access.get(databaseId);
+
+            if( list == null ) {
+                list = new ArrayList<String>();
+                access.put(databaseId, list);
+            }
+            if( !list.contains(sourceCidr) ) {
+                list.add(sourceCidr);
+            }
+        }
+    }
+
+    public @Nonnull String createFromScratch(@Nonnull String name, @Nonnull DatabaseProduct product, @Nullable String version, @Nonnull String withAdminUser, @Nonnull String withAdminPassword, int hostPort) throws CloudException {
+        DatabaseEngine engine = product.getEngine();
+
+        if( engine == null || !ENGINES.contains(engine) ) {
+            throw new CloudException("Unsupported database engine: " + engine);
+        }
+        if( version != null && !getSupportedVersions(engine).contains(version) ) {
+            throw new CloudException("Unsupported " + engine + " version: " + version);
+        }
+        String id = cloud.nextId("db");
+        Database database = new Database();
+
+        database.setProviderDatabaseId(id);
+        database.setName(name);
+        database.setProviderOwnerId(cloud.getAccountNumber());
+        database.setProviderRegionId(cloud.getRegionId());
+        database.setProviderDataCenterId(cloud.getDataCenterIds().get(0));
+        database.setEngine(engine);
+        database.setEngineVersion(version == null ? getDefaultVersion(engine) : version);
+        database.setProductSize(product.getProductSize());
+        database.setAllocatedStorageInGb(product.getStorageInGigabytes());
+        database.setAdminUser(withAdminUser);
+        database.setHostName(id + "." + cloud.getRegionId() + ".sim");
+        database.setHostPort(hostPort);
+        database.setCreationTimestamp(System.currentTimeMillis());
+        add(id, database, DatabaseState.PENDING, DatabaseState.AVAILABLE);
+        return id;
+    }
+
+    public @Nonnull RelationalDatabaseCapabilities getCapabilities() {
+        return cloud.capabilities(RelationalDatabaseCapabilities.class, null,
+                "isSupportsFirewallRules", true,
+                "supportsFirewallRules", true);
+    }
+
+    public @Nullable Database getDatabase(@Nonnull String databaseId) {
+        return find(databaseId);
+    }
+
+    public @Nonnull Iterable<DatabaseEngine> getDatabaseEngines() {
+        return ENGINES;
+    }
+
+    public @Nonnull Iterable<DatabaseProduct> getDatabaseProducts(@Nonnull DatabaseEngine forEngine) {
+        return listDatabaseProducts(forEngine);
+    }
+
+    public @Nullable String getDefaultVersion(@Nullable DatabaseEngine forEngine) {
+        List<String> versions = getSupportedVersions(forEngine);
+
+        return (versions.isEmpty() ? null : versions.get(0));
+    }
+
+    public @Nonnull List<String> getSupportedVersions(@Nullable DatabaseEngine forEngine) {
+        if( DatabaseEngine.MYSQL.equals(forEngine) ) {
+            return Arrays.asList("5.6", "5.5");
+        }
+        else if( DatabaseEngine.POSTGRES.equals(forEngine) ) {
+            return Arrays.asList("9.4", "9.3");
+        }
+        return Collections.emptyList();
+    }
+
+    public @Nonnull Iterable<String> listAccess(@Nonnull String databaseId) throws CloudException {
+        require(databaseId);
+        synchronized( access ) {
+            List<String> list = access.get(databaseId);
+
+            return (list == null ? new ArrayList<String>() : new ArrayList<String>(list));
+        }
+    }
+
+    public @Nonnull Iterable<DatabaseProduct> listDatabaseProducts(@Nullable DatabaseEngine forEngine) {
+        List<DatabaseProduct> products = new ArrayList<DatabaseProduct>();
+
+        if( forEngine == null || !ENGINES.contains(forEngine) ) {
+            return products;
+        }
+        for( int i=0; i<2; i++ ) {
+            DatabaseProduct product = new DatabaseProduct(i == 0 ? "sim.db.small" : "sim.db.large", i == 0 ? "Small Database" : "Large Database");
+
+            product.setEngine(forEngine);
+            product.setProviderDataCenterId(cloud.getDataCenterIds().get(0));
+            product.setStorageInGigabytes(i == 0 ? 10 : 100);
+            product.setStandardHourlyRate(i == 0 ? 0.02f : 0.2f);
+            product.setCurrency("USD");
+            products.add(product);
+        }
+        return products;
+    }
+
+    public @Nonnull Iterable<ResourceStatus> listDatabaseStatus() {
+        return listStatus();
+    }
+
+    public @Nonnull Iterable<Database> listDatabases() {
+        return findAll();
+    }
+
+    public void removeDatabase(@Nonnull String databaseId) throws CloudException {
+        delete(databaseId, DatabaseState.DELETING, DatabaseState.DELETED);
+        synchronized( access ) {
+            access.remove(databaseId);
+        }
+    }
+
+    public void restart(@Nonnull String databaseId, boolean blockUntilDone) throws CloudException {
+        change(databaseId, Collections.singletonList(DatabaseState.AVAILABLE), DatabaseState.RESTARTING, DatabaseState.AVAILABLE);
+    }
+
+    public void revokeAccess(@Nonnull String databaseId, @Nonnull String sourceCidr) throws CloudException {
+        require(databaseId);
+        synchronized( access ) {
+            List<String> list = access.get(databaseId);
+
+            if( list == null || !list.remove(sourceCidr) ) {
+                throw new CloudException("The database " + databaseId + " does not allow access from " + sourceCidr);
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.sim;
+
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.ResourceStatus;
+import org.dasein.cloud.network.DNSRecord;
+import org.dasein.cloud.network.DNSRecordType;
+import org.dasein.cloud.network.DNSZone;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Simulates DNSSupport with zones and the records within them. Record names are qualified with the domain of their
+ * zone, and a zone is removed together with its records.
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+class SimDns extends SimSupport<DNSZone, SimSupport.Stateless> {
+    private final Map<String,List<DNSRecord>> records = new HashMap<String, List<DNSRecord>>();
+
+    SimDns(@Nonnull SimCloud cloud) {
+        super(cloud, "DNS zone");
+    }
+
+    @Override
+    protected void setState(@Nonnull DNSZone resource, @Nonnull Stateless state) {
+        // zones have no state
+    }
+
+    public @Nonnull DNSRecord addDnsRecord(@Nonnull String zoneId, @Nonnull DNSRecordType type, @Nonnull String name, int ttl, @Nonnull String ... values) throws CloudException {
+        DNSZone zone = require(zoneId);
+        String domain = zone.getDomainName();
+        DNSRecord record = new DNSRecord();
+
+        if( !name.endsWith(".") ) {
+            name = (name.equals(domain) || name.endsWith("." + domain) ? name : name + "." + domain) + ".";
+        }
+        record.setProviderZoneId(zoneId);
+        record.setName(name);
+        record.setType(type);
+        record.setTtl(ttl);
+        record.setValues(values);
+        synchronized( records ) {
+            List<DNSRecord> list = records.get(zoneId);
+
+            if( list == null ) {
+                list = new ArrayList<DNSRecord>();
+                records.put(zoneId, list);
+            }
+            list.add(record);
+        }
+        return record;
+    }
+
+    public @Nonnull String createDnsZone(@Nonnull String domainName, @Nonnull String name, @Nonnull String description) {
+        String id = cloud.nextId("zone");
+        DNSZone zone = new DNSZone();
+
+        zone.setProviderDnsZoneId(id);
+        zone.setProviderOwnerId(cloud.getAccountNumber());
+        zone.setDomainName(domainName);
+        zone.setName(name);
+        zone.setDescription(description);
+        zone.setNameservers(new String[] { "ns1." + cloud.getRegionId() + ".sim.", "ns2." + cloud.getRegionId() + ".sim." });
+        add(id, zone, null, null);
+        return id;
+    }
+
+    public void deleteDnsRecords(@Nonnull DNSRecord ... toDelete) throws CloudException {
+        synchronized( records ) {
+            for( DNSRecord record : toDelete ) {
+                List<DNSRecord> list = records.get(record.getProviderZoneId());
+
+                if( list == null || !list.remove(record) ) {
+                    throw new CloudException("No such DNS record: " + record.getName());
+                }
+            }
+        }
+    }
+
+    public void deleteDnsZone(@Nonnull String zoneId) throws CloudException {
+        delete(zoneId, null, null);
+        synchronized( records ) {
+            records.remove(zoneId);
+        }
+    }
+
+    public @Nullable DNSZone getDnsZone(@Nonnull String zoneId) {
+        return find(zoneId);
+    }
+
+    public @Nonnull Iterable<DNSRecord> listDnsRecords(@Nonnull String zoneId, @Nullable DNSRecordType forType, @Nullable String name) throws CloudException {
+        List<DNSRecord> list = new ArrayList<DNSRecord>();
+
+        require(zoneId);
+        synchronized( records ) {
+            List<DNSRecord> current = records.get(zoneId);
+
+            if( current != null ) {
+                for( DNSRecord record : current ) {
+                    if( (forType == null || forType.equals(record.getType())) && (name == null || record.getName().startsWith(name)) ) {
+                        list.add(record);
+                    }
+                }
+            }
+        }
+        return list;
+    }
+
+    public @Nonnull Iterable<ResourceStatus> listDnsZoneStatus() {
+        return listStatus();
+    }
+
+    public @Nonnull Iterable<DNSZone> listDnsZones() {
+        return findAll();
+    }
+}
@@ -0,0 +1,224 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.sim;
+
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.Requirement;
+import org.dasein.cloud.ResourceStatus;
+import org.dasein.cloud.VisibleScope;
+import org.dasein.cloud.compute.VirtualMachine;
+import org.dasein.cloud.compute.VmState;
+import org.dasein.cloud.network.Direction;
+import org.dasein.cloud.network.Firewall;
+import org.dasein.cloud.network.FirewallCapabilities;
+import org.dasein.cloud.network.FirewallCreateOptions;
+import org.dasein.cloud.network.FirewallRule;
+import org.dasein.cloud.network.FirewallRuleCreateOptions;
+import org.dasein.cloud.network.Permission;
+import org.dasein.cloud.network.Protocol;
+import org.dasein.cloud.network.RuleTarget;
+import org.dasein.cloud.network.RuleTargetType;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+
+/**
+ * Simulates FirewallSupport with firewalls holding ingress and egress allow rules from CIDR sources. Firewalls are
+ * available as soon as they are created and cannot be deleted while a virtual machine is launched into them.
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+class SimFirewalls extends SimSupport<Firewall, SimSupport.Stateless> {
+    static public class RuleRules {
+        public boolean supportsRules(@Nonnull Direction direction, @Nonnull Permission permission, boolean inVlan) {
+            return permission.equals(Permission.ALLOW);
+        }
+    }
+
+    SimFirewalls(@Nonnull SimCloud cloud) {
+        super(cloud, "firewall");
+    }
+
+    @Override
+    protected void setState(@Nonnull Firewall resource, @Nonnull Stateless state) {
+        // firewalls have no state
+    }
+
+    public @Nonnull String authorize(@Nonnull String firewallId, @Nonnull FirewallRuleCreateOptions options) throws CloudException {
+        Firewall firewall = require(firewallId);
+        RuleTarget source = options.getSourceEndpoint();
+        RuleTarget destination = options.getDestinationEndpoint();
+
+        if( !options.getPermission().equals(Permission.ALLOW) ) {
+            throw new CloudException("Only allow rules are supported");
+        }
+        if( source == null ) {
+            source = RuleTarget.getCIDR("0.0.0.0/0");
+        }
+        if( destination == null ) {
+            destination = RuleTarget.getGlobal(firewallId);
+        }
+        String ruleId = FirewallRule.getRuleId(firewallId, source, options.getDirection(), options.getProtocol(), options.getPermission(), destination, options.getPortRangeStart(), options.getPortRangeEnd());
+
+        synchronized( firewall ) {
+            Collection<FirewallRule> rules = new ArrayList<FirewallRule>(firewall.getRules());
+
+            for( FirewallRule rule : rules ) {
+                if( ruleId.equals(rule.getProviderRuleId()) ) {
+                    throw new CloudException("The rule " + ruleId + " already exists");
+                }
+            }
+            rules.add(FirewallRule.getInstance(ruleId, firewallId, source, options.getDirection(), options.getProtocol(), options.getPermission(), destination, options.getPortRangeStart(), options.getPortRangeEnd()));
+            firewall.setRules(rules);
+        }
+        return ruleId;
+    }
+
+    public @Nonnull String authorize(@Nonnull String firewallId, @Nonnull String source, @Nonnull Protocol protocol, int beginPort, int endPort) throws CloudException {
+        return authorize(firewallId, FirewallRuleCreateOptions.getInstance(Direction.INGRESS, Permission.ALLOW, RuleTarget.getCIDR(source), protocol, RuleTarget.getGlobal(firewallId), beginPort, endPort));
+    }
+
+    public @Nonnull String authorize(@Nonnull String firewallId, @Nonnull Direction direction, @Nonnull Permission permission, @Nonnull RuleTarget source, @Nonnull Protocol protocol, @Nonnull RuleTarget destination, int beginPort, int endPort, int precedence) throws CloudException {
+        return authorize(firewallId, FirewallRuleCreateOptions.getInstance(direction, permission, source, protocol, destination, beginPort, endPort, precedence));
+    }
+
+    public @Nonnull String create(@Nonnull FirewallCreateOptions options) throws CloudException {
+        String vlanId = options.getProviderVlanId();
+
+        if( vlanId != null ) {
+            cloud.getVlans().require(vlanId);
+        }
+        String id = cloud.nextId("sg");
+        Firewall firewall = new Firewall();
+
+        firewall.setProviderFirewallId(id);
+        firewall.setName(options.getName());
+        firewall.setDescription(options.getDescription());
+        firewall.setRegionId(cloud.getRegionId());
+        firewall.setProviderVlanId(vlanId);
+        firewall.setVisibleScope(VisibleScope.ACCOUNT_REGION);
+        firewall.setActive(true);
+        firewall.setAvailable(true);
+        firewall.setRules(new ArrayList<FirewallRule>());
+        tag(firewall, options.getMetaData());
+        add(id, firewall, null, null);
+        if( options.getInitialRules() != null ) {
+            for( FirewallRuleCreateOptions rule : options.getInitialRules() ) {
+                authorize(id, rule);
+            }
+        }
+        return id;
+    }
+
+    public @Nonnull String create(@Nonnull String name, @Nonnull String description) throws CloudException {
+        return create(FirewallCreateOptions.getInstance(name, description));
+    }
+
+    public @Nonnull String createInVLAN(@Nonnull String name, @Nonnull String description, @Nonnull String vlanId) throws CloudException {
+        return create(FirewallCreateOptions.getInstance(vlanId, name, description));
+    }
+
+    public void delete(@Nonnull String firewallId) throws CloudException {
+        require(firewallId);
+        for( VirtualMachine vm : cloud.getVirtualMachines().findAll() ) {
+            String[] ids = vm.getProviderFirewallIds();
+
+            if( ids != null && Arrays.asList(ids).contains(firewallId) && !vm.getCurrentState().equals(VmState.TERMINATED) ) {
+                throw new CloudException("The firewall " + firewallId + " is in use by " + vm.getProviderVirtualMachineId());
+            }
+        }
+        delete(firewallId, null, null);
+    }
+
+    public @Nonnull FirewallCapabilities getCapabilities() {
+        return cloud.capabilities(FirewallCapabilities.class, new RuleRules(),
+                "getFirewallVisibleScope", VisibleScope.ACCOUNT_REGION,
+                "identifyPrecedenceRequirement", Requirement.NONE,
+                "listSupportedDestinationTypes", Collections.singletonList(RuleTargetType.GLOBAL),
+                "listSupportedDirections", Arrays.asList(Direction.INGRESS, Direction.EGRESS),
+                "listSupportedPermissions", Collections.singletonList(Permission.ALLOW),
+                "listSupportedProtocols", Arrays.asList(Protocol.TCP, Protocol.UDP, Protocol.ICMP),
+                "listSupportedSourceTypes", Collections.singletonList(RuleTargetType.CIDR),
+                "requiresVLAN", Requirement.OPTIONAL,
+                "supportsFirewallCreation", true,
+                "supportsFirewallDeletion", true);
+    }
+
+    public @Nullable Firewall getFirewall(@Nonnull String firewallId) {
+        return find(firewallId);
+    }
+
+    public @Nonnull Iterable<FirewallRule> getRules(@Nonnull String firewallId) throws CloudException {
+        Firewall firewall = require(firewallId);
+
+        synchronized( firewall ) {
+            return new ArrayList<FirewallRule>(firewall.getRules());
+        }
+    }
+
+    public @Nonnull Iterable<Firewall> list() {
+        return findAll();
+    }
+
+    public @Nonnull Iterable<ResourceStatus> listFirewallStatus() {
+        return listStatus();
+    }
+
+    public void revoke(@Nonnull String ruleId) throws CloudException {
+        for( Firewall firewall : listKept() ) {
+            synchronized( firewall ) {
+                Collection<FirewallRule> rules = new ArrayList<FirewallRule>(firewall.getRules());
+
+                for( Iterator<FirewallRule> it = rules.iterator(); it.hasNext(); ) {
+                    if( ruleId.equals(it.next().getProviderRuleId()) ) {
+                        it.remove();
+                        firewall.setRules(rules);
+                        return;
+                    }
+                }
+            }
+        }
+        throw new CloudException("No such firewall rule: " + ruleId);
+    }
+
+    public void revoke(@Nonnull String firewallId, @Nonnull String source, @Nonnull Protocol protocol, int beginPort, int endPort) throws CloudException {
+        revoke(firewallId, Direction.INGRESS, Permission.ALLOW, source, protocol, RuleTarget.getGlobal(firewallId), beginPort, endPort);
+    }
+
+    public void revoke(@Nonnull String firewallId, @Nonnull Direction direction, @Nonnull Permission permission, @Nonnull String source, @Nonnull Protocol protocol, @Nonnull RuleTarget target, int beginPort, int endPort) throws CloudException {
+        for( FirewallRule rule : getRules(firewallId) ) {
+            // the source is matched against either end point because callers swap them for egress rules
+            boolean matches = (source.equals(rule.getSourceEndpoint().getCidr()) || source.equals(rule.getDestinationEndpoint().getCidr()));
+
+            if( matches && rule.getDirection().equals(direction) && rule.getPermission().equals(permission) && rule.getProtocol().equals(protocol)
+                    && rule.getStartPort() == beginPort && rule.getEndPort() == endPort ) {
+                revoke(rule.getProviderRuleId());
+                return;
+            }
+        }
+        throw new CloudException("No matching rule in " + firewallId);
+    }
+}
@@ -0,0 +1,200 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.sim;
+
+import org.dasein.cloud.Capabilities;
+import org.dasein.cloud.OperationNotSupportedException;
+import org.dasein.cloud.Requirement;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Implements a Dasein Cloud interface for the simulator by calling the method of the same name and parameter types
+ * on a delegate object. The simulated support classes therefore implement only the operations the suite exercises
+ * and stay compatible as the core interfaces grow. Anything the delegate does not implement behaves like a cloud
+ * without the feature: lookups return null, lists are empty, flags are false, requirements are NONE and every other
+ * operation throws {@link OperationNotSupportedException}. A has<i>X</i>Support method is true when the delegate
+ * has a get<i>X</i>Support method returning an object. Calls through a support proxy are subject to the
+ * {@link SimConditions} of the cloud, capabilities objects answer locally from a map of method names to values.
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+public class SimHandler implements InvocationHandler {
+    /**
+     * Implements an interface by calling a delegate under the conditions of a simulated cloud.
+     * @param iface the interface to implement
+     * @param delegate the simulated implementation
+     * @param conditions the conditions of the cloud or null if calls are local
+     * @param <T> the type of the interface
+     * @return the proxy
+     */
+    static public @Nonnull <T> T proxy(@Nonnull Class<T> iface, @Nonnull Object delegate, @Nullable SimConditions conditions) {
+        return iface.cast(Proxy.newProxyInstance(iface.getClassLoader(), new Class<?>[] { iface }, new SimHandler(iface, delegate, Collections.<String, Object>emptyMap(), conditions)));
+    }
+
+    /**
+     * Implements a capabilities interface from a map of method names to the values they return, whatever their
+     * arguments, and a delegate for the capabilities that depend on their arguments.
+     * @param iface the capabilities interface
+     * @param delegate the implementation of the capabilities that depend on their arguments or null if there are none
+     * @param values the values of the methods
+     * @param <T> the type of the interface
+     * @return the proxy
+     */
+    static public @Nonnull <T> T capabilities(@Nonnull Class<T> iface, @Nullable Object delegate, @Nonnull Map<String,Object> values) {
+        return iface.cast(Proxy.newProxyInstance(iface.getClassLoader(), new Class<?>[] { iface }, new SimHandler(iface, delegate, values, null)));
+    }
+
+    static private @Nonnull String toTerm(@Nonnull String name) {
+        StringBuilder str = new StringBuilder();
+
+        for( int i=0; i<name.length(); i++ ) {
+            char c = name.charAt(i);
+
+            if( Character.isUpperCase(c) && i > 0 && !Character.isUpperCase(name.charAt(i-1)) ) {
+                str.append(' ');
+            }
+            str.append(Character.toLowerCase(c));
+        }
+        return str.toString();
+    }
+
+    private final boolean                capabilities;
+    private final SimConditions          conditions;
+    private final Object                 delegate;
+    private final String                 name;
+    private final Map<Method,Method>     targets = new ConcurrentHashMap<Method, Method>();
+    private final Map<String,Object>     values;
+
+    private SimHandler(@Nonnull Class<?> iface, @Nullable Object delegate, @Nonnull Map<String,Object> values, @Nullable SimConditions conditions) {
+        this.capabilities = iface.getSimpleName().endsWith("Capabilities");
+        this.conditions = conditions;
+        this.delegate = delegate;
+        this.name = iface.getSimpleName();
+        this.values = values;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        String m = method.getName();
+
+        if( method.getDeclaringClass().equals(Object.class) ) {
+            if( m.equals("equals") ) {
+                return (proxy == args[0]);
+            }
+            else if( m.equals("hashCode") ) {
+                return System.identityHashCode(proxy);
+            }
+            return "Simulated " + name;
+        }
+        if( conditions != null && !m.equals("getCapabilities") && !m.startsWith("getProviderTermFor") ) {
+            conditions.call(name + "." + m);
+        }
+        if( values.containsKey(m) ) {
+            return values.get(m);
+        }
+        Method target = find(method);
+
+        if( target != null ) {
+            try {
+                return target.invoke(delegate, args);
+            }
+            catch( InvocationTargetException e ) {
+                throw e.getCause();
+            }
+        }
+        if( m.startsWith("has") && m.endsWith("Support") && delegate != null ) {
+            try {
+                return (delegate.getClass().getMethod("get" + m.substring(3)).invoke(delegate) != null);
+            }
+            catch( NoSuchMethodException e ) {
+                return false;
+            }
+        }
+        return getDefault(method);
+    }
+
+    private @Nullable Method find(@Nonnull Method method) {
+        if( delegate == null ) {
+            return null;
+        }
+        Method target = targets.get(method);
+
+        if( target == null ) {
+            target = method;
+            for( Method candidate : delegate.getClass().getMethods() ) {
+                if( candidate.getName().equals(method.getName()) && Arrays.equals(candidate.getParameterTypes(), method.getParameterTypes()) ) {
+                    target = candidate;
+                    break;
+                }
+            }
+            targets.put(method, target);
+        }
+        // the interface method itself marks a method the delegate does not implement
+        return (target == method ? null : target);
+    }
+
+    private @Nullable Object getDefault(@Nonnull Method method) throws OperationNotSupportedException {
+        Class<?> type = method.getReturnType();
+        String m = method.getName();
+
+        if( m.startsWith("getProviderTermFor") ) {
+            return toTerm(m.substring("getProviderTermFor".length()));
+        }
+        if( type.equals(boolean.class) || type.equals(Boolean.class) ) {
+            return false;
+        }
+        if( type.equals(int.class) ) {
+            return (m.startsWith("getMax") ? Capabilities.LIMIT_UNKNOWN : 0);
+        }
+        if( type.equals(long.class) ) {
+            return 0L;
+        }
+        if( type.equals(float.class) || type.equals(double.class) ) {
+            return (type.equals(float.class) ? (Object)0f : (Object)0d);
+        }
+        if( type.equals(Requirement.class) ) {
+            return Requirement.NONE;
+        }
+        if( type.isAssignableFrom(ArrayList.class) ) {
+            return new ArrayList<Object>();
+        }
+        if( type.isArray() ) {
+            return Array.newInstance(type.getComponentType(), 0);
+        }
+        if( capabilities || m.startsWith("get") || m.startsWith("list") || m.startsWith("search") ) {
+            // a capabilities object has nothing to report, a support object has no such resource
+            return null;
+        }
+        throw new OperationNotSupportedException(name + "." + m + " is not simulated");
+    }
+}
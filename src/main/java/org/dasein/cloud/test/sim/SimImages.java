@@ -0,0 +1,181 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.sim;
+
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.ResourceStatus;
+import org.dasein.cloud.compute.Architecture;
+import org.dasein.cloud.compute.ImageCapabilities;
+import org.dasein.cloud.compute.ImageClass;
+import org.dasein.cloud.compute.ImageCreateOptions;
+import org.dasein.cloud.compute.ImageFilterOptions;
+import org.dasein.cloud.compute.MachineImage;
+import org.dasein.cloud.compute.MachineImageState;
+import org.dasein.cloud.compute.MachineImageType;
+import org.dasein.cloud.compute.Platform;
+import org.dasein.cloud.compute.VirtualMachine;
+import org.dasein.cloud.compute.VmState;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Simulates MachineImageSupport: a public library of Linux and Windows images and custom images captured from
+ * running or stopped virtual machines.
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+class SimImages extends SimSupport<MachineImage, MachineImageState> {
+    static private final String LIBRARY = "sim-library";
+
+    static public class StateRules {
+        public boolean canImage(@Nonnull VmState state) {
+            return (state.equals(VmState.RUNNING) || state.equals(VmState.STOPPED));
+        }
+    }
+
+    private final List<MachineImage> library = new ArrayList<MachineImage>();
+
+    SimImages(@Nonnull SimCloud cloud) {
+        super(cloud, "machine image");
+        library.add(MachineImage.getInstance(LIBRARY, cloud.getRegionId(), "img-ubuntu", ImageClass.MACHINE, MachineImageState.ACTIVE, "Ubuntu 14.04", "Simulated Ubuntu 14.04", Architecture.I64, Platform.UBUNTU));
+        library.add(MachineImage.getInstance(LIBRARY, cloud.getRegionId(), "img-centos", ImageClass.MACHINE, MachineImageState.ACTIVE, "CentOS 7", "Simulated CentOS 7", Architecture.I64, Platform.CENT_OS));
+        library.add(MachineImage.getInstance(LIBRARY, cloud.getRegionId(), "img-windows", ImageClass.MACHINE, MachineImageState.ACTIVE, "Windows 2012", "Simulated Windows Server 2012", Architecture.I64, Platform.WINDOWS));
+        for( MachineImage image : library ) {
+            image.setType(MachineImageType.VOLUME);
+            image.sharedWithPublic();
+        }
+    }
+
+    @Override
+    protected void setState(@Nonnull MachineImage resource, @Nonnull MachineImageState state) {
+        resource.setCurrentState(state);
+    }
+
+    public @Nonnull ImageCapabilities getCapabilities() {
+        return cloud.capabilities(ImageCapabilities.class, new StateRules(),
+                "listSupportedImageClasses", Collections.singletonList(ImageClass.MACHINE),
+                "listSupportedImageTypes", Collections.singletonList(MachineImageType.VOLUME),
+                "supportsImageCapture", true,
+                "supportsPublicLibrary", true,
+                "supportsListingAllRegions", true);
+    }
+
+    public @Nonnull MachineImage captureImage(@Nonnull ImageCreateOptions options) throws CloudException {
+        VirtualMachine vm = cloud.getVirtualMachines().require(options.getVirtualMachineId());
+
+        if( !new StateRules().canImage(vm.getCurrentState()) ) {
+            throw new CloudException("Unable to image " + vm.getProviderVirtualMachineId() + " while it is " + vm.getCurrentState());
+        }
+        String id = cloud.nextId("img");
+        MachineImage image = MachineImage.getInstance(cloud.getAccountNumber(), cloud.getRegionId(), id, ImageClass.MACHINE, MachineImageState.PENDING, options.getName(), options.getDescription(), vm.getArchitecture(), vm.getPlatform());
+
+        image.setType(MachineImageType.VOLUME);
+        image.setCreationTimestamp(System.currentTimeMillis());
+        tag(image, options.getMetaData());
+        add(id, image, MachineImageState.PENDING, MachineImageState.ACTIVE);
+        return copy(image);
+    }
+
+    public @Nullable MachineImage getImage(@Nonnull String providerImageId) {
+        for( MachineImage image : library ) {
+            if( image.getProviderMachineImageId().equals(providerImageId) ) {
+                return copy(image);
+            }
+        }
+        return find(providerImageId);
+    }
+
+    public @Nullable MachineImage getMachineImage(@Nonnull String providerImageId) {
+        return getImage(providerImageId);
+    }
+
+    public @Nonnull Iterable<ResourceStatus> listImageStatus(@Nonnull ImageClass cls) {
+        return (cls.equals(ImageClass.MACHINE) ? listStatus() : new ArrayList<ResourceStatus>());
+    }
+
+    public @Nonnull Iterable<MachineImage> listImages(@Nullable ImageFilterOptions options) {
+        List<MachineImage> list = new ArrayList<MachineImage>();
+
+        for( MachineImage image : findAll() ) {
+            if( options == null || options.matches(image) ) {
+                list.add(image);
+            }
+        }
+        return list;
+    }
+
+    public @Nonnull Iterable<MachineImage> listImages(@Nonnull ImageClass cls) {
+        return listImages(ImageFilterOptions.getInstance(cls));
+    }
+
+    public @Nonnull Iterable<MachineImage> listImages(@Nonnull ImageClass cls, @Nonnull String ownedBy) {
+        return (ownedBy.equals(cloud.getAccountNumber()) ? listImages(cls) : new ArrayList<MachineImage>());
+    }
+
+    public @Nonnull Iterable<MachineImage> listMachineImages() {
+        return listImages(ImageClass.MACHINE);
+    }
+
+    public @Nonnull Iterable<MachineImage> searchPublicImages(@Nullable ImageFilterOptions options) {
+        List<MachineImage> list = new ArrayList<MachineImage>();
+
+        for( MachineImage image : library ) {
+            if( options == null || options.matches(image) ) {
+                list.add(copy(image));
+            }
+        }
+        return list;
+    }
+
+    public @Nonnull Iterable<MachineImage> searchPublicImages(@Nullable String keyword, @Nullable Platform platform, @Nullable Architecture architecture, @Nullable ImageClass... classes) {
+        List<MachineImage> list = new ArrayList<MachineImage>();
+
+        for( MachineImage image : library ) {
+            if( keyword != null && !image.getName().toLowerCase().contains(keyword.toLowerCase()) ) {
+                continue;
+            }
+            if( platform != null && !platform.equals(image.getPlatform()) ) {
+                continue;
+            }
+            if( architecture != null && !architecture.equals(image.getArchitecture()) ) {
+                continue;
+            }
+            if( classes != null && classes.length > 0 && !Arrays.asList(classes).contains(image.getImageClass()) ) {
+                continue;
+            }
+            list.add(copy(image));
+        }
+        return list;
+    }
+
+    public void remove(@Nonnull String providerImageId) throws CloudException {
+        delete(providerImageId, MachineImageState.DELETED, MachineImageState.DELETED);
+    }
+
+    public void remove(@Nonnull String providerImageId, boolean checkState) throws CloudException {
+        remove(providerImageId);
+    }
+}
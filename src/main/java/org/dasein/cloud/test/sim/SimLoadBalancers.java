@@ -0,0 +1,291 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.sim;
+
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.Requirement;
+import org.dasein.cloud.ResourceStatus;
+import org.dasein.cloud.VisibleScope;
+import org.dasein.cloud.network.IPVersion;
+import org.dasein.cloud.network.LbAlgorithm;
+import org.dasein.cloud.network.LbEndpointState;
+import org.dasein.cloud.network.LbEndpointType;
+import org.dasein.cloud.network.LbListener;
+import org.dasein.cloud.network.LbPersistence;
+import org.dasein.cloud.network.LbProtocol;
+import org.dasein.cloud.network.LbType;
+import org.dasein.cloud.network.LoadBalancer;
+import org.dasein.cloud.network.LoadBalancerAddressType;
+import org.dasein.cloud.network.LoadBalancerCapabilities;
+import org.dasein.cloud.network.LoadBalancerCreateOptions;
+import org.dasein.cloud.network.LoadBalancerEndpoint;
+import org.dasein.cloud.network.LoadBalancerState;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Simulates LoadBalancerSupport with IP addressed load balancers that balance virtual machines and IP addresses
+ * across the data centers of the region. Health checks and SSL certificates are not supported.
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+class SimLoadBalancers extends SimSupport<LoadBalancer, LoadBalancerState> {
+    private final Map<String,List<LoadBalancerEndpoint>> endpoints = new HashMap<String, List<LoadBalancerEndpoint>>();
+
+    private int addresses = 0;
+
+    SimLoadBalancers(@Nonnull SimCloud cloud) {
+        super(cloud, "load balancer");
+    }
+
+    @Override
+    protected void setState(@Nonnull LoadBalancer resource, @Nonnull LoadBalancerState state) {
+        resource.setCurrentState(state);
+    }
+
+    private void addEndpoints(@Nonnull String loadBalancerId, @Nonnull LbEndpointType type, @Nonnull String ... values) throws CloudException {
+        LoadBalancer lb = require(loadBalancerId);
+
+        synchronized( endpoints ) {
+            List<LoadBalancerEndpoint> list = endpoints.get(loadBalancerId);
+
+            if( list == null ) {
+                list = new ArrayList<LoadBalancerEndpoint>();
+                endpoints.put(loadBalancerId, list);
+            }
+            for( String value : values ) {
+                LoadBalancerEndpoint endpoint = LoadBalancerEndpoint.getInstance(type, value, LbEndpointState.ACTIVE);
+
+                if( !list.contains(endpoint) ) {
+                    list.add(endpoint);
+                }
+            }
+            updateServers(lb, list);
+        }
+    }
+
+    private void removeEndpoints(@Nonnull String loadBalancerId, @Nonnull LbEndpointType type, @Nonnull String ... values) throws CloudException {
+        LoadBalancer lb = require(loadBalancerId);
+        List<String> toRemove = Arrays.asList(values);
+
+        synchronized( endpoints ) {
+            List<LoadBalancerEndpoint> list = endpoints.get(loadBalancerId);
+
+            if( list != null ) {
+                for( Iterator<LoadBalancerEndpoint> it = list.iterator(); it.hasNext(); ) {
+                    LoadBalancerEndpoint endpoint = it.next();
+
+                    if( endpoint.getEndpointType().equals(type) && toRemove.contains(endpoint.getEndpointValue()) ) {
+                        it.remove();
+                    }
+                }
+                updateServers(lb, list);
+            }
+        }
+    }
+
+    private void updateServers(@Nonnull LoadBalancer lb, @Nonnull List<LoadBalancerEndpoint> list) {
+        List<String> servers = new ArrayList<String>();
+
+        for( LoadBalancerEndpoint endpoint : list ) {
+            if( endpoint.getEndpointType().equals(LbEndpointType.VM) ) {
+                servers.add(endpoint.getEndpointValue());
+            }
+        }
+        lb.setProviderServerIds(servers.toArray(new String[servers.size()]));
+    }
+
+    private void checkDataCenters(@Nonnull String ... dataCenterIds) throws CloudException {
+        for( String dataCenterId : dataCenterIds ) {
+            if( !cloud.getDataCenterIds().contains(dataCenterId) ) {
+                throw new CloudException("No such data center: " + dataCenterId);
+            }
+        }
+    }
+
+    public void addDataCenters(@Nonnull String loadBalancerId, @Nonnull String ... dataCenterIds) throws CloudException {
+        LoadBalancer lb = require(loadBalancerId);
+        Set<String> current = new LinkedHashSet<String>(Arrays.asList(lb.getProviderDataCenterIds()));
+
+        checkDataCenters(dataCenterIds);
+        current.addAll(Arrays.asList(dataCenterIds));
+        lb.setProviderDataCenterIds(current.toArray(new String[current.size()]));
+    }
+
+    public void addIPEndpoints(@Nonnull String loadBalancerId, @Nonnull String ... ipAddresses) throws CloudException {
+        addEndpoints(loadBalancerId, LbEndpointType.IP, ipAddresses);
+    }
+
+    public void addListeners(@Nonnull String loadBalancerId, @Nonnull LbListener[] listeners) throws CloudException {
+        LoadBalancer lb = require(loadBalancerId);
+        List<LbListener> current = new ArrayList<LbListener>(Arrays.asList(lb.getListeners()));
+
+        current.addAll(Arrays.asList(listeners));
+        lb.setListeners(current.toArray(new LbListener[current.size()]));
+    }
+
+    public void addServers(@Nonnull String loadBalancerId, @Nonnull String ... serverIds) throws CloudException {
+        for( String serverId : serverIds ) {
+            cloud.getVirtualMachines().require(serverId);
+        }
+        addEndpoints(loadBalancerId, LbEndpointType.VM, serverIds);
+    }
+
+    public @Nonnull String createLoadBalancer(@Nonnull LoadBalancerCreateOptions options) throws CloudException {
+        LbListener[] listeners = options.getListeners();
+        String[] dataCenterIds = options.getProviderDataCenterIds();
+
+        if( listeners == null || listeners.length < 1 ) {
+            throw new CloudException("A load balancer requires at least one listener");
+        }
+        if( dataCenterIds == null || dataCenterIds.length < 1 ) {
+            dataCenterIds = cloud.getDataCenterIds().toArray(new String[0]);
+        }
+        checkDataCenters(dataCenterIds);
+        String id = cloud.nextId("lb");
+        int[] ports = new int[listeners.length];
+        int address;
+
+        for( int i=0; i<listeners.length; i++ ) {
+            ports[i] = listeners[i].getPublicPort();
+        }
+        synchronized( this ) {
+            address = ++addresses;
+        }
+        LoadBalancer lb = LoadBalancer.getInstance(cloud.getAccountNumber(), cloud.getRegionId(), id, LoadBalancerState.PENDING, options.getName(), options.getDescription(), options.getType() == null ? LbType.EXTERNAL : options.getType(), LoadBalancerAddressType.IP, "198.51." + ((address >> 8) & 255) + "." + (address & 255), ports);
+
+        lb.withListeners(listeners).operatingIn(dataCenterIds).supportingTraffic(IPVersion.IPV4);
+        lb.setProviderFirewallIds(options.getFirewallIds());
+        lb.setProviderServerIds(new String[0]);
+        lb.setCreationTimestamp(System.currentTimeMillis());
+        tag(lb, options.getMetaData());
+        add(id, lb, LoadBalancerState.PENDING, LoadBalancerState.ACTIVE);
+        if( options.getEndpoints() != null ) {
+            for( LoadBalancerEndpoint endpoint : options.getEndpoints() ) {
+                addEndpoints(id, endpoint.getEndpointType(), endpoint.getEndpointValue());
+            }
+        }
+        return id;
+    }
+
+    public @Nonnull LoadBalancerCapabilities getCapabilities() {
+        return cloud.capabilities(LoadBalancerCapabilities.class, null,
+                "getAddressType", LoadBalancerAddressType.IP,
+                "getLoadBalancerVisibleScope", VisibleScope.ACCOUNT_REGION,
+                "getMaxPublicPorts", 5,
+                "identifyEndpointsOnCreateRequirement", Requirement.OPTIONAL,
+                "identifyListenersOnCreateRequirement", Requirement.REQUIRED,
+                "identifyVlanOnCreateRequirement", Requirement.NONE,
+                "isAddressAssignedByProvider", true,
+                "isDataCenterLimited", true,
+                "listSupportedAlgorithms", Collections.singletonList(LbAlgorithm.ROUND_ROBIN),
+                "listSupportedEndpointTypes", Arrays.asList(LbEndpointType.VM, LbEndpointType.IP),
+                "listSupportedIPVersions", Collections.singletonList(IPVersion.IPV4),
+                "listSupportedPersistenceOptions", Collections.singletonList(LbPersistence.NONE),
+                "listSupportedProtocols", Arrays.asList(LbProtocol.RAW_TCP, LbProtocol.HTTP),
+                "supportsAddingEndpoints", true);
+    }
+
+    public @Nullable LoadBalancer getLoadBalancer(@Nonnull String loadBalancerId) {
+        return find(loadBalancerId);
+    }
+
+    public @Nonnull Iterable<LoadBalancerEndpoint> listEndpoints(@Nonnull String loadBalancerId) throws CloudException {
+        require(loadBalancerId);
+        synchronized( endpoints ) {
+            List<LoadBalancerEndpoint> list = endpoints.get(loadBalancerId);
+
+            return (list == null ? new ArrayList<LoadBalancerEndpoint>() : new ArrayList<LoadBalancerEndpoint>(list));
+        }
+    }
+
+    public @Nonnull Iterable<LoadBalancerEndpoint> listEndpoints(@Nonnull String loadBalancerId, @Nonnull LbEndpointType type, @Nonnull String ... values) throws CloudException {
+        List<LoadBalancerEndpoint> list = new ArrayList<LoadBalancerEndpoint>();
+        List<String> wanted = Arrays.asList(values);
+
+        for( LoadBalancerEndpoint endpoint : listEndpoints(loadBalancerId) ) {
+            if( endpoint.getEndpointType().equals(type) && (wanted.isEmpty() || wanted.contains(endpoint.getEndpointValue())) ) {
+                list.add(endpoint);
+            }
+        }
+        return list;
+    }
+
+    public @Nonnull Iterable<ResourceStatus> listLoadBalancerStatus() {
+        return listStatus();
+    }
+
+    public @Nonnull Iterable<LoadBalancer> listLoadBalancers() {
+        return findAll();
+    }
+
+    public void removeDataCenters(@Nonnull String loadBalancerId, @Nonnull String ... dataCenterIds) throws CloudException {
+        LoadBalancer lb = require(loadBalancerId);
+        Set<String> current = new LinkedHashSet<String>(Arrays.asList(lb.getProviderDataCenterIds()));
+
+        current.removeAll(Arrays.asList(dataCenterIds));
+        if( current.isEmpty() ) {
+            throw new CloudException("A load balancer must operate in at least one data center");
+        }
+        lb.setProviderDataCenterIds(current.toArray(new String[current.size()]));
+    }
+
+    public void removeIPEndpoints(@Nonnull String loadBalancerId, @Nonnull String ... ipAddresses) throws CloudException {
+        removeEndpoints(loadBalancerId, LbEndpointType.IP, ipAddresses);
+    }
+
+    public void removeListeners(@Nonnull String loadBalancerId, @Nonnull LbListener[] listeners) throws CloudException {
+        LoadBalancer lb = require(loadBalancerId);
+        List<LbListener> current = new ArrayList<LbListener>(Arrays.asList(lb.getListeners()));
+
+        for( LbListener listener : listeners ) {
+            for( Iterator<LbListener> it = current.iterator(); it.hasNext(); ) {
+                LbListener l = it.next();
+
+                if( l.getPublicPort() == listener.getPublicPort() && l.getPrivatePort() == listener.getPrivatePort() ) {
+                    it.remove();
+                }
+            }
+        }
+        lb.setListeners(current.toArray(new LbListener[current.size()]));
+    }
+
+    public void removeLoadBalancer(@Nonnull String loadBalancerId) throws CloudException {
+        delete(loadBalancerId, LoadBalancerState.TERMINATED, LoadBalancerState.TERMINATED);
+        synchronized( endpoints ) {
+            endpoints.remove(loadBalancerId);
+        }
+    }
+
+    public void removeServers(@Nonnull String loadBalancerId, @Nonnull String ... serverIds) throws CloudException {
+        removeEndpoints(loadBalancerId, LbEndpointType.VM, serverIds);
+    }
+}
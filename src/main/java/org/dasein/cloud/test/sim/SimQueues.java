@@ -0,0 +1,150 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.sim;
+
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.ResourceStatus;
+import org.dasein.cloud.platform.MQCreateOptions;
+import org.dasein.cloud.platform.MQMessageIdentifier;
+import org.dasein.cloud.platform.MQMessageReceipt;
+import org.dasein.cloud.platform.MQState;
+import org.dasein.cloud.platform.MessageQueue;
+import org.dasein.util.uom.storage.Storage;
+import org.dasein.util.uom.time.Day;
+import org.dasein.util.uom.time.Second;
+import org.dasein.util.uom.time.TimePeriod;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.UnsupportedEncodingException;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Simulates MQSupport with first in, first out queues. Queues are active as soon as they are created, and a received
+ * message is removed from its queue at once instead of becoming visible again after the visibility timeout.
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+class SimQueues extends SimSupport<MessageQueue, SimSupport.Stateless> {
+    private final Map<String,LinkedList<MQMessageReceipt>> messages = new HashMap<String, LinkedList<MQMessageReceipt>>();
+
+    SimQueues(@Nonnull SimCloud cloud) {
+        super(cloud, "message queue");
+    }
+
+    @Override
+    protected void setState(@Nonnull MessageQueue resource, @Nonnull Stateless state) {
+        // message queues are active from the start
+    }
+
+    static private @Nonnull String md5(@Nonnull String message) throws InternalException {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(message.getBytes("utf-8"));
+
+            return String.format("%032x", new BigInteger(1, digest));
+        }
+        catch( NoSuchAlgorithmException e ) {
+            throw new InternalException(e);
+        }
+        catch( UnsupportedEncodingException e ) {
+            throw new InternalException(e);
+        }
+    }
+
+    public @Nonnull String createMessageQueue(@Nonnull MQCreateOptions options) {
+        String id = cloud.nextId("mq");
+        TimePeriod<Second> visibility = options.getVisibilityTimeout();
+        MessageQueue queue = MessageQueue.getInstance(cloud.getAccountNumber(), cloud.getRegionId(), id, options.getName(), MQState.ACTIVE, options.getDescription(), "sim://" + cloud.getRegionId() + "/queues/" + id,
+                new TimePeriod<Second>(0, TimePeriod.SECOND), new TimePeriod<Day>(4, TimePeriod.DAY), visibility == null ? new TimePeriod<Second>(30, TimePeriod.SECOND) : visibility, new Storage<org.dasein.util.uom.storage.Byte>(65536, Storage.BYTE));
+
+        tag(queue, options.getMetaData());
+        add(id, queue, null, null);
+        synchronized( messages ) {
+            messages.put(id, new LinkedList<MQMessageReceipt>());
+        }
+        return id;
+    }
+
+    public @Nullable MessageQueue getMessageQueue(@Nonnull String queueId) {
+        return find(queueId);
+    }
+
+    public @Nonnull Iterable<MessageQueue> listMessageQueues() {
+        return findAll();
+    }
+
+    public @Nonnull Iterable<ResourceStatus> listMessageQueueStatus() {
+        return listStatus();
+    }
+
+    public @Nullable MQMessageReceipt receiveMessage(@Nonnull String queueId) throws CloudException {
+        require(queueId);
+        synchronized( messages ) {
+            LinkedList<MQMessageReceipt> queue = messages.get(queueId);
+
+            return (queue == null ? null : queue.poll());
+        }
+    }
+
+    public @Nonnull Iterable<MQMessageReceipt> receiveMessages(@Nonnull String queueId, @Nullable TimePeriod<Second> waitTime, int count, @Nullable TimePeriod<Second> visibilityTimeout) throws CloudException {
+        List<MQMessageReceipt> list = new ArrayList<MQMessageReceipt>();
+
+        for( int i=0; i<count; i++ ) {
+            MQMessageReceipt receipt = receiveMessage(queueId);
+
+            if( receipt == null ) {
+                break;
+            }
+            list.add(receipt);
+        }
+        return list;
+    }
+
+    public void removeMessageQueue(@Nonnull String queueId, @Nullable String reason) throws CloudException {
+        delete(queueId, null, null);
+        synchronized( messages ) {
+            messages.remove(queueId);
+        }
+    }
+
+    public @Nonnull MQMessageIdentifier sendMessage(@Nonnull String queueId, @Nonnull String message) throws CloudException, InternalException {
+        MQMessageIdentifier identifier = new MQMessageIdentifier(cloud.nextId("msg"), md5(message));
+
+        require(queueId);
+        synchronized( messages ) {
+            LinkedList<MQMessageReceipt> queue = messages.get(queueId);
+
+            if( queue == null ) {
+                throw new CloudException("No such message queue: " + queueId);
+            }
+            queue.add(MQMessageReceipt.getInstance(identifier, message, System.currentTimeMillis()));
+        }
+        return identifier;
+    }
+}
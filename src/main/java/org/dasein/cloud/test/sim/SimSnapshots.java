@@ -0,0 +1,128 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.sim;
+
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.OperationNotSupportedException;
+import org.dasein.cloud.Requirement;
+import org.dasein.cloud.ResourceStatus;
+import org.dasein.cloud.Tag;
+import org.dasein.cloud.compute.Snapshot;
+import org.dasein.cloud.compute.SnapshotCapabilities;
+import org.dasein.cloud.compute.SnapshotCreateOptions;
+import org.dasein.cloud.compute.SnapshotFilterOptions;
+import org.dasein.cloud.compute.SnapshotState;
+import org.dasein.cloud.compute.Volume;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Simulates SnapshotSupport. Snapshots of existing volumes are taken through PENDING to AVAILABLE. Copying and
+ * sharing snapshots is not supported.
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+class SimSnapshots extends SimSupport<Snapshot, SnapshotState> {
+    SimSnapshots(@Nonnull SimCloud cloud) {
+        super(cloud, "snapshot");
+    }
+
+    @Override
+    protected void setState(@Nonnull Snapshot resource, @Nonnull SnapshotState state) {
+        resource.setCurrentState(state);
+        resource.setProgress(state.equals(SnapshotState.PENDING) ? "50%" : "100%");
+    }
+
+    public @Nonnull String createSnapshot(@Nonnull SnapshotCreateOptions options) throws CloudException, InternalException {
+        if( options.getVolumeId() == null ) {
+            throw new OperationNotSupportedException("Snapshots cannot be copied in the simulated cloud");
+        }
+        Volume volume = cloud.getVolumes().require(options.getVolumeId());
+        String id = cloud.nextId("snap");
+        Snapshot snapshot = new Snapshot();
+
+        snapshot.setProviderSnapshotId(id);
+        snapshot.setName(options.getName());
+        snapshot.setDescription(options.getDescription());
+        snapshot.setOwner(cloud.getAccountNumber());
+        snapshot.setRegionId(cloud.getRegionId());
+        snapshot.setVolumeId(volume.getProviderVolumeId());
+        snapshot.setSizeInGb(volume.getSize().intValue());
+        snapshot.setSnapshotTimestamp(System.currentTimeMillis());
+        tag(snapshot, options.getMetaData());
+        add(id, snapshot, SnapshotState.PENDING, SnapshotState.AVAILABLE);
+        return id;
+    }
+
+    public @Nonnull SnapshotCapabilities getCapabilities() {
+        return cloud.capabilities(SnapshotCapabilities.class, null,
+                "identifyAttachmentRequirement", Requirement.OPTIONAL,
+                "supportsSnapshotCreation", true);
+    }
+
+    public @Nullable Snapshot getSnapshot(@Nonnull String snapshotId) {
+        return find(snapshotId);
+    }
+
+    public @Nonnull Iterable<ResourceStatus> listSnapshotStatus() {
+        return listStatus();
+    }
+
+    public @Nonnull Iterable<Snapshot> listSnapshots() {
+        return findAll();
+    }
+
+    public @Nonnull Iterable<Snapshot> listSnapshots(@Nullable SnapshotFilterOptions options) {
+        List<Snapshot> list = new ArrayList<Snapshot>();
+
+        for( Snapshot snapshot : findAll() ) {
+            if( options == null || options.matches(snapshot, cloud.getAccountNumber()) ) {
+                list.add(snapshot);
+            }
+        }
+        return list;
+    }
+
+    public void remove(@Nonnull String snapshotId) throws CloudException {
+        delete(snapshotId, SnapshotState.DELETED, SnapshotState.DELETED);
+    }
+
+    public @Nonnull Iterable<Snapshot> searchSnapshots(@Nullable SnapshotFilterOptions options) {
+        return listSnapshots(options);
+    }
+
+    public @Nonnull Snapshot snapshot(@Nonnull String volumeId, @Nonnull String name, @Nonnull String description, @Nullable Tag... tags) throws CloudException, InternalException {
+        String id = createSnapshot(SnapshotCreateOptions.getInstanceForCreate(volumeId, name, description));
+
+        if( tags != null && tags.length > 0 ) {
+            updateTags(id, tags);
+        }
+        return copy(require(id));
+    }
+
+    public boolean supportsSnapshotCreation() {
+        return true;
+    }
+}
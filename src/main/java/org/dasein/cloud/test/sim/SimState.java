@@ -0,0 +1,104 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.sim;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * The state machine of a simulated resource. A resource sits in a transitional state, such as PENDING, for one
+ * transition period before reaching its target state, such as RUNNING. Once a removed resource has reached its
+ * terminal state it lingers for one more period, as it would in a real cloud, and is then gone.
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+public class SimState<S extends Enum<S>> {
+    private final long transition;
+    private S          current;
+    private S          target;
+    private long       arrival;
+    private boolean    removed;
+
+    /**
+     * @param transition how long each transition takes in milliseconds
+     * @param initial the transitional state the resource starts in
+     * @param target the state the resource reaches after one transition
+     */
+    public SimState(@Nonnegative long transition, @Nonnull S initial, @Nonnull S target) {
+        this.transition = transition;
+        change(initial, target);
+    }
+
+    /**
+     * @return the state of the resource at this moment
+     */
+    public synchronized @Nonnull S get() {
+        if( target != null && System.currentTimeMillis() >= arrival ) {
+            current = target;
+            target = null;
+        }
+        return current;
+    }
+
+    /**
+     * @return the state the resource is moving to or null if it is not in transition
+     */
+    public synchronized @Nullable S getTarget() {
+        get();
+        return target;
+    }
+
+    /**
+     * Moves the resource through a transitional state to a new target state.
+     * @param transitional the state the resource is in while it changes
+     * @param target the state the resource reaches after one transition
+     */
+    public synchronized void change(@Nonnull S transitional, @Nonnull S target) {
+        this.current = transitional;
+        this.target = target;
+        this.arrival = System.currentTimeMillis() + transition;
+    }
+
+    /**
+     * Moves the resource to its terminal state, after which it disappears.
+     * @param transitional the state the resource is in while it is being removed
+     * @param terminal the state the removed resource is reported in until it disappears
+     */
+    public synchronized void remove(@Nonnull S transitional, @Nonnull S terminal) {
+        change(transitional, terminal);
+        removed = true;
+    }
+
+    /**
+     * @return true if the resource was removed and no longer shows up in the cloud
+     */
+    public synchronized boolean isGone() {
+        return removed && System.currentTimeMillis() >= arrival + transition;
+    }
+
+    /**
+     * @return true if the resource is being or has been removed
+     */
+    public synchronized boolean isRemoved() {
+        return removed;
+    }
+}
@@ -0,0 +1,294 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.sim;
+
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.ResourceStatus;
+import org.dasein.cloud.Tag;
+import org.dasein.cloud.Taggable;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Common base of the simulated support classes, keeping one kind of resource and its state machine in memory.
+ * Resources of kinds without a state are removed at once, the others go through their removal states first. Callers
+ * get copies of the resources, as they would from a driver, while changes are made to the kept resources under
+ * their own locks. The base also implements the tagging operations shared by most support interfaces.
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+abstract class SimSupport<T, S extends Enum<S>> {
+    /**
+     * The state type of the kinds of resources that have no state.
+     */
+    enum Stateless { }
+
+    protected final SimCloud cloud;
+
+    private final String                   term;
+    private final Map<String,T>            resources = new LinkedHashMap<String, T>();
+    private final Map<String,SimState<S>>  states    = new HashMap<String, SimState<S>>();
+
+    protected SimSupport(@Nonnull SimCloud cloud, @Nonnull String term) {
+        this.cloud = cloud;
+        this.term = term;
+    }
+
+    /**
+     * Copies the current state of a resource's state machine into the resource.
+     * @param resource the resource
+     * @param state its current state
+     */
+    protected abstract void setState(@Nonnull T resource, @Nonnull S state);
+
+    protected synchronized void add(@Nonnull String id, @Nonnull T resource, @Nullable S initial, @Nullable S target) {
+        resources.put(id, resource);
+        if( initial != null && target != null ) {
+            states.put(id, new SimState<S>(cloud.getConditions().getTransition(), initial, target));
+            setState(resource, initial);
+        }
+    }
+
+    private @Nullable T refresh(@Nonnull String id) {
+        T resource = resources.get(id);
+        SimState<S> state = states.get(id);
+
+        if( resource == null || state == null ) {
+            return resource;
+        }
+        if( state.isGone() ) {
+            resources.remove(id);
+            states.remove(id);
+            return null;
+        }
+        setState(resource, state.get());
+        return resource;
+    }
+
+    /**
+     * @param resource a resource
+     * @return a copy of the resource that later changes to it do not affect
+     */
+    protected @Nonnull T copy(@Nonnull T resource) {
+        synchronized( resource ) {
+            return SimCopy.copy(resource);
+        }
+    }
+
+    /**
+     * @param id the resource
+     * @return a copy of the resource or null if it does not exist
+     */
+    protected synchronized @Nullable T find(@Nullable String id) {
+        T resource = (id == null ? null : refresh(id));
+
+        return (resource == null ? null : copy(resource));
+    }
+
+    /**
+     * @return copies of all the resources
+     */
+    protected synchronized @Nonnull List<T> findAll() {
+        List<T> list = new ArrayList<T>();
+
+        for( T resource : listKept() ) {
+            list.add(copy(resource));
+        }
+        return list;
+    }
+
+    /**
+     * @return the resources themselves, for changing them
+     */
+    protected synchronized @Nonnull List<T> listKept() {
+        List<T> list = new ArrayList<T>();
+
+        for( String id : new ArrayList<String>(resources.keySet()) ) {
+            T resource = refresh(id);
+
+            if( resource != null ) {
+                list.add(resource);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * @param id the resource
+     * @return the resource itself, for changing it
+     * @throws CloudException the resource does not exist
+     */
+    protected synchronized @Nonnull T require(@Nullable String id) throws CloudException {
+        T resource = (id == null ? null : refresh(id));
+
+        if( resource == null ) {
+            throw new CloudException("No such " + term + ": " + id);
+        }
+        return resource;
+    }
+
+    /**
+     * @param id the resource
+     * @return the state machine of the resource
+     * @throws CloudException the resource does not exist or has no state
+     */
+    protected synchronized @Nonnull SimState<S> getState(@Nonnull String id) throws CloudException {
+        SimState<S> state = (refresh(id) == null ? null : states.get(id));
+
+        if( state == null ) {
+            throw new CloudException("No such " + term + ": " + id);
+        }
+        return state;
+    }
+
+    /**
+     * Moves a resource to a new state if it is currently in one of the allowed states.
+     * @param id the resource
+     * @param allowed the states from which the change may be made
+     * @param transitional the state while the resource changes
+     * @param target the state the resource reaches
+     * @throws CloudException the resource does not exist or is in the wrong state
+     */
+    protected synchronized void change(@Nonnull String id, @Nonnull List<S> allowed, @Nonnull S transitional, @Nonnull S target) throws CloudException {
+        SimState<S> state = getState(id);
+        S current = state.get();
+
+        if( state.isRemoved() || !allowed.contains(current) ) {
+            throw new CloudException("The " + term + " " + id + " cannot move to " + target + " while it is " + current);
+        }
+        state.change(transitional, target);
+    }
+
+    /**
+     * Removes a resource, either at once or, if it has a state, through the specified states.
+     * @param id the resource
+     * @param transitional the state while the resource is removed or null for resources without a state
+     * @param terminal the state the removed resource is reported in or null for resources without a state
+     * @throws CloudException the resource does not exist
+     */
+    protected synchronized void delete(@Nonnull String id, @Nullable S transitional, @Nullable S terminal) throws CloudException {
+        require(id);
+        SimState<S> state = states.get(id);
+
+        if( state == null || transitional == null || terminal == null ) {
+            resources.remove(id);
+            states.remove(id);
+        }
+        else if( !state.isRemoved() ) {
+            state.remove(transitional, terminal);
+        }
+    }
+
+    protected synchronized @Nonnull List<ResourceStatus> listStatus() {
+        List<ResourceStatus> status = new ArrayList<ResourceStatus>();
+
+        for( String id : new ArrayList<String>(resources.keySet()) ) {
+            // resources that are gone are dropped here just as they are from the full listings
+            if( refresh(id) != null ) {
+                SimState<S> state = states.get(id);
+
+                status.add(new ResourceStatus(id, state == null ? Boolean.TRUE : state.get()));
+            }
+        }
+        return status;
+    }
+
+    static void tag(@Nonnull Object resource, @Nullable Map<String,?> metaData) {
+        if( metaData != null && resource instanceof Taggable ) {
+            for( Map.Entry<String,?> entry : metaData.entrySet() ) {
+                ((Taggable)resource).setTag(entry.getKey(), String.valueOf(entry.getValue()));
+            }
+        }
+    }
+
+    public boolean isSubscribed() {
+        return true;
+    }
+
+    public void updateTags(@Nonnull String id, @Nonnull Tag... tags) throws CloudException {
+        T resource = require(id);
+
+        if( resource instanceof Taggable ) {
+            synchronized( resource ) {
+                for( Tag tag : tags ) {
+                    ((Taggable)resource).setTag(tag.getKey(), tag.getValue());
+                }
+            }
+        }
+    }
+
+    public void updateTags(@Nonnull String[] ids, @Nonnull Tag... tags) throws CloudException {
+        for( String id : ids ) {
+            updateTags(id, tags);
+        }
+    }
+
+    public void removeTags(@Nonnull String id, @Nonnull Tag... tags) throws CloudException {
+        T resource = require(id);
+
+        if( resource instanceof Taggable ) {
+            Map<String,String> current = ((Taggable)resource).getTags();
+
+            synchronized( resource ) {
+                for( Iterator<String> it = current.keySet().iterator(); it.hasNext(); ) {
+                    String key = it.next();
+
+                    for( Tag tag : tags ) {
+                        if( tag.getKey().equals(key) ) {
+                            it.remove();
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    public void removeTags(@Nonnull String[] ids, @Nonnull Tag... tags) throws CloudException {
+        for( String id : ids ) {
+            removeTags(id, tags);
+        }
+    }
+
+    public void setTags(@Nonnull String id, @Nonnull Tag... tags) throws CloudException {
+        T resource = require(id);
+
+        if( resource instanceof Taggable ) {
+            synchronized( resource ) {
+                ((Taggable)resource).getTags().clear();
+                updateTags(id, tags);
+            }
+        }
+    }
+
+    public void setTags(@Nonnull String[] ids, @Nonnull Tag... tags) throws CloudException {
+        for( String id : ids ) {
+            setTags(id, tags);
+        }
+    }
+}
@@ -0,0 +1,320 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.sim;
+
+import org.dasein.cloud.Capabilities;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.Requirement;
+import org.dasein.cloud.ResourceStatus;
+import org.dasein.cloud.compute.Architecture;
+import org.dasein.cloud.compute.MachineImage;
+import org.dasein.cloud.compute.VMFilterOptions;
+import org.dasein.cloud.compute.VMLaunchOptions;
+import org.dasein.cloud.compute.VirtualMachine;
+import org.dasein.cloud.compute.VirtualMachineCapabilities;
+import org.dasein.cloud.compute.VirtualMachineProduct;
+import org.dasein.cloud.compute.VirtualMachineProductFilterOptions;
+import org.dasein.cloud.compute.VmState;
+import org.dasein.cloud.network.RawAddress;
+import org.dasein.util.uom.storage.Gigabyte;
+import org.dasein.util.uom.storage.Megabyte;
+import org.dasein.util.uom.storage.Storage;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Simulates VirtualMachineSupport. Virtual machines launch through PENDING to RUNNING and can be stopped, started,
+ * rebooted, paused, suspended and terminated, each operation being allowed only from the states a real cloud would
+ * allow it from. Terminated virtual machines remain visible for one transition period.
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+class SimVirtualMachines extends SimSupport<VirtualMachine, VmState> {
+    static public class StateRules {
+        public boolean canPause(@Nonnull VmState state) {
+            return state.equals(VmState.RUNNING);
+        }
+
+        public boolean canReboot(@Nonnull VmState state) {
+            return state.equals(VmState.RUNNING);
+        }
+
+        public boolean canResume(@Nonnull VmState state) {
+            return state.equals(VmState.SUSPENDED);
+        }
+
+        public boolean canStart(@Nonnull VmState state) {
+            return state.equals(VmState.STOPPED);
+        }
+
+        public boolean canStop(@Nonnull VmState state) {
+            return state.equals(VmState.RUNNING);
+        }
+
+        public boolean canSuspend(@Nonnull VmState state) {
+            return state.equals(VmState.RUNNING);
+        }
+
+        public boolean canTerminate(@Nonnull VmState state) {
+            return !state.equals(VmState.TERMINATED);
+        }
+
+        public boolean canUnpause(@Nonnull VmState state) {
+            return state.equals(VmState.PAUSED);
+        }
+    }
+
+    static private @Nonnull VirtualMachineProduct product(@Nonnull String id, @Nonnegative int cpus, @Nonnegative int ramMb, @Nonnegative int diskGb, float rate) {
+        VirtualMachineProduct product = new VirtualMachineProduct();
+
+        product.setProviderProductId(id);
+        product.setName(id);
+        product.setDescription("Simulated " + id + " with " + cpus + " CPUs and " + ramMb + " MB of RAM");
+        product.setCpuCount(cpus);
+        product.setRamSize(new Storage<Megabyte>(ramMb, Storage.MEGABYTE));
+        product.setRootVolumeSize(new Storage<Gigabyte>(diskGb, Storage.GIGABYTE));
+        product.setStandardHourlyRate(rate);
+        product.setArchitectures(Architecture.I64);
+        return product;
+    }
+
+    private final StateRules                  rules    = new StateRules();
+    private final List<VirtualMachineProduct> products = new ArrayList<VirtualMachineProduct>();
+
+    private int addresses = 0;
+
+    SimVirtualMachines(@Nonnull SimCloud cloud) {
+        super(cloud, "virtual machine");
+        products.add(product("sim.small", 1, 1024, 10, 0.02f));
+        products.add(product("sim.medium", 2, 4096, 40, 0.08f));
+        products.add(product("sim.large", 4, 16384, 80, 0.32f));
+    }
+
+    @Override
+    protected void setState(@Nonnull VirtualMachine resource, @Nonnull VmState state) {
+        if( state.equals(VmState.TERMINATED) && resource.getTerminationTimestamp() < 1L ) {
+            resource.setTerminationTimestamp(System.currentTimeMillis());
+        }
+        resource.setCurrentState(state);
+    }
+
+    public @Nonnull VirtualMachineCapabilities getCapabilities() {
+        return cloud.capabilities(VirtualMachineCapabilities.class, rules,
+                "getMaximumVirtualMachineCount", Capabilities.LIMIT_UNLIMITED,
+                "identifyDataCenterLaunchRequirement", Requirement.OPTIONAL,
+                "identifyImageRequirement", Requirement.REQUIRED,
+                "identifySubnetRequirement", Requirement.OPTIONAL,
+                "identifyVlanRequirement", Requirement.OPTIONAL,
+                "isUserDataSupported", true,
+                "listSupportedArchitectures", Collections.singletonList(Architecture.I64),
+                "supportsPause", true,
+                "supportsReboot", true,
+                "supportsResume", true,
+                "supportsStart", true,
+                "supportsStop", true,
+                "supportsSuspend", true,
+                "supportsTerminate", true,
+                "supportsUnPause", true);
+    }
+
+    public @Nullable VirtualMachineProduct getProduct(@Nonnull String productId) {
+        for( VirtualMachineProduct product : products ) {
+            if( product.getProviderProductId().equals(productId) ) {
+                return product;
+            }
+        }
+        return null;
+    }
+
+    public @Nullable VirtualMachine getVirtualMachine(@Nonnull String vmId) {
+        return find(vmId);
+    }
+
+    public @Nonnull VirtualMachine launch(@Nonnull VMLaunchOptions options) throws CloudException {
+        MachineImage image = cloud.getImages().getImage(options.getMachineImageId());
+
+        if( image == null ) {
+            throw new CloudException("No such machine image: " + options.getMachineImageId());
+        }
+        if( getProduct(options.getStandardProductId()) == null ) {
+            throw new CloudException("No such product: " + options.getStandardProductId());
+        }
+        String dataCenterId = options.getDataCenterId();
+
+        if( dataCenterId == null ) {
+            dataCenterId = cloud.getDataCenterIds().get(0);
+        }
+        else if( !cloud.getDataCenterIds().contains(dataCenterId) ) {
+            throw new CloudException("No such data center: " + dataCenterId);
+        }
+        if( options.getFirewallIds() != null ) {
+            for( String firewallId : options.getFirewallIds() ) {
+                cloud.getFirewalls().require(firewallId);
+            }
+        }
+        String id = cloud.nextId("i");
+        VirtualMachine vm = new VirtualMachine();
+        int address;
+
+        synchronized( this ) {
+            address = ++addresses;
+        }
+        vm.setProviderVirtualMachineId(id);
+        vm.setName(options.getFriendlyName() == null ? options.getHostName() : options.getFriendlyName());
+        vm.setDescription(options.getDescription());
+        vm.setProviderOwnerId(cloud.getAccountNumber());
+        vm.setProviderRegionId(cloud.getRegionId());
+        vm.setProviderDataCenterId(dataCenterId);
+        vm.setProviderMachineImageId(image.getProviderMachineImageId());
+        vm.setPlatform(image.getPlatform());
+        vm.setArchitecture(image.getArchitecture());
+        vm.setProductId(options.getStandardProductId());
+        vm.setProviderVlanId(options.getVlanId());
+        vm.setProviderSubnetId(options.getSubnetId());
+        vm.setProviderFirewallIds(options.getFirewallIds());
+        vm.setPrivateAddresses(new RawAddress("10." + ((address >> 16) & 255) + "." + ((address >> 8) & 255) + "." + (address & 255)));
+        vm.setPublicAddresses(new RawAddress("203.0." + ((address >> 8) & 255) + "." + (address & 255)));
+        vm.setRootUser(image.getPlatform().isWindows() ? "Administrator" : "root");
+        vm.setCreationTimestamp(System.currentTimeMillis());
+        vm.setLastBootTimestamp(vm.getCreationTimestamp());
+        vm.setClonable(false);
+        vm.setImagable(true);
+        vm.setPausable(true);
+        vm.setPersistent(true);
+        vm.setRebootable(true);
+        tag(vm, options.getMetaData());
+        if( options.getLabels() != null ) {
+            vm.setLabels(options.getLabels());
+        }
+        add(id, vm, VmState.PENDING, VmState.RUNNING);
+        return copy(vm);
+    }
+
+    public @Nonnull Iterable<String> launchMany(@Nonnull VMLaunchOptions options, @Nonnegative int count) throws CloudException {
+        List<String> ids = new ArrayList<String>();
+
+        for( int i=0; i<count; i++ ) {
+            ids.add(launch(options).getProviderVirtualMachineId());
+        }
+        return ids;
+    }
+
+    public @Nonnull Iterable<String> listFirewalls(@Nonnull String vmId) throws CloudException {
+        String[] ids = require(vmId).getProviderFirewallIds();
+
+        return (ids == null ? new ArrayList<String>() : Arrays.asList(ids));
+    }
+
+    public @Nonnull Iterable<VirtualMachineProduct> listProducts(@Nullable VirtualMachineProductFilterOptions options, @Nullable Architecture architecture) {
+        List<VirtualMachineProduct> list = new ArrayList<VirtualMachineProduct>();
+
+        for( VirtualMachineProduct product : products ) {
+            if( architecture != null && !Arrays.asList(product.getArchitectures()).contains(architecture) ) {
+                continue;
+            }
+            if( options == null || options.matches(product) ) {
+                list.add(product);
+            }
+        }
+        return list;
+    }
+
+    public @Nonnull Iterable<VirtualMachineProduct> listProducts(@Nullable VirtualMachineProductFilterOptions options) {
+        return listProducts(options, null);
+    }
+
+    public @Nonnull Iterable<VirtualMachineProduct> listProducts(@Nonnull Architecture architecture) {
+        return listProducts(null, architecture);
+    }
+
+    public @Nonnull Iterable<VirtualMachineProduct> listProducts(@Nonnull String machineImageId) {
+        MachineImage image = cloud.getImages().getImage(machineImageId);
+
+        return (image == null ? new ArrayList<VirtualMachineProduct>() : listProducts(null, image.getArchitecture()));
+    }
+
+    public @Nonnull Iterable<ResourceStatus> listVirtualMachineStatus() {
+        return listStatus();
+    }
+
+    public @Nonnull Iterable<VirtualMachine> listVirtualMachines() {
+        return findAll();
+    }
+
+    public @Nonnull Iterable<VirtualMachine> listVirtualMachines(@Nullable VMFilterOptions options) {
+        List<VirtualMachine> list = new ArrayList<VirtualMachine>();
+
+        for( VirtualMachine vm : findAll() ) {
+            if( options == null || options.matches(vm) ) {
+                list.add(vm);
+            }
+        }
+        return list;
+    }
+
+    public void pause(@Nonnull String vmId) throws CloudException {
+        change(vmId, Collections.singletonList(VmState.RUNNING), VmState.PAUSING, VmState.PAUSED);
+    }
+
+    public void reboot(@Nonnull String vmId) throws CloudException {
+        change(vmId, Collections.singletonList(VmState.RUNNING), VmState.REBOOTING, VmState.RUNNING);
+        require(vmId).setLastBootTimestamp(System.currentTimeMillis());
+    }
+
+    public void resume(@Nonnull String vmId) throws CloudException {
+        change(vmId, Collections.singletonList(VmState.SUSPENDED), VmState.PENDING, VmState.RUNNING);
+    }
+
+    public void start(@Nonnull String vmId) throws CloudException {
+        change(vmId, Collections.singletonList(VmState.STOPPED), VmState.PENDING, VmState.RUNNING);
+        require(vmId).setLastBootTimestamp(System.currentTimeMillis());
+    }
+
+    public void stop(@Nonnull String vmId) throws CloudException {
+        stop(vmId, false);
+    }
+
+    public void stop(@Nonnull String vmId, boolean force) throws CloudException {
+        change(vmId, Collections.singletonList(VmState.RUNNING), VmState.STOPPING, VmState.STOPPED);
+    }
+
+    public void suspend(@Nonnull String vmId) throws CloudException {
+        change(vmId, Collections.singletonList(VmState.RUNNING), VmState.SUSPENDING, VmState.SUSPENDED);
+    }
+
+    public void terminate(@Nonnull String vmId) throws CloudException {
+        delete(vmId, VmState.STOPPING, VmState.TERMINATED);
+    }
+
+    public void terminate(@Nonnull String vmId, @Nullable String explanation) throws CloudException {
+        terminate(vmId);
+    }
+
+    public void unpause(@Nonnull String vmId) throws CloudException {
+        change(vmId, Collections.singletonList(VmState.PAUSED), VmState.PENDING, VmState.RUNNING);
+    }
+}
@@ -0,0 +1,223 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.sim;
+
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.Requirement;
+import org.dasein.cloud.ResourceStatus;
+import org.dasein.cloud.compute.VirtualMachine;
+import org.dasein.cloud.compute.VmState;
+import org.dasein.cloud.network.IPVersion;
+import org.dasein.cloud.network.Subnet;
+import org.dasein.cloud.network.SubnetCreateOptions;
+import org.dasein.cloud.network.SubnetState;
+import org.dasein.cloud.network.VLAN;
+import org.dasein.cloud.network.VLANCapabilities;
+import org.dasein.cloud.network.VLANState;
+import org.dasein.cloud.network.VlanCreateOptions;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Simulates VLANSupport with VLANs, subnets constrained to a data center and internet gateways. Routing tables and
+ * network interfaces are not supported. A VLAN cannot be removed while it still has subnets, virtual machines or
+ * an internet gateway, and a subnet cannot be removed while virtual machines are launched into it.
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+class SimVlans extends SimSupport<VLAN, VLANState> {
+    static private class Subnets extends SimSupport<Subnet, SubnetState> {
+        Subnets(@Nonnull SimCloud cloud) {
+            super(cloud, "subnet");
+        }
+
+        @Override
+        protected void setState(@Nonnull Subnet resource, @Nonnull SubnetState state) {
+            resource.setCurrentState(state);
+        }
+    }
+
+    private final Subnets            subnets  = new Subnets(cloud);
+    private final Map<String,String> gateways = new HashMap<String, String>();
+
+    SimVlans(@Nonnull SimCloud cloud) {
+        super(cloud, "VLAN");
+    }
+
+    @Override
+    protected void setState(@Nonnull VLAN resource, @Nonnull VLANState state) {
+        resource.setCurrentState(state);
+    }
+
+    public @Nonnull String createInternetGateway(@Nonnull String vlanId) throws CloudException {
+        require(vlanId);
+        synchronized( gateways ) {
+            if( gateways.containsKey(vlanId) ) {
+                throw new CloudException("The VLAN " + vlanId + " already has an internet gateway");
+            }
+            String id = cloud.nextId("igw");
+
+            gateways.put(vlanId, id);
+            return id;
+        }
+    }
+
+    public @Nonnull Subnet createSubnet(@Nonnull SubnetCreateOptions options) throws CloudException {
+        VLAN vlan = require(options.getProviderVlanId());
+        String dataCenterId = options.getProviderDataCenterId();
+
+        if( dataCenterId == null ) {
+            dataCenterId = cloud.getDataCenterIds().get(0);
+        }
+        String id = cloud.nextId("subnet");
+        Subnet subnet = Subnet.getInstance(cloud.getAccountNumber(), cloud.getRegionId(), vlan.getProviderVlanId(), id, SubnetState.PENDING, options.getName(), options.getDescription(), options.getCidr());
+
+        subnet.constrainedToDataCenter(dataCenterId);
+        subnet.supportingTraffic(IPVersion.IPV4);
+        subnet.setAvailableIpAddresses(250);
+        tag(subnet, options.getMetaData());
+        subnets.add(id, subnet, SubnetState.PENDING, SubnetState.AVAILABLE);
+        return subnets.copy(subnet);
+    }
+
+    public @Nonnull Subnet createSubnet(@Nonnull String cidr, @Nonnull String inProviderVlanId, @Nonnull String name, @Nonnull String description) throws CloudException {
+        return createSubnet(SubnetCreateOptions.getInstance(inProviderVlanId, cidr, name, description));
+    }
+
+    public @Nonnull VLAN createVlan(@Nonnull VlanCreateOptions options) throws CloudException {
+        String id = cloud.nextId("vlan");
+        VLAN vlan = new VLAN();
+
+        vlan.setProviderVlanId(id);
+        vlan.setName(options.getName());
+        vlan.setDescription(options.getDescription());
+        vlan.setCidr(options.getCidr());
+        vlan.setDomainName(options.getDomain());
+        vlan.setDnsServers(options.getDnsServers());
+        vlan.setNtpServers(options.getNtpServers());
+        vlan.setProviderOwnerId(cloud.getAccountNumber());
+        vlan.setProviderRegionId(cloud.getRegionId());
+        vlan.setSupportedTraffic(IPVersion.IPV4);
+        add(id, vlan, VLANState.PENDING, VLANState.AVAILABLE);
+        return copy(vlan);
+    }
+
+    public @Nonnull VLAN createVlan(@Nonnull String cidr, @Nonnull String name, @Nonnull String description, @Nullable String domainName, @Nullable String[] dnsServers, @Nullable String[] ntpServers) throws CloudException {
+        return createVlan(VlanCreateOptions.getInstance(name, description, cidr, domainName, dnsServers, ntpServers));
+    }
+
+    public @Nullable String getAttachedInternetGatewayId(@Nonnull String vlanId) {
+        synchronized( gateways ) {
+            return gateways.get(vlanId);
+        }
+    }
+
+    public @Nonnull VLANCapabilities getCapabilities() {
+        return cloud.capabilities(VLANCapabilities.class, null,
+                "allowsNewSubnetCreation", true,
+                "allowsNewVlanCreation", true,
+                "getMaxVlanCount", 5,
+                "getRoutingTableSupport", Requirement.NONE,
+                "getSubnetSupport", Requirement.OPTIONAL,
+                "identifySubnetDCRequirement", Requirement.OPTIONAL,
+                "isSubnetDataCenterConstrained", true,
+                "listSupportedIPVersions", Collections.singletonList(IPVersion.IPV4),
+                "supportsInternetGatewayCreation", true);
+    }
+
+    public @Nullable Subnet getSubnet(@Nonnull String subnetId) {
+        return subnets.find(subnetId);
+    }
+
+    public @Nullable VLAN getVlan(@Nonnull String vlanId) {
+        return find(vlanId);
+    }
+
+    public boolean isConnectedViaInternetGateway(@Nonnull String vlanId) {
+        return (getAttachedInternetGatewayId(vlanId) != null);
+    }
+
+    public @Nonnull Iterable<Subnet> listSubnets(@Nonnull String vlanId) {
+        List<Subnet> list = new ArrayList<Subnet>();
+
+        for( Subnet subnet : subnets.findAll() ) {
+            if( vlanId.equals(subnet.getProviderVlanId()) ) {
+                list.add(subnet);
+            }
+        }
+        return list;
+    }
+
+    public @Nonnull Iterable<ResourceStatus> listVlanStatus() {
+        return listStatus();
+    }
+
+    public @Nonnull Iterable<VLAN> listVlans() {
+        return findAll();
+    }
+
+    public void removeInternetGateway(@Nonnull String vlanId) throws CloudException {
+        synchronized( gateways ) {
+            if( gateways.remove(vlanId) == null ) {
+                throw new CloudException("The VLAN " + vlanId + " has no internet gateway");
+            }
+        }
+    }
+
+    public void removeInternetGatewayById(@Nonnull String gatewayId) throws CloudException {
+        synchronized( gateways ) {
+            if( !gateways.values().remove(gatewayId) ) {
+                throw new CloudException("No such internet gateway: " + gatewayId);
+            }
+        }
+    }
+
+    public void removeSubnet(@Nonnull String subnetId) throws CloudException {
+        for( VirtualMachine vm : cloud.getVirtualMachines().findAll() ) {
+            if( subnetId.equals(vm.getProviderSubnetId()) && !vm.getCurrentState().equals(VmState.TERMINATED) ) {
+                throw new CloudException("The subnet " + subnetId + " still has virtual machines");
+            }
+        }
+        subnets.delete(subnetId, null, null);
+    }
+
+    public void removeVlan(@Nonnull String vlanId) throws CloudException {
+        require(vlanId);
+        if( listSubnets(vlanId).iterator().hasNext() ) {
+            throw new CloudException("The VLAN " + vlanId + " still has subnets");
+        }
+        if( isConnectedViaInternetGateway(vlanId) ) {
+            throw new CloudException("The VLAN " + vlanId + " still has an internet gateway");
+        }
+        for( VirtualMachine vm : cloud.getVirtualMachines().findAll() ) {
+            if( vlanId.equals(vm.getProviderVlanId()) && !vm.getCurrentState().equals(VmState.TERMINATED) ) {
+                throw new CloudException("The VLAN " + vlanId + " still has virtual machines");
+            }
+        }
+        delete(vlanId, null, null);
+    }
+}
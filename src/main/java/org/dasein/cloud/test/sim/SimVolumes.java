@@ -0,0 +1,201 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.sim;
+
+import org.dasein.cloud.Capabilities;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.Requirement;
+import org.dasein.cloud.ResourceStatus;
+import org.dasein.cloud.compute.Platform;
+import org.dasein.cloud.compute.VirtualMachine;
+import org.dasein.cloud.compute.VmState;
+import org.dasein.cloud.compute.Volume;
+import org.dasein.cloud.compute.VolumeCapabilities;
+import org.dasein.cloud.compute.VolumeCreateOptions;
+import org.dasein.cloud.compute.VolumeFilterOptions;
+import org.dasein.cloud.compute.VolumeFormat;
+import org.dasein.cloud.compute.VolumeProduct;
+import org.dasein.cloud.compute.VolumeState;
+import org.dasein.cloud.compute.VolumeType;
+import org.dasein.util.uom.storage.Gigabyte;
+import org.dasein.util.uom.storage.Storage;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Simulates VolumeSupport. Volumes are created through PENDING to AVAILABLE, may be attached to running or stopped
+ * virtual machines and can only be removed once they are detached.
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+class SimVolumes extends SimSupport<Volume, VolumeState> {
+    static public class StateRules {
+        public boolean canAttach(@Nonnull VmState state) {
+            return (state.equals(VmState.RUNNING) || state.equals(VmState.STOPPED));
+        }
+
+        public boolean canDetach(@Nonnull VmState state) {
+            return (state.equals(VmState.RUNNING) || state.equals(VmState.STOPPED));
+        }
+
+        public @Nonnull Iterable<String> listPossibleDeviceIds(@Nonnull Platform platform) {
+            if( platform.isWindows() ) {
+                return Arrays.asList("xvdf", "xvdg", "xvdh", "xvdi", "xvdj");
+            }
+            return Arrays.asList("/dev/sdf", "/dev/sdg", "/dev/sdh", "/dev/sdi", "/dev/sdj");
+        }
+    }
+
+    private final StateRules          rules    = new StateRules();
+    private final List<VolumeProduct> products = new ArrayList<VolumeProduct>();
+
+    SimVolumes(@Nonnull SimCloud cloud) {
+        super(cloud, "volume");
+        products.add(VolumeProduct.getInstance("sim.hdd", "HDD", "Simulated magnetic storage", VolumeType.HDD));
+        products.add(VolumeProduct.getInstance("sim.ssd", "SSD", "Simulated solid state storage", VolumeType.SSD));
+    }
+
+    @Override
+    protected void setState(@Nonnull Volume resource, @Nonnull VolumeState state) {
+        resource.setCurrentState(state);
+    }
+
+    public void attach(@Nonnull String volumeId, @Nonnull String toServer, @Nonnull String deviceId) throws CloudException {
+        VirtualMachine vm = cloud.getVirtualMachines().require(toServer);
+        Volume volume = require(volumeId);
+
+        if( !rules.canAttach(vm.getCurrentState()) ) {
+            throw new CloudException("Unable to attach a volume to " + toServer + " while it is " + vm.getCurrentState());
+        }
+        synchronized( this ) {
+            if( volume.getProviderVirtualMachineId() != null || !volume.getCurrentState().equals(VolumeState.AVAILABLE) ) {
+                throw new CloudException("The volume " + volumeId + " is not available for attachment");
+            }
+            if( !volume.getProviderDataCenterId().equals(vm.getProviderDataCenterId()) ) {
+                throw new CloudException("The volume " + volumeId + " is not in the data center of " + toServer);
+            }
+            volume.setProviderVirtualMachineId(toServer);
+            volume.setDeviceId(deviceId);
+        }
+    }
+
+    public @Nonnull String createVolume(@Nonnull VolumeCreateOptions options) throws CloudException {
+        String dataCenterId = options.getDataCenterId();
+
+        if( dataCenterId == null ) {
+            dataCenterId = cloud.getDataCenterIds().get(0);
+        }
+        Storage<Gigabyte> size = options.getVolumeSize();
+
+        if( size == null || size.intValue() < 1 ) {
+            throw new CloudException("A volume must be at least 1 GB");
+        }
+        String id = cloud.nextId("vol");
+        Volume volume = new Volume();
+
+        volume.setProviderVolumeId(id);
+        volume.setName(options.getName());
+        volume.setDescription(options.getDescription());
+        volume.setProviderRegionId(cloud.getRegionId());
+        volume.setProviderDataCenterId(dataCenterId);
+        volume.setProviderProductId(options.getVolumeProductId());
+        volume.setProviderSnapshotId(options.getSnapshotId());
+        volume.setProviderVlanId(options.getVlanId());
+        volume.setSize(size);
+        volume.setFormat(options.getFormat() == null ? VolumeFormat.BLOCK : options.getFormat());
+        volume.setType(VolumeType.HDD);
+        volume.setCreationTimestamp(System.currentTimeMillis());
+        tag(volume, options.getMetaData());
+        add(id, volume, VolumeState.PENDING, VolumeState.AVAILABLE);
+        if( options.getVirtualMachineId() != null && options.getDeviceId() != null ) {
+            // a volume created for a virtual machine is attached to it as part of the creation
+            getState(id).change(VolumeState.AVAILABLE, VolumeState.AVAILABLE);
+            attach(id, options.getVirtualMachineId(), options.getDeviceId());
+        }
+        return id;
+    }
+
+    public void detach(@Nonnull String volumeId) throws CloudException {
+        detach(volumeId, false);
+    }
+
+    public void detach(@Nonnull String volumeId, boolean force) throws CloudException {
+        Volume volume = require(volumeId);
+
+        synchronized( this ) {
+            if( volume.getProviderVirtualMachineId() == null ) {
+                throw new CloudException("The volume " + volumeId + " is not attached");
+            }
+            volume.setProviderVirtualMachineId(null);
+            volume.setDeviceId(null);
+        }
+    }
+
+    public @Nonnull VolumeCapabilities getCapabilities() {
+        return cloud.capabilities(VolumeCapabilities.class, rules,
+                "getMaximumVolumeCount", Capabilities.LIMIT_UNLIMITED,
+                "getMaximumVolumeSize", new Storage<Gigabyte>(1024, Storage.GIGABYTE),
+                "getMinimumVolumeSize", new Storage<Gigabyte>(1, Storage.GIGABYTE),
+                "getVolumeProductRequirement", Requirement.OPTIONAL,
+                "isVolumeSizeDeterminedByProduct", false,
+                "listSupportedFormats", Collections.singletonList(VolumeFormat.BLOCK),
+                "requiresVMOnCreate", Requirement.NONE);
+    }
+
+    public @Nullable Volume getVolume(@Nonnull String volumeId) {
+        return find(volumeId);
+    }
+
+    public @Nonnull Iterable<VolumeProduct> listVolumeProducts() {
+        return products;
+    }
+
+    public @Nonnull Iterable<ResourceStatus> listVolumeStatus() {
+        return listStatus();
+    }
+
+    public @Nonnull Iterable<Volume> listVolumes() {
+        return findAll();
+    }
+
+    public @Nonnull Iterable<Volume> listVolumes(@Nullable VolumeFilterOptions options) {
+        List<Volume> list = new ArrayList<Volume>();
+
+        for( Volume volume : findAll() ) {
+            if( options == null || options.matches(volume) ) {
+                list.add(volume);
+            }
+        }
+        return list;
+    }
+
+    public void remove(@Nonnull String volumeId) throws CloudException {
+        if( require(volumeId).getProviderVirtualMachineId() != null ) {
+            throw new CloudException("The volume " + volumeId + " is still attached");
+        }
+        delete(volumeId, VolumeState.DELETED, VolumeState.DELETED);
+    }
+}
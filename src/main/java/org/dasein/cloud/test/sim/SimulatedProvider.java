@@ -0,0 +1,127 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.sim;
+
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.ContextRequirements;
+import org.dasein.cloud.ProviderContext;
+import org.dasein.cloud.admin.AdminServices;
+import org.dasein.cloud.ci.CIServices;
+import org.dasein.cloud.compute.ComputeServices;
+import org.dasein.cloud.dc.DataCenterServices;
+import org.dasein.cloud.identity.IdentityServices;
+import org.dasein.cloud.network.NetworkServices;
+import org.dasein.cloud.platform.PlatformServices;
+import org.dasein.cloud.storage.StorageServices;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * In-memory cloud provider for running the suite without a real cloud. It simulates compute, network, platform and
+ * storage services with the resource state machines of a typical cloud, and adds the latency, jitter and throttling
+ * configured in {@link SimConditions} to every call. Select it with
+ * <pre>
+ *     -DproviderClass=org.dasein.cloud.test.sim.SimulatedProvider -Daccount=sim -DregionId=sim-1
+ * </pre>
+ * No credentials are needed. Providers connected to the same account and region share their resources.
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+public class SimulatedProvider extends CloudProvider {
+    public SimulatedProvider() { }
+
+    private @Nonnull SimCloud getCloud() {
+        ProviderContext ctx = getContext();
+
+        if( ctx == null ) {
+            throw new IllegalStateException("The simulated provider is not connected");
+        }
+        return SimCloud.getInstance(ctx);
+    }
+
+    @Override
+    public @Nullable AdminServices getAdminServices() {
+        return null;
+    }
+
+    @Override
+    public @Nullable CIServices getCIServices() {
+        return null;
+    }
+
+    @Override
+    public @Nonnull String getCloudName() {
+        return "Simulated";
+    }
+
+    @Override
+    public @Nonnull ComputeServices getComputeServices() {
+        return getCloud().getComputeServices();
+    }
+
+    @Override
+    public @Nonnull ContextRequirements getContextRequirements() {
+        return new ContextRequirements();
+    }
+
+    @Override
+    public @Nonnull DataCenterServices getDataCenterServices() {
+        return getCloud().getDataCenterServices();
+    }
+
+    @Override
+    public @Nullable IdentityServices getIdentityServices() {
+        return null;
+    }
+
+    @Override
+    public @Nonnull NetworkServices getNetworkServices() {
+        return getCloud().getNetworkServices();
+    }
+
+    @Override
+    public @Nonnull PlatformServices getPlatformServices() {
+        return getCloud().getPlatformServices();
+    }
+
+    @Override
+    public @Nonnull String getProviderName() {
+        return "Dasein Simulator";
+    }
+
+    @Override
+    public @Nonnull StorageServices getStorageServices() {
+        return getCloud().getStorageServices();
+    }
+
+    @Override
+    public boolean hasStorageServices() {
+        return true;
+    }
+
+    @Override
+    public @Nullable String testContext() {
+        ProviderContext ctx = getContext();
+
+        return (ctx == null ? null : getCloud().getAccountNumber());
+    }
+}
@@ -27,6 +27,12 @@ import org.dasein.cloud.storage.Blob;
 import org.dasein.cloud.storage.BlobStoreSupport;
 import org.dasein.cloud.storage.StorageServices;
 import org.dasein.cloud.test.DaseinTestManager;
+import org.dasein.cloud.test.fixture.FixtureRegistry;
+import org.dasein.cloud.test.fixture.ResourceJournal;
+import org.dasein.cloud.test.fixture.ResourceKind;
+import org.dasein.cloud.test.metrics.Timeline;
+import org.dasein.cloud.test.runner.Shard;
+import org.dasein.cloud.test.teardown.TeardownEngine;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -35,9 +41,10 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.Callable;
 
 /**
  * [Class Documentation]
@@ -50,10 +57,10 @@ public class StorageResources {
 
     static private final Random random = new Random();
 
-    private final HashMap<String,Blob> testChildBuckets = new HashMap<String, Blob>();
-    private final HashMap<String,Blob> testChildObjects = new HashMap<String, Blob>();
-    private final HashMap<String,Blob> testRootBuckets = new HashMap<String, Blob>();
-    private final HashMap<String,Blob> testRootObjects = new HashMap<String, Blob>();
+    private final FixtureRegistry<Blob> testChildBuckets = new FixtureRegistry<Blob>(ResourceKind.CHILD_BUCKET);
+    private final FixtureRegistry<Blob> testChildObjects = new FixtureRegistry<Blob>(ResourceKind.OBJECT);
+    private final FixtureRegistry<Blob> testRootBuckets = new FixtureRegistry<Blob>(ResourceKind.BUCKET);
+    private final FixtureRegistry<Blob> testRootObjects = new FixtureRegistry<Blob>(ResourceKind.OBJECT);
 
     private CloudProvider provider;
 
@@ -62,109 +69,102 @@ public class StorageResources {
     }
 
     public int close() {
-        int count = 0;
+        TeardownEngine teardown = new TeardownEngine();
+
+        close(teardown);
+        int count = teardown.run();
+
+        provider.close();
+        return count;
+    }
+
+    /**
+     * Registers the storage resources a crashed run left behind so that clean up tears them down.
+     * @param orphans the orphaned resource IDs by kind
+     */
+    public void recover(@Nonnull Map<ResourceKind,List<String>> orphans) {
+        StorageServices services = provider.getStorageServices();
+        BlobStoreSupport support = (services == null ? null : services.getBlobStoreSupport());
+
+        if( support == null ) {
+            return;
+        }
+        recover(support, orphans.get(ResourceKind.OBJECT), testRootObjects);
+        recover(support, orphans.get(ResourceKind.CHILD_BUCKET), testChildBuckets);
+        recover(support, orphans.get(ResourceKind.BUCKET), testRootBuckets);
+    }
+
+    private void recover(@Nonnull BlobStoreSupport support, @Nullable List<String> ids, @Nonnull FixtureRegistry<Blob> registry) {
+        if( ids == null ) {
+            return;
+        }
+        for( String id : ids ) {
+            try {
+                Blob blob;
+
+                if( registry.getKind().equals(ResourceKind.OBJECT) ) {
+                    int idx = id.lastIndexOf('/');
+
+                    blob = (idx < 0 ? null : support.getObject(id.substring(0, idx), id.substring(idx + 1)));
+                }
+                else {
+                    blob = support.getBucket(id);
+                }
+                if( blob != null ) {
+                    registry.register(DaseinTestManager.REMOVED, blob);
+                }
+                else if( ResourceJournal.getInstance() != null ) {
+                    // already gone, so there is nothing for the teardown to mark
+                    ResourceJournal.getInstance().removed(registry.getKind(), id);
+                }
+            }
+            catch( Throwable t ) {
+                logger.warn("Unable to recover " + registry.getKind() + " " + id + ": " + t.getMessage());
+            }
+        }
+    }
 
+    /**
+     * Registers every stateful storage resource provisioned during the tests for removal.
+     * @param teardown the engine that removes the resources
+     */
+    public void close(@Nonnull TeardownEngine teardown) {
         try {
             StorageServices services = provider.getStorageServices();
 
             if( services != null ) {
-                BlobStoreSupport support = services.getBlobStoreSupport();
+                final BlobStoreSupport support = services.getBlobStoreSupport();
 
                 if( support != null ) {
                     for( Map.Entry<String,Blob> entry : testRootObjects.entrySet() ) {
                         if( !entry.getKey().equals(DaseinTestManager.STATELESS) ) {
-                            try {
-                                String bucket = entry.getValue().getBucketName();
-                                String object = entry.getValue().getObjectName();
-
-                                if( object == null ) {
-                                    continue; // not possible
-                                }
-                                Blob blob = support.getObject(bucket, object);
-
-                                if( blob != null ) {
-                                    support.removeObject(bucket, object);
-                                    count++;
-                                }
-                                else {
-                                    count++;
-                                }
-                            }
-                            catch( Throwable t ) {
-                                logger.warn("Failed to remove test root object " + entry.getValue() + ": " + t.getMessage());
-                            }
+                            close(teardown, support, entry.getValue());
                         }
                     }
-
                     for( Map.Entry<String,Blob> entry : testChildObjects.entrySet() ) {
                         if( !entry.getKey().equals(DaseinTestManager.STATELESS) ) {
-                            try {
-                                String bucket = entry.getValue().getBucketName();
-                                String object = entry.getValue().getObjectName();
-
-                                if( object == null ) {
-                                    continue; // not possible
-                                }
-                                Blob blob = support.getObject(bucket, object);
-
-                                if( blob != null ) {
-                                    support.removeObject(bucket, object);
-                                    count++;
-                                }
-                                else {
-                                    count++;
-                                }
-                            }
-                            catch( Throwable t ) {
-                                logger.warn("Failed to remove test child object " + entry.getValue() + ": " + t.getMessage());
-                            }
+                            close(teardown, support, entry.getValue());
                         }
                     }
                     for( Map.Entry<String,Blob> entry : testChildBuckets.entrySet() ) {
                         if( !entry.getKey().equals(DaseinTestManager.STATELESS) ) {
-                            try {
-                                String bucket = entry.getValue().getBucketName();
+                            String bucket = entry.getValue().getBucketName();
 
+                            if( bucket == null ) {
+                                bucket = entry.getValue().getObjectName();
                                 if( bucket == null ) {
-                                    bucket = entry.getValue().getObjectName();
-                                    if( bucket == null ) {
-                                        continue; // not possible
-                                    }
-                                }
-                                else {
-                                    bucket = bucket + "/" + entry.getValue().getObjectName();
-                                }
-                                Blob blob = support.getBucket(bucket);
-
-                                if( blob != null ) {
-                                    support.removeBucket(bucket);
-                                    count++;
-                                }
-                                else {
-                                    count++;
+                                    continue; // not possible
                                 }
                             }
-                            catch( Throwable t ) {
-                                logger.warn("Failed to remove test child bucket " + entry.getValue() + ": " + t.getMessage());
+                            else {
+                                bucket = bucket + "/" + entry.getValue().getObjectName();
                             }
+                            close(teardown, support, ResourceKind.CHILD_BUCKET, bucket);
                         }
                     }
                     for( Map.Entry<String,Blob> entry : testRootBuckets.entrySet() ) {
                         if( !entry.getKey().equals(DaseinTestManager.STATELESS) ) {
-                            try {
-                                Blob blob = support.getBucket(entry.getValue().getBucketName());
-
-                                if( blob != null ) {
-                                    support.removeBucket(entry.getValue().getBucketName());
-                                    count++;
-                                }
-                                else {
-                                    count++;
-                                }
-                            }
-                            catch( Throwable t ) {
-                                logger.warn("Failed to remove test root bucket " + entry.getValue() + ": " + t.getMessage());
-                            }
+                            close(teardown, support, ResourceKind.BUCKET, entry.getValue().getBucketName());
                         }
                     }
                 }
@@ -173,8 +173,40 @@ public class StorageResources {
         catch( Throwable ignore ) {
             // ignore
         }
-        provider.close();
-        return count;
+    }
+
+    private void close(@Nonnull TeardownEngine teardown, @Nonnull final BlobStoreSupport support, @Nonnull Blob blob) {
+        final String bucket = blob.getBucketName();
+        final String object = blob.getObjectName();
+
+        if( object == null ) {
+            return; // not possible
+        }
+        teardown.add(ResourceKind.OBJECT, bucket + "/" + object, new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                Blob b = support.getObject(bucket, object);
+
+                if( b != null ) {
+                    support.removeObject(bucket, object);
+                }
+                return true;
+            }
+        });
+    }
+
+    private void close(@Nonnull TeardownEngine teardown, @Nonnull final BlobStoreSupport support, @Nonnull ResourceKind kind, @Nonnull final String bucket) {
+        teardown.add(kind, bucket, new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                Blob b = support.getBucket(bucket);
+
+                if( b != null ) {
+                    support.removeBucket(bucket);
+                }
+                return true;
+            }
+        });
     }
 
     public int report() {
@@ -218,173 +250,181 @@ public class StorageResources {
     }
 
     public @Nullable Blob getTestRootBucket(@Nonnull String label, boolean provisionIfNull, @Nullable String namePrefix) {
-        if( label.equals(DaseinTestManager.STATELESS) ) {
-            for( Map.Entry<String,Blob> entry : testRootBuckets.entrySet() ) {
-                if( !entry.getKey().startsWith(DaseinTestManager.REMOVED) ) {
-                    Blob bucket = entry.getValue();
-
-                    if( bucket != null ) {
-                        return bucket;
+        synchronized( testRootBuckets.lock(label) ) {
+            if( label.equals(DaseinTestManager.STATELESS) ) {
+                for( Map.Entry<String,Blob> entry : testRootBuckets.entrySet() ) {
+                    if( !entry.getKey().startsWith(DaseinTestManager.REMOVED) ) {
+                        Blob bucket = entry.getValue();
+
+                        if( bucket != null ) {
+                            return bucket;
+                        }
                     }
                 }
+                return findStatelessRootBucket();
             }
-            return findStatelessRootBucket();
-        }
-        Blob bucket = testRootBuckets.get(label);
+            Blob bucket = testRootBuckets.get(label);
 
-        if( bucket != null ) {
-            return bucket;
-        }
-        if( provisionIfNull ) {
-            StorageServices services = provider.getStorageServices();
+            if( bucket != null ) {
+                return bucket;
+            }
+            if( provisionIfNull ) {
+                StorageServices services = provider.getStorageServices();
 
-            if( services != null ) {
-                BlobStoreSupport support = services.getBlobStoreSupport();
+                if( services != null ) {
+                    BlobStoreSupport support = services.getBlobStoreSupport();
 
-                if( support != null ) {
-                    try {
-                        return provisionRootBucket(support, label, namePrefix == null ? "dsnbkt" : namePrefix, false, true);
-                    }
-                    catch( Throwable t ) {
-                        logger.warn("Unable to provision root test bucket: " + t.getMessage());
+                    if( support != null ) {
+                        try {
+                            return provisionRootBucket(support, label, namePrefix == null ? "dsnbkt" : namePrefix, false, true);
+                        }
+                        catch( Throwable t ) {
+                            logger.warn("Unable to provision root test bucket: " + t.getMessage());
+                        }
                     }
                 }
             }
+            return null;
         }
-        return null;
     }
 
     public @Nullable Blob getTestChildBucket(@Nonnull String label, boolean provisionIfNull, @Nullable String parentBucket, @Nullable String namePrefix) {
-        if( label.equals(DaseinTestManager.STATELESS) ) {
-            for( Map.Entry<String,Blob> entry : testChildBuckets.entrySet() ) {
-                if( !entry.getKey().startsWith(DaseinTestManager.REMOVED) ) {
-                    Blob bucket = entry.getValue();
-
-                    if( bucket != null ) {
-                        return bucket;
+        synchronized( testChildBuckets.lock(label) ) {
+            if( label.equals(DaseinTestManager.STATELESS) ) {
+                for( Map.Entry<String,Blob> entry : testChildBuckets.entrySet() ) {
+                    if( !entry.getKey().startsWith(DaseinTestManager.REMOVED) ) {
+                        Blob bucket = entry.getValue();
+
+                        if( bucket != null ) {
+                            return bucket;
+                        }
                     }
                 }
+                return findStatelessChildBucket();
             }
-            return findStatelessChildBucket();
-        }
-        Blob bucket = testChildBuckets.get(label);
+            Blob bucket = testChildBuckets.get(label);
 
-        if( bucket != null ) {
-            return bucket;
-        }
-        if( provisionIfNull ) {
-            StorageServices services = provider.getStorageServices();
+            if( bucket != null ) {
+                return bucket;
+            }
+            if( provisionIfNull ) {
+                StorageServices services = provider.getStorageServices();
 
-            if( services != null ) {
-                BlobStoreSupport support = services.getBlobStoreSupport();
+                if( services != null ) {
+                    BlobStoreSupport support = services.getBlobStoreSupport();
 
-                if( support != null ) {
-                    try {
-                        if( parentBucket == null ) {
-                            Blob parent = getTestRootBucket(label, true, null);
-
-                            if( parent == null ) {
-                                return null;
-                            }
-                            parentBucket = parent.getBucketName();
+                    if( support != null ) {
+                        try {
                             if( parentBucket == null ) {
-                                return null;
+                                Blob parent = getTestRootBucket(label, true, null);
+
+                                if( parent == null ) {
+                                    return null;
+                                }
+                                parentBucket = parent.getBucketName();
+                                if( parentBucket == null ) {
+                                    return null;
+                                }
                             }
+                            return provisionChildBucket(support, label, parentBucket, namePrefix == null ? "dsnbkt" : namePrefix, false, true);
+                        }
+                        catch( Throwable ignore ) {
+                            // ignore
                         }
-                        return provisionChildBucket(support, label, parentBucket, namePrefix == null ? "dsnbkt" : namePrefix, false, true);
-                    }
-                    catch( Throwable ignore ) {
-                        // ignore
                     }
                 }
             }
+            return null;
         }
-        return null;
     }
 
     public @Nullable Blob getTestRootObject(@Nonnull String label, boolean provisionIfNull, @Nullable String namePrefix) {
-        if( label.equals(DaseinTestManager.STATELESS) ) {
-            for( Map.Entry<String,Blob> entry : testRootObjects.entrySet() ) {
-                if( !entry.getKey().startsWith(DaseinTestManager.REMOVED) ) {
-                    Blob bucket = entry.getValue();
-
-                    if( bucket != null ) {
-                        return bucket;
+        synchronized( testRootObjects.lock(label) ) {
+            if( label.equals(DaseinTestManager.STATELESS) ) {
+                for( Map.Entry<String,Blob> entry : testRootObjects.entrySet() ) {
+                    if( !entry.getKey().startsWith(DaseinTestManager.REMOVED) ) {
+                        Blob bucket = entry.getValue();
+
+                        if( bucket != null ) {
+                            return bucket;
+                        }
                     }
                 }
+                return findStatelessRootObject();
             }
-            return findStatelessRootObject();
-        }
-        Blob object = testRootObjects.get(label);
+            Blob object = testRootObjects.get(label);
 
-        if( object != null ) {
-            return object;
-        }
-        if( provisionIfNull ) {
-            StorageServices services = provider.getStorageServices();
+            if( object != null ) {
+                return object;
+            }
+            if( provisionIfNull ) {
+                StorageServices services = provider.getStorageServices();
 
-            if( services != null ) {
-                BlobStoreSupport support = services.getBlobStoreSupport();
+                if( services != null ) {
+                    BlobStoreSupport support = services.getBlobStoreSupport();
 
-                if( support != null ) {
-                    try {
-                        return provisionRootObject(support, label, namePrefix == null ? "dsnobj" : namePrefix);
-                    }
-                    catch( Throwable ignore ) {
-                        // ignore
+                    if( support != null ) {
+                        try {
+                            return provisionRootObject(support, label, namePrefix == null ? "dsnobj" : namePrefix);
+                        }
+                        catch( Throwable ignore ) {
+                            // ignore
+                        }
                     }
                 }
             }
+            return null;
         }
-        return null;
     }
 
     public @Nullable Blob getTestChildObject(@Nonnull String label, boolean provisionIfNull, @Nullable String parentBucket, @Nullable String namePrefix) {
-        if( label.equals(DaseinTestManager.STATELESS) ) {
-            for( Map.Entry<String,Blob> entry : testChildObjects.entrySet() ) {
-                if( !entry.getKey().startsWith(DaseinTestManager.REMOVED) ) {
-                    Blob bucket = entry.getValue();
-
-                    if( bucket != null ) {
-                        return bucket;
+        synchronized( testChildObjects.lock(label) ) {
+            if( label.equals(DaseinTestManager.STATELESS) ) {
+                for( Map.Entry<String,Blob> entry : testChildObjects.entrySet() ) {
+                    if( !entry.getKey().startsWith(DaseinTestManager.REMOVED) ) {
+                        Blob bucket = entry.getValue();
+
+                        if( bucket != null ) {
+                            return bucket;
+                        }
                     }
                 }
+                return findStatelessChildObject();
             }
-            return findStatelessChildObject();
-        }
-        Blob object = testChildObjects.get(label);
+            Blob object = testChildObjects.get(label);
 
-        if( object != null ) {
-            return object;
-        }
-        if( provisionIfNull ) {
-            StorageServices services = provider.getStorageServices();
-
-            if( services != null ) {
-                BlobStoreSupport support = services.getOnlineStorageSupport();
+            if( object != null ) {
+                return object;
+            }
+            if( provisionIfNull ) {
+                StorageServices services = provider.getStorageServices();
 
-                if( support != null ) {
-                    try {
-                        if( parentBucket == null ) {
-                            Blob parent = getTestRootBucket(DaseinTestManager.STATEFUL, true, null);
+                if( services != null ) {
+                    BlobStoreSupport support = services.getOnlineStorageSupport();
 
-                            if( parent == null ) {
-                                return null;
-                            }
-                            parentBucket = parent.getBucketName();
+                    if( support != null ) {
+                        try {
                             if( parentBucket == null ) {
-                                return null;
+                                Blob parent = getTestRootBucket(DaseinTestManager.STATEFUL, true, null);
+
+                                if( parent == null ) {
+                                    return null;
+                                }
+                                parentBucket = parent.getBucketName();
+                                if( parentBucket == null ) {
+                                    return null;
+                                }
                             }
+                            return provisionChildObject(support, label, parentBucket, namePrefix == null ? "dsnobj" : namePrefix);
+                        }
+                        catch( Throwable ignore ) {
+                            // ignore
                         }
-                        return provisionChildObject(support, label, parentBucket, namePrefix == null ? "dsnobj" : namePrefix);
-                    }
-                    catch( Throwable ignore ) {
-                        // ignore
                     }
                 }
             }
+            return null;
         }
-        return null;
     }
 
     public @Nullable Blob findStatelessChildBucket() {
@@ -512,97 +552,107 @@ public class StorageResources {
     }
 
     public @Nonnull Blob provisionRootBucket(@Nonnull BlobStoreSupport support, @Nonnull String label, @Nonnull String namePrefix, boolean useName, boolean findFreeName) throws CloudException, InternalException {
-        String name = (useName ? namePrefix : (namePrefix + random.nextInt(10000)));
-        Blob blob = support.createBucket(name, findFreeName);
+        Timeline.Span span = Timeline.begin("provision", "RootBucket");
 
-        synchronized( testRootBuckets ) {
-            while( testRootBuckets.containsKey(label) ) {
-                label = label + random.nextInt(9);
-            }
-            testRootBuckets.put(label, blob);
+        try {
+            String name = (useName ? namePrefix : (Shard.tag(namePrefix) + random.nextInt(10000)));
+            Blob blob = support.createBucket(name, findFreeName);
+
+            testRootBuckets.register(label, blob);
+            return blob;
+        }
+        finally {
+            span.end();
         }
-        return blob;
     }
 
     public @Nonnull Blob provisionChildBucket(@Nonnull BlobStoreSupport support, @Nonnull String label, @Nonnull String parentBucket, @Nonnull String namePrefix, boolean useName, boolean findFreeName) throws CloudException, InternalException {
-        String name = (useName ? namePrefix : (namePrefix + random.nextInt(10000)));
+        Timeline.Span span = Timeline.begin("provision", "ChildBucket");
 
-        Blob blob = support.createBucket(parentBucket + "/" + name, findFreeName);
+        try {
+            String name = (useName ? namePrefix : (Shard.tag(namePrefix) + random.nextInt(10000)));
 
-        synchronized( testChildBuckets ) {
-            while( testChildBuckets.containsKey(label) ) {
-                label = label + random.nextInt(9);
-            }
-            testChildBuckets.put(label, blob);
+            Blob blob = support.createBucket(parentBucket + "/" + name, findFreeName);
+
+            testChildBuckets.register(label, blob);
+            return blob;
+        }
+        finally {
+            span.end();
         }
-        return blob;
     }
 
     public @Nonnull Blob provisionRootObject(@Nonnull BlobStoreSupport support, @Nonnull String label, @Nonnull String namePrefix, @Nullable String ... lines) throws CloudException, InternalException {
+        Timeline.Span span = Timeline.begin("provision", "RootObject");
+
         try {
-            File file = File.createTempFile("dsntst", "txt");
+            namePrefix = Shard.tag(namePrefix);
+            try {
+                File file = File.createTempFile("dsntst", "txt");
 
-            BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file)));
+                BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file)));
 
-            if( lines == null ) {
-                writer.write("This is a test of Dasein Cloud");
-                writer.newLine();
-            }
-            else {
-                for( String line : lines ) {
-                    writer.write(line);
+                if( lines == null ) {
+                    writer.write("This is a test of Dasein Cloud");
                     writer.newLine();
                 }
-            }
-            writer.flush();
-            writer.close();
+                else {
+                    for( String line : lines ) {
+                        writer.write(line);
+                        writer.newLine();
+                    }
+                }
+                writer.flush();
+                writer.close();
 
-            Blob blob = support.upload(file, null, namePrefix + random.nextInt(10000) + ".txt");
+                Blob blob = support.upload(file, null, namePrefix + random.nextInt(10000) + ".txt");
 
-            synchronized( testChildObjects ) {
-                while( testChildObjects.containsKey(label) ) {
-                    label = label + random.nextInt(9);
-                }
-                testChildObjects.put(label, blob);
+                testChildObjects.register(label, blob);
+                return blob;
+            }
+            catch( IOException e ) {
+                throw new InternalException(e);
             }
-            return blob;
         }
-        catch( IOException e ) {
-            throw new InternalException(e);
+        finally {
+            span.end();
         }
     }
 
     public @Nonnull Blob provisionChildObject(@Nonnull BlobStoreSupport support, @Nonnull String label, @Nonnull String parentBucket, @Nonnull String namePrefix, @Nullable String ... lines) throws CloudException, InternalException {
+        Timeline.Span span = Timeline.begin("provision", "ChildObject");
+
         try {
-            File file = File.createTempFile("dsntst", "txt");
+            namePrefix = Shard.tag(namePrefix);
+            try {
+                File file = File.createTempFile("dsntst", "txt");
 
-            BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file)));
+                BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file)));
 
-            if( lines == null ) {
-                writer.write("This is a test of Dasein Cloud");
-                writer.newLine();
-            }
-            else {
-                for( String line : lines ) {
-                    writer.write(line);
+                if( lines == null ) {
+                    writer.write("This is a test of Dasein Cloud");
                     writer.newLine();
                 }
-            }
-            writer.flush();
-            writer.close();
+                else {
+                    for( String line : lines ) {
+                        writer.write(line);
+                        writer.newLine();
+                    }
+                }
+                writer.flush();
+                writer.close();
 
-            Blob blob = support.upload(file, parentBucket, namePrefix + random.nextInt(10000) + ".txt");
+                Blob blob = support.upload(file, parentBucket, namePrefix + random.nextInt(10000) + ".txt");
 
-            synchronized( testChildObjects ) {
-                while( testChildObjects.containsKey(label) ) {
-                    label = label + random.nextInt(9);
-                }
-                testChildObjects.put(label, blob);
+                testChildObjects.register(label, blob);
+                return blob;
+            }
+            catch( IOException e ) {
+                throw new InternalException(e);
             }
-            return blob;
         }
-        catch( IOException e ) {
-            throw new InternalException(e);
+        finally {
+            span.end();
         }
     }
 }
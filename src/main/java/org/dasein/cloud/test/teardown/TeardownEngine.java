@@ -0,0 +1,276 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.test.teardown;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.test.DaseinTestManager;
+import org.dasein.cloud.test.fixture.ResourceJournal;
+import org.dasein.cloud.test.fixture.ResourceKind;
+import org.dasein.cloud.test.metrics.RunReport;
+import org.dasein.cloud.test.metrics.Timeline;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Removes the resources provisioned during a test run. Each resource is registered with the kind of resource it is
+ * and the code that removes it. Resources are then removed on a bounded pool of threads, with every resource of a
+ * kind waiting only for the kinds it depends on: virtual machines go before the volumes, IPs, firewalls and VLANs
+ * they use, load balancers before subnets, objects before buckets and so on. Resources with no such dependency are
+ * removed concurrently. The pool size is set through the dasein.teardown.workers {@link System} property (default 8).
+ * <p>
+ * A removal returns true if it should be counted as cleaned up, which by convention includes resources that were
+ * already gone. Removals that throw are logged and not counted. The time each removal took is logged as it
+ * completes.
+ * </p>
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+public class TeardownEngine {
+    static private final Logger logger = Logger.getLogger(TeardownEngine.class);
+
+    static public final String WORKERS = "dasein.teardown.workers";
+
+    static private final Map<ResourceKind,EnumSet<ResourceKind>> dependencies = new EnumMap<ResourceKind, EnumSet<ResourceKind>>(ResourceKind.class);
+
+    static {
+        removeAfter(ResourceKind.VOLUME, ResourceKind.VM, ResourceKind.SNAPSHOT);
+        removeAfter(ResourceKind.SNAPSHOT, ResourceKind.IMAGE);
+        removeAfter(ResourceKind.KEYPAIR, ResourceKind.VM);
+        removeAfter(ResourceKind.STATIC_IP, ResourceKind.VM, ResourceKind.LOAD_BALANCER);
+        removeAfter(ResourceKind.FIREWALL, ResourceKind.VM, ResourceKind.LOAD_BALANCER, ResourceKind.RDBMS);
+        removeAfter(ResourceKind.NETWORK_FIREWALL, ResourceKind.VM);
+        removeAfter(ResourceKind.SSL_CERTIFICATE, ResourceKind.LOAD_BALANCER);
+        removeAfter(ResourceKind.INTERNET_GATEWAY, ResourceKind.VM, ResourceKind.STATIC_IP);
+        removeAfter(ResourceKind.SUBNET, ResourceKind.VM, ResourceKind.LOAD_BALANCER, ResourceKind.RDBMS, ResourceKind.STATIC_IP);
+        removeAfter(ResourceKind.ROUTING_TABLE, ResourceKind.SUBNET, ResourceKind.INTERNET_GATEWAY);
+        removeAfter(ResourceKind.VLAN, ResourceKind.VM, ResourceKind.LOAD_BALANCER, ResourceKind.RDBMS, ResourceKind.STATIC_IP,
+                ResourceKind.FIREWALL, ResourceKind.NETWORK_FIREWALL, ResourceKind.INTERNET_GATEWAY, ResourceKind.SUBNET,
+                ResourceKind.ROUTING_TABLE);
+        removeAfter(ResourceKind.CHILD_BUCKET, ResourceKind.OBJECT);
+        removeAfter(ResourceKind.BUCKET, ResourceKind.OBJECT, ResourceKind.CHILD_BUCKET, ResourceKind.CDN);
+        removeAfter(ResourceKind.GROUP, ResourceKind.USER);
+    }
+
+    static private void removeAfter(@Nonnull ResourceKind kind, @Nonnull ResourceKind ... predecessors) {
+        EnumSet<ResourceKind> set = EnumSet.noneOf(ResourceKind.class);
+
+        for( ResourceKind predecessor : predecessors ) {
+            set.add(predecessor);
+        }
+        dependencies.put(kind, set);
+    }
+
+    /**
+     * @param kind a kind of resource
+     * @return the kinds of resources that must all be removed before resources of the specified kind are removed
+     */
+    static public @Nonnull EnumSet<ResourceKind> getDependencies(@Nonnull ResourceKind kind) {
+        EnumSet<ResourceKind> set = dependencies.get(kind);
+
+        return (set == null ? EnumSet.noneOf(ResourceKind.class) : EnumSet.copyOf(set));
+    }
+
+    /**
+     * @return the maximum number of resources removed at the same time
+     */
+    static public int getWorkers() {
+        String prop = DaseinTestManager.getSystemProperty(WORKERS);
+
+        if( prop != null ) {
+            try {
+                int value = Integer.parseInt(prop.trim());
+
+                if( value > 0 ) {
+                    return value;
+                }
+            }
+            catch( NumberFormatException ignore ) {
+                // fall through to the default
+            }
+        }
+        return 8;
+    }
+
+    static private class Removal implements Callable<Removal> {
+        final ResourceKind      kind;
+        final String            id;
+        final Callable<Boolean> removal;
+        long                    duration;
+        boolean                 removed;
+
+        Removal(@Nonnull ResourceKind kind, @Nonnull String id, @Nonnull Callable<Boolean> removal) {
+            this.kind = kind;
+            this.id = id;
+            this.removal = removal;
+        }
+
+        @Override
+        public @Nonnull Removal call() {
+            long start = System.currentTimeMillis();
+            Timeline.Span span = Timeline.begin("remove", kind.name()).tag("resourceId", id);
+
+            try {
+                Boolean result = removal.call();
+
+                removed = (result != null && result);
+                if( removed ) {
+                    ResourceJournal journal = ResourceJournal.getInstance();
+
+                    if( journal != null ) {
+                        journal.removed(kind, id);
+                    }
+                    RunReport.deprovisioned();
+                }
+            }
+            catch( Throwable t ) {
+                logger.warn("Failed to de-provision test " + kind + " " + id + ": " + t.getMessage());
+            }
+            finally {
+                duration = System.currentTimeMillis() - start;
+                span.tag("removed", String.valueOf(removed)).end();
+            }
+            return this;
+        }
+    }
+
+    private final Map<ResourceKind,List<Removal>> removals = new EnumMap<ResourceKind, List<Removal>>(ResourceKind.class);
+
+    /**
+     * Registers a resource to be removed when the engine runs.
+     * @param kind the kind of resource
+     * @param id the ID of the resource, used for logging
+     * @param removal removes the resource and returns true if it counts as cleaned up
+     */
+    public synchronized void add(@Nonnull ResourceKind kind, @Nonnull String id, @Nonnull Callable<Boolean> removal) {
+        List<Removal> list = removals.get(kind);
+
+        if( list == null ) {
+            list = new ArrayList<Removal>();
+            removals.put(kind, list);
+        }
+        list.add(new Removal(kind, id, removal));
+    }
+
+    /**
+     * Removes every registered resource, blocking until all removals have completed.
+     * @return the number of resources cleaned up
+     */
+    public synchronized int run() {
+        ExecutorService executor = Executors.newFixedThreadPool(getWorkers(), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(@Nonnull Runnable r) {
+                Thread t = new Thread(r, "dasein-teardown-" + count.incrementAndGet());
+
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        CompletionService<Removal> completion = new ExecutorCompletionService<Removal>(executor);
+        Map<ResourceKind,Integer> remaining = new EnumMap<ResourceKind, Integer>(ResourceKind.class);
+        EnumSet<ResourceKind> started = EnumSet.noneOf(ResourceKind.class);
+        Map<ResourceKind,Integer> cleaned = new EnumMap<ResourceKind, Integer>(ResourceKind.class);
+        long start = System.currentTimeMillis();
+        int outstanding = 0;
+        int count = 0;
+
+        for( Map.Entry<ResourceKind,List<Removal>> entry : removals.entrySet() ) {
+            remaining.put(entry.getKey(), entry.getValue().size());
+        }
+        try {
+            while( true ) {
+                for( Map.Entry<ResourceKind,List<Removal>> entry : removals.entrySet() ) {
+                    ResourceKind kind = entry.getKey();
+
+                    if( !started.contains(kind) && isRemovable(kind, remaining) ) {
+                        started.add(kind);
+                        for( Removal removal : entry.getValue() ) {
+                            completion.submit(removal);
+                            outstanding++;
+                        }
+                    }
+                }
+                if( outstanding < 1 ) {
+                    break;
+                }
+                Removal removal = completion.take().get();
+
+                outstanding--;
+                remaining.put(removal.kind, remaining.get(removal.kind) - 1);
+                DaseinTestManager.out(logger, null, "---> " + removal.kind + " " + removal.id, (removal.removed ? "Removed" : "Failed") + " (" + (removal.duration / 1000f) + " seconds)");
+                if( removal.removed ) {
+                    Integer c = cleaned.get(removal.kind);
+
+                    cleaned.put(removal.kind, (c == null ? 1 : c + 1));
+                    count++;
+                }
+            }
+        }
+        catch( InterruptedException e ) {
+            logger.warn("Interrupted while tearing down test resources");
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        catch( ExecutionException e ) {
+            // removals catch everything they throw, so this is a bug in the engine
+            throw new RuntimeException(e.getCause());
+        }
+        finally {
+            executor.shutdown();
+            removals.clear();
+        }
+        for( Map.Entry<ResourceKind,Integer> entry : cleaned.entrySet() ) {
+            DaseinTestManager.out(logger, null, "Cleaned " + entry.getKey(), String.valueOf(entry.getValue()));
+        }
+        DaseinTestManager.out(logger, null, "Teardown Duration", ((System.currentTimeMillis() - start) / 1000f) + " seconds");
+        return count;
+    }
+
+    private boolean isRemovable(@Nonnull ResourceKind kind, @Nonnull Map<ResourceKind,Integer> remaining) {
+        EnumSet<ResourceKind> predecessors = dependencies.get(kind);
+
+        if( predecessors != null ) {
+            for( ResourceKind predecessor : predecessors ) {
+                Integer count = remaining.get(predecessor);
+
+                if( count != null && count > 0 ) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,197 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.wait;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.OperationNotSupportedException;
+import org.dasein.cloud.test.DaseinTestManager;
+import org.dasein.cloud.test.metrics.ApiLatency;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Coalesces the lookups of many concurrent {@link StateWaiter}s on one resource type into a single list call per
+ * tick. While at least two resources of the type are being waited on, the first lookup after the current snapshot
+ * has aged past the tick lists every resource and the lookups that follow within the tick are answered from that
+ * listing. Lookups that arrive while a listing is in flight wait for it rather than issuing their own call.
+ * Resources missing from the listing, such as ones created or deleted since, are fetched individually, as is
+ * everything once the cloud reports that the list call is not supported.
+ * <p>The tick is set in milliseconds through the dasein.wait.tick property (default 5000), with 0 disabling
+ * batching altogether.</p>
+ * @param <T> the type of support object the resources are fetched through
+ * @param <R> the type of resource
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+public abstract class BatchPoller<T,R> {
+    static private final Logger logger = Logger.getLogger(BatchPoller.class);
+
+    static public final String TICK = "dasein.wait.tick";
+
+    // a waiter that has not looked anything up for longer than the waiter's maximum backoff is no longer waiting
+    static private final long ACTIVE = 45000L;
+
+    /**
+     * @return the minimum number of milliseconds between list calls, with 0 meaning lookups are never batched
+     */
+    static public long getTick() {
+        String prop = DaseinTestManager.getSystemProperty(TICK);
+
+        if( prop != null ) {
+            try {
+                return Math.max(0L, Long.parseLong(prop.trim()));
+            }
+            catch( NumberFormatException ignore ) {
+                // fall through to the default
+            }
+        }
+        return 5000L;
+    }
+
+    private final String           listApi;
+    private final String           resourceType;
+    private final Map<String,Long> requests = new HashMap<String, Long>();
+    private boolean                listing;
+    private Map<String,R>          snapshot;
+    private long                   snapshotTime;
+    private boolean                unsupported;
+
+    public BatchPoller(@Nonnull String resourceType) {
+        this.resourceType = resourceType;
+        this.listApi = resourceType + ApiLatency.WAITER_LIST;
+    }
+
+    /**
+     * Lists all resources of this type in a single call.
+     * @param support the support object for the resource type
+     * @return every resource of this type in the current region
+     * @throws Exception an error occurred listing the resources
+     */
+    protected abstract @Nonnull Iterable<R> list(@Nonnull T support) throws Exception;
+
+    /**
+     * Fetches a single resource.
+     * @param support the support object for the resource type
+     * @param resourceId the ID of the resource
+     * @return the resource or null if it does not exist
+     * @throws Exception an error occurred fetching the resource
+     */
+    protected abstract @Nullable R get(@Nonnull T support, @Nonnull String resourceId) throws Exception;
+
+    /**
+     * @param resource a listed resource
+     * @return the ID the resource is looked up by
+     */
+    protected abstract @Nonnull String getId(@Nonnull R resource);
+
+    /**
+     * Looks up the current version of a resource, from the most recent listing when lookups are being batched.
+     * @param support the support object for the resource type
+     * @param resourceId the ID of the resource
+     * @return the resource or null if it does not exist
+     * @throws Exception an error occurred fetching the resource
+     */
+    public @Nullable R lookup(@Nonnull T support, @Nonnull String resourceId) throws Exception {
+        Map<String,R> current = getSnapshot(support, resourceId);
+        R resource = (current == null ? null : current.get(resourceId));
+
+        if( resource == null ) {
+            resource = get(support, resourceId);
+        }
+        return resource;
+    }
+
+    private @Nullable Map<String,R> getSnapshot(@Nonnull T support, @Nonnull String resourceId) {
+        long tick = getTick();
+
+        synchronized( this ) {
+            if( unsupported || tick < 1L ) {
+                return null;
+            }
+            long now = System.currentTimeMillis();
+
+            requests.put(resourceId, now);
+            Iterator<Map.Entry<String,Long>> it = requests.entrySet().iterator();
+
+            while( it.hasNext() ) {
+                if( now - it.next().getValue() > ACTIVE ) {
+                    it.remove();
+                }
+            }
+            if( requests.size() < 2 ) {
+                // a list call is no cheaper than a get when only one resource is being waited on
+                return null;
+            }
+            while( listing ) {
+                try {
+                    wait();
+                }
+                catch( InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+            if( System.currentTimeMillis() - snapshotTime < tick ) {
+                return snapshot;
+            }
+            listing = true;
+        }
+        Map<String,R> fresh = null;
+        long start = System.nanoTime();
+
+        try {
+            Iterable<R> resources = list(support);
+
+            ApiLatency.record(listApi, System.nanoTime() - start);
+            fresh = new HashMap<String, R>();
+            for( R resource : resources ) {
+                fresh.put(getId(resource), resource);
+            }
+            return fresh;
+        }
+        catch( OperationNotSupportedException e ) {
+            logger.info("Listing is not supported for " + resourceType + ", waiters will poll individually");
+            synchronized( this ) {
+                unsupported = true;
+            }
+            fresh = null;
+            return null;
+        }
+        catch( Throwable t ) {
+            // waiters fetch individually until the next tick
+            logger.debug("Failed to list " + resourceType + ": " + t.getMessage());
+            fresh = null;
+            return null;
+        }
+        finally {
+            synchronized( this ) {
+                listing = false;
+                snapshot = fresh;
+                snapshotTime = System.currentTimeMillis();
+                notifyAll();
+            }
+        }
+    }
+}
@@ -0,0 +1,298 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.test.wait;
+
+import org.dasein.cloud.compute.MachineImage;
+import org.dasein.cloud.compute.MachineImageState;
+import org.dasein.cloud.compute.MachineImageSupport;
+import org.dasein.cloud.compute.Snapshot;
+import org.dasein.cloud.compute.SnapshotState;
+import org.dasein.cloud.compute.SnapshotSupport;
+import org.dasein.cloud.compute.VirtualMachine;
+import org.dasein.cloud.compute.VirtualMachineSupport;
+import org.dasein.cloud.compute.VmState;
+import org.dasein.cloud.compute.Volume;
+import org.dasein.cloud.compute.VolumeState;
+import org.dasein.cloud.compute.VolumeSupport;
+import org.dasein.cloud.network.LoadBalancer;
+import org.dasein.cloud.network.LoadBalancerState;
+import org.dasein.cloud.network.LoadBalancerSupport;
+import org.dasein.cloud.network.Route;
+import org.dasein.cloud.network.RoutingTable;
+import org.dasein.cloud.network.Subnet;
+import org.dasein.cloud.network.SubnetState;
+import org.dasein.cloud.network.VLAN;
+import org.dasein.cloud.network.VLANState;
+import org.dasein.cloud.network.VLANSupport;
+import org.dasein.cloud.platform.Database;
+import org.dasein.cloud.platform.DatabaseState;
+import org.dasein.cloud.platform.RelationalDatabaseSupport;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * {@link StateExtractor}s for the resources whose state the tests most often wait on. Lookups of virtual machines,
+ * volumes, snapshots, VLANs and load balancers go through a shared {@link BatchPoller} per type so that concurrent
+ * waiters are served by one list call per tick.
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+public class CloudStates {
+    static private final BatchPoller<VirtualMachineSupport,VirtualMachine> virtualMachines = new BatchPoller<VirtualMachineSupport, VirtualMachine>("VM") {
+        @Override
+        protected @Nonnull Iterable<VirtualMachine> list(@Nonnull VirtualMachineSupport support) throws Exception {
+            return support.listVirtualMachines();
+        }
+
+        @Override
+        protected @Nullable VirtualMachine get(@Nonnull VirtualMachineSupport support, @Nonnull String resourceId) throws Exception {
+            return support.getVirtualMachine(resourceId);
+        }
+
+        @Override
+        protected @Nonnull String getId(@Nonnull VirtualMachine resource) {
+            return resource.getProviderVirtualMachineId();
+        }
+    };
+
+    static private final BatchPoller<VolumeSupport,Volume> volumes = new BatchPoller<VolumeSupport, Volume>("Volume") {
+        @Override
+        protected @Nonnull Iterable<Volume> list(@Nonnull VolumeSupport support) throws Exception {
+            return support.listVolumes();
+        }
+
+        @Override
+        protected @Nullable Volume get(@Nonnull VolumeSupport support, @Nonnull String resourceId) throws Exception {
+            return support.getVolume(resourceId);
+        }
+
+        @Override
+        protected @Nonnull String getId(@Nonnull Volume resource) {
+            return resource.getProviderVolumeId();
+        }
+    };
+
+    static private final BatchPoller<SnapshotSupport,Snapshot> snapshots = new BatchPoller<SnapshotSupport, Snapshot>("Snapshot") {
+        @Override
+        protected @Nonnull Iterable<Snapshot> list(@Nonnull SnapshotSupport support) throws Exception {
+            return support.listSnapshots();
+        }
+
+        @Override
+        protected @Nullable Snapshot get(@Nonnull SnapshotSupport support, @Nonnull String resourceId) throws Exception {
+            return support.getSnapshot(resourceId);
+        }
+
+        @Override
+        protected @Nonnull String getId(@Nonnull Snapshot resource) {
+            return resource.getProviderSnapshotId();
+        }
+    };
+
+    static private final BatchPoller<VLANSupport,VLAN> vlans = new BatchPoller<VLANSupport, VLAN>("VLAN") {
+        @Override
+        protected @Nonnull Iterable<VLAN> list(@Nonnull VLANSupport support) throws Exception {
+            return support.listVlans();
+        }
+
+        @Override
+        protected @Nullable VLAN get(@Nonnull VLANSupport support, @Nonnull String resourceId) throws Exception {
+            return support.getVlan(resourceId);
+        }
+
+        @Override
+        protected @Nonnull String getId(@Nonnull VLAN resource) {
+            return resource.getProviderVlanId();
+        }
+    };
+
+    static private final BatchPoller<LoadBalancerSupport,LoadBalancer> loadBalancers = new BatchPoller<LoadBalancerSupport, LoadBalancer>("Load Balancer") {
+        @Override
+        protected @Nonnull Iterable<LoadBalancer> list(@Nonnull LoadBalancerSupport support) throws Exception {
+            return support.listLoadBalancers();
+        }
+
+        @Override
+        protected @Nullable LoadBalancer get(@Nonnull LoadBalancerSupport support, @Nonnull String resourceId) throws Exception {
+            return support.getLoadBalancer(resourceId);
+        }
+
+        @Override
+        protected @Nonnull String getId(@Nonnull LoadBalancer resource) {
+            return resource.getProviderLoadBalancerId();
+        }
+    };
+
+    static public @Nonnull StateExtractor<VirtualMachine,VmState> virtualMachine(@Nonnull final VirtualMachineSupport support) {
+        return new StateExtractor<VirtualMachine, VmState>() {
+            @Override
+            public @Nullable VirtualMachine lookup(@Nonnull String resourceId) throws Exception {
+                return virtualMachines.lookup(support, resourceId);
+            }
+
+            @Override
+            public @Nullable VmState getState(@Nonnull VirtualMachine resource) {
+                return resource.getCurrentState();
+            }
+        };
+    }
+
+    static public @Nonnull StateExtractor<Volume,VolumeState> volume(@Nonnull final VolumeSupport support) {
+        return new StateExtractor<Volume, VolumeState>() {
+            @Override
+            public @Nullable Volume lookup(@Nonnull String resourceId) throws Exception {
+                return volumes.lookup(support, resourceId);
+            }
+
+            @Override
+            public @Nullable VolumeState getState(@Nonnull Volume resource) {
+                return resource.getCurrentState();
+            }
+        };
+    }
+
+    /**
+     * @param support the volume support of the cloud
+     * @return an extractor whose state is the ID of the virtual machine the volume is attached to
+     */
+    static public @Nonnull StateExtractor<Volume,String> volumeAttachment(@Nonnull final VolumeSupport support) {
+        return new StateExtractor<Volume, String>() {
+            @Override
+            public @Nullable Volume lookup(@Nonnull String resourceId) throws Exception {
+                return volumes.lookup(support, resourceId);
+            }
+
+            @Override
+            public @Nullable String getState(@Nonnull Volume resource) {
+                String vmId = resource.getProviderVirtualMachineId();
+
+                return (vmId == null ? "DETACHED" : vmId);
+            }
+        };
+    }
+
+    static public @Nonnull StateExtractor<Snapshot,SnapshotState> snapshot(@Nonnull final SnapshotSupport support) {
+        return new StateExtractor<Snapshot, SnapshotState>() {
+            @Override
+            public @Nullable Snapshot lookup(@Nonnull String resourceId) throws Exception {
+                return snapshots.lookup(support, resourceId);
+            }
+
+            @Override
+            public @Nullable SnapshotState getState(@Nonnull Snapshot resource) {
+                return resource.getCurrentState();
+            }
+        };
+    }
+
+    static public @Nonnull StateExtractor<MachineImage,MachineImageState> image(@Nonnull final MachineImageSupport support) {
+        return new StateExtractor<MachineImage, MachineImageState>() {
+            @Override
+            public @Nullable MachineImage lookup(@Nonnull String resourceId) throws Exception {
+                return support.getImage(resourceId);
+            }
+
+            @Override
+            public @Nullable MachineImageState getState(@Nonnull MachineImage resource) {
+                return resource.getCurrentState();
+            }
+        };
+    }
+
+    static public @Nonnull StateExtractor<VLAN,VLANState> vlan(@Nonnull final VLANSupport support) {
+        return new StateExtractor<VLAN, VLANState>() {
+            @Override
+            public @Nullable VLAN lookup(@Nonnull String resourceId) throws Exception {
+                return vlans.lookup(support, resourceId);
+            }
+
+            @Override
+            public @Nullable VLANState getState(@Nonnull VLAN resource) {
+                return resource.getCurrentState();
+            }
+        };
+    }
+
+    static public @Nonnull StateExtractor<Subnet,SubnetState> subnet(@Nonnull final VLANSupport support) {
+        return new StateExtractor<Subnet, SubnetState>() {
+            @Override
+            public @Nullable Subnet lookup(@Nonnull String resourceId) throws Exception {
+                return support.getSubnet(resourceId);
+            }
+
+            @Override
+            public @Nullable SubnetState getState(@Nonnull Subnet resource) {
+                return resource.getCurrentState();
+            }
+        };
+    }
+
+    /**
+     * Routing tables have no life cycle state, so the state reported is the number of routes in the table.
+     * @param support the VLAN support that manages the routing table
+     * @return an extractor for routing tables
+     */
+    static public @Nonnull StateExtractor<RoutingTable,Integer> routingTable(@Nonnull final VLANSupport support) {
+        return new StateExtractor<RoutingTable, Integer>() {
+            @Override
+            public @Nullable RoutingTable lookup(@Nonnull String resourceId) throws Exception {
+                return support.getRoutingTable(resourceId);
+            }
+
+            @Override
+            public @Nullable Integer getState(@Nonnull RoutingTable resource) {
+                Route[] routes = resource.getRoutes();
+
+                return (routes == null ? 0 : routes.length);
+            }
+        };
+    }
+
+    static public @Nonnull StateExtractor<LoadBalancer,LoadBalancerState> loadBalancer(@Nonnull final LoadBalancerSupport support) {
+        return new StateExtractor<LoadBalancer, LoadBalancerState>() {
+            @Override
+            public @Nullable LoadBalancer lookup(@Nonnull String resourceId) throws Exception {
+                return loadBalancers.lookup(support, resourceId);
+            }
+
+            @Override
+            public @Nullable LoadBalancerState getState(@Nonnull LoadBalancer resource) {
+                return resource.getCurrentState();
+            }
+        };
+    }
+
+    static public @Nonnull StateExtractor<Database,DatabaseState> database(@Nonnull final RelationalDatabaseSupport support) {
+        return new StateExtractor<Database, DatabaseState>() {
+            @Override
+            public @Nullable Database lookup(@Nonnull String resourceId) throws Exception {
+                return support.getDatabase(resourceId);
+            }
+
+            @Override
+            public @Nullable DatabaseState getState(@Nonnull Database resource) {
+                return resource.getCurrentState();
+            }
+        };
+    }
+}
@@ -0,0 +1,39 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.test.wait;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link StateExtractor} for conditions where the value looked up is itself the state, such as whether an image is
+ * shared with an account.
+ * @param <S> the type of state
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+public abstract class SimpleExtractor<S> implements StateExtractor<S,S> {
+    @Override
+    public @Nullable S getState(@Nonnull S resource) {
+        return resource;
+    }
+}
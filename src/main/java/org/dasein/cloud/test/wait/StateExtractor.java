@@ -0,0 +1,48 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.test.wait;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Looks up a resource by its ID and extracts the state a {@link StateWaiter} is waiting on.
+ * @param <R> the type of resource
+ * @param <S> the type of state extracted from the resource
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+public interface StateExtractor<R,S> {
+    /**
+     * Fetches the current version of the resource from the cloud.
+     * @param resourceId the ID of the resource
+     * @return the resource or null if it does not exist (any longer)
+     * @throws Exception an error occurred fetching the resource, the waiter will try again
+     */
+    public @Nullable R lookup(@Nonnull String resourceId) throws Exception;
+
+    /**
+     * @param resource the resource most recently fetched
+     * @return the state of the resource
+     */
+    public @Nullable S getState(@Nonnull R resource);
+}
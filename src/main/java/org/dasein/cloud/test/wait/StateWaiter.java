@@ -0,0 +1,248 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.test.wait;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.test.cassette.Cassette;
+import org.dasein.cloud.test.metrics.ApiLatency;
+import org.dasein.cloud.test.metrics.Timeline;
+import org.dasein.util.CalendarWrapper;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Waits for a cloud resource to reach a target state. The resource is looked up through a {@link StateExtractor}
+ * until a {@link StatePredicate} accepts its state or a deadline passes. Lookups start quickly and back off
+ * exponentially with jitter, so short transitions are noticed within seconds while long ones need few API calls.
+ * The time each wait took is recorded in {@link TransitionStats} and the latency of each lookup in
+ * {@link ApiLatency} under the resource type, such as VM.lookup.
+ * <pre>
+ *     VirtualMachine vm = StateWaiter.getInstance("VM").withTimeout(CalendarWrapper.MINUTE * 20L)
+ *             .await(vmId, CloudStates.virtualMachine(support), StateWaiter.in(VmState.RUNNING));
+ * </pre>
+ * Errors looking up the resource are ignored and the lookup is retried. If the resource disappears and the predicate
+ * does not accept a null state, the wait ends unless a tolerance for eventually consistent lookups has been set with
+ * {@link #withGoneTolerance(int)}.
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+public class StateWaiter {
+    static private final Logger logger = Logger.getLogger(StateWaiter.class);
+
+    static private final Random random = new Random();
+
+    /**
+     * Creates a waiter with a twenty minute timeout, an initial delay of two seconds and a maximum delay of thirty
+     * seconds between lookups.
+     * @param resourceType the type of resource waited on, used to group transition timings (e.g. "VM")
+     * @return a new waiter
+     */
+    static public @Nonnull StateWaiter getInstance(@Nonnull String resourceType) {
+        return new StateWaiter(resourceType);
+    }
+
+    /**
+     * @param states the states to wait for
+     * @param <S> the type of state
+     * @return a predicate matching a resource in any of the specified states
+     */
+    // the states are only read into a set, so the generic varargs arrays cannot pollute the heap
+    @SuppressWarnings("unchecked")
+    static public @Nonnull <S> StatePredicate<S> in(@Nonnull S ... states) {
+        final Set<S> set = new HashSet<S>(Arrays.asList(states));
+
+        return new StatePredicate<S>() {
+            @Override
+            public boolean matches(@Nullable S state) {
+                return (state != null && set.contains(state));
+            }
+        };
+    }
+
+    /**
+     * @param states the states to wait for
+     * @param <S> the type of state
+     * @return a predicate matching a resource in any of the specified states or that no longer exists
+     */
+    @SuppressWarnings("unchecked")
+    static public @Nonnull <S> StatePredicate<S> inOrGone(@Nonnull S ... states) {
+        final Set<S> set = new HashSet<S>(Arrays.asList(states));
+
+        return new StatePredicate<S>() {
+            @Override
+            public boolean matches(@Nullable S state) {
+                return (state == null || set.contains(state));
+            }
+        };
+    }
+
+    /**
+     * @param states the states to wait out, typically transitional states such as {@link org.dasein.cloud.compute.VmState#PENDING}
+     * @param <S> the type of state
+     * @return a predicate matching a resource in none of the specified states
+     */
+    @SuppressWarnings("unchecked")
+    static public @Nonnull <S> StatePredicate<S> notIn(@Nonnull S ... states) {
+        final Set<S> set = new HashSet<S>(Arrays.asList(states));
+
+        return new StatePredicate<S>() {
+            @Override
+            public boolean matches(@Nullable S state) {
+                return (state != null && !set.contains(state));
+            }
+        };
+    }
+
+    private final String lookupApi;
+    private final String resourceType;
+    private long         initialDelay = 2000L;
+    private long         maxDelay     = 30000L;
+    private long         timeout      = CalendarWrapper.MINUTE * 20L;
+    private int          goneTolerance;
+
+    private StateWaiter(@Nonnull String resourceType) {
+        this.resourceType = resourceType;
+        this.lookupApi = resourceType + ApiLatency.WAITER_LOOKUP;
+    }
+
+    /**
+     * @param millis the delay before the first lookup after the initial one
+     * @return this
+     */
+    public @Nonnull StateWaiter withInitialDelay(@Nonnegative long millis) {
+        initialDelay = Math.max(1L, millis);
+        return this;
+    }
+
+    /**
+     * @param millis the longest delay between two lookups
+     * @return this
+     */
+    public @Nonnull StateWaiter withMaxDelay(@Nonnegative long millis) {
+        maxDelay = Math.max(1L, millis);
+        return this;
+    }
+
+    /**
+     * @param millis the maximum time to wait in total
+     * @return this
+     */
+    public @Nonnull StateWaiter withTimeout(@Nonnegative long millis) {
+        timeout = millis;
+        return this;
+    }
+
+    /**
+     * @param lookups the number of consecutive lookups that may find no resource before the wait ends
+     * @return this
+     */
+    public @Nonnull StateWaiter withGoneTolerance(@Nonnegative int lookups) {
+        goneTolerance = lookups;
+        return this;
+    }
+
+    /**
+     * Waits for the resource to reach a state matching the target. The resource is looked up immediately, so a
+     * resource already in the target state returns without delay.
+     * @param resourceId the ID of the resource
+     * @param extractor looks up the resource and extracts its state
+     * @param target the condition to wait for
+     * @param <R> the type of resource
+     * @param <S> the type of state
+     * @return the resource as last looked up, which is null if it no longer exists and may not match the target if
+     * the wait timed out
+     */
+    public @Nullable <R,S> R await(@Nonnull String resourceId, @Nonnull StateExtractor<R,S> extractor, @Nonnull StatePredicate<S> target) {
+        long start = System.currentTimeMillis();
+        long deadline = start + timeout;
+        long delay = initialDelay;
+        R resource = null;
+        S initialState = null;
+        S state = null;
+        boolean found = false;
+        boolean timedOut = false;
+        int polls = 0;
+        int gone = 0;
+        Timeline.Span span = Timeline.begin("wait", resourceType).tag("resourceId", resourceId);
+
+        while( true ) {
+            try {
+                long lookupStart = System.nanoTime();
+
+                polls++;
+                try {
+                    resource = extractor.lookup(resourceId);
+                }
+                finally {
+                    ApiLatency.record(lookupApi, System.nanoTime() - lookupStart);
+                }
+                state = (resource == null ? null : extractor.getState(resource));
+                if( !found ) {
+                    initialState = state;
+                    found = true;
+                }
+                if( target.matches(state) ) {
+                    break;
+                }
+                if( resource == null && ++gone > goneTolerance ) {
+                    break;
+                }
+                if( resource != null ) {
+                    gone = 0;
+                }
+            }
+            catch( Throwable t ) {
+                logger.debug("Error looking up " + resourceType + " " + resourceId + ": " + t.getMessage());
+            }
+            long remaining = deadline - System.currentTimeMillis();
+
+            if( remaining <= 0L ) {
+                timedOut = true;
+                break;
+            }
+            // equal jitter: at least half the current delay plus a random part of the other half
+            long sleep = Math.min(remaining, delay/2 + (long)(random.nextDouble() * (delay - delay/2)));
+
+            try {
+                Thread.sleep(Math.max(1L, Cassette.compress(sleep)));
+            }
+            catch( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            delay = Math.min(maxDelay, delay * 2);
+        }
+        long duration = System.currentTimeMillis() - start;
+        String transition = resourceType + ": " + (initialState == null ? "?" : initialState) + " -> " + (state == null ? (resource == null && found ? "GONE" : "?") : state) + (timedOut ? " (timeout)" : "");
+
+        logger.debug(transition + " for " + resourceId + " in " + duration + "ms after " + polls + " polls");
+        TransitionStats.record(transition, duration, polls);
+        span.tag("transition", transition).tag("polls", String.valueOf(polls)).end();
+        return resource;
+    }
+}
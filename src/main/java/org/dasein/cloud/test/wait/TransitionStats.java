@@ -0,0 +1,90 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.test.wait;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.test.DaseinTestManager;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Records how long the state transitions awaited by {@link StateWaiter}s took and how many lookups they needed.
+ * Transitions are grouped by resource type, starting state and ending state, and are reported at clean up.
+ *
+ * @version 2015.06 initial version
+ * @since 2015.06
+ */
+public class TransitionStats {
+    static private class Entry {
+        int  count;
+        int  polls;
+        long total;
+        long max;
+    }
+
+    static private final Map<String,Entry> transitions = new TreeMap<String, Entry>();
+
+    /**
+     * Records a transition.
+     * @param transition a description of the transition such as "VM: PENDING -> RUNNING"
+     * @param duration the number of milliseconds the transition took
+     * @param polls the number of lookups made while waiting
+     */
+    static public void record(@Nonnull String transition, @Nonnegative long duration, @Nonnegative int polls) {
+        synchronized( transitions ) {
+            Entry entry = transitions.get(transition);
+
+            if( entry == null ) {
+                entry = new Entry();
+                transitions.put(transition, entry);
+            }
+            entry.count++;
+            entry.polls += polls;
+            entry.total += duration;
+            if( duration > entry.max ) {
+                entry.max = duration;
+            }
+        }
+    }
+
+    /**
+     * Logs the average and maximum time of each transition recorded so far.
+     * @param logger the logger to write to
+     */
+    static public void report(@Nonnull Logger logger) {
+        synchronized( transitions ) {
+            for( Map.Entry<String,Entry> entry : transitions.entrySet() ) {
+                Entry e = entry.getValue();
+
+                DaseinTestManager.out(logger, null, "---> " + entry.getKey(), e.count + "x, avg " + ((e.total / e.count) / 1000f) + "s, max " + (e.max / 1000f) + "s, " + e.polls + " polls");
+            }
+        }
+    }
+
+    static public void reset() {
+        synchronized( transitions ) {
+            transitions.clear();
+        }
+    }
+}